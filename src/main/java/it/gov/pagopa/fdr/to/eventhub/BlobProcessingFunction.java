@@ -2,17 +2,35 @@ package it.gov.pagopa.fdr.to.eventhub;
 
 import com.azure.messaging.eventhubs.EventHubProducerClient;
 import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.OutputBinding;
 import com.microsoft.azure.functions.annotation.BindingName;
 import com.microsoft.azure.functions.annotation.BlobTrigger;
 import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.QueueOutput;
+import it.gov.pagopa.fdr.to.eventhub.exception.CircuitBreakerOpenException;
 import it.gov.pagopa.fdr.to.eventhub.exception.EventHubException;
-import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.fanout.FlowFanOut;
+import it.gov.pagopa.fdr.to.eventhub.fanout.LocalWorkUnitQueue;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnit;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnitProcessor;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnitQueue;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnitTracker;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryRecord;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventSink;
+import it.gov.pagopa.fdr.to.eventhub.source.FlowSource;
 import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import it.gov.pagopa.fdr.to.eventhub.util.ErrorCodes;
 import lombok.Getter;
@@ -25,6 +43,14 @@ public class BlobProcessingFunction {
       System.getenv().getOrDefault("BLOB_STORAGE_FDR3_CONTAINER", "fdr3-flows");
   @Getter private final EventHubProducerClient eventHubClientFlowTx;
   @Getter private final EventHubProducerClient eventHubClientReportedIUV;
+  // how the flows are read and where their events go, composed from the configuration
+  @Getter private final FlowSource fdr1Source;
+  @Getter private final FlowSource fdr3Source;
+  @Getter private final EventSink eventSink;
+  // when the flows too big for a single invocation are split into work units
+  @Getter private final FlowFanOut fanOut;
+  // processes the work units in-process when the function is not called by the host
+  private LocalWorkUnitQueue localWorkUnitQueue;
 
   public BlobProcessingFunction() {
     this.eventHubClientFlowTx =
@@ -36,14 +62,67 @@ public class BlobProcessingFunction {
         CommonUtil.createEventHubClient(
             System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
             System.getenv("EVENT_HUB_REPORTEDIUV_NAME"));
+
+    CommonUtil.registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+
+    this.fdr1Source = FlowSource.fromEnvironment("FDR1_FLOW_SOURCE", "fdr1-sax");
+    this.fdr3Source = FlowSource.fromEnvironment("FDR3_FLOW_SOURCE", "fdr3-json");
+    this.eventSink = createEventSink(eventHubClientFlowTx, eventHubClientReportedIUV);
+    this.fanOut = FlowFanOut.fromEnvironment();
   }
 
   // Constructor to inject the Event Hub clients
   public BlobProcessingFunction(
       EventHubProducerClient eventHubClientFlowTx,
       EventHubProducerClient eventHubClientReportedIUV) {
+    this(
+        eventHubClientFlowTx,
+        eventHubClientReportedIUV,
+        FlowSource.fromEnvironment("FDR1_FLOW_SOURCE", "fdr1-sax"),
+        FlowSource.fromEnvironment("FDR3_FLOW_SOURCE", "fdr3-json"),
+        createEventSink(eventHubClientFlowTx, eventHubClientReportedIUV));
+  }
+
+  // Constructor to inject the sources and the sink
+  public BlobProcessingFunction(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV,
+      FlowSource fdr1Source,
+      FlowSource fdr3Source,
+      EventSink eventSink) {
+    this(
+        eventHubClientFlowTx,
+        eventHubClientReportedIUV,
+        fdr1Source,
+        fdr3Source,
+        eventSink,
+        FlowFanOut.fromEnvironment());
+  }
+
+  // Constructor to inject the fan-out of the big flows
+  public BlobProcessingFunction(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV,
+      FlowSource fdr1Source,
+      FlowSource fdr3Source,
+      EventSink eventSink,
+      FlowFanOut fanOut) {
     this.eventHubClientFlowTx = eventHubClientFlowTx;
     this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+    this.fdr1Source = fdr1Source;
+    this.fdr3Source = fdr3Source;
+    this.eventSink = eventSink;
+    this.fanOut = fanOut;
+  }
+
+  private static EventSink createEventSink(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV) {
+    try {
+      return EventSink.fromEnvironment(eventHubClientFlowTx, eventHubClientReportedIUV);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   @FunctionName("ProcessFDR1BlobFiles")
@@ -56,7 +135,13 @@ public class BlobProcessingFunction {
           byte[] content,
       @BindingName("blobName") String blobName,
       @BindingName("Metadata") Map<String, String> blobMetadata,
-      final ExecutionContext context) {
+      @QueueOutput(
+              name = "Fdr1WorkUnits",
+              queueName = "%FLOW_WORK_UNIT_QUEUE%",
+              connection = "FDR_SA_CONNECTION_STRING")
+          OutputBinding<List<String>> workUnits,
+      final ExecutionContext context)
+      throws EventHubException {
 
     // checks for the presence of the necessary metadata
     if (!CommonUtil.validateBlobMetadata(blobMetadata)) {
@@ -71,6 +156,28 @@ public class BlobProcessingFunction {
       return; // Skip execution
     }
 
+    // a trigger fired again for an upload already delivered is skipped before parsing
+    String blobHash = CommonUtil.blobHash(content);
+    if (isAlreadyDelivered("FDR1", fdr1Container, blobName, blobMetadata, blobHash, context)) {
+      return;
+    }
+
+    // fail fast, without decompressing and parsing, when Event Hub is known to be down: the
+    // exception fails the invocation, so the blob is run again by the trigger retries and, once
+    // they are exhausted, moved to the poison queue
+    try {
+      CommonUtil.checkEventHubAvailability(eventHubClientFlowTx, eventHubClientReportedIUV);
+    } catch (CircuitBreakerOpenException e) {
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "%s [FDR1] Blob '%s/%s' not processed, left to the trigger retry",
+                      e.getMessage(), fdr1Container, blobName));
+      throw e;
+    }
+
     // verify that the file is present and that it is a compressed file
     boolean isValidGzipFile = CommonUtil.isGzip(content);
 
@@ -86,35 +193,69 @@ public class BlobProcessingFunction {
                     blobName,
                     content.length));
 
+    // The trigger binding does not expose the ETag: the sessionId, set on every upload,
+    // identifies the blob version for the checkpoints, as for the recovery endpoints
+    DeliveryOptions deliveryOptions =
+        DeliveryOptions.builder()
+            .blobName(fdr1Container + "/" + blobName)
+            .sessionId(blobMetadata.get("sessionId"))
+            .build();
+
+    FlowEvents flowEvents;
     try (InputStream decompressedStream =
         isValidGzipFile ? CommonUtil.decompressGzip(content) : new ByteArrayInputStream(content)) {
-
-      FlussoRendicontazione flusso = CommonUtil.parseXml(decompressedStream);
-
+      flowEvents =
+          fdr1Source.read(
+              decompressedStream, blobMetadata, eventSink.chunkSizeBytes(deliveryOptions));
+    } catch (Exception e) {
+      // a blob that cannot be read or is not valid would fail the same way on every retry
       context
           .getLogger()
-          .fine(
+          .severe(
               () ->
                   String.format(
-                      "[FDR1] Parsed Finished at: %s for Blob container: %s, name: %s, size in"
-                          + " bytes: %d",
-                      LocalDateTime.now()
-                          .format(DateTimeFormatter.ofPattern(CommonUtil.LOG_DATETIME_PATTERN)),
-                      fdr1Container,
-                      blobName,
-                      content.length));
+                      "[%s][FDR1] Error processing Blob '%s/%s': %s",
+                      ErrorCodes.FDR1_E1, fdr1Container, blobName, e.getMessage()));
+      return;
+    }
 
-      flusso.setMetadata(blobMetadata);
-
-      // Waits for confirmation of sending the entire flow to the Event Hub
-      boolean eventBatchSent =
-          CommonUtil.processXmlBlobAndSendToEventHub(
-              eventHubClientFlowTx, eventHubClientReportedIUV, flusso, context);
-      if (!eventBatchSent) {
-        throw new EventHubException(
-            String.format(
-                "EventHub has not confirmed sending the entire batch of events for flow ID: %s",
-                flusso.getIdentificativoFlusso()));
+    context
+        .getLogger()
+        .fine(
+            () ->
+                String.format(
+                    "[FDR1] Parsed Finished at: %s for Blob container: %s, name: %s, size in"
+                        + " bytes: %d, flow ID: %s, SHA-256: %s",
+                    LocalDateTime.now()
+                        .format(DateTimeFormatter.ofPattern(CommonUtil.LOG_DATETIME_PATTERN)),
+                    fdr1Container,
+                    blobName,
+                    content.length,
+                    flowEvents.getFlowId(),
+                    flowEvents.getContentSha256()));
+
+    try {
+      if (fanOut.shouldSplit(flowEvents, content.length)) {
+        // the payments are delivered by the work units, each one retried alone
+        fanOut(
+            flowEvents,
+            fdr1Source,
+            fdr1Container,
+            blobName,
+            blobMetadata,
+            blobHash,
+            deliveryOptions,
+            workUnits,
+            context);
+      } else {
+        // Waits for confirmation of sending the entire flow
+        eventSink.deliver(flowEvents, blobMetadata, deliveryOptions, context);
+        CommonUtil.recordDelivery(
+            fdr1Container + "/" + blobName,
+            blobMetadata,
+            blobHash,
+            flowEvents.getContentSha256(),
+            flowEvents.getFlowId());
       }
 
       context
@@ -130,14 +271,14 @@ public class BlobProcessingFunction {
                       blobName,
                       content.length));
 
-    } catch (Exception e) {
-      context
-          .getLogger()
-          .severe(
-              () ->
-                  String.format(
-                      "[%s][FDR1] Error processing Blob '%s/%s': %s",
-                      ErrorCodes.FDR1_E1, fdr1Container, blobName, e.getMessage()));
+    } catch (IOException e) {
+      String errorMessage =
+          String.format(
+              "[%s][FDR1] Error delivering Blob '%s/%s': %s",
+              ErrorCodes.FDR1_E1, fdr1Container, blobName, e.getMessage());
+      context.getLogger().severe(() -> errorMessage);
+      // fails the invocation, so that the trigger retries resume the delivery from its checkpoint
+      throw new EventHubException(errorMessage, e);
     }
   }
 
@@ -151,27 +292,222 @@ public class BlobProcessingFunction {
           byte[] content,
       @BindingName("blobName") String blobName,
       @BindingName("Metadata") Map<String, String> blobMetadata,
-      final ExecutionContext context) {
+      @QueueOutput(
+              name = "Fdr3WorkUnits",
+              queueName = "%FLOW_WORK_UNIT_QUEUE%",
+              connection = "FDR_SA_CONNECTION_STRING")
+          OutputBinding<List<String>> workUnits,
+      final ExecutionContext context)
+      throws EventHubException {
+
+    // checks for the presence of the necessary metadata
+    if (!CommonUtil.validateBlobMetadata(blobMetadata)) {
+      context
+          .getLogger()
+          .warning(
+              () ->
+                  String.format(
+                      "[FDR3] Skipping processing for Blob container: %s, name: %s, size in bytes:"
+                          + " %d",
+                      fdr3Container, blobName, content.length));
+      return; // Skip execution
+    }
+
+    // a trigger fired again for an upload already delivered is skipped before parsing
+    String blobHash = CommonUtil.blobHash(content);
+    if (isAlreadyDelivered("FDR3", fdr3Container, blobName, blobMetadata, blobHash, context)) {
+      return;
+    }
+
+    // fail fast, without decompressing and parsing, when Event Hub is known to be down: the
+    // exception fails the invocation, so the blob is run again by the trigger retries and, once
+    // they are exhausted, moved to the poison queue
+    try {
+      CommonUtil.checkEventHubAvailability(eventHubClientFlowTx, eventHubClientReportedIUV);
+    } catch (CircuitBreakerOpenException e) {
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "%s [FDR3] Blob '%s/%s' not processed, left to the trigger retry",
+                      e.getMessage(), fdr3Container, blobName));
+      throw e;
+    }
+
+    // the FDR3 flows may be stored compressed or as plain JSON
+    boolean isValidGzipFile = CommonUtil.isGzip(content);
 
     context
         .getLogger()
         .fine(
             () ->
                 String.format(
-                    "[FDR3] Triggered for Blob container: %s, name: %s, size: %d bytes",
-                    fdr3Container, blobName, content.length));
+                    "[FDR3] Triggered at: %s for Blob container: %s, name: %s, size in bytes: %d",
+                    LocalDateTime.now()
+                        .format(DateTimeFormatter.ofPattern(CommonUtil.LOG_DATETIME_PATTERN)),
+                    fdr3Container,
+                    blobName,
+                    content.length));
+
+    DeliveryOptions deliveryOptions =
+        DeliveryOptions.builder()
+            .blobName(fdr3Container + "/" + blobName)
+            .sessionId(blobMetadata.get("sessionId"))
+            .build();
+
+    // The payments are chunked while they are read, then the flow is sent waiting for the
+    // confirmation
+    FlowEvents flowEvents;
+    try (InputStream decompressedStream =
+        isValidGzipFile ? CommonUtil.decompressGzip(content) : new ByteArrayInputStream(content)) {
+      flowEvents =
+          fdr3Source.read(
+              decompressedStream, blobMetadata, eventSink.chunkSizeBytes(deliveryOptions));
+    } catch (Exception e) {
+      // a blob that cannot be read or is not valid would fail the same way on every retry
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "[%s][FDR3] Error processing Blob '%s/%s': %s",
+                      ErrorCodes.FDR3_E1, fdr3Container, blobName, e.getMessage()));
+      return;
+    }
+
+    try {
+      if (fanOut.shouldSplit(flowEvents, content.length)) {
+        fanOut(
+            flowEvents,
+            fdr3Source,
+            fdr3Container,
+            blobName,
+            blobMetadata,
+            blobHash,
+            deliveryOptions,
+            workUnits,
+            context);
+      } else {
+        eventSink.deliver(flowEvents, blobMetadata, deliveryOptions, context);
+        CommonUtil.recordDelivery(
+            fdr3Container + "/" + blobName,
+            blobMetadata,
+            blobHash,
+            flowEvents.getContentSha256(),
+            flowEvents.getFlowId());
+      }
+
+      context
+          .getLogger()
+          .fine(
+              () ->
+                  String.format(
+                      "[FDR3] Execution Finished at: %s for Blob container: %s, name: %s, size in"
+                          + " bytes: %d",
+                      LocalDateTime.now()
+                          .format(DateTimeFormatter.ofPattern(CommonUtil.LOG_DATETIME_PATTERN)),
+                      fdr3Container,
+                      blobName,
+                      content.length));
+
+    } catch (IOException e) {
+      String errorMessage =
+          String.format(
+              "[%s][FDR3] Error delivering Blob '%s/%s': %s",
+              ErrorCodes.FDR3_E1, fdr3Container, blobName, e.getMessage());
+      context.getLogger().severe(() -> errorMessage);
+      // fails the invocation, so that the trigger retries resume the delivery from its checkpoint
+      throw new EventHubException(errorMessage, e);
+    }
+  }
+
+  /**
+   * Whether the upload was already delivered, recognized by its sessionId and the hash of the blob
+   * content, so that a duplicate trigger is skipped without decompressing or parsing it.
+   */
+  private static boolean isAlreadyDelivered(
+      String format,
+      String container,
+      String blobName,
+      Map<String, String> blobMetadata,
+      String blobHash,
+      ExecutionContext context) {
+    Optional<DeliveryRecord> previousDelivery = CommonUtil.findDelivery(blobMetadata, blobHash);
+    previousDelivery.ifPresent(
+        delivery ->
+            context
+                .getLogger()
+                .info(
+                    () ->
+                        String.format(
+                            "[%s] Skipping Blob container: %s, name: %s, flow ID %s already"
+                                + " delivered at %s",
+                            format,
+                            container,
+                            blobName,
+                            delivery.getFlowId(),
+                            Instant.ofEpochMilli(delivery.getDeliveredAt()))));
+    return previousDelivery.isPresent();
+  }
+
+  /**
+   * Coordinates the delivery of a flow too big for a single invocation: sends the FlowTx event,
+   * stores the chunks of the work units and emits the units to the queue. The flow is recorded as
+   * delivered by the worker of its last unit.
+   */
+  private void fanOut(
+      FlowEvents flowEvents,
+      FlowSource source,
+      String container,
+      String blobName,
+      Map<String, String> blobMetadata,
+      String blobHash,
+      DeliveryOptions deliveryOptions,
+      OutputBinding<List<String>> workUnits,
+      ExecutionContext context)
+      throws IOException {
+    eventSink.deliver(flowEvents.header(), blobMetadata, deliveryOptions, context);
+
+    List<WorkUnit> units =
+        fanOut.plan(
+            flowEvents,
+            WorkUnit.builder()
+                .container(container)
+                .blobName(blobName)
+                .sessionId(blobMetadata.get("sessionId"))
+                .contentHash(blobHash)
+                .source(source.toString())
+                .build());
+    fanOut.saveSlices(flowEvents, blobMetadata, units);
+    WorkUnitQueue queue =
+        workUnits == null ? getLocalWorkUnitQueue() : WorkUnitQueue.of(workUnits);
+    queue.submit(units, context);
 
     context
         .getLogger()
-        .fine(
+        .info(
             () ->
                 String.format(
-                    "[FDR3] Execution Finished at: %s for Blob container: %s, name: %s, size: %d"
-                        + " bytes",
-                    LocalDateTime.now()
-                        .format(DateTimeFormatter.ofPattern(CommonUtil.LOG_DATETIME_PATTERN)),
-                    fdr1Container,
+                    "Flow ID %s of Blob '%s/%s' split into %d work units: %d payments in %d chunks",
+                    flowEvents.getFlowId(),
+                    container,
                     blobName,
-                    content.length));
+                    units.size(),
+                    flowEvents.getPayments(),
+                    flowEvents.getReportedIUVChunks().size()));
+  }
+
+  private synchronized WorkUnitQueue getLocalWorkUnitQueue() {
+    if (localWorkUnitQueue == null) {
+      localWorkUnitQueue =
+          new LocalWorkUnitQueue(
+              new WorkUnitProcessor(
+                  eventSink, WorkUnitTracker.fromEnvironment(), fanOut.getSliceStore()),
+              Integer.parseInt(System.getenv().getOrDefault("FLOW_FANOUT_LOCAL_WORKERS", "2")),
+              // the maxDequeueCount of the queues in host.json
+              3);
+    }
+    return localWorkUnitQueue;
   }
 }
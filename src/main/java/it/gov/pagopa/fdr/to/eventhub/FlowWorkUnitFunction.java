@@ -0,0 +1,117 @@
+package it.gov.pagopa.fdr.to.eventhub;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.BindingName;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.QueueTrigger;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnit;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnitProcessor;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnitTracker;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventSink;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import it.gov.pagopa.fdr.to.eventhub.util.ErrorCodes;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Azure Functions with Azure Queue trigger for the work units of the flows split by the blob
+ * triggers. A unit that fails is left to the retries of the queue (maxDequeueCount in host.json),
+ * without affecting the other units of the flow. A unit failing its last attempt goes to the poison
+ * queue, and its flow is reported as incomplete.
+ */
+public class FlowWorkUnitFunction {
+
+  // shared by the invocations, like the clients of the blob triggers
+  private static WorkUnitProcessor sharedProcessor;
+
+  private final WorkUnitProcessor processor;
+  // the maxDequeueCount of the queues in host.json
+  private final int maxDequeueCount;
+
+  public FlowWorkUnitFunction() {
+    this(getSharedProcessor());
+  }
+
+  public FlowWorkUnitFunction(WorkUnitProcessor processor) {
+    this.processor = processor;
+    this.maxDequeueCount =
+        Integer.parseInt(System.getenv().getOrDefault("FLOW_WORK_UNIT_MAX_DEQUEUE_COUNT", "3"));
+  }
+
+  private static synchronized WorkUnitProcessor getSharedProcessor() {
+    if (sharedProcessor == null) {
+      EventHubProducerClient eventHubClientFlowTx =
+          CommonUtil.createEventHubClient(
+              System.getenv("EVENT_HUB_FLOWTX_CONNECTION_STRING"),
+              System.getenv("EVENT_HUB_FLOWTX_NAME"));
+      EventHubProducerClient eventHubClientReportedIUV =
+          CommonUtil.createEventHubClient(
+              System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
+              System.getenv("EVENT_HUB_REPORTEDIUV_NAME"));
+      CommonUtil.registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+      try {
+        sharedProcessor =
+            new WorkUnitProcessor(
+                EventSink.fromEnvironment(eventHubClientFlowTx, eventHubClientReportedIUV),
+                WorkUnitTracker.fromEnvironment());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return sharedProcessor;
+  }
+
+  @FunctionName("ProcessFlowWorkUnit")
+  public void processWorkUnit(
+      @QueueTrigger(
+              name = "FlowWorkUnitTrigger",
+              queueName = "%FLOW_WORK_UNIT_QUEUE%",
+              connection = "FDR_SA_CONNECTION_STRING")
+          String message,
+      @BindingName("DequeueCount") long dequeueCount,
+      final ExecutionContext context)
+      throws IOException {
+
+    WorkUnit unit;
+    try {
+      unit = WorkUnit.fromJson(message);
+    } catch (JsonProcessingException e) {
+      // a retry would fail the same way
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "[%s][FANOUT] Invalid work unit discarded: %s",
+                      ErrorCodes.COMMON_E4, e.getMessage()));
+      return;
+    }
+
+    try {
+      processor.process(unit, context);
+    } catch (IOException | RuntimeException e) {
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "[%s][FANOUT] Error delivering unit %d of %d of flow ID %s, Blob '%s': %s",
+                      ErrorCodes.COMMON_E4,
+                      unit.getUnitIndex() + 1,
+                      unit.getUnitCount(),
+                      unit.getFlowId(),
+                      unit.flowKey(),
+                      e.getMessage()));
+      if (dequeueCount >= maxDequeueCount) {
+        WorkUnitProcessor.logIncompleteFlow(
+            unit,
+            String.format("moved to the poison queue after %d attempts", dequeueCount),
+            context);
+      }
+      // the message becomes visible again and the unit is retried alone
+      throw e;
+    }
+  }
+}
@@ -11,15 +11,14 @@ import com.microsoft.azure.functions.HttpStatus;
 import com.microsoft.azure.functions.annotation.AuthorizationLevel;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.HttpTrigger;
-import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
-import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryService;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryProgress;
 import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Objects;
 import java.util.Optional;
 import lombok.Getter;
 
@@ -34,6 +33,7 @@ public class HttpBlobRecoveryFunction {
 
   @Getter private final EventHubProducerClient eventHubClientFlowTx;
   @Getter private final EventHubProducerClient eventHubClientReportedIUV;
+  private final BlobRecoveryService recoveryService;
 
   public HttpBlobRecoveryFunction() {
     this.eventHubClientFlowTx =
@@ -45,6 +45,9 @@ public class HttpBlobRecoveryFunction {
         CommonUtil.createEventHubClient(
             System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
             System.getenv("EVENT_HUB_REPORTEDIUV_NAME"));
+
+    CommonUtil.registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+    this.recoveryService = new BlobRecoveryService(eventHubClientFlowTx, eventHubClientReportedIUV);
   }
 
   public HttpBlobRecoveryFunction(
@@ -52,6 +55,16 @@ public class HttpBlobRecoveryFunction {
       EventHubProducerClient eventHubClientReportedIUV) {
     this.eventHubClientFlowTx = eventHubClientFlowTx;
     this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+    this.recoveryService = new BlobRecoveryService(eventHubClientFlowTx, eventHubClientReportedIUV);
+  }
+
+  public HttpBlobRecoveryFunction(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV,
+      BlobRecoveryService recoveryService) {
+    this.eventHubClientFlowTx = eventHubClientFlowTx;
+    this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+    this.recoveryService = recoveryService;
   }
 
   @FunctionName("HTTPBlobRecovery")
@@ -91,55 +104,32 @@ public class HttpBlobRecoveryFunction {
                       container,
                       fileName));
 
-      BlobFileData fileData =
-          CommonUtil.getBlobFile("FDR_SA_CONNECTION_STRING", container, fileName, context);
-
-      if (Objects.isNull(fileData)) {
-        return notFound(
-            request, String.format("File %s not found in container %s", fileName, container));
+      RecoveryOptions options = RecoveryOptions.fromJson(jsonNode);
+
+      BlobRecoveryResult result =
+          recoveryService.recover(container, fileName, context, RecoveryProgress.NONE, options);
+
+      switch (result.getOutcome()) {
+        case SENT:
+          return ok(request, result.getMessage());
+        case VALIDATED, SKIPPED:
+          return request
+              .createResponseBuilder(HttpStatus.OK)
+              .header(CONTENT_TYPE, APPLICATION_JSON)
+              .body(objectMapper.writeValueAsString(result))
+              .build();
+        case NOT_FOUND:
+          return notFound(request, result.getMessage());
+        case NOT_PROCESSABLE, INVALID:
+          return unprocessableEntity(request, result.getMessage());
+        case NOT_DELIVERED:
+          return serviceUnavailable(request, result.getMessage());
+        default:
+          return serverError(request, result.getMessage());
       }
 
-      if (!CommonUtil.validateBlobMetadata(fileData.getMetadata())) {
-        return unprocessableEntity(
-            request,
-            String.format(
-                "The file %s in container %s is missing required metadata", fileName, container));
-      }
-
-      boolean isValidGzipFile = CommonUtil.isGzip(fileData.getFileContent());
-
-      try (InputStream decompressedStream =
-          isValidGzipFile
-              ? CommonUtil.decompressGzip(fileData.getFileContent())
-              : new ByteArrayInputStream(fileData.getFileContent())) {
-
-        FlussoRendicontazione flusso = CommonUtil.parseXml(decompressedStream);
-        flusso.setMetadata(fileData.getMetadata());
-
-        boolean eventBatchSent =
-            CommonUtil.processXmlBlobAndSendToEventHub(
-                eventHubClientFlowTx, eventHubClientReportedIUV, flusso, context);
-
-        if (!eventBatchSent) {
-          return serviceUnavailable(
-              request,
-              String.format(
-                  "EventHub failed to confirm batch processing for flow ID %s [file %s, container"
-                      + " %s]",
-                  flusso.getIdentificativoFlusso(), fileName, container));
-        }
-      }
-
-      return ok(
-          request,
-          String.format(
-              "Processed recovery request for file: %s in container: %s", fileName, container));
-
     } catch (IOException e) {
       return badRequest(request, "Invalid JSON format");
-    } catch (Exception e) {
-      context.getLogger().severe("[HTTP FDR] Unexpected error: " + e.getMessage());
-      return serverError(request, "Internal Server Error");
     }
   }
 
@@ -172,7 +162,7 @@ public class HttpBlobRecoveryFunction {
     return request
         .createResponseBuilder(status)
         .header(CONTENT_TYPE, APPLICATION_JSON)
-        .body("{\"message\": \"" + message + "\"}")
+        .body(objectMapper.createObjectNode().put("message", message).toString())
         .build();
   }
 }
@@ -0,0 +1,346 @@
+package it.gov.pagopa.fdr.to.eventhub;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult.Outcome;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryService;
+import it.gov.pagopa.fdr.to.eventhub.recovery.ContainerScanner;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryProgress;
+import it.gov.pagopa.fdr.to.eventhub.recovery.ScanRequest;
+import it.gov.pagopa.fdr.to.eventhub.recovery.ScanResult;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.Getter;
+
+/**
+ * Azure Functions with Azure Http trigger that recovers many blobs in one call. The blobs are given
+ * as a list of container/fileName pairs, or as a container scan filtered by name prefix,
+ * insertedTimestamp metadata and last-modified date, and are processed with bounded parallelism.
+ * With {@code dryRun} the blobs are only parsed and chunked, nothing is sent; with {@code force}
+ * the flows already delivered are sent again. The response is NDJSON: one line per blob in
+ * completion order, followed by a summary line with the aggregate counts and, for a partial scan,
+ * the continuation token to resume from.
+ */
+public class HttpBulkBlobRecoveryFunction {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final String CONTENT_TYPE = "Content-Type";
+  private static final String APPLICATION_JSON = "application/json";
+  private static final String APPLICATION_NDJSON = "application/x-ndjson";
+  private static final String JSON_BLOBS = "blobs";
+  private static final String JSON_FILENAME = "fileName";
+  private static final String JSON_CONTAINER = "container";
+  private static final String JSON_PREFIX = "prefix";
+  private static final String JSON_PARALLELISM = "parallelism";
+  private static final String JSON_INSERTED_FROM = "insertedFrom";
+  private static final String JSON_INSERTED_TO = "insertedTo";
+  private static final String JSON_MODIFIED_FROM = "modifiedFrom";
+  private static final String JSON_MODIFIED_TO = "modifiedTo";
+  private static final String JSON_CONTINUATION_TOKEN = "continuationToken";
+  private static final String JSON_MAX_BLOBS = "maxBlobs";
+
+  private final int defaultParallelism =
+      Integer.parseInt(System.getenv().getOrDefault("BULK_RECOVERY_PARALLELISM", "4"));
+  private final int maxParallelism =
+      Integer.parseInt(System.getenv().getOrDefault("BULK_RECOVERY_MAX_PARALLELISM", "16"));
+  private final int maxBlobs =
+      Integer.parseInt(System.getenv().getOrDefault("BULK_RECOVERY_MAX_BLOBS", "5000"));
+  private final int scanPageSize =
+      Integer.parseInt(System.getenv().getOrDefault("BULK_RECOVERY_SCAN_PAGE_SIZE", "500"));
+
+  @Getter private final EventHubProducerClient eventHubClientFlowTx;
+  @Getter private final EventHubProducerClient eventHubClientReportedIUV;
+  private final BlobRecoveryService recoveryService;
+  private final ContainerScanner containerScanner;
+
+  public HttpBulkBlobRecoveryFunction() {
+    this.eventHubClientFlowTx =
+        CommonUtil.createEventHubClient(
+            System.getenv("EVENT_HUB_FLOWTX_CONNECTION_STRING"),
+            System.getenv("EVENT_HUB_FLOWTX_NAME"));
+
+    this.eventHubClientReportedIUV =
+        CommonUtil.createEventHubClient(
+            System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
+            System.getenv("EVENT_HUB_REPORTEDIUV_NAME"));
+
+    CommonUtil.registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+    this.recoveryService = new BlobRecoveryService(eventHubClientFlowTx, eventHubClientReportedIUV);
+    this.containerScanner = new ContainerScanner(recoveryService);
+  }
+
+  public HttpBulkBlobRecoveryFunction(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV,
+      BlobRecoveryService recoveryService,
+      ContainerScanner containerScanner) {
+    this.eventHubClientFlowTx = eventHubClientFlowTx;
+    this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+    this.recoveryService = recoveryService;
+    this.containerScanner = containerScanner;
+  }
+
+  @FunctionName("HTTPBulkBlobRecovery")
+  public HttpResponseMessage run(
+      @HttpTrigger(
+              name = "HTTPBulkBlobRecoveryTrigger",
+              methods = {HttpMethod.POST},
+              route = "notify/fdr/bulk",
+              authLevel = AuthorizationLevel.ANONYMOUS)
+          HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext context) {
+
+    // Check if body is present
+    Optional<String> requestBody = request.getBody();
+    if (!requestBody.isPresent()) {
+      return badRequest(request, "Missing request body");
+    }
+
+    List<Map.Entry<String, String>> blobs = null;
+    ScanRequest scanRequest = null;
+    int parallelism;
+    RecoveryOptions options;
+    try {
+      JsonNode jsonNode = objectMapper.readTree(requestBody.get());
+      parallelism =
+          Math.max(
+              1,
+              Math.min(
+                  maxParallelism,
+                  Optional.ofNullable(jsonNode.get(JSON_PARALLELISM))
+                      .map(JsonNode::asInt)
+                      .orElse(defaultParallelism)));
+      options = RecoveryOptions.fromJson(jsonNode);
+      JsonNode blobsNode = jsonNode.get(JSON_BLOBS);
+      if (blobsNode != null && blobsNode.isArray()) {
+        blobs = parseBlobs(blobsNode);
+      } else {
+        scanRequest = parseScanRequest(jsonNode, parallelism, options);
+      }
+    } catch (IOException e) {
+      return badRequest(request, "Invalid JSON format");
+    } catch (IllegalArgumentException | DateTimeException e) {
+      return badRequest(request, e.getMessage());
+    }
+
+    if (blobs != null && blobs.size() > maxBlobs) {
+      return badRequest(
+          request, String.format("Too many blobs: %d, the maximum is %d", blobs.size(), maxBlobs));
+    }
+
+    context
+        .getLogger()
+        .info(
+            () ->
+                String.format(
+                    "[HTTP FDR] Bulk recovery triggered at: %s, parallelism %d, %s",
+                    LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                    parallelism,
+                    options));
+
+    ResultCollector collector = new ResultCollector(context);
+    ScanResult scanResult = null;
+    try {
+      if (blobs != null) {
+        recoverAll(blobs, parallelism, options, collector, context);
+      } else {
+        scanResult = containerScanner.scan(scanRequest, context, collector::accept);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return serverError(request, "Bulk recovery interrupted");
+    } catch (Exception e) {
+      context.getLogger().severe("[HTTP FDR] Unexpected error: " + e.getMessage());
+      return serverError(request, "Internal Server Error");
+    }
+
+    return request
+        .createResponseBuilder(HttpStatus.OK)
+        .header(CONTENT_TYPE, APPLICATION_NDJSON)
+        .body(collector.toBody(scanResult))
+        .build();
+  }
+
+  private void recoverAll(
+      List<Map.Entry<String, String>> blobs,
+      int parallelism,
+      RecoveryOptions options,
+      ResultCollector collector,
+      ExecutionContext context)
+      throws InterruptedException {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, blobs.size())));
+    try {
+      for (Map.Entry<String, String> blob : blobs) {
+        executor.execute(
+            () ->
+                collector.accept(
+                    recoveryService.recover(
+                        blob.getKey(), blob.getValue(), context, RecoveryProgress.NONE, options)));
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static List<Map.Entry<String, String>> parseBlobs(JsonNode blobsNode) {
+    List<Map.Entry<String, String>> blobs = new ArrayList<>();
+    for (JsonNode blobNode : blobsNode) {
+      String fileName = text(blobNode, JSON_FILENAME);
+      String container = text(blobNode, JSON_CONTAINER);
+      if (fileName == null || container == null) {
+        throw new IllegalArgumentException("Missing required fields in blobs: fileName, container");
+      }
+      blobs.add(new SimpleImmutableEntry<>(container, fileName));
+    }
+    return blobs;
+  }
+
+  private ScanRequest parseScanRequest(
+      JsonNode jsonNode, int parallelism, RecoveryOptions options) {
+    String container = text(jsonNode, JSON_CONTAINER);
+    String prefix = text(jsonNode, JSON_PREFIX);
+    if (container == null || prefix == null) {
+      throw new IllegalArgumentException("Missing required fields: blobs or container, prefix");
+    }
+    int requestedMaxBlobs =
+        Optional.ofNullable(jsonNode.get(JSON_MAX_BLOBS)).map(JsonNode::asInt).orElse(maxBlobs);
+    return ScanRequest.builder()
+        .container(container)
+        .prefix(prefix)
+        .insertedFrom(parse(jsonNode, JSON_INSERTED_FROM, LocalDateTime::parse))
+        .insertedTo(parse(jsonNode, JSON_INSERTED_TO, LocalDateTime::parse))
+        .modifiedFrom(parse(jsonNode, JSON_MODIFIED_FROM, OffsetDateTime::parse))
+        .modifiedTo(parse(jsonNode, JSON_MODIFIED_TO, OffsetDateTime::parse))
+        .continuationToken(text(jsonNode, JSON_CONTINUATION_TOKEN))
+        .pageSize(scanPageSize)
+        .parallelism(parallelism)
+        .options(options)
+        .maxBlobs(Math.max(1, Math.min(requestedMaxBlobs, maxBlobs)))
+        .build();
+  }
+
+  private static String text(JsonNode jsonNode, String field) {
+    return Optional.ofNullable(jsonNode.get(field)).map(JsonNode::asText).orElse(null);
+  }
+
+  private static <T> T parse(JsonNode jsonNode, String field, Function<String, T> parser) {
+    return Optional.ofNullable(text(jsonNode, field)).map(parser).orElse(null);
+  }
+
+  private HttpResponseMessage badRequest(HttpRequestMessage<?> request, String message) {
+    return response(request, HttpStatus.BAD_REQUEST, message);
+  }
+
+  private HttpResponseMessage serverError(HttpRequestMessage<?> request, String message) {
+    return response(request, HttpStatus.INTERNAL_SERVER_ERROR, message);
+  }
+
+  private HttpResponseMessage response(
+      HttpRequestMessage<?> request, HttpStatus status, String message) {
+    return request
+        .createResponseBuilder(status)
+        .header(CONTENT_TYPE, APPLICATION_JSON)
+        .body(objectMapper.createObjectNode().put("message", message).toString())
+        .build();
+  }
+
+  /** Writes one NDJSON line per result as they arrive from the workers and sums the counts. */
+  private static class ResultCollector {
+
+    private final ExecutionContext context;
+    private final StringBuilder body = new StringBuilder();
+    private final long start = System.nanoTime();
+    private long blobs;
+    private long sent;
+    private long validated;
+    private long skipped;
+    private long failed;
+    private long events;
+    private long bytes;
+    private long payments;
+    private long chunks;
+    private long serializedBytes;
+
+    ResultCollector(ExecutionContext context) {
+      this.context = context;
+    }
+
+    synchronized void accept(BlobRecoveryResult result) {
+      blobs++;
+      if (result.getOutcome() == Outcome.SENT) {
+        sent++;
+      } else if (result.getOutcome() == Outcome.VALIDATED) {
+        validated++;
+      } else if (result.getOutcome() == Outcome.SKIPPED) {
+        skipped++;
+      } else {
+        failed++;
+      }
+      events += result.getEvents();
+      bytes += result.getBytes();
+      payments += result.getPayments();
+      chunks += result.getChunks();
+      serializedBytes += result.getSerializedBytes();
+      try {
+        String line = objectMapper.writeValueAsString(result);
+        context.getLogger().info(() -> "[HTTP FDR] Bulk recovery progress: " + line);
+        body.append(line).append('\n');
+      } catch (JsonProcessingException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    synchronized String toBody(ScanResult scanResult) {
+      ObjectNode summary = objectMapper.createObjectNode();
+      summary.put("blobs", blobs);
+      summary.put("sent", sent);
+      summary.put("validated", validated);
+      summary.put("skipped", skipped);
+      summary.put("failed", failed);
+      summary.put("events", events);
+      summary.put("bytes", bytes);
+      summary.put("payments", payments);
+      summary.put("chunks", chunks);
+      summary.put("serializedBytes", serializedBytes);
+      summary.put("elapsedMillis", (System.nanoTime() - start) / 1_000_000);
+      if (scanResult != null) {
+        summary.put("unparsableTimestamps", scanResult.getUnparsableTimestamps());
+        if (scanResult.getContinuationToken() != null) {
+          summary.put(JSON_CONTINUATION_TOKEN, scanResult.getContinuationToken());
+        }
+      }
+      ObjectNode summaryLine = objectMapper.createObjectNode();
+      summaryLine.set("summary", summary);
+      return body.toString() + summaryLine + '\n';
+    }
+  }
+}
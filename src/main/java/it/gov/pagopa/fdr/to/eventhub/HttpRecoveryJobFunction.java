@@ -0,0 +1,157 @@
+package it.gov.pagopa.fdr.to.eventhub;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.BindingName;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryService;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryJob;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryJobManager;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Azure Functions with Azure Http trigger for the asynchronous recovery of a blob: the submit call
+ * returns a job ID immediately and the status call reports the phase, the chunks sent and the
+ * errors of the job.
+ */
+public class HttpRecoveryJobFunction {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final String CONTENT_TYPE = "Content-Type";
+  private static final String APPLICATION_JSON = "application/json";
+  private static final String JSON_FILENAME = "fileName";
+  private static final String JSON_CONTAINER = "container";
+
+  // shared by the submit and status functions of this instance: the job store is in memory, so a
+  // status call reaching another instance does not find the job
+  private static RecoveryJobManager sharedJobManager;
+
+  private final RecoveryJobManager jobManager;
+
+  public HttpRecoveryJobFunction() {
+    this.jobManager = getSharedJobManager();
+  }
+
+  public HttpRecoveryJobFunction(RecoveryJobManager jobManager) {
+    this.jobManager = jobManager;
+  }
+
+  private static synchronized RecoveryJobManager getSharedJobManager() {
+    if (sharedJobManager == null) {
+      EventHubProducerClient eventHubClientFlowTx =
+          CommonUtil.createEventHubClient(
+              System.getenv("EVENT_HUB_FLOWTX_CONNECTION_STRING"),
+              System.getenv("EVENT_HUB_FLOWTX_NAME"));
+      EventHubProducerClient eventHubClientReportedIUV =
+          CommonUtil.createEventHubClient(
+              System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
+              System.getenv("EVENT_HUB_REPORTEDIUV_NAME"));
+      CommonUtil.registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+      sharedJobManager =
+          RecoveryJobManager.fromEnvironment(
+              new BlobRecoveryService(eventHubClientFlowTx, eventHubClientReportedIUV));
+    }
+    return sharedJobManager;
+  }
+
+  @FunctionName("HTTPRecoveryJobSubmit")
+  public HttpResponseMessage submit(
+      @HttpTrigger(
+              name = "HTTPRecoveryJobSubmitTrigger",
+              methods = {HttpMethod.POST},
+              route = "notify/fdr/jobs",
+              authLevel = AuthorizationLevel.ANONYMOUS)
+          HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext context) {
+
+    // Check if body is present
+    Optional<String> requestBody = request.getBody();
+    if (!requestBody.isPresent()) {
+      return message(request, HttpStatus.BAD_REQUEST, "Missing request body");
+    }
+
+    try {
+      JsonNode jsonNode = objectMapper.readTree(requestBody.get());
+      String fileName =
+          Optional.ofNullable(jsonNode.get(JSON_FILENAME)).map(JsonNode::asText).orElse(null);
+      String container =
+          Optional.ofNullable(jsonNode.get(JSON_CONTAINER)).map(JsonNode::asText).orElse(null);
+
+      if (fileName == null || container == null) {
+        return message(
+            request, HttpStatus.BAD_REQUEST, "Missing required fields: fileName, container");
+      }
+
+      RecoveryOptions options = RecoveryOptions.fromJson(jsonNode);
+
+      RecoveryJob job = jobManager.submit(container, fileName, options);
+      context
+          .getLogger()
+          .info(
+              () ->
+                  String.format(
+                      "[HTTP FDR] Recovery job %s submitted for Blob container: %s, name: %s",
+                      job.getJobId(), container, fileName));
+      return job(request, HttpStatus.ACCEPTED, job);
+
+    } catch (RejectedExecutionException e) {
+      return message(request, HttpStatus.SERVICE_UNAVAILABLE, "Too many recovery jobs queued");
+    } catch (IOException e) {
+      return message(request, HttpStatus.BAD_REQUEST, "Invalid JSON format");
+    }
+  }
+
+  @FunctionName("HTTPRecoveryJobStatus")
+  public HttpResponseMessage status(
+      @HttpTrigger(
+              name = "HTTPRecoveryJobStatusTrigger",
+              methods = {HttpMethod.GET},
+              route = "notify/fdr/jobs/{jobId}",
+              authLevel = AuthorizationLevel.ANONYMOUS)
+          HttpRequestMessage<Optional<String>> request,
+      @BindingName("jobId") String jobId,
+      final ExecutionContext context) {
+
+    Optional<RecoveryJob> job = jobManager.find(jobId);
+    if (job.isEmpty()) {
+      return message(request, HttpStatus.NOT_FOUND, "Recovery job " + jobId + " not found");
+    }
+    try {
+      return job(request, HttpStatus.OK, job.get());
+    } catch (JsonProcessingException e) {
+      context.getLogger().severe("[HTTP FDR] Unexpected error: " + e.getMessage());
+      return message(request, HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error");
+    }
+  }
+
+  private HttpResponseMessage job(HttpRequestMessage<?> request, HttpStatus status, RecoveryJob job)
+      throws JsonProcessingException {
+    return request
+        .createResponseBuilder(status)
+        .header(CONTENT_TYPE, APPLICATION_JSON)
+        .body(objectMapper.writeValueAsString(job))
+        .build();
+  }
+
+  private HttpResponseMessage message(
+      HttpRequestMessage<?> request, HttpStatus status, String message) {
+    return request
+        .createResponseBuilder(status)
+        .header(CONTENT_TYPE, APPLICATION_JSON)
+        .body(objectMapper.createObjectNode().put("message", message).toString())
+        .build();
+  }
+}
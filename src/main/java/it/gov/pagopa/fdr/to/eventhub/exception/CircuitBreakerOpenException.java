@@ -0,0 +1,10 @@
+package it.gov.pagopa.fdr.to.eventhub.exception;
+
+public class CircuitBreakerOpenException extends EventHubException {
+
+  private static final long serialVersionUID = -3407385771640164373L;
+
+  public CircuitBreakerOpenException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,16 @@
+package it.gov.pagopa.fdr.to.eventhub.exception;
+
+import java.io.IOException;
+
+public class JsonParsingException extends IOException {
+  /** */
+  private static final long serialVersionUID = -2215337608614047630L;
+
+  public JsonParsingException(String message) {
+    super(message);
+  }
+
+  public JsonParsingException(String message, Exception cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,57 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobStorageException;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Keeps each slice in a blob of the container of the {@link BlobWorkUnitTracker}, next to the blob
+ * tracking its flow, so that a unit is delivered by any instance. The blob of a slice is deleted
+ * once its unit is delivered; those of the units given up are left to the lifecycle management
+ * rule of the container.
+ */
+public class BlobWorkUnitSliceStore implements WorkUnitSliceStore {
+
+  private static final int NOT_FOUND = 404;
+
+  private final BlobContainerClient containerClient;
+
+  public BlobWorkUnitSliceStore(BlobContainerClient containerClient) {
+    this.containerClient = containerClient;
+  }
+
+  @Override
+  public void save(WorkUnit unit, WorkUnitSlice slice) throws IOException {
+    // a coordinator retried after a failure writes the same slices again
+    blobClient(unit).upload(BinaryData.fromBytes(slice.toBytes()), true);
+  }
+
+  @Override
+  public Optional<WorkUnitSlice> load(WorkUnit unit) throws IOException {
+    byte[] content;
+    try {
+      content = blobClient(unit).downloadContent().toBytes();
+    } catch (BlobStorageException e) {
+      if (e.getStatusCode() == NOT_FOUND) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+    return Optional.of(WorkUnitSlice.fromBytes(content));
+  }
+
+  @Override
+  public void delete(WorkUnit unit) {
+    blobClient(unit).deleteIfExists();
+  }
+
+  private BlobClient blobClient(WorkUnit unit) {
+    return containerClient.getBlobClient(
+        String.format(
+            "%s/%s-%s.unit-%d",
+            unit.flowKey(), unit.getSessionId(), unit.getContentHash(), unit.getUnitIndex()));
+  }
+}
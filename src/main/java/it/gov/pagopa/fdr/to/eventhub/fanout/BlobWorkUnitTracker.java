@@ -0,0 +1,109 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobDownloadContentResponse;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import java.util.BitSet;
+import java.util.Optional;
+
+/**
+ * Keeps the delivered units of each flow in a blob of a storage container, so that the units of a
+ * flow can be delivered by any instance. The blob holds the bit set of the delivered units and is
+ * updated with a compare-and-swap on its ETag: when another unit of the flow wrote it in the
+ * meantime the write is refused and the unit is set again on the new content.
+ *
+ * <p>The blob of a complete flow is kept, so that a unit received again is recognized as delivered:
+ * the container is meant to be emptied by a lifecycle management rule.
+ */
+public class BlobWorkUnitTracker implements WorkUnitTracker {
+
+  // concurrent updates of the same flow after which the unit is left to the retries
+  private static final int MAX_ATTEMPTS = 20;
+  private static final int PRECONDITION_FAILED = 412;
+  private static final int CONFLICT = 409;
+  private static final int NOT_FOUND = 404;
+
+  private final BlobContainerClient containerClient;
+
+  public BlobWorkUnitTracker(BlobContainerClient containerClient) {
+    this.containerClient = containerClient;
+  }
+
+  @Override
+  public boolean isComplete(WorkUnit unit) {
+    return read(blobClient(unit))
+        .map(units -> units.delivered.get(unit.getUnitIndex()))
+        .orElse(false);
+  }
+
+  @Override
+  public boolean complete(WorkUnit unit) {
+    BlobClient blobClient = blobClient(unit);
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      Optional<TrackedUnits> current = read(blobClient);
+      BitSet delivered = current.map(units -> units.delivered).orElseGet(BitSet::new);
+      if (delivered.get(unit.getUnitIndex())) {
+        // completed by another delivery of the same unit
+        return false;
+      }
+      delivered.set(unit.getUnitIndex());
+      BlobRequestConditions conditions =
+          current.isPresent()
+              ? new BlobRequestConditions().setIfMatch(current.get().eTag)
+              : new BlobRequestConditions().setIfNoneMatch("*");
+      try {
+        blobClient.uploadWithResponse(
+            new BlobParallelUploadOptions(BinaryData.fromBytes(delivered.toByteArray()))
+                .setRequestConditions(conditions),
+            null,
+            Context.NONE);
+        return delivered.cardinality() == unit.getUnitCount();
+      } catch (BlobStorageException e) {
+        if (e.getStatusCode() != PRECONDITION_FAILED && e.getStatusCode() != CONFLICT) {
+          throw e;
+        }
+        // another unit of the flow was recorded in the meantime
+      }
+    }
+    throw new IllegalStateException(
+        String.format(
+            "Unit %d of flow ID %s not recorded after %d concurrent updates",
+            unit.getUnitIndex() + 1, unit.getFlowId(), MAX_ATTEMPTS));
+  }
+
+  private BlobClient blobClient(WorkUnit unit) {
+    return containerClient.getBlobClient(
+        unit.flowKey() + "/" + unit.getSessionId() + "-" + unit.getContentHash());
+  }
+
+  private static Optional<TrackedUnits> read(BlobClient blobClient) {
+    try {
+      BlobDownloadContentResponse response =
+          blobClient.downloadContentWithResponse(null, null, null, Context.NONE);
+      return Optional.of(
+          new TrackedUnits(
+              BitSet.valueOf(response.getValue().toBytes()),
+              response.getDeserializedHeaders().getETag()));
+    } catch (BlobStorageException e) {
+      if (e.getStatusCode() == NOT_FOUND) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  private static final class TrackedUnits {
+    private final BitSet delivered;
+    private final String eTag;
+
+    private TrackedUnits(BitSet delivered, String eTag) {
+      this.delivered = delivered;
+      this.eTag = eTag;
+    }
+  }
+}
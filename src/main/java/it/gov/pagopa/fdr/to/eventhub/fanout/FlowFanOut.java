@@ -0,0 +1,113 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Decides when a flow is too big for a single invocation and splits it into {@link WorkUnit}s of
+ * about {@code unitPayments} payments each. The units are cut at chunk boundaries, so that they
+ * deliver exactly the chunks, with the same indexes, of a delivery of the whole flow.
+ *
+ * <p>The blob is read only by the coordinator: the chunk boundaries depend on the size of every
+ * payment before them, so it stores the serialized chunks of each unit in the {@link
+ * WorkUnitSliceStore}, from which the unit delivers them.
+ */
+@Value
+@Builder
+public class FlowFanOut {
+
+  private static final Logger logger = Logger.getLogger(FlowFanOut.class.getName());
+
+  public static final FlowFanOut DISABLED = FlowFanOut.builder().enabled(false).build();
+
+  boolean enabled;
+  // a flow is split when it has more payments, or its blob more bytes, than these
+  @Builder.Default int maxPayments = 50_000;
+  @Builder.Default long maxBytes = 50L * 1024 * 1024;
+  @Builder.Default int unitPayments = 20_000;
+  @Builder.Default WorkUnitSliceStore sliceStore = new InMemoryWorkUnitSliceStore();
+
+  /**
+   * The fan-out configured by FLOW_FANOUT_ENABLED (false by default), FLOW_FANOUT_MAX_PAYMENTS,
+   * FLOW_FANOUT_MAX_BYTES and FLOW_FANOUT_UNIT_PAYMENTS. The fan-out stays disabled unless
+   * FLOW_WORK_UNIT_TRACKER selects a shared tracker.
+   */
+  public static FlowFanOut fromEnvironment() {
+    boolean enabled =
+        Boolean.parseBoolean(System.getenv().getOrDefault("FLOW_FANOUT_ENABLED", "false"));
+    if (enabled && !WorkUnitTracker.isShared()) {
+      // the units are consumed by any instance: with a tracker per instance no flow would complete
+      logger.severe(
+          "FLOW_FANOUT_ENABLED needs a work unit tracker shared by the instances"
+              + " (FLOW_WORK_UNIT_TRACKER=blob), the flows are not split");
+      enabled = false;
+    }
+    return FlowFanOut.builder()
+        .enabled(enabled)
+        .sliceStore(
+            enabled ? WorkUnitSliceStore.fromEnvironment() : new InMemoryWorkUnitSliceStore())
+        .maxPayments(
+            Integer.parseInt(System.getenv().getOrDefault("FLOW_FANOUT_MAX_PAYMENTS", "50000")))
+        .maxBytes(Long.parseLong(System.getenv().getOrDefault("FLOW_FANOUT_MAX_BYTES", "52428800")))
+        .unitPayments(
+            Integer.parseInt(System.getenv().getOrDefault("FLOW_FANOUT_UNIT_PAYMENTS", "20000")))
+        .build();
+  }
+
+  public boolean shouldSplit(FlowEvents flowEvents, long blobBytes) {
+    return enabled
+        && flowEvents.getReportedIUVChunks().size() > 1
+        && (flowEvents.getPayments() > maxPayments || blobBytes > maxBytes);
+  }
+
+  /**
+   * Splits the chunks of the flow into units, each closed at the first chunk boundary after {@code
+   * unitPayments} payments. The blob identity of the units is taken from the template.
+   */
+  public List<WorkUnit> plan(FlowEvents flowEvents, WorkUnit template) {
+    List<int[]> ranges = new ArrayList<>();
+    int chunks = flowEvents.getReportedIUVChunks().size();
+    int firstChunk = 0;
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      if (chunk == chunks - 1
+          || flowEvents.firstPayment(chunk + 1) - flowEvents.firstPayment(firstChunk)
+              >= unitPayments) {
+        ranges.add(new int[] {firstChunk, chunk + 1});
+        firstChunk = chunk + 1;
+      }
+    }
+
+    List<WorkUnit> units = new ArrayList<>(ranges.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      int[] range = ranges.get(i);
+      units.add(
+          template.toBuilder()
+              .flowId(flowEvents.getFlowId())
+              .chunkSizeBytes(flowEvents.getChunkSizeBytes())
+              .unitIndex(i)
+              .unitCount(ranges.size())
+              .firstChunk(range[0])
+              .chunkCount(range[1] - range[0])
+              .firstPayment(flowEvents.firstPayment(range[0]))
+              .paymentCount(flowEvents.firstPayment(range[1]) - flowEvents.firstPayment(range[0]))
+              .build());
+    }
+    return units;
+  }
+
+  /** Stores the chunks of each unit, with the blob metadata they are sent with. */
+  public void saveSlices(FlowEvents flowEvents, Map<String, String> metadata, List<WorkUnit> units)
+      throws IOException {
+    for (WorkUnit unit : units) {
+      sliceStore.save(
+          unit,
+          WorkUnitSlice.of(flowEvents.slice(unit.getFirstChunk(), unit.getChunkCount()), metadata));
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Keeps the slices in memory, for units all processed by the instance that split the flow. */
+public class InMemoryWorkUnitSliceStore implements WorkUnitSliceStore {
+
+  private final Map<String, WorkUnitSlice> slices = new ConcurrentHashMap<>();
+
+  @Override
+  public void save(WorkUnit unit, WorkUnitSlice slice) {
+    slices.put(key(unit), slice);
+  }
+
+  @Override
+  public Optional<WorkUnitSlice> load(WorkUnit unit) {
+    return Optional.ofNullable(slices.get(key(unit)));
+  }
+
+  @Override
+  public void delete(WorkUnit unit) {
+    slices.remove(key(unit));
+  }
+
+  private static String key(WorkUnit unit) {
+    return unit.flowKey()
+        + "|"
+        + unit.getSessionId()
+        + "|"
+        + unit.getContentHash()
+        + "|"
+        + unit.getUnitIndex();
+  }
+}
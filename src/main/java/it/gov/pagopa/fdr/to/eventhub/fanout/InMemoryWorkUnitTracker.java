@@ -0,0 +1,45 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the delivered units of each flow in a bit set. A flow is forgotten once all its units are
+ * delivered: a unit received again after that is skipped by the delivery index.
+ */
+public class InMemoryWorkUnitTracker implements WorkUnitTracker {
+
+  private final Map<String, BitSet> deliveredUnits = new ConcurrentHashMap<>();
+
+  @Override
+  public boolean isComplete(WorkUnit unit) {
+    BitSet delivered = deliveredUnits.get(key(unit));
+    if (delivered == null) {
+      return false;
+    }
+    synchronized (delivered) {
+      return delivered.get(unit.getUnitIndex());
+    }
+  }
+
+  @Override
+  public boolean complete(WorkUnit unit) {
+    boolean[] last = new boolean[1];
+    deliveredUnits.compute(
+        key(unit),
+        (key, delivered) -> {
+          BitSet units = delivered == null ? new BitSet(unit.getUnitCount()) : delivered;
+          synchronized (units) {
+            units.set(unit.getUnitIndex());
+            last[0] = units.cardinality() == unit.getUnitCount();
+          }
+          return last[0] ? null : units;
+        });
+    return last[0];
+  }
+
+  private static String key(WorkUnit unit) {
+    return unit.flowKey() + "|" + unit.getSessionId() + "|" + unit.getContentHash();
+  }
+}
@@ -0,0 +1,107 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * In-process stand-in for the work unit queue: the units run on a pool of workers and a failed unit
+ * is retried alone, up to {@code maxDequeueCount} attempts like a storage queue message, then it is
+ * kept aside as poison.
+ */
+public class LocalWorkUnitQueue implements WorkUnitQueue, Closeable {
+
+  private final WorkUnitProcessor processor;
+  private final int maxDequeueCount;
+  private final ExecutorService workers;
+  // units not yet delivered or poisoned
+  private int pendingUnits;
+  private final List<WorkUnit> poisonUnits = new ArrayList<>();
+
+  public LocalWorkUnitQueue(WorkUnitProcessor processor, int workers, int maxDequeueCount) {
+    this.processor = processor;
+    this.maxDequeueCount = maxDequeueCount;
+    this.workers =
+        Executors.newFixedThreadPool(
+            workers,
+            runnable -> {
+              Thread thread = new Thread(runnable, "work-unit-worker");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @Override
+  public void submit(List<WorkUnit> units, ExecutionContext context) {
+    for (WorkUnit unit : units) {
+      synchronized (this) {
+        pendingUnits++;
+      }
+      workers.execute(() -> run(unit, 1, context));
+    }
+  }
+
+  private void run(WorkUnit unit, int dequeueCount, ExecutionContext context) {
+    try {
+      processor.process(unit, context);
+      done();
+    } catch (Exception e) {
+      context
+          .getLogger()
+          .log(
+              Level.WARNING,
+              e,
+              () ->
+                  String.format(
+                      "[FANOUT] Attempt %d of unit %d of flow ID %s failed",
+                      dequeueCount, unit.getUnitIndex() + 1, unit.getFlowId()));
+      if (dequeueCount < maxDequeueCount) {
+        workers.execute(() -> run(unit, dequeueCount + 1, context));
+      } else {
+        synchronized (poisonUnits) {
+          poisonUnits.add(unit);
+        }
+        WorkUnitProcessor.logIncompleteFlow(
+            unit, String.format("poisoned after %d attempts", dequeueCount), context);
+        done();
+      }
+    }
+  }
+
+  private synchronized void done() {
+    pendingUnits--;
+    notifyAll();
+  }
+
+  /** Waits until every submitted unit is delivered or poisoned. */
+  public synchronized void awaitIdle(Duration timeout)
+      throws InterruptedException, TimeoutException {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    while (pendingUnits > 0) {
+      long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remainingMillis <= 0) {
+        throw new TimeoutException(pendingUnits + " work units still pending");
+      }
+      wait(remainingMillis);
+    }
+  }
+
+  /** The units that failed {@code maxDequeueCount} times. */
+  public List<WorkUnit> getPoisonUnits() {
+    synchronized (poisonUnits) {
+      return new ArrayList<>(poisonUnits);
+    }
+  }
+
+  @Override
+  public void close() {
+    workers.shutdownNow();
+  }
+}
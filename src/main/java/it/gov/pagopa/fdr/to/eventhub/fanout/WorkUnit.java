@@ -0,0 +1,50 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * A slice of an oversized flow, delivered independently of the others: the ReportedIUV chunks
+ * {@code [firstChunk, firstChunk + chunkCount)}, which hold the payments {@code [firstPayment,
+ * firstPayment + paymentCount)} of datiSingoliPagamenti. The blob is identified by its upload
+ * (sessionId) and content hash, so that the units of a replaced blob keep the chunks stored for
+ * them and are checkpointed apart from those of the new upload.
+ */
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
+public class WorkUnit {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  String container;
+  String blobName;
+  String sessionId;
+  String contentHash;
+  // the FlowSource the flow was read with, so that the chunks are the same
+  String source;
+  String flowId;
+  int chunkSizeBytes;
+  int unitIndex;
+  int unitCount;
+  int firstChunk;
+  int chunkCount;
+  int firstPayment;
+  int paymentCount;
+
+  /** The blob the unit belongs to, as container/name. */
+  public String flowKey() {
+    return container + "/" + blobName;
+  }
+
+  public String toJson() throws JsonProcessingException {
+    return objectMapper.writeValueAsString(this);
+  }
+
+  public static WorkUnit fromJson(String json) throws JsonProcessingException {
+    return objectMapper.readValue(json, WorkUnit.class);
+  }
+}
@@ -0,0 +1,113 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventSink;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import it.gov.pagopa.fdr.to.eventhub.util.ErrorCodes;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Delivers a work unit: sends the chunks stored for it by the coordinator, without reading the
+ * blob again. Each unit has its own checkpoint, so a retry resumes the slice, and the flow is
+ * recorded as delivered when its last unit is.
+ */
+public class WorkUnitProcessor {
+
+  private final EventSink eventSink;
+  private final WorkUnitTracker tracker;
+  private final WorkUnitSliceStore sliceStore;
+
+  public WorkUnitProcessor(EventSink eventSink, WorkUnitTracker tracker) {
+    this(eventSink, tracker, WorkUnitSliceStore.fromEnvironment());
+  }
+
+  public WorkUnitProcessor(
+      EventSink eventSink, WorkUnitTracker tracker, WorkUnitSliceStore sliceStore) {
+    this.eventSink = eventSink;
+    this.tracker = tracker;
+    this.sliceStore = sliceStore;
+  }
+
+  /**
+   * Delivers the chunks of the unit.
+   *
+   * @return false if the unit was dropped because its chunks are no longer stored
+   * @throws IOException if the unit must be retried
+   */
+  public boolean process(WorkUnit unit, ExecutionContext context) throws IOException {
+    if (tracker.isComplete(unit)) {
+      context
+          .getLogger()
+          .fine(
+              () ->
+                  String.format(
+                      "[FANOUT] Unit %d of %d of flow ID %s already delivered",
+                      unit.getUnitIndex() + 1, unit.getUnitCount(), unit.getFlowId()));
+      sliceStore.delete(unit);
+      return true;
+    }
+
+    Optional<WorkUnitSlice> slice = sliceStore.load(unit);
+    if (slice.isEmpty()) {
+      logIncompleteFlow(unit, "dropped, its chunks are no longer stored", context);
+      return false;
+    }
+    FlowEvents flowEvents = slice.get().toFlowEvents();
+    if (flowEvents.getReportedIUVChunks().size() != unit.getChunkCount()
+        || flowEvents.getFirstChunkIndex() != unit.getFirstChunk()) {
+      throw new IOException(
+          String.format(
+              "The chunks of flow ID %s do not match unit %d",
+              unit.getFlowId(), unit.getUnitIndex()));
+    }
+
+    eventSink.deliver(
+        flowEvents,
+        slice.get().getMetadata(),
+        DeliveryOptions.builder()
+            .blobName(unit.flowKey() + "#" + unit.getUnitIndex())
+            .sessionId(unit.getSessionId())
+            .build(),
+        context);
+
+    if (tracker.complete(unit)) {
+      CommonUtil.recordDelivery(
+          unit.flowKey(),
+          slice.get().getMetadata(),
+          unit.getContentHash(),
+          flowEvents.getContentSha256(),
+          unit.getFlowId());
+      context
+          .getLogger()
+          .info(
+              () ->
+                  String.format(
+                      "[FANOUT] All %d units of flow ID %s delivered",
+                      unit.getUnitCount(), unit.getFlowId()));
+    }
+    sliceStore.delete(unit);
+    return true;
+  }
+
+  /**
+   * Reports a flow that will never be recorded as delivered, since one of its units is given up:
+   * the flow must be recovered as a whole.
+   */
+  public static void logIncompleteFlow(WorkUnit unit, String reason, ExecutionContext context) {
+    context
+        .getLogger()
+        .severe(
+            () ->
+                String.format(
+                    "[%s][FANOUT] Flow ID %s of Blob '%s' incomplete: unit %d of %d %s",
+                    ErrorCodes.COMMON_E4,
+                    unit.getFlowId(),
+                    unit.flowKey(),
+                    unit.getUnitIndex() + 1,
+                    unit.getUnitCount(),
+                    reason));
+  }
+}
@@ -0,0 +1,28 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.OutputBinding;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Where the coordinator of a split flow emits its work units, for any worker to process. */
+@FunctionalInterface
+public interface WorkUnitQueue {
+
+  void submit(List<WorkUnit> units, ExecutionContext context) throws IOException;
+
+  /**
+   * Emits the units as JSON messages through the queue output binding of a function: the messages
+   * are written when the function returns.
+   */
+  static WorkUnitQueue of(OutputBinding<List<String>> outputBinding) {
+    return (units, context) -> {
+      List<String> messages = new ArrayList<>(units.size());
+      for (WorkUnit unit : units) {
+        messages.add(unit.toJson());
+      }
+      outputBinding.setValue(messages);
+    };
+  }
+}
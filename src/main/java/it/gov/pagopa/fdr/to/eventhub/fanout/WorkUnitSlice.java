@@ -0,0 +1,78 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * The serialized chunks of a {@link WorkUnit}, with the blob metadata they are sent with, as stored
+ * by the coordinator: the unit delivers them without reading the blob again.
+ */
+@Value
+@Builder
+@Jacksonized
+public class WorkUnitSlice {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  Map<String, String> metadata;
+  String flowId;
+  String contentSha256;
+  int payments;
+  List<String> chunks;
+  List<Integer> chunkFirstPayments;
+  int firstChunkIndex;
+  int chunkSizeBytes;
+
+  /** The slice of the flow, as returned by {@link FlowEvents#slice}. */
+  public static WorkUnitSlice of(FlowEvents slice, Map<String, String> metadata) {
+    return WorkUnitSlice.builder()
+        .metadata(metadata)
+        .flowId(slice.getFlowId())
+        .contentSha256(slice.getContentSha256())
+        .payments(slice.getPayments())
+        .chunks(slice.getReportedIUVChunks())
+        .chunkFirstPayments(slice.getChunkFirstPayments())
+        .firstChunkIndex(slice.getFirstChunkIndex())
+        .chunkSizeBytes(slice.getChunkSizeBytes())
+        .build();
+  }
+
+  public FlowEvents toFlowEvents() {
+    return FlowEvents.builder()
+        .flowId(flowId)
+        .contentSha256(contentSha256)
+        .payments(payments)
+        .reportedIUVChunks(chunks)
+        .chunkFirstPayments(chunkFirstPayments)
+        .firstChunkIndex(firstChunkIndex)
+        .chunkSizeBytes(chunkSizeBytes)
+        .build();
+  }
+
+  /** The slice as gzip-compressed JSON. */
+  public byte[] toBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      objectMapper.writeValue(out, this);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static WorkUnitSlice fromBytes(byte[] bytes) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return objectMapper.readValue(in, WorkUnitSlice.class);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Keeps the {@link WorkUnitSlice}s written by the coordinator of a split flow until their units
+ * are delivered.
+ */
+public interface WorkUnitSliceStore {
+
+  void save(WorkUnit unit, WorkUnitSlice slice) throws IOException;
+
+  Optional<WorkUnitSlice> load(WorkUnit unit) throws IOException;
+
+  void delete(WorkUnit unit);
+
+  /**
+   * Builds the store matching the work unit tracker: the container of the {@code blob} tracker,
+   * shared by the instances, or the memory of the instance.
+   */
+  static WorkUnitSliceStore fromEnvironment() {
+    if (WorkUnitTracker.isShared()) {
+      return new BlobWorkUnitSliceStore(WorkUnitTracker.sharedContainer());
+    }
+    return new InMemoryWorkUnitSliceStore();
+  }
+}
@@ -0,0 +1,52 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import com.azure.storage.blob.BlobContainerClient;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryService;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.util.logging.Logger;
+
+/** Tracks the delivered units of the split flows, to know when a whole flow is delivered. */
+public interface WorkUnitTracker {
+
+  boolean isComplete(WorkUnit unit);
+
+  /**
+   * Marks the unit as delivered.
+   *
+   * @return true if it was the last unit of its flow still to deliver
+   */
+  boolean complete(WorkUnit unit);
+
+  /**
+   * Builds the tracker selected by FLOW_WORK_UNIT_TRACKER: {@code memory} (default), whose units
+   * must all be processed by the same instance, or {@code blob}, shared by the instances through
+   * the container FLOW_WORK_UNIT_TRACKER_CONTAINER of the FDR storage account.
+   */
+  static WorkUnitTracker fromEnvironment() {
+    String tracker = System.getenv().getOrDefault("FLOW_WORK_UNIT_TRACKER", "memory");
+    if (isShared()) {
+      return new BlobWorkUnitTracker(sharedContainer());
+    }
+    if (!"memory".equalsIgnoreCase(tracker)) {
+      Logger.getLogger(WorkUnitTracker.class.getName())
+          .warning(() -> "Unknown work unit tracker " + tracker + ", using memory");
+    }
+    return new InMemoryWorkUnitTracker();
+  }
+
+  /** Whether FLOW_WORK_UNIT_TRACKER selects a tracker shared by all the instances. */
+  static boolean isShared() {
+    return "blob"
+        .equalsIgnoreCase(System.getenv().getOrDefault("FLOW_WORK_UNIT_TRACKER", "memory"));
+  }
+
+  /** The container FLOW_WORK_UNIT_TRACKER_CONTAINER of the shared tracker, created if missing. */
+  static BlobContainerClient sharedContainer() {
+    BlobContainerClient containerClient =
+        CommonUtil.getBlobContainerClient(
+            BlobRecoveryService.STORAGE_ENV_VAR,
+            System.getenv().getOrDefault("FLOW_WORK_UNIT_TRACKER_CONTAINER", "fdr-work-units"));
+    containerClient.createIfNotExists();
+    return containerClient;
+  }
+}
@@ -0,0 +1,132 @@
+package it.gov.pagopa.fdr.to.eventhub.mapper;
+
+import it.gov.pagopa.fdr.to.eventhub.model.eventhub.FlowSummaryModel;
+import it.gov.pagopa.fdr.to.eventhub.model.eventhub.ReportedIUVEventModel;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accumulates the totals of a flow, by outcome date and by outcome code, from its ReportedIUV
+ * events while they are produced. Dates are kept as epoch days and amounts as cents, so a payment
+ * costs no allocation; payments without outcome date or code are counted only in the flow totals.
+ * The distinct dates are also the ALL_DATES of the FlowTx event.
+ */
+public class FlowAggregates {
+
+  // last fake date of ALL_DATES, as alert that the flow has more distinct dates than listed
+  public static final String ALL_DATES_OVERFLOW_MARKER = "9999-12-31";
+
+  private final IntKeyedTotals byDate = new IntKeyedTotals(16);
+  private final IntKeyedTotals byOutcome = new IntKeyedTotals(8);
+  private long payments;
+  private long cents;
+  private int minEpochDay = Integer.MAX_VALUE;
+  private int maxEpochDay = Integer.MIN_VALUE;
+
+  public void add(ReportedIUVEventModel event) {
+    add(event.getSinglePaymentOutcomeDate(), event.getOutcomeCode(), toCents(event.getAmount()));
+  }
+
+  public void add(LocalDateTime outcomeDate, Integer outcomeCode, long amountCents) {
+    payments++;
+    cents += amountCents;
+    if (outcomeDate != null) {
+      int epochDay = (int) outcomeDate.toLocalDate().toEpochDay();
+      byDate.add(epochDay, amountCents);
+      minEpochDay = Math.min(minEpochDay, epochDay);
+      maxEpochDay = Math.max(maxEpochDay, epochDay);
+    }
+    if (outcomeCode != null) {
+      byOutcome.add(outcomeCode, amountCents);
+    }
+  }
+
+  public long getPayments() {
+    return payments;
+  }
+
+  /** Sum of the amounts, exact to the cent. */
+  public long getCents() {
+    return cents;
+  }
+
+  /** The totals, with dates and outcome codes in ascending order. */
+  public FlowSummaryModel toSummary() {
+    List<FlowSummaryModel.DateTotal> dates = new ArrayList<>(byDate.size());
+    for (int i : sortedByKey(byDate)) {
+      dates.add(
+          FlowSummaryModel.DateTotal.builder()
+              .date(LocalDate.ofEpochDay(byDate.keyAt(i)))
+              .paymentsNum(byDate.countAt(i))
+              .amount(toAmount(byDate.centsAt(i)))
+              .build());
+    }
+    List<FlowSummaryModel.OutcomeTotal> outcomes = new ArrayList<>(byOutcome.size());
+    for (int i : sortedByKey(byOutcome)) {
+      outcomes.add(
+          FlowSummaryModel.OutcomeTotal.builder()
+              .outcomeCode(byOutcome.keyAt(i))
+              .paymentsNum(byOutcome.countAt(i))
+              .amount(toAmount(byOutcome.centsAt(i)))
+              .build());
+    }
+    return FlowSummaryModel.builder()
+        .paymentsNum(payments)
+        .amount(toAmount(cents))
+        .minOutcomeDate(byDate.size() == 0 ? null : LocalDate.ofEpochDay(minEpochDay))
+        .maxOutcomeDate(byDate.size() == 0 ? null : LocalDate.ofEpochDay(maxEpochDay))
+        .byDate(dates)
+        .byOutcome(outcomes)
+        .build();
+  }
+
+  /**
+   * The ALL_DATES of the FlowTx event: the first {@code maxDates} distinct outcome dates met, in
+   * ascending order, followed by {@link #ALL_DATES_OVERFLOW_MARKER} if the flow has more.
+   */
+  public List<String> toAllDates(int maxDates) {
+    int kept = Math.min(maxDates, byDate.size());
+    int[] epochDays = new int[kept];
+    for (int i = 0; i < kept; i++) {
+      epochDays[i] = byDate.keyAt(i);
+    }
+    Arrays.sort(epochDays);
+    List<String> dates = new ArrayList<>(kept + 1);
+    for (int epochDay : epochDays) {
+      dates.add(LocalDate.ofEpochDay(epochDay).toString());
+    }
+    if (byDate.size() > kept) {
+      dates.add(ALL_DATES_OVERFLOW_MARKER);
+    }
+    return dates;
+  }
+
+  // insertion indexes of the keys, in key order
+  private static int[] sortedByKey(IntKeyedTotals totals) {
+    long[] keyAndIndex = new long[totals.size()];
+    for (int i = 0; i < keyAndIndex.length; i++) {
+      keyAndIndex[i] = ((long) totals.keyAt(i) << 32) | i;
+    }
+    Arrays.sort(keyAndIndex);
+    int[] indexes = new int[keyAndIndex.length];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = (int) keyAndIndex[i];
+    }
+    return indexes;
+  }
+
+  public static long toCents(BigDecimal amount) {
+    return amount == null
+        ? 0
+        : amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+  }
+
+  private static BigDecimal toAmount(long cents) {
+    return BigDecimal.valueOf(cents, 2);
+  }
+}
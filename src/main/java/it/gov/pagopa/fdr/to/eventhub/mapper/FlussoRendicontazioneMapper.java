@@ -15,7 +15,7 @@ import java.time.temporal.ChronoField;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.UtilityClass;
@@ -29,6 +29,10 @@ public class FlussoRendicontazioneMapper {
   private static final String TIME_ZONE_REGEX = "([+\\-]\\d{2}:\\d{2}|Z)$";
   private static final Pattern pattern = Pattern.compile(TIME_ZONE_REGEX);
   @Getter @Setter private static int maxDistinctDates = 110;
+  // the FlowTx event carries the totals by date and by outcome code of the payments
+  @Getter @Setter
+  private static boolean summaryEnabled =
+      Boolean.parseBoolean(System.getenv().getOrDefault("FLOWTX_SUMMARY_ENABLED", "false"));
 
   private static final DateTimeFormatter DATE_TIME_FORMATTER =
       new DateTimeFormatterBuilder()
@@ -74,20 +78,29 @@ public class FlussoRendicontazioneMapper {
    * @return List of FlowTxEventModel.
    */
   public static FlowTxEventModel toFlowTxEventList(FlussoRendicontazione flusso) {
-
-    List<String> allDates =
-        flusso.getFlussoRiversamento().getDatiSingoliPagamenti().stream()
-            .map(DatiSingoloPagamento::getDataEsitoSingoloPagamento)
-            .distinct()
-            .collect(Collectors.toList());
-
-    // last fake date as alert if there are more than 'this.maxDistinctDates'
-    // dates
-    if (allDates.size() > maxDistinctDates) {
-      allDates = allDates.stream().limit(maxDistinctDates).collect(Collectors.toList());
-      allDates.add("9999-12-31");
+    // a single pass over the payments, only the outcome dates are parsed
+    FlowAggregates aggregates = new FlowAggregates();
+    OutcomeDates outcomeDates = new OutcomeDates();
+    for (DatiSingoloPagamento pagamento :
+        flusso.getFlussoRiversamento().getDatiSingoliPagamenti()) {
+      aggregates.add(
+          outcomeDates.parse(pagamento.getDataEsitoSingoloPagamento()),
+          pagamento.getCodiceEsitoSingoloPagamento(),
+          FlowAggregates.toCents(BigDecimal.valueOf(pagamento.getSingoloImportoPagato())));
     }
+    return toFlowTxEvent(flusso, aggregates);
+  }
 
+  /**
+   * Converts FlussoRendicontazione into its FlowTxEventModel, taking ALL_DATES and the summary from
+   * the aggregates of its payments.
+   *
+   * @param flusso to convert.
+   * @param aggregates of all the payments of the flow.
+   * @return the FlowTxEventModel.
+   */
+  public static FlowTxEventModel toFlowTxEvent(
+      FlussoRendicontazione flusso, FlowAggregates aggregates) {
     return FlowTxEventModel.builder()
         .flowId(flusso.getFlussoRiversamento().getIdentificativoFlusso())
         .flowDateTime(parseDate(flusso.getFlussoRiversamento().getDataOraFlusso()))
@@ -100,7 +113,8 @@ public class FlussoRendicontazioneMapper {
         .insertedTimestamp(parseDate(flusso.getMetadata().get("insertedTimestamp")))
         .psp(flusso.getIdentificativoPSP())
         .causal(flusso.getFlussoRiversamento().getIdentificativoUnivocoRegolamento())
-        .allDates(allDates)
+        .allDates(aggregates.toAllDates(maxDistinctDates))
+        .summary(summaryEnabled ? aggregates.toSummary() : null)
         .build();
   }
 
@@ -111,6 +125,22 @@ public class FlussoRendicontazioneMapper {
    * @return List of ReportedIUVEventModel.
    */
   public static List<ReportedIUVEventModel> toReportedIUVEventList(FlussoRendicontazione flusso) {
+    return toReportedIUVEvents(flusso).toList();
+  }
+
+  /**
+   * Converts FlussoRendicontazione into a lazy stream of ReportedIUVEventModel, one per payment as
+   * it is consumed. The fields of the flow are parsed once and shared by all the events.
+   *
+   * @param flusso to convert.
+   * @return Stream of ReportedIUVEventModel, to be consumed once.
+   */
+  public static Stream<ReportedIUVEventModel> toReportedIUVEvents(FlussoRendicontazione flusso) {
+    String flowId = flusso.getFlussoRiversamento().getIdentificativoFlusso();
+    LocalDateTime flowDateTime = parseDate(flusso.getFlussoRiversamento().getDataOraFlusso());
+    LocalDateTime insertedTimestamp = parseDate(flusso.getMetadata().get("insertedTimestamp"));
+    String sessionId = flusso.getMetadata().get("sessionId");
+    OutcomeDates outcomeDates = new OutcomeDates();
     return flusso.getFlussoRiversamento().getDatiSingoliPagamenti().stream()
         .map(
             singoloPagamento ->
@@ -121,15 +151,29 @@ public class FlussoRendicontazioneMapper {
                     .outcomeCode(singoloPagamento.getCodiceEsitoSingoloPagamento())
                     .idsp(singoloPagamento.getIndiceDatiSingoloPagamento())
                     .singlePaymentOutcomeDate(
-                        parseDate(singoloPagamento.getDataEsitoSingoloPagamento()))
-                    .flowId(flusso.getFlussoRiversamento().getIdentificativoFlusso())
-                    .flowDateTime(parseDate(flusso.getFlussoRiversamento().getDataOraFlusso()))
+                        outcomeDates.parse(singoloPagamento.getDataEsitoSingoloPagamento()))
+                    .flowId(flowId)
+                    .flowDateTime(flowDateTime)
                     .domainId(flusso.getIdentificativoDominio())
                     .intPsp(flusso.getIdentificativoIntermediarioPSP())
-                    .uniqueId(flusso.getMetadata().get("sessionId"))
-                    .insertedTimestamp(parseDate(flusso.getMetadata().get("insertedTimestamp")))
+                    .uniqueId(sessionId)
+                    .insertedTimestamp(insertedTimestamp)
                     .psp(flusso.getIdentificativoPSP())
-                    .build())
-        .toList();
+                    .build());
+  }
+
+  // the payments of a flow share few outcome dates, mostly in sequence: a repeated one is not
+  // parsed again
+  private static final class OutcomeDates {
+    private String lastText;
+    private LocalDateTime lastDate;
+
+    LocalDateTime parse(String text) {
+      if (text == null || !text.equals(lastText)) {
+        lastDate = parseDate(text);
+        lastText = text;
+      }
+      return lastDate;
+    }
   }
 }
@@ -0,0 +1,101 @@
+package it.gov.pagopa.fdr.to.eventhub.mapper;
+
+import java.util.Arrays;
+
+/**
+ * Payment count and amount in cents per int key, e.g. an epoch day or an outcome code. The keys are
+ * kept unboxed in an open-addressing table and can be read back in insertion order.
+ */
+final class IntKeyedTotals {
+
+  private static final int FREE = -1;
+
+  // position of each key in the arrays below, by hash
+  private int[] slots;
+  private int[] keys;
+  private long[] counts;
+  private long[] cents;
+  private int size;
+
+  IntKeyedTotals(int expectedKeys) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedKeys) * 2 - 1) << 1;
+    slots = new int[capacity];
+    Arrays.fill(slots, FREE);
+    keys = new int[capacity / 2];
+    counts = new long[capacity / 2];
+    cents = new long[capacity / 2];
+  }
+
+  void add(int key, long amountCents) {
+    int index = indexOf(key);
+    counts[index]++;
+    cents[index] += amountCents;
+  }
+
+  boolean contains(int key) {
+    int mask = slots.length - 1;
+    for (int slot = hash(key) & mask; slots[slot] != FREE; slot = (slot + 1) & mask) {
+      if (keys[slots[slot]] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** The i-th key in insertion order. */
+  int keyAt(int i) {
+    return keys[i];
+  }
+
+  long countAt(int i) {
+    return counts[i];
+  }
+
+  long centsAt(int i) {
+    return cents[i];
+  }
+
+  private int indexOf(int key) {
+    int mask = slots.length - 1;
+    int slot = hash(key) & mask;
+    for (; slots[slot] != FREE; slot = (slot + 1) & mask) {
+      if (keys[slots[slot]] == key) {
+        return slots[slot];
+      }
+    }
+    if (size == keys.length) {
+      grow();
+      return indexOf(key);
+    }
+    keys[size] = key;
+    slots[slot] = size;
+    return size++;
+  }
+
+  // the table is kept at most half full
+  private void grow() {
+    int capacity = slots.length * 2;
+    keys = Arrays.copyOf(keys, capacity / 2);
+    counts = Arrays.copyOf(counts, capacity / 2);
+    cents = Arrays.copyOf(cents, capacity / 2);
+    slots = new int[capacity];
+    Arrays.fill(slots, FREE);
+    int mask = capacity - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = hash(keys[i]) & mask;
+      while (slots[slot] != FREE) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = i;
+    }
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,46 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what an Event Hub acknowledged: the flows (or slices of a flow delivered by a work
+ * unit) with all their events sent to the hub, the events, the messages carrying them and their
+ * bytes. A ReportedIUV chunk is one message carrying the events of many payments.
+ */
+public class HubTraffic implements HubTrafficMBean {
+
+  private final LongAdder flows = new LongAdder();
+  private final LongAdder events = new LongAdder();
+  private final LongAdder chunks = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+
+  public void onChunkSent(int chunkEvents, long chunkBytes) {
+    chunks.increment();
+    events.add(chunkEvents);
+    bytes.add(chunkBytes);
+  }
+
+  public void onFlowSent() {
+    flows.increment();
+  }
+
+  @Override
+  public long getFlows() {
+    return flows.sum();
+  }
+
+  @Override
+  public long getEvents() {
+    return events.sum();
+  }
+
+  @Override
+  public long getChunks() {
+    return chunks.sum();
+  }
+
+  @Override
+  public long getBytes() {
+    return bytes.sum();
+  }
+}
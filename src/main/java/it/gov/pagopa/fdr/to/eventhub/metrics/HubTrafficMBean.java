@@ -0,0 +1,13 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+/** Traffic sent to an Event Hub, exported through JMX. */
+public interface HubTrafficMBean {
+
+  long getFlows();
+
+  long getEvents();
+
+  long getChunks();
+
+  long getBytes();
+}
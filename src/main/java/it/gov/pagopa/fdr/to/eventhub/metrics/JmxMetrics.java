@@ -0,0 +1,56 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.experimental.UtilityClass;
+
+/** Publishes the application MBeans on the platform server scraped by the jmx-exporter. */
+@UtilityClass
+public class JmxMetrics {
+
+  public static final String DOMAIN = "it.gov.pagopa.fdr.to.eventhub";
+
+  private static final Logger logger = Logger.getLogger(JmxMetrics.class.getName());
+
+  private static final Map<Object, String> unnamedClients =
+      Collections.synchronizedMap(new WeakHashMap<>());
+  private static final AtomicInteger unnamedSequence = new AtomicInteger();
+
+  /**
+   * Registers the MBean under {@code DOMAIN:type=<type>,name=<name>}, replacing any previous
+   * registration with the same name. Failures are logged and never propagated, metrics must not
+   * break the processing.
+   */
+  public static void register(String type, String name, Object mbean) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName =
+          new ObjectName(String.format("%s:type=%s,name=%s", DOMAIN, type, ObjectName.quote(name)));
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(mbean, objectName);
+    } catch (JMException e) {
+      logger.log(Level.WARNING, e, () -> "Unable to register MBean " + type + "/" + name);
+    }
+  }
+
+  /**
+   * The MBean name of the objects bound to a producer client: the name of its Event Hub or, when
+   * the client has none, a name of its own so that two such clients never replace each other.
+   */
+  public static String nameOf(Object client, String eventHubName) {
+    return eventHubName != null
+        ? eventHubName
+        : unnamedClients.computeIfAbsent(
+            client, c -> "unnamed-" + unnamedSequence.incrementAndGet());
+  }
+}
@@ -0,0 +1,122 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, as HdrHistogram: values are recorded in
+ * microseconds, exactly below 32 and then in 16 buckets per power of two, so a percentile is
+ * reported with at most 1/16 of relative error. Values above one hour are counted as one hour.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+  private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+
+  private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_MICROS) + 1);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void recordNanos(long nanos) {
+    long micros = Math.min(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)), MAX_MICROS);
+    counts.incrementAndGet(indexOf(micros));
+    count.increment();
+    totalMicros.add(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    long recorded = count.sum();
+    return recorded == 0 ? 0 : toMillis(totalMicros.sum()) / recorded;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return toMillis(maxMicros.get());
+  }
+
+  @Override
+  public double getP50Millis() {
+    return getPercentileMillis(50);
+  }
+
+  @Override
+  public double getP90Millis() {
+    return getPercentileMillis(90);
+  }
+
+  @Override
+  public double getP99Millis() {
+    return getPercentileMillis(99);
+  }
+
+  @Override
+  public double getP999Millis() {
+    return getPercentileMillis(99.9);
+  }
+
+  /** The highest value of the bucket holding the percentile, never above the maximum recorded. */
+  public double getPercentileMillis(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return toMillis(Math.min(highestValueOf(i), maxMicros.get()));
+      }
+    }
+    return getMaxMillis();
+  }
+
+  @Override
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    totalMicros.reset();
+    maxMicros.set(0);
+  }
+
+  static int indexOf(long micros) {
+    if (micros < LINEAR_BUCKETS) {
+      return (int) micros;
+    }
+    // micros >>> shift is in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+    return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestValueOf(int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+    long top = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+
+  private static double toMillis(long micros) {
+    return micros / 1000.0;
+  }
+}
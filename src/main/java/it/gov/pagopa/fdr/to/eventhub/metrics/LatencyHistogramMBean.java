@@ -0,0 +1,21 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+/** Latency distribution of a {@link LatencyHistogram}, exported through JMX. */
+public interface LatencyHistogramMBean {
+
+  long getCount();
+
+  double getMeanMillis();
+
+  double getMaxMillis();
+
+  double getP50Millis();
+
+  double getP90Millis();
+
+  double getP99Millis();
+
+  double getP999Millis();
+
+  void reset();
+}
@@ -0,0 +1,53 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Latency of the processing stages and traffic of the Event Hubs, exported through JMX as {@code
+ * StageLatency/<stage>} and {@code HubTraffic/<event hub name>}.
+ */
+@UtilityClass
+public class PipelineMetrics {
+
+  private static final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+  private static final Map<String, HubTraffic> traffic = new ConcurrentHashMap<>();
+
+  static {
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      latencies.put(stage, histogram);
+      JmxMetrics.register("StageLatency", stage.metricName(), histogram);
+    }
+  }
+
+  public static void record(Stage stage, long nanos) {
+    latencies.get(stage).recordNanos(nanos);
+  }
+
+  /** Records the time elapsed since {@code startNanos}, taken with System#nanoTime. */
+  public static void recordSince(Stage stage, long startNanos) {
+    record(stage, System.nanoTime() - startNanos);
+  }
+
+  public static LatencyHistogram latency(Stage stage) {
+    return latencies.get(stage);
+  }
+
+  /** The traffic of the Event Hub of the given producer client, shared by its clients. */
+  public static HubTraffic hubTraffic(Object eventHubClient, String eventHubName) {
+    return hubTraffic(JmxMetrics.nameOf(eventHubClient, eventHubName));
+  }
+
+  public static HubTraffic hubTraffic(String hubName) {
+    return traffic.computeIfAbsent(
+        hubName,
+        name -> {
+          HubTraffic hubTraffic = new HubTraffic();
+          JmxMetrics.register("HubTraffic", name, hubTraffic);
+          return hubTraffic;
+        });
+  }
+}
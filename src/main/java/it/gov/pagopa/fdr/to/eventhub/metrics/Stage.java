@@ -0,0 +1,29 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+/**
+ * The stages of the processing of a flow whose latency is recorded by {@link PipelineMetrics}. A
+ * stage includes the stages run inside it: the outer parse includes the inner parse and the
+ * decompression of the content it reads, and for FDR3 flows, parsed in streaming, also the mapping
+ * and serialization of the payments.
+ */
+public enum Stage {
+  // download of a blob by the recovery and the work units, the blob triggers get it from the host
+  DOWNLOAD,
+  // inflating of the gzip content, as read by the parser
+  DECOMPRESS,
+  // parse of the whole flow
+  OUTER_PARSE,
+  // decoding and parse of the xmlRendicontazione of an FDR1 flow
+  INNER_PARSE,
+  // mapping of the payments of an FDR1 flow to ReportedIUV events
+  MAP,
+  // serialization and chunking of the events of an FDR1 flow
+  SERIALIZE,
+  // a send to an Event Hub, until acknowledged
+  SEND;
+
+  /** Name of the MBean of the stage. */
+  public String metricName() {
+    return name().toLowerCase();
+  }
+}
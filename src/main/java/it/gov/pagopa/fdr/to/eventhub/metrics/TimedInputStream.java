@@ -0,0 +1,60 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adds up the time spent in the reads of the wrapped stream, e.g. the inflating of a gzip stream
+ * pulled by the parser, and records it as one sample of the stage when closed.
+ */
+public class TimedInputStream extends FilterInputStream {
+
+  private final Stage stage;
+  private long nanos;
+  private boolean recorded;
+
+  public TimedInputStream(InputStream in, Stage stage) {
+    super(in);
+    this.stage = stage;
+  }
+
+  @Override
+  public int read() throws IOException {
+    long start = System.nanoTime();
+    try {
+      return super.read();
+    } finally {
+      nanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return super.read(b, off, len);
+    } finally {
+      nanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return super.skip(n);
+    } finally {
+      nanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!recorded) {
+      recorded = true;
+      PipelineMetrics.record(stage, nanos);
+    }
+    super.close();
+  }
+}
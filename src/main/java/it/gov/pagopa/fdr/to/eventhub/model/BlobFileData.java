@@ -14,4 +14,9 @@ public class BlobFileData {
 
   private byte[] fileContent;
   private Map<String, String> metadata;
+  private String eTag;
+
+  public BlobFileData(byte[] fileContent, Map<String, String> metadata) {
+    this(fileContent, metadata, null);
+  }
 }
@@ -20,4 +20,6 @@ public class FlussoRendicontazione {
   private String dataOraFlusso;
   private FlussoRiversamento flussoRiversamento; // base64 <xmlRendicontazione> block
   private Map<String, String> metadata;
+  // SHA-256 of the decompressed XML, computed while parsing
+  private String contentSha256;
 }
@@ -0,0 +1,68 @@
+package it.gov.pagopa.fdr.to.eventhub.model.eventhub;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Totals of the payments of a flow, computed while its ReportedIUV events are produced, so that a
+ * consumer does not need to read them all.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FlowSummaryModel {
+  @JsonProperty("NUM_PAGAMENTI")
+  private long paymentsNum;
+
+  @JsonProperty("SOMMA")
+  private BigDecimal amount;
+
+  @JsonProperty("DATA_ESITO_MIN")
+  private LocalDate minOutcomeDate;
+
+  @JsonProperty("DATA_ESITO_MAX")
+  private LocalDate maxOutcomeDate;
+
+  @JsonProperty("PER_DATA")
+  private List<DateTotal> byDate;
+
+  @JsonProperty("PER_ESITO")
+  private List<OutcomeTotal> byOutcome;
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class DateTotal {
+    @JsonProperty("DATA_ESITO")
+    private LocalDate date;
+
+    @JsonProperty("NUM_PAGAMENTI")
+    private long paymentsNum;
+
+    @JsonProperty("SOMMA")
+    private BigDecimal amount;
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class OutcomeTotal {
+    @JsonProperty("COD_ESITO")
+    private int outcomeCode;
+
+    @JsonProperty("NUM_PAGAMENTI")
+    private long paymentsNum;
+
+    @JsonProperty("SOMMA")
+    private BigDecimal amount;
+  }
+}
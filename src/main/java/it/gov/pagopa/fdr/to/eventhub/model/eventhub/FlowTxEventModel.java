@@ -1,5 +1,6 @@
 package it.gov.pagopa.fdr.to.eventhub.model.eventhub;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -49,4 +50,9 @@ public class FlowTxEventModel {
 
   @JsonProperty("ALL_DATES")
   private List<String> allDates;
+
+  // only when FLOWTX_SUMMARY_ENABLED is set
+  @JsonProperty("RIEPILOGO")
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private FlowSummaryModel summary;
 }
@@ -0,0 +1,15 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/** Parses the XML of an FDR1 flow, e.g. {@link FDR1XmlSAXParser} or {@link FDR1XmlStAXParser}. */
+@FunctionalInterface
+public interface FDR1Parser {
+
+  FlussoRendicontazione parseXmlStream(InputStream xmlStream)
+      throws ParserConfigurationException, SAXException, IOException;
+}
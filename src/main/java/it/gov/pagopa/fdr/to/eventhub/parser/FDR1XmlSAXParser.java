@@ -1,14 +1,13 @@
 package it.gov.pagopa.fdr.to.eventhub.parser;
 
 import it.gov.pagopa.fdr.to.eventhub.exception.XmlParsingException;
-import it.gov.pagopa.fdr.to.eventhub.model.DatiSingoloPagamento;
+import it.gov.pagopa.fdr.to.eventhub.metrics.PipelineMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.Stage;
 import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
 import it.gov.pagopa.fdr.to.eventhub.model.FlussoRiversamento;
-import it.gov.pagopa.fdr.to.eventhub.model.Istituto;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,6 +16,8 @@ import java.util.concurrent.atomic.AtomicReference;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.experimental.UtilityClass;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -25,6 +26,12 @@ import org.xml.sax.helpers.DefaultHandler;
 @UtilityClass
 public class FDR1XmlSAXParser {
 
+  // the payments are counted and summed while parsed, and checked against the flow totals; off by
+  // default, since a flow that fails the check is no longer delivered
+  @Getter @Setter
+  private static boolean consistencyCheckEnabled =
+      Boolean.parseBoolean(System.getenv().getOrDefault("FLOW_CONSISTENCY_CHECK_ENABLED", "false"));
+
   public static FlussoRendicontazione parseXmlStream(InputStream xmlStream)
       throws ParserConfigurationException, SAXException, IOException {
 
@@ -50,43 +57,69 @@ public class FDR1XmlSAXParser {
         xmlStream,
         new DefaultHandler() {
           private final StringBuilder value = new StringBuilder();
-          private final Map<String, String> dati = new HashMap<>();
+          private final FlussoRendicontazione.FlussoRendicontazioneBuilder builder =
+              FlussoRendicontazione.builder();
+          // element whose text is being buffered, null outside the elements that are read
+          private RequestElement current;
+          private String identificativoFlusso;
           private String flussoRiversamentoBase64;
 
           @Override
           public void startElement(
               String uri, String localName, String qName, Attributes attributes) {
+            current = RequestElement.of(normalizeTag(qName));
             value.setLength(0);
           }
 
           @Override
           public void characters(char[] ch, int start, int length) {
-            value.append(ch, start, length);
+            if (current != null) {
+              value.append(ch, start, length);
+            }
           }
 
           @Override
           public void endElement(String uri, String localName, String qName)
               throws XmlParsingException {
-            String content = value.toString().trim();
-            String tagName = qName.contains(":") ? qName.substring(qName.indexOf(":") + 1) : qName;
-
-            if ("xmlRendicontazione".equals(tagName)) {
-              flussoRiversamentoBase64 = content;
-            } else if ("nodoInviaFlussoRendicontazione".equals(tagName)) {
-              flusso.set(
-                  FlussoRendicontazione.builder()
-                      .identificativoPSP(dati.get("identificativoPSP"))
-                      .identificativoIntermediarioPSP(dati.get("identificativoIntermediarioPSP"))
-                      .identificativoCanale(dati.get("identificativoCanale"))
-                      .password(dati.get("password"))
-                      .identificativoDominio(dati.get("identificativoDominio"))
-                      .identificativoFlusso(dati.get("identificativoFlusso"))
-                      .dataOraFlusso(dati.get("dataOraFlusso"))
-                      .flussoRiversamento(
-                          decodeAndParseFlussoRiversamento(flussoRiversamentoBase64))
-                      .build());
-            } else {
-              dati.put(tagName, content);
+            RequestElement element = RequestElement.of(normalizeTag(qName));
+            if (element == null) {
+              return;
+            }
+            String content = element == current ? value.toString().trim() : null;
+            current = null;
+
+            switch (element) {
+              case IDENTIFICATIVO_PSP:
+                builder.identificativoPSP(content);
+                break;
+              case IDENTIFICATIVO_INTERMEDIARIO_PSP:
+                builder.identificativoIntermediarioPSP(content);
+                break;
+              case IDENTIFICATIVO_CANALE:
+                builder.identificativoCanale(content);
+                break;
+              case PASSWORD:
+                builder.password(content);
+                break;
+              case IDENTIFICATIVO_DOMINIO:
+                builder.identificativoDominio(content);
+                break;
+              case IDENTIFICATIVO_FLUSSO:
+                identificativoFlusso = content;
+                builder.identificativoFlusso(content);
+                break;
+              case DATA_ORA_FLUSSO:
+                builder.dataOraFlusso(content);
+                break;
+              case XML_RENDICONTAZIONE:
+                flussoRiversamentoBase64 = content;
+                break;
+              case NODO_INVIA_FLUSSO_RENDICONTAZIONE:
+                FlussoRiversamento flussoRiversamento =
+                    decodeAndParseFlussoRiversamento(flussoRiversamentoBase64);
+                FlussoRiversamentoHandler.checkFlowId(identificativoFlusso, flussoRiversamento);
+                flusso.set(builder.flussoRiversamento(flussoRiversamento).build());
+                break;
             }
           }
         });
@@ -96,18 +129,27 @@ public class FDR1XmlSAXParser {
             () -> new XmlParsingException("Parsing failed: check the XML content of the file"));
   }
 
+  private static String normalizeTag(String qName) {
+    // Removes the namespace if present
+    int colon = qName.indexOf(':');
+    return colon < 0 ? qName : qName.substring(colon + 1);
+  }
+
   private static FlussoRiversamento decodeAndParseFlussoRiversamento(String base64Content)
       throws XmlParsingException {
     if (base64Content == null || base64Content.isEmpty()) {
       return null;
     }
 
+    long start = System.nanoTime();
     byte[] decodedBytes = Base64.getDecoder().decode(base64Content);
 
     try (InputStream xmlStream = new ByteArrayInputStream(decodedBytes)) {
       return parseFlussoRiversamento(xmlStream);
     } catch (IOException e) {
       throw new XmlParsingException("Error handling XML stream", e);
+    } finally {
+      PipelineMetrics.recordSince(Stage.INNER_PARSE, start);
     }
   }
 
@@ -124,108 +166,41 @@ public class FDR1XmlSAXParser {
 
       parser.parse(xmlStream, handler);
       return handler.getFlussoRiversamento();
+    } catch (XmlParsingException e) {
+      throw e;
     } catch (Exception e) {
       throw new XmlParsingException("Error parsing flusso riversamento", e);
     }
   }
-}
-
-class FlussoRiversamentoHandler extends DefaultHandler {
-  private FlussoRiversamento flussoRiversamento;
-  private Map<String, String> flussoDati;
-  private Map<String, String> currentIstituto;
-  private Map<String, String> currentDatiPagamento;
-  private StringBuilder value = new StringBuilder();
-  private boolean insideDatiSingoliPagamenti = false;
-
-  public FlussoRiversamentoHandler() {
-    this.flussoRiversamento = new FlussoRiversamento();
-    this.flussoRiversamento.setDatiSingoliPagamenti(new ArrayList<>());
-    this.flussoDati = new HashMap<>();
-  }
 
-  public FlussoRiversamento getFlussoRiversamento() {
-    flussoRiversamento.setVersioneOggetto(flussoDati.get("versioneOggetto"));
-    flussoRiversamento.setIdentificativoFlusso(flussoDati.get("identificativoFlusso"));
-    flussoRiversamento.setDataOraFlusso(flussoDati.get("dataOraFlusso"));
-    flussoRiversamento.setIdentificativoUnivocoRegolamento(
-        flussoDati.get("identificativoUnivocoRegolamento"));
-    flussoRiversamento.setDataRegolamento(flussoDati.get("dataRegolamento"));
-    flussoRiversamento.setNumeroTotalePagamenti(
-        Integer.parseInt(flussoDati.get("numeroTotalePagamenti")));
-    flussoRiversamento.setImportoTotalePagamenti(
-        Double.parseDouble(flussoDati.get("importoTotalePagamenti")));
-    return flussoRiversamento;
-  }
-
-  @Override
-  public void startElement(String uri, String localName, String qName, Attributes attributes)
-      throws SAXException {
-    value.setLength(0);
-    String tagName = normalizeTag(qName);
-
-    if ("istitutoMittente".equals(tagName) || "istitutoRicevente".equals(tagName)) {
-      currentIstituto = new HashMap<>();
-    } else if ("datiSingoliPagamenti".equals(tagName)) {
-      currentDatiPagamento = new HashMap<>();
-      insideDatiSingoliPagamenti = true;
-    }
-  }
-
-  @Override
-  public void characters(char[] ch, int start, int length) throws SAXException {
-    value.append(ch, start, length);
-  }
-
-  @Override
-  public void endElement(String uri, String localName, String qName) throws SAXException {
-    String content = value.toString().trim();
-    String tagName = normalizeTag(qName);
-
-    if (currentIstituto != null) {
-      currentIstituto.put(tagName, content);
-      if ("istitutoMittente".equals(tagName)) {
-        flussoRiversamento.setIstitutoMittente(mapToIstituto(currentIstituto));
-        currentIstituto = null;
-      } else if ("istitutoRicevente".equals(tagName)) {
-        flussoRiversamento.setIstitutoRicevente(mapToIstituto(currentIstituto));
-        currentIstituto = null;
-      }
-    } else if (insideDatiSingoliPagamenti && currentDatiPagamento != null) {
-      currentDatiPagamento.put(tagName, content);
-      if ("datiSingoliPagamenti".equals(tagName)) {
-        flussoRiversamento
-            .getDatiSingoliPagamenti()
-            .add(mapToDatiSingoloPagamento(currentDatiPagamento));
-        currentDatiPagamento = null;
-        insideDatiSingoliPagamenti = false;
+  /** The elements of the nodoInviaFlussoRendicontazione request that are read, by local name. */
+  private enum RequestElement {
+    IDENTIFICATIVO_PSP("identificativoPSP"),
+    IDENTIFICATIVO_INTERMEDIARIO_PSP("identificativoIntermediarioPSP"),
+    IDENTIFICATIVO_CANALE("identificativoCanale"),
+    PASSWORD("password"),
+    IDENTIFICATIVO_DOMINIO("identificativoDominio"),
+    IDENTIFICATIVO_FLUSSO("identificativoFlusso"),
+    DATA_ORA_FLUSSO("dataOraFlusso"),
+    XML_RENDICONTAZIONE("xmlRendicontazione"),
+    NODO_INVIA_FLUSSO_RENDICONTAZIONE("nodoInviaFlussoRendicontazione");
+
+    private static final Map<String, RequestElement> BY_NAME = new HashMap<>();
+
+    static {
+      for (RequestElement element : values()) {
+        BY_NAME.put(element.localName, element);
       }
-    } else {
-      flussoDati.put(tagName, content);
     }
-  }
 
-  private String normalizeTag(String qName) {
-    // Removes the namespace if present
-    return qName.contains(":") ? qName.substring(qName.indexOf(":") + 1) : qName;
-  }
+    private final String localName;
 
-  private Istituto mapToIstituto(Map<String, String> dati) {
-    return new Istituto(
-        dati.get("tipoIdentificativoUnivoco"),
-        dati.get("codiceIdentificativoUnivoco"),
-        dati.get("denominazioneMittente") != null
-            ? dati.get("denominazioneMittente")
-            : dati.get("denominazioneRicevente"));
-  }
+    RequestElement(String localName) {
+      this.localName = localName;
+    }
 
-  private DatiSingoloPagamento mapToDatiSingoloPagamento(Map<String, String> dati) {
-    return new DatiSingoloPagamento(
-        dati.get("identificativoUnivocoVersamento"),
-        dati.get("identificativoUnivocoRiscossione"),
-        dati.get("indiceDatiSingoloPagamento"),
-        Double.parseDouble(dati.get("singoloImportoPagato")),
-        Integer.parseInt(dati.get("codiceEsitoSingoloPagamento")),
-        dati.get("dataEsitoSingoloPagamento"));
+    static RequestElement of(String localName) {
+      return BY_NAME.get(localName);
+    }
   }
 }
@@ -0,0 +1,138 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import it.gov.pagopa.fdr.to.eventhub.exception.XmlParsingException;
+import it.gov.pagopa.fdr.to.eventhub.metrics.PipelineMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.Stage;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRiversamento;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.experimental.UtilityClass;
+import org.xml.sax.SAXException;
+
+/**
+ * Pull-parsing alternative to {@link FDR1XmlSAXParser}, producing the same {@link
+ * FlussoRendicontazione}: the element text is read with the StAX cursor API instead of SAX
+ * callbacks, and the decoded {@code xmlRendicontazione} goes through the same handler.
+ */
+@UtilityClass
+public class FDR1XmlStAXParser {
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+  public static FlussoRendicontazione parseXmlStream(InputStream xmlStream) throws SAXException {
+
+    if (xmlStream == null) {
+      throw new XmlParsingException("The XML stream is null");
+    }
+
+    Map<String, String> dati = new HashMap<>();
+    StringBuilder value = new StringBuilder();
+    XMLStreamReader reader = null;
+    try {
+      reader = XML_INPUT_FACTORY.createXMLStreamReader(xmlStream);
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            value.setLength(0);
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            value.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            String tagName = reader.getLocalName();
+            if ("nodoInviaFlussoRendicontazione".equals(tagName)) {
+              FlussoRiversamento flussoRiversamento =
+                  decodeAndParseFlussoRiversamento(dati.get("xmlRendicontazione"));
+              FlussoRiversamentoHandler.checkFlowId(
+                  dati.get("identificativoFlusso"), flussoRiversamento);
+              return FlussoRendicontazione.builder()
+                  .identificativoPSP(dati.get("identificativoPSP"))
+                  .identificativoIntermediarioPSP(dati.get("identificativoIntermediarioPSP"))
+                  .identificativoCanale(dati.get("identificativoCanale"))
+                  .password(dati.get("password"))
+                  .identificativoDominio(dati.get("identificativoDominio"))
+                  .identificativoFlusso(dati.get("identificativoFlusso"))
+                  .dataOraFlusso(dati.get("dataOraFlusso"))
+                  .flussoRiversamento(flussoRiversamento)
+                  .build();
+            }
+            dati.put(tagName, value.toString().trim());
+            break;
+          default:
+            break;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new XmlParsingException("Error parsing XML stream", e);
+    } finally {
+      close(reader);
+    }
+    throw new XmlParsingException("Parsing failed: check the XML content of the file");
+  }
+
+  private static FlussoRiversamento decodeAndParseFlussoRiversamento(String base64Content)
+      throws SAXException {
+    if (base64Content == null || base64Content.isEmpty()) {
+      return null;
+    }
+
+    long start = System.nanoTime();
+    FlussoRiversamentoHandler handler = new FlussoRiversamentoHandler();
+    XMLStreamReader reader = null;
+    try {
+      reader =
+          XML_INPUT_FACTORY.createXMLStreamReader(
+              new ByteArrayInputStream(Base64.getDecoder().decode(base64Content)));
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            handler.startElement(null, reader.getLocalName(), reader.getLocalName(), null);
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            handler.characters(
+                reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            handler.endElement(null, reader.getLocalName(), reader.getLocalName());
+            break;
+          default:
+            break;
+        }
+      }
+      return handler.getFlussoRiversamento();
+    } catch (XMLStreamException | RuntimeException e) {
+      throw new XmlParsingException("Error parsing flusso riversamento", e);
+    } finally {
+      close(reader);
+      PipelineMetrics.recordSince(Stage.INNER_PARSE, start);
+    }
+  }
+
+  private static void close(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        // nothing to release
+      }
+    }
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    return factory;
+  }
+}
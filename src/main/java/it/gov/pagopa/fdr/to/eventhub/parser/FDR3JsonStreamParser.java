@@ -0,0 +1,320 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import it.gov.pagopa.fdr.to.eventhub.exception.JsonParsingException;
+import it.gov.pagopa.fdr.to.eventhub.mapper.FlowAggregates;
+import it.gov.pagopa.fdr.to.eventhub.mapper.FlussoRendicontazioneMapper;
+import it.gov.pagopa.fdr.to.eventhub.model.eventhub.FlowTxEventModel;
+import it.gov.pagopa.fdr.to.eventhub.model.eventhub.ReportedIUVEventModel;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sender.ReportedIUVChunker;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Reads an FDR3 flow with the Jackson streaming parser and turns it into the same events sent for
+ * an FDR1 flow. Each payment is mapped and serialized into the ReportedIUV chunks as soon as it is
+ * read, so the payment array is never bound to objects; only if payments come before the flow
+ * header they are kept, as compact records, until the header is complete.
+ */
+@UtilityClass
+public class FDR3JsonStreamParser {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  public static FlowEvents parseJsonStream(
+      InputStream jsonStream,
+      Map<String, String> metadata,
+      JsonMapper eventMapper,
+      int chunkSizeBytes)
+      throws IOException {
+
+    if (jsonStream == null) {
+      throw new JsonParsingException("The JSON stream is null");
+    }
+
+    try (JsonParser parser = JSON_FACTORY.createParser(jsonStream)) {
+      return new FlowReader(parser, metadata, eventMapper, chunkSizeBytes).read();
+    } catch (JsonParsingException e) {
+      throw e;
+    } catch (IOException | IllegalArgumentException e) {
+      throw new JsonParsingException("Invalid FDR3 flow: " + e.getMessage(), e);
+    }
+  }
+
+  /** Outcome code of the FDR1 flows for the FDR3 payment status. */
+  static Integer toOutcomeCode(String payStatus) {
+    if (payStatus == null) {
+      return null;
+    }
+    switch (payStatus) {
+      case "EXECUTED":
+        return 0;
+      case "REVOKED":
+        return 3;
+      case "STAND_IN":
+        return 4;
+      case "STAND_IN_NO_RPT":
+        return 8;
+      case "NO_RPT":
+        return 9;
+      default:
+        throw new IllegalArgumentException("Payment status not supported: " + payStatus);
+    }
+  }
+
+  private static class FlowReader {
+
+    private final JsonParser parser;
+    private final Map<String, String> metadata;
+    private final ObjectWriter eventWriter;
+    private final ReportedIUVChunker chunker;
+    private final FlowAggregates aggregates = new FlowAggregates();
+    private final int chunkSizeBytes;
+
+    // payments read before the flow header was complete
+    private final List<PendingPayment> pendingPayments = new ArrayList<>();
+
+    private String flowId;
+    private LocalDateTime flowDateTime;
+    private LocalDateTime regulationDate;
+    private String regulation;
+    private Integer totPayments;
+    private BigDecimal sumPayments;
+    private String domainId;
+    private String psp;
+    private String intPsp;
+    private boolean senderRead;
+    private boolean receiverRead;
+    private LocalDateTime insertedTimestamp;
+
+    FlowReader(
+        JsonParser parser, Map<String, String> metadata, JsonMapper eventMapper, int chunkSize) {
+      this.parser = parser;
+      this.metadata = metadata;
+      this.eventWriter = eventMapper.writerFor(ReportedIUVEventModel.class);
+      this.chunker = new ReportedIUVChunker(chunkSize);
+      this.chunkSizeBytes = chunkSize;
+      this.insertedTimestamp =
+          FlussoRendicontazioneMapper.parseDate(metadata.get("insertedTimestamp"));
+    }
+
+    FlowEvents read() throws IOException {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParsingException("The FDR3 flow is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "fdr":
+            flowId = parser.getValueAsString();
+            break;
+          case "fdrDate":
+            flowDateTime = FlussoRendicontazioneMapper.parseDate(parser.getValueAsString());
+            break;
+          case "regulation":
+            regulation = parser.getValueAsString();
+            break;
+          case "regulationDate":
+            regulationDate = FlussoRendicontazioneMapper.parseDate(parser.getValueAsString());
+            break;
+          case "totPayments":
+            totPayments = parser.getIntValue();
+            break;
+          case "computedTotPayments":
+            totPayments = totPayments == null ? parser.getIntValue() : totPayments;
+            break;
+          case "sumPayments":
+            sumPayments = parser.getDecimalValue();
+            break;
+          case "computedSumPayments":
+            sumPayments = sumPayments == null ? parser.getDecimalValue() : sumPayments;
+            break;
+          case "sender":
+            readSender();
+            break;
+          case "receiver":
+            readReceiver();
+            break;
+          case "payments":
+            readPayments();
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+
+      if (!isHeaderComplete()) {
+        throw new JsonParsingException(
+            "The FDR3 flow is missing fdr, fdrDate, sender or receiver: " + flowId);
+      }
+      flushPendingPayments();
+      return buildFlowEvents();
+    }
+
+    private void readSender() throws IOException {
+      expectObject("sender");
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        if ("pspId".equals(field)) {
+          psp = parser.getValueAsString();
+        } else if ("pspBrokerId".equals(field)) {
+          intPsp = parser.getValueAsString();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      senderRead = true;
+    }
+
+    private void readReceiver() throws IOException {
+      expectObject("receiver");
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        if ("organizationId".equals(field)) {
+          domainId = parser.getValueAsString();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      receiverRead = true;
+    }
+
+    private void readPayments() throws IOException {
+      if (parser.currentToken() != JsonToken.START_ARRAY) {
+        throw new JsonParsingException("The FDR3 field payments is not an array");
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        PendingPayment payment = readPayment();
+        if (isHeaderComplete()) {
+          flushPendingPayments();
+          addPayment(payment);
+        } else {
+          pendingPayments.add(payment);
+        }
+      }
+    }
+
+    private PendingPayment readPayment() throws IOException {
+      PendingPayment payment = new PendingPayment();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "iuv":
+            payment.iuv = parser.getValueAsString();
+            break;
+          case "iur":
+            payment.iur = parser.getValueAsString();
+            break;
+          case "pay":
+            payment.amount = parser.getDecimalValue();
+            break;
+          case "idTransfer":
+            payment.idTransfer = parser.getValueAsString();
+            break;
+          case "payStatus":
+            payment.payStatus = parser.getValueAsString();
+            break;
+          case "payDate":
+            payment.payDate = parser.getValueAsString();
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+      return payment;
+    }
+
+    private void addPayment(PendingPayment payment) throws IOException {
+      LocalDateTime payDate = FlussoRendicontazioneMapper.parseDate(payment.payDate);
+      ReportedIUVEventModel event =
+          ReportedIUVEventModel.builder()
+              .iuv(payment.iuv)
+              .iur(payment.iur)
+              .amount(payment.amount)
+              .outcomeCode(toOutcomeCode(payment.payStatus))
+              .idsp(payment.idTransfer)
+              .singlePaymentOutcomeDate(payDate)
+              .flowId(flowId)
+              .flowDateTime(flowDateTime)
+              .domainId(domainId)
+              .intPsp(intPsp)
+              .uniqueId(metadata.get("sessionId"))
+              .insertedTimestamp(insertedTimestamp)
+              .psp(psp)
+              .build();
+      chunker.add(eventWriter.writeValueAsString(event));
+      aggregates.add(event);
+    }
+
+    private void flushPendingPayments() throws IOException {
+      for (PendingPayment payment : pendingPayments) {
+        addPayment(payment);
+      }
+      pendingPayments.clear();
+    }
+
+    private FlowEvents buildFlowEvents() throws IOException {
+      FlowTxEventModel flowTx =
+          FlowTxEventModel.builder()
+              .flowId(flowId)
+              .flowDateTime(flowDateTime)
+              .regulationDate(regulationDate)
+              .paymentsNum(totPayments)
+              .amountPaid(sumPayments)
+              .domainId(domainId)
+              .intPsp(intPsp)
+              .uniqueId(metadata.get("sessionId"))
+              .insertedTimestamp(insertedTimestamp)
+              .psp(psp)
+              .causal(regulation)
+              // same rule of the FDR1 flows, from the dates collected by the aggregates
+              .allDates(aggregates.toAllDates(FlussoRendicontazioneMapper.getMaxDistinctDates()))
+              .summary(
+                  FlussoRendicontazioneMapper.isSummaryEnabled() ? aggregates.toSummary() : null)
+              .build();
+
+      return FlowEvents.builder()
+          .flowId(flowId)
+          .payments(chunker.getEvents())
+          .flowTxJson(eventWriter.forType(FlowTxEventModel.class).writeValueAsString(flowTx))
+          .reportedIUVChunks(chunker.finish())
+          .chunkFirstPayments(chunker.getChunkFirstEvents())
+          .chunkSizeBytes(chunkSizeBytes)
+          .build();
+    }
+
+    private boolean isHeaderComplete() {
+      return flowId != null && flowDateTime != null && senderRead && receiverRead;
+    }
+
+    private void expectObject(String field) throws IOException {
+      if (parser.currentToken() != JsonToken.START_OBJECT) {
+        throw new JsonParsingException("The FDR3 field " + field + " is not an object");
+      }
+    }
+  }
+
+  private static class PendingPayment {
+    private String iuv;
+    private String iur;
+    private BigDecimal amount;
+    private String idTransfer;
+    private String payStatus;
+    private String payDate;
+  }
+}
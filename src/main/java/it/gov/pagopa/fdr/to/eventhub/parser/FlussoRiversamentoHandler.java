@@ -0,0 +1,305 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import it.gov.pagopa.fdr.to.eventhub.exception.XmlParsingException;
+import it.gov.pagopa.fdr.to.eventhub.mapper.FlowAggregates;
+import it.gov.pagopa.fdr.to.eventhub.model.DatiSingoloPagamento;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRiversamento;
+import it.gov.pagopa.fdr.to.eventhub.model.Istituto;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the FlussoRiversamento of an FDR1 flow. The elements of the FdR schema are looked up once
+ * per tag and dispatched by a switch into typed fields; the text of any other element is not even
+ * buffered. The values of the payment fields with few distinct values (outcome date and code,
+ * index) are shared across the payments of the flow through a {@link StringTable}.
+ */
+class FlussoRiversamentoHandler extends DefaultHandler {
+
+  /** The elements of FlussoRiversamento that are read, by local name. */
+  private enum Element {
+    VERSIONE_OGGETTO("versioneOggetto"),
+    IDENTIFICATIVO_FLUSSO("identificativoFlusso"),
+    DATA_ORA_FLUSSO("dataOraFlusso"),
+    IDENTIFICATIVO_UNIVOCO_REGOLAMENTO("identificativoUnivocoRegolamento"),
+    DATA_REGOLAMENTO("dataRegolamento"),
+    NUMERO_TOTALE_PAGAMENTI("numeroTotalePagamenti"),
+    IMPORTO_TOTALE_PAGAMENTI("importoTotalePagamenti"),
+    ISTITUTO_MITTENTE("istitutoMittente", false, false),
+    ISTITUTO_RICEVENTE("istitutoRicevente", false, false),
+    TIPO_IDENTIFICATIVO_UNIVOCO("tipoIdentificativoUnivoco"),
+    CODICE_IDENTIFICATIVO_UNIVOCO("codiceIdentificativoUnivoco"),
+    DENOMINAZIONE_MITTENTE("denominazioneMittente"),
+    DENOMINAZIONE_RICEVENTE("denominazioneRicevente"),
+    DATI_SINGOLI_PAGAMENTI("datiSingoliPagamenti", false, false),
+    IDENTIFICATIVO_UNIVOCO_VERSAMENTO("identificativoUnivocoVersamento"),
+    IDENTIFICATIVO_UNIVOCO_RISCOSSIONE("identificativoUnivocoRiscossione"),
+    INDICE_DATI_SINGOLO_PAGAMENTO("indiceDatiSingoloPagamento", true, true),
+    SINGOLO_IMPORTO_PAGATO("singoloImportoPagato"),
+    CODICE_ESITO_SINGOLO_PAGAMENTO("codiceEsitoSingoloPagamento", true, true),
+    DATA_ESITO_SINGOLO_PAGAMENTO("dataEsitoSingoloPagamento", true, true);
+
+    private static final Map<String, Element> BY_NAME = new HashMap<>();
+
+    static {
+      for (Element element : values()) {
+        BY_NAME.put(element.localName, element);
+      }
+    }
+
+    private final String localName;
+    // the text of the element is read, it is not a container
+    private final boolean text;
+    // the element has few distinct values, repeated in the payments
+    private final boolean interned;
+
+    Element(String localName) {
+      this(localName, true, false);
+    }
+
+    Element(String localName, boolean text, boolean interned) {
+      this.localName = localName;
+      this.text = text;
+      this.interned = interned;
+    }
+
+    static Element of(String localName) {
+      return BY_NAME.get(localName);
+    }
+  }
+
+  // distinct values of the interned elements kept per flow, beyond them values are not shared
+  private static final int MAX_INTERNED_VALUES = 1024;
+
+  private final FlussoRiversamento flussoRiversamento;
+  private final StringBuilder value = new StringBuilder();
+  private final StringTable internedValues = new StringTable(MAX_INTERNED_VALUES);
+  // element whose text is being buffered, null outside the elements that are read
+  private Element current;
+
+  private String numeroTotalePagamenti;
+  private String importoTotalePagamenti;
+
+  // the istituto being read
+  private String tipoIdentificativoUnivoco;
+  private String codiceIdentificativoUnivoco;
+  private String denominazione;
+
+  // the payment being read
+  private String identificativoUnivocoVersamento;
+  private String identificativoUnivocoRiscossione;
+  private String indiceDatiSingoloPagamento;
+  private String singoloImportoPagato;
+  private String codiceEsitoSingoloPagamento;
+  private String dataEsitoSingoloPagamento;
+
+  // running totals of the payments read so far
+  private int payments;
+  private long paymentsCents;
+
+  public FlussoRiversamentoHandler() {
+    this.flussoRiversamento = new FlussoRiversamento();
+    this.flussoRiversamento.setDatiSingoliPagamenti(new ArrayList<>());
+  }
+
+  public FlussoRiversamento getFlussoRiversamento() throws XmlParsingException {
+    if (FDR1XmlSAXParser.isConsistencyCheckEnabled()) {
+      checkTotals();
+    }
+    flussoRiversamento.setNumeroTotalePagamenti(Integer.parseInt(numeroTotalePagamenti));
+    flussoRiversamento.setImportoTotalePagamenti(Double.parseDouble(importoTotalePagamenti));
+    return flussoRiversamento;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes)
+      throws SAXException {
+    Element element = Element.of(normalizeTag(qName));
+    if (element == null) {
+      current = null;
+      return;
+    }
+    if (element.text) {
+      value.setLength(0);
+      current = element;
+      return;
+    }
+    current = null;
+    if (element == Element.DATI_SINGOLI_PAGAMENTI) {
+      clearPayment();
+    } else {
+      clearIstituto();
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    if (current != null) {
+      value.append(ch, start, length);
+    }
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    Element element = Element.of(normalizeTag(qName));
+    if (element == null) {
+      return;
+    }
+    String content = element.text && element == current ? text(element) : null;
+    current = null;
+
+    switch (element) {
+      case VERSIONE_OGGETTO:
+        flussoRiversamento.setVersioneOggetto(content);
+        break;
+      case IDENTIFICATIVO_FLUSSO:
+        flussoRiversamento.setIdentificativoFlusso(content);
+        break;
+      case DATA_ORA_FLUSSO:
+        flussoRiversamento.setDataOraFlusso(content);
+        break;
+      case IDENTIFICATIVO_UNIVOCO_REGOLAMENTO:
+        flussoRiversamento.setIdentificativoUnivocoRegolamento(content);
+        break;
+      case DATA_REGOLAMENTO:
+        flussoRiversamento.setDataRegolamento(content);
+        break;
+      case NUMERO_TOTALE_PAGAMENTI:
+        numeroTotalePagamenti = content;
+        break;
+      case IMPORTO_TOTALE_PAGAMENTI:
+        importoTotalePagamenti = content;
+        break;
+      case ISTITUTO_MITTENTE:
+        flussoRiversamento.setIstitutoMittente(toIstituto());
+        break;
+      case ISTITUTO_RICEVENTE:
+        flussoRiversamento.setIstitutoRicevente(toIstituto());
+        break;
+      case TIPO_IDENTIFICATIVO_UNIVOCO:
+        tipoIdentificativoUnivoco = content;
+        break;
+      case CODICE_IDENTIFICATIVO_UNIVOCO:
+        codiceIdentificativoUnivoco = content;
+        break;
+      case DENOMINAZIONE_MITTENTE:
+      case DENOMINAZIONE_RICEVENTE:
+        denominazione = content;
+        break;
+      case DATI_SINGOLI_PAGAMENTI:
+        flussoRiversamento.getDatiSingoliPagamenti().add(toDatiSingoloPagamento());
+        if (FDR1XmlSAXParser.isConsistencyCheckEnabled()) {
+          countPayment();
+        }
+        break;
+      case IDENTIFICATIVO_UNIVOCO_VERSAMENTO:
+        identificativoUnivocoVersamento = content;
+        break;
+      case IDENTIFICATIVO_UNIVOCO_RISCOSSIONE:
+        identificativoUnivocoRiscossione = content;
+        break;
+      case INDICE_DATI_SINGOLO_PAGAMENTO:
+        indiceDatiSingoloPagamento = content;
+        break;
+      case SINGOLO_IMPORTO_PAGATO:
+        singoloImportoPagato = content;
+        break;
+      case CODICE_ESITO_SINGOLO_PAGAMENTO:
+        codiceEsitoSingoloPagamento = content;
+        break;
+      case DATA_ESITO_SINGOLO_PAGAMENTO:
+        dataEsitoSingoloPagamento = content;
+        break;
+    }
+  }
+
+  /**
+   * Checks that the identificativoFlusso of the SOAP request is the one of the flow it carries.
+   *
+   * @throws XmlParsingException if they differ.
+   */
+  static void checkFlowId(String identificativoFlusso, FlussoRiversamento flussoRiversamento)
+      throws XmlParsingException {
+    if (FDR1XmlSAXParser.isConsistencyCheckEnabled()
+        && flussoRiversamento != null
+        && !Objects.equals(identificativoFlusso, flussoRiversamento.getIdentificativoFlusso())) {
+      throw new XmlParsingException(
+          String.format(
+              "Inconsistent flow: identificativoFlusso %s, %s in xmlRendicontazione",
+              identificativoFlusso, flussoRiversamento.getIdentificativoFlusso()));
+    }
+  }
+
+  // the header precedes the payments: a flow with too many of them is rejected at the first extra
+  private void countPayment() throws XmlParsingException {
+    payments++;
+    paymentsCents += FlowAggregates.toCents(new BigDecimal(singoloImportoPagato));
+    if (numeroTotalePagamenti != null && payments > Integer.parseInt(numeroTotalePagamenti)) {
+      throw new XmlParsingException(
+          String.format(
+              "Inconsistent flow %s: more than numeroTotalePagamenti %s payments",
+              flussoRiversamento.getIdentificativoFlusso(), numeroTotalePagamenti));
+    }
+  }
+
+  private void checkTotals() throws XmlParsingException {
+    int numeroTotale = Integer.parseInt(numeroTotalePagamenti);
+    long importoTotaleCents = FlowAggregates.toCents(new BigDecimal(importoTotalePagamenti));
+    if (payments != numeroTotale || paymentsCents != importoTotaleCents) {
+      throw new XmlParsingException(
+          String.format(
+              "Inconsistent flow %s: %d payments for %s, numeroTotalePagamenti %d"
+                  + " importoTotalePagamenti %s",
+              flussoRiversamento.getIdentificativoFlusso(),
+              payments,
+              BigDecimal.valueOf(paymentsCents, 2),
+              numeroTotale,
+              BigDecimal.valueOf(importoTotaleCents, 2)));
+    }
+  }
+
+  private String text(Element element) {
+    return element.interned ? internedValues.intern(value) : value.toString().trim();
+  }
+
+  private String normalizeTag(String qName) {
+    // Removes the namespace if present
+    int colon = qName.indexOf(':');
+    return colon < 0 ? qName : qName.substring(colon + 1);
+  }
+
+  private void clearIstituto() {
+    tipoIdentificativoUnivoco = null;
+    codiceIdentificativoUnivoco = null;
+    denominazione = null;
+  }
+
+  private void clearPayment() {
+    identificativoUnivocoVersamento = null;
+    identificativoUnivocoRiscossione = null;
+    indiceDatiSingoloPagamento = null;
+    singoloImportoPagato = null;
+    codiceEsitoSingoloPagamento = null;
+    dataEsitoSingoloPagamento = null;
+  }
+
+  private Istituto toIstituto() {
+    return new Istituto(tipoIdentificativoUnivoco, codiceIdentificativoUnivoco, denominazione);
+  }
+
+  private DatiSingoloPagamento toDatiSingoloPagamento() {
+    return new DatiSingoloPagamento(
+        identificativoUnivocoVersamento,
+        identificativoUnivocoRiscossione,
+        indiceDatiSingoloPagamento,
+        Double.parseDouble(singoloImportoPagato),
+        Integer.parseInt(codiceEsitoSingoloPagamento),
+        dataEsitoSingoloPagamento);
+  }
+}
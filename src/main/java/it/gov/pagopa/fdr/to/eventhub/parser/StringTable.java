@@ -0,0 +1,95 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+/**
+ * Intern table of the text values of a flow, looked up straight from the parser buffer: a value
+ * already met is returned without allocating a new String. Meant for the fields with few distinct
+ * values repeated in every payment; once full, new values are no longer kept and each lookup of one
+ * of them allocates as usual.
+ */
+class StringTable {
+
+  private final int maxEntries;
+  private String[] slots;
+  private int[] hashes;
+  private int size;
+
+  StringTable(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.slots = new String[16];
+    this.hashes = new int[16];
+  }
+
+  /** The text of the buffer, without leading and trailing whitespace as with String#trim. */
+  String intern(CharSequence buffer) {
+    int start = 0;
+    int end = buffer.length();
+    while (start < end && buffer.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && buffer.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + buffer.charAt(i);
+    }
+    int mask = slots.length - 1;
+    int slot = mix(hash) & mask;
+    while (slots[slot] != null) {
+      if (hashes[slot] == hash && contentEquals(slots[slot], buffer, start, end)) {
+        return slots[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    String value = buffer.subSequence(start, end).toString();
+    if (size < maxEntries) {
+      slots[slot] = value;
+      hashes[slot] = hash;
+      if (++size * 2 > slots.length) {
+        grow();
+      }
+    }
+    return value;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private static boolean contentEquals(String value, CharSequence buffer, int start, int end) {
+    if (value.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) != buffer.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void grow() {
+    String[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new String[oldSlots.length * 2];
+    hashes = new int[oldSlots.length * 2];
+    int mask = slots.length - 1;
+    for (int i = 0; i < oldSlots.length; i++) {
+      if (oldSlots[i] != null) {
+        int slot = mix(oldHashes[i]) & mask;
+        while (slots[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = oldSlots[i];
+        hashes[slot] = oldHashes[i];
+      }
+    }
+  }
+
+  // folds the high bits of the hash into the low ones selected by the mask
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,45 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Outcome of the recovery of a single blob. */
+@Value
+@Builder
+public class BlobRecoveryResult {
+
+  public enum Outcome {
+    SENT,
+    // dry run: the flow parsed and was chunked, nothing was sent
+    VALIDATED,
+    // already delivered and not forced
+    SKIPPED,
+    NOT_FOUND,
+    // the content is not a valid flow
+    INVALID,
+    NOT_PROCESSABLE,
+    NOT_DELIVERED,
+    FAILED
+  }
+
+  String container;
+  String fileName;
+  Outcome outcome;
+  String flowId;
+  // SHA-256 of the decompressed XML, as set on the events
+  String contentSha256;
+  boolean dryRun;
+  // events of the flow delivered to the Event Hubs (FlowTx + one ReportedIUV per payment), or that
+  // would be in a dry run
+  long events;
+  // compressed blob size
+  long bytes;
+  // payments of the flow
+  int payments;
+  // dry run only: serialized size of all the events of the flow
+  long serializedBytes;
+  // ReportedIUV chunks sent, or that would be sent in a dry run
+  int chunks;
+  long elapsedMillis;
+  String message;
+}
@@ -0,0 +1,264 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.exception.CircuitBreakerOpenException;
+import it.gov.pagopa.fdr.to.eventhub.exception.JsonParsingException;
+import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult.Outcome;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryPlan;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryRecord;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventSink;
+import it.gov.pagopa.fdr.to.eventhub.source.FlowSource;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads a blob from the FDR storage account and delivers it to the Event Hubs, reporting the
+ * outcome instead of throwing. Shared by the single, bulk and asynchronous recovery endpoints.
+ *
+ * <p>In dry-run mode the blob is decompressed, parsed, mapped and chunked as for a real delivery,
+ * and the result reports the payments, chunks and serialized bytes the flow would produce; the
+ * Event Hubs are never contacted, not even to check the circuit breakers.
+ *
+ * <p>A flow found in the {@link it.gov.pagopa.fdr.to.eventhub.sender.DeliveryIndex} is skipped
+ * before parsing, unless the recovery is forced.
+ *
+ * <p>The blobs are read with the {@link FlowSource} of their container and delivered through the
+ * {@link EventSink}, composed from the same configuration as the blob triggers.
+ */
+public class BlobRecoveryService {
+
+  public static final String STORAGE_ENV_VAR = "FDR_SA_CONNECTION_STRING";
+
+  private final String fdr3Container =
+      System.getenv().getOrDefault("BLOB_STORAGE_FDR3_CONTAINER", "fdr3-flows");
+  private final EventHubProducerClient eventHubClientFlowTx;
+  private final EventHubProducerClient eventHubClientReportedIUV;
+  private final FlowSource fdr1Source;
+  private final FlowSource fdr3Source;
+  private final EventSink eventSink;
+
+  public BlobRecoveryService(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV) {
+    this(
+        eventHubClientFlowTx,
+        eventHubClientReportedIUV,
+        FlowSource.fromEnvironment("FDR1_FLOW_SOURCE", "fdr1-sax"),
+        FlowSource.fromEnvironment("FDR3_FLOW_SOURCE", "fdr3-json"),
+        createEventSink(eventHubClientFlowTx, eventHubClientReportedIUV));
+  }
+
+  public BlobRecoveryService(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV,
+      FlowSource fdr1Source,
+      FlowSource fdr3Source,
+      EventSink eventSink) {
+    this.eventHubClientFlowTx = eventHubClientFlowTx;
+    this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+    this.fdr1Source = fdr1Source;
+    this.fdr3Source = fdr3Source;
+    this.eventSink = eventSink;
+  }
+
+  private static EventSink createEventSink(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV) {
+    try {
+      return EventSink.fromEnvironment(eventHubClientFlowTx, eventHubClientReportedIUV);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public BlobRecoveryResult recover(String container, String fileName, ExecutionContext context) {
+    return recover(container, fileName, context, RecoveryProgress.NONE, RecoveryOptions.DEFAULT);
+  }
+
+  public BlobRecoveryResult recover(
+      String container,
+      String fileName,
+      ExecutionContext context,
+      RecoveryProgress progress,
+      RecoveryOptions options) {
+    long start = System.nanoTime();
+    boolean dryRun = options.isDryRun();
+    BlobRecoveryResult.BlobRecoveryResultBuilder result =
+        BlobRecoveryResult.builder().container(container).fileName(fileName).dryRun(dryRun);
+    try {
+      if (!dryRun) {
+        CommonUtil.checkEventHubAvailability(eventHubClientFlowTx, eventHubClientReportedIUV);
+      }
+
+      progress.onPhase(RecoveryPhase.DOWNLOADING);
+      BlobFileData fileData = CommonUtil.getBlobFile(STORAGE_ENV_VAR, container, fileName, context);
+
+      if (Objects.isNull(fileData)) {
+        return result
+            .outcome(Outcome.NOT_FOUND)
+            .message(String.format("File %s not found in container %s", fileName, container))
+            .elapsedMillis(elapsedMillis(start))
+            .build();
+      }
+      result.bytes(fileData.getFileContent() == null ? 0 : fileData.getFileContent().length);
+
+      if (!CommonUtil.validateBlobMetadata(fileData.getMetadata())) {
+        return result
+            .outcome(Outcome.NOT_PROCESSABLE)
+            .message(
+                String.format(
+                    "The file %s in container %s is missing required metadata",
+                    fileName, container))
+            .elapsedMillis(elapsedMillis(start))
+            .build();
+      }
+
+      String blobHash = CommonUtil.blobHash(fileData.getFileContent());
+      if (!dryRun && !options.isForce()) {
+        Optional<DeliveryRecord> previousDelivery =
+            CommonUtil.findDelivery(fileData.getMetadata(), blobHash);
+        if (previousDelivery.isPresent()) {
+          return result
+              .outcome(Outcome.SKIPPED)
+              .flowId(previousDelivery.get().getFlowId())
+              .message(
+                  String.format(
+                      "Flow ID %s of file %s in container %s was already delivered at %s, use"
+                          + " force to send it again",
+                      previousDelivery.get().getFlowId(),
+                      fileName,
+                      container,
+                      Instant.ofEpochMilli(previousDelivery.get().getDeliveredAt())))
+              .elapsedMillis(elapsedMillis(start))
+              .build();
+        }
+      }
+
+      progress.onPhase(RecoveryPhase.PARSING);
+      boolean isValidGzipFile = CommonUtil.isGzip(fileData.getFileContent());
+      AtomicInteger chunksSent = new AtomicInteger();
+      // a recovery resumes from the chunks already acknowledged for the same upload, by the blob
+      // trigger as well: both identify the blob version by its sessionId
+      DeliveryOptions deliveryOptions =
+          DeliveryOptions.builder()
+              .blobName(container + "/" + fileName)
+              .sessionId(fileData.getMetadata().get("sessionId"))
+              .priority(options.getPriority())
+              .listener(
+                  (chunkIndex, chunkCount) -> {
+                    chunksSent.incrementAndGet();
+                    progress.onChunkAcknowledged(chunkIndex, chunkCount);
+                  })
+              .build();
+
+      FlowEvents flowEvents;
+      try (InputStream decompressedStream =
+          isValidGzipFile
+              ? CommonUtil.decompressGzip(fileData.getFileContent())
+              : new ByteArrayInputStream(fileData.getFileContent())) {
+        flowEvents =
+            sourceOf(container)
+                .read(
+                    decompressedStream,
+                    fileData.getMetadata(),
+                    eventSink.chunkSizeBytes(deliveryOptions));
+      }
+      result
+          .flowId(flowEvents.getFlowId())
+          .contentSha256(flowEvents.getContentSha256())
+          .payments(flowEvents.getPayments())
+          .events(1L + flowEvents.getPayments());
+
+      if (dryRun) {
+        DeliveryPlan plan = CommonUtil.planDelivery(flowEvents);
+        return result
+            .outcome(Outcome.VALIDATED)
+            .chunks(plan.getChunks())
+            .serializedBytes(plan.getFlowTxBytes() + plan.getReportedIUVBytes())
+            .message(
+                String.format(
+                    "Validated file: %s in container: %s, nothing sent", fileName, container))
+            .elapsedMillis(elapsedMillis(start))
+            .build();
+      }
+
+      progress.onPhase(RecoveryPhase.SENDING);
+      try {
+        eventSink.deliver(flowEvents, fileData.getMetadata(), deliveryOptions, context);
+      } catch (IOException e) {
+        return result
+            .outcome(Outcome.NOT_DELIVERED)
+            .events(0)
+            .chunks(chunksSent.get())
+            .message(
+                String.format(
+                    "EventHub failed to confirm batch processing for flow ID %s [file %s,"
+                        + " container %s]",
+                    flowEvents.getFlowId(), fileName, container))
+            .elapsedMillis(elapsedMillis(start))
+            .build();
+      }
+
+      CommonUtil.recordDelivery(
+          container + "/" + fileName,
+          fileData.getMetadata(),
+          blobHash,
+          flowEvents.getContentSha256(),
+          flowEvents.getFlowId());
+      return result
+          .outcome(Outcome.SENT)
+          .chunks(chunksSent.get())
+          .message(
+              String.format(
+                  "Processed recovery request for file: %s in container: %s", fileName, container))
+          .elapsedMillis(elapsedMillis(start))
+          .build();
+
+    } catch (CircuitBreakerOpenException e) {
+      return result
+          .outcome(Outcome.NOT_DELIVERED)
+          .message(e.getMessage())
+          .elapsedMillis(elapsedMillis(start))
+          .build();
+    } catch (SAXException | JsonParsingException e) {
+      return result
+          .outcome(Outcome.INVALID)
+          .message(e.getMessage())
+          .elapsedMillis(elapsedMillis(start))
+          .build();
+    } catch (Exception e) {
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "[HTTP FDR] Unexpected error recovering %s/%s: %s",
+                      container, fileName, e.getMessage()));
+      return result
+          .outcome(Outcome.FAILED)
+          .message("Internal Server Error")
+          .elapsedMillis(elapsedMillis(start))
+          .build();
+    }
+  }
+
+  private FlowSource sourceOf(String container) {
+    return fdr3Container.equals(container) ? fdr3Source : fdr1Source;
+  }
+
+  private static long elapsedMillis(long start) {
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+}
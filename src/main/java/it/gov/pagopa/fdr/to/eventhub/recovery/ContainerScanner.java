@@ -0,0 +1,163 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.storage.blob.models.BlobItem;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.mapper.FlussoRendicontazioneMapper;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Pages through a container and recovers the blobs matching a {@link ScanRequest}. The listing runs
+ * on the calling thread while the matching blobs are downloaded and sent by a pool of workers, so
+ * the next page is fetched while the previous one is still being processed. At most two blobs per
+ * worker are prefetched ahead of the pool.
+ *
+ * <p>The scan returns only after every submitted blob has been processed, so the returned
+ * continuation token can be used to resume without skipping any blob. The insertedTimestamp of the
+ * blobs is parsed as the flows do, offsets included; the blobs whose timestamp cannot be parsed are
+ * counted in the result.
+ */
+public class ContainerScanner {
+
+  private static final String INSERTED_TIMESTAMP = "insertedTimestamp";
+
+  enum Match {
+    MATCHED,
+    FILTERED,
+    UNPARSABLE_TIMESTAMP
+  }
+
+  private final BlobRecoveryService recoveryService;
+
+  public ContainerScanner(BlobRecoveryService recoveryService) {
+    this.recoveryService = recoveryService;
+  }
+
+  /**
+   * Scans the container and hands every result to {@code onResult}, which is called from the worker
+   * threads and must be thread-safe.
+   */
+  public ScanResult scan(
+      ScanRequest request, ExecutionContext context, Consumer<BlobRecoveryResult> onResult)
+      throws InterruptedException {
+    long scanned = 0;
+    long matched = 0;
+    long unparsableTimestamps = 0;
+    String continuationToken = null;
+
+    int parallelism = Math.max(1, request.getParallelism());
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    Semaphore prefetched = new Semaphore(parallelism * 2);
+    try {
+      for (PagedResponse<BlobItem> page :
+          CommonUtil.listBlobPages(
+              BlobRecoveryService.STORAGE_ENV_VAR,
+              request.getContainer(),
+              request.getPrefix(),
+              request.getPageSize(),
+              request.getContinuationToken())) {
+        for (BlobItem blobItem : page.getValue()) {
+          scanned++;
+          Match match = match(request, blobItem);
+          if (match == Match.UNPARSABLE_TIMESTAMP) {
+            unparsableTimestamps++;
+          }
+          if (match != Match.MATCHED) {
+            continue;
+          }
+          matched++;
+          prefetched.acquire();
+          executor.execute(
+              () -> {
+                try {
+                  onResult.accept(
+                      recoveryService.recover(
+                          request.getContainer(),
+                          blobItem.getName(),
+                          context,
+                          RecoveryProgress.NONE,
+                          request.getOptions()));
+                } finally {
+                  prefetched.release();
+                }
+              });
+        }
+        continuationToken = page.getContinuationToken();
+        if (continuationToken == null
+            || (request.getMaxBlobs() > 0 && matched >= request.getMaxBlobs())) {
+          break;
+        }
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    long scannedBlobs = scanned;
+    long matchedBlobs = matched;
+    long unparsableBlobs = unparsableTimestamps;
+    context
+        .getLogger()
+        .info(
+            () ->
+                String.format(
+                    "[HTTP FDR] Scan of container %s, prefix '%s': %d blobs scanned, %d matched,"
+                        + " %d skipped for an unparsable insertedTimestamp",
+                    request.getContainer(),
+                    request.getPrefix(),
+                    scannedBlobs,
+                    matchedBlobs,
+                    unparsableBlobs));
+    return ScanResult.builder()
+        .scanned(scanned)
+        .matched(matched)
+        .unparsableTimestamps(unparsableTimestamps)
+        .continuationToken(continuationToken)
+        .build();
+  }
+
+  static boolean matches(ScanRequest request, BlobItem blobItem) {
+    return match(request, blobItem) == Match.MATCHED;
+  }
+
+  static Match match(ScanRequest request, BlobItem blobItem) {
+    if (Boolean.TRUE.equals(blobItem.isPrefix())) {
+      return Match.FILTERED;
+    }
+    if (request.getModifiedFrom() != null || request.getModifiedTo() != null) {
+      OffsetDateTime lastModified =
+          blobItem.getProperties() == null ? null : blobItem.getProperties().getLastModified();
+      if (lastModified == null
+          || (request.getModifiedFrom() != null && lastModified.isBefore(request.getModifiedFrom()))
+          || (request.getModifiedTo() != null && !lastModified.isBefore(request.getModifiedTo()))) {
+        return Match.FILTERED;
+      }
+    }
+    if (request.getInsertedFrom() != null || request.getInsertedTo() != null) {
+      String timestamp =
+          blobItem.getMetadata() == null ? null : blobItem.getMetadata().get(INSERTED_TIMESTAMP);
+      if (timestamp == null) {
+        return Match.FILTERED;
+      }
+      LocalDateTime inserted;
+      try {
+        // the same parsing as the insertedTimestamp of the events, an offset moves it to UTC+1
+        inserted = FlussoRendicontazioneMapper.parseDate(timestamp);
+      } catch (IllegalArgumentException e) {
+        return Match.UNPARSABLE_TIMESTAMP;
+      }
+      return (request.getInsertedFrom() == null || !inserted.isBefore(request.getInsertedFrom()))
+              && (request.getInsertedTo() == null || inserted.isBefore(request.getInsertedTo()))
+          ? Match.MATCHED
+          : Match.FILTERED;
+    }
+    return Match.MATCHED;
+  }
+}
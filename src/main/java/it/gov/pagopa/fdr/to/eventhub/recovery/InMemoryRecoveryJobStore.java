@@ -0,0 +1,29 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryRecoveryJobStore implements RecoveryJobStore {
+
+  private final Map<String, RecoveryJob> jobs = new ConcurrentHashMap<>();
+  private final long retentionMillis;
+
+  public InMemoryRecoveryJobStore(long retentionMillis) {
+    this.retentionMillis = retentionMillis;
+  }
+
+  @Override
+  public void save(RecoveryJob job) {
+    jobs.put(job.getJobId(), job.copy());
+    long expiredBefore = System.currentTimeMillis() - retentionMillis;
+    jobs.values()
+        .removeIf(
+            stored -> stored.getPhase().isFinished() && stored.getUpdatedAt() < expiredBefore);
+  }
+
+  @Override
+  public Optional<RecoveryJob> find(String jobId) {
+    return Optional.ofNullable(jobs.get(jobId)).map(RecoveryJob::copy);
+  }
+}
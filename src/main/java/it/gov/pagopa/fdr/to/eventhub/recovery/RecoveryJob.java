@@ -0,0 +1,36 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** State of an asynchronous recovery, as reported by the status endpoint. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecoveryJob {
+
+  private String jobId;
+  private String container;
+  private String fileName;
+  private RecoveryOptions options;
+  private RecoveryPhase phase;
+  private String flowId;
+  private int chunksSent;
+  private int chunksTotal;
+  // dry run only
+  private int payments;
+  private long serializedBytes;
+  @Builder.Default private List<String> errors = new ArrayList<>();
+  private long submittedAt;
+  private long updatedAt;
+
+  /** A snapshot of the job, not affected by the later updates of its recovery. */
+  public RecoveryJob copy() {
+    return toBuilder().errors(new ArrayList<>(errors)).build();
+  }
+}
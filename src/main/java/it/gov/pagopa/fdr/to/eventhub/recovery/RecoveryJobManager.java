@@ -0,0 +1,160 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult.Outcome;
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter.Priority;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs the recovery of a blob in background and tracks its progress in a {@link RecoveryJobStore}.
+ * The jobs run on a small bounded pool, RECOVERY_JOB_THREADS, and their sends acquire the rate
+ * limiters of the hubs, shared with the blob triggers, with {@link Priority#LOW}: when limits are
+ * configured, they give way to the live flows and never exceed them. When the queue is full the
+ * submit is rejected. A job outlives the submit invocation, so it logs through a context of its
+ * own, identified by the job ID.
+ */
+public class RecoveryJobManager {
+
+  private static final Logger logger = Logger.getLogger(RecoveryJobManager.class.getName());
+
+  private final BlobRecoveryService recoveryService;
+  private final RecoveryJobStore jobStore;
+  private final ThreadPoolExecutor executor;
+
+  public RecoveryJobManager(
+      BlobRecoveryService recoveryService,
+      RecoveryJobStore jobStore,
+      int threads,
+      int queueCapacity) {
+    this.recoveryService = recoveryService;
+    this.jobStore = jobStore;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "fdr-recovery-job-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  public static RecoveryJobManager fromEnvironment(BlobRecoveryService recoveryService) {
+    return new RecoveryJobManager(
+        recoveryService,
+        RecoveryJobStore.fromEnvironment(),
+        Integer.parseInt(System.getenv().getOrDefault("RECOVERY_JOB_THREADS", "2")),
+        Integer.parseInt(System.getenv().getOrDefault("RECOVERY_JOB_QUEUE_CAPACITY", "100")));
+  }
+
+  /**
+   * Queues the recovery of the blob and returns the job in the QUEUED phase. The job returned is a
+   * snapshot: the recovery updates an instance of its own, published only through the store.
+   *
+   * @throws RejectedExecutionException if too many jobs are already waiting
+   */
+  public RecoveryJob submit(String container, String fileName, RecoveryOptions options) {
+    long now = System.currentTimeMillis();
+    RecoveryJob job =
+        RecoveryJob.builder()
+            .jobId(UUID.randomUUID().toString())
+            .container(container)
+            .fileName(fileName)
+            .options(options)
+            .phase(RecoveryPhase.QUEUED)
+            .submittedAt(now)
+            .updatedAt(now)
+            .build();
+    jobStore.save(job);
+    RecoveryJob submitted = job.copy();
+    try {
+      executor.execute(() -> run(job));
+    } catch (RejectedExecutionException e) {
+      fail(job, "Recovery job queue is full");
+      throw e;
+    }
+    return submitted;
+  }
+
+  public Optional<RecoveryJob> find(String jobId) {
+    return jobStore.find(jobId);
+  }
+
+  private void run(RecoveryJob job) {
+    BlobRecoveryResult result =
+        recoveryService.recover(
+            job.getContainer(),
+            job.getFileName(),
+            jobContext(job),
+            new RecoveryProgress() {
+              @Override
+              public void onPhase(RecoveryPhase phase) {
+                job.setPhase(phase);
+                update(job);
+              }
+
+              @Override
+              public void onChunkAcknowledged(int chunkIndex, int chunkCount) {
+                job.setChunksSent(chunkIndex + 1);
+                job.setChunksTotal(chunkCount);
+                update(job);
+              }
+            },
+            job.getOptions().toBuilder().priority(Priority.LOW).build());
+
+    job.setFlowId(result.getFlowId());
+    if (result.getOutcome() == Outcome.VALIDATED) {
+      job.setChunksTotal(result.getChunks());
+      job.setPayments(result.getPayments());
+      job.setSerializedBytes(result.getSerializedBytes());
+    }
+    if (result.getOutcome() == Outcome.SENT || result.getOutcome() == Outcome.VALIDATED) {
+      job.setPhase(RecoveryPhase.COMPLETED);
+      update(job);
+    } else {
+      fail(job, result.getOutcome() + ": " + result.getMessage());
+    }
+  }
+
+  private static ExecutionContext jobContext(RecoveryJob job) {
+    return new ExecutionContext() {
+      @Override
+      public Logger getLogger() {
+        return logger;
+      }
+
+      @Override
+      public String getInvocationId() {
+        return job.getJobId();
+      }
+
+      @Override
+      public String getFunctionName() {
+        return "RecoveryJob";
+      }
+    };
+  }
+
+  private void fail(RecoveryJob job, String error) {
+    job.getErrors().add(error);
+    job.setPhase(RecoveryPhase.FAILED);
+    update(job);
+  }
+
+  private void update(RecoveryJob job) {
+    job.setUpdatedAt(System.currentTimeMillis());
+    jobStore.save(job);
+  }
+}
@@ -0,0 +1,26 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/** Keeps the state of the recovery jobs, so that it can be polled after the submit call. */
+public interface RecoveryJobStore {
+
+  void save(RecoveryJob job);
+
+  Optional<RecoveryJob> find(String jobId);
+
+  /**
+   * Builds the store selected by RECOVERY_JOB_STORE. Only {@code memory} (default) is provided;
+   * finished jobs are kept for RECOVERY_JOB_RETENTION_MS.
+   */
+  static RecoveryJobStore fromEnvironment() {
+    String store = System.getenv().getOrDefault("RECOVERY_JOB_STORE", "memory");
+    if (!"memory".equalsIgnoreCase(store)) {
+      Logger.getLogger(RecoveryJobStore.class.getName())
+          .warning(() -> "Unknown recovery job store " + store + ", using memory");
+    }
+    return new InMemoryRecoveryJobStore(
+        Long.parseLong(System.getenv().getOrDefault("RECOVERY_JOB_RETENTION_MS", "86400000")));
+  }
+}
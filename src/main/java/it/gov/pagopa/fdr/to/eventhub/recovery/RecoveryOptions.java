@@ -0,0 +1,37 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter.Priority;
+import java.util.Optional;
+import lombok.Builder;
+import lombok.Value;
+
+/** How a blob is recovered. */
+@Value
+@Builder(toBuilder = true)
+public class RecoveryOptions {
+
+  public static final RecoveryOptions DEFAULT = RecoveryOptions.builder().build();
+
+  private static final String JSON_DRY_RUN = "dryRun";
+  private static final String JSON_FORCE = "force";
+
+  // parse and chunk the flow without sending it
+  boolean dryRun;
+  // send the flow even if it was already delivered
+  boolean force;
+  // priority of the sends, the background jobs give way to the blob triggers
+  @Builder.Default Priority priority = Priority.HIGH;
+
+  /** The options of a recovery request body, false when a flag is missing. */
+  public static RecoveryOptions fromJson(JsonNode jsonNode) {
+    return RecoveryOptions.builder()
+        .dryRun(flag(jsonNode, JSON_DRY_RUN))
+        .force(flag(jsonNode, JSON_FORCE))
+        .build();
+  }
+
+  private static boolean flag(JsonNode jsonNode, String field) {
+    return Optional.ofNullable(jsonNode.get(field)).map(JsonNode::asBoolean).orElse(false);
+  }
+}
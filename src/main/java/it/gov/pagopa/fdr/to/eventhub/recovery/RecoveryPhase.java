@@ -0,0 +1,14 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+public enum RecoveryPhase {
+  QUEUED,
+  DOWNLOADING,
+  PARSING,
+  SENDING,
+  COMPLETED,
+  FAILED;
+
+  public boolean isFinished() {
+    return this == COMPLETED || this == FAILED;
+  }
+}
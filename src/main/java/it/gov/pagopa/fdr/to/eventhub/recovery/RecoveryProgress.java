@@ -0,0 +1,22 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryListener;
+
+/** Receives the phases and the chunks acknowledged while a blob is recovered. */
+public interface RecoveryProgress extends DeliveryListener {
+
+  RecoveryProgress NONE =
+      new RecoveryProgress() {
+        @Override
+        public void onPhase(RecoveryPhase phase) {
+          // no progress reporting
+        }
+
+        @Override
+        public void onChunkAcknowledged(int chunkIndex, int chunkCount) {
+          // no progress reporting
+        }
+      };
+
+  void onPhase(RecoveryPhase phase);
+}
@@ -0,0 +1,32 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Selection of the blobs of a container to reprocess. The prefix is applied by the storage service,
+ * the time bounds (inclusive from, exclusive to, each optional) on the listed items.
+ */
+@Value
+@Builder
+public class ScanRequest {
+
+  String container;
+  String prefix;
+  // bounds on the insertedTimestamp metadata
+  LocalDateTime insertedFrom;
+  LocalDateTime insertedTo;
+  // bounds on the last-modified date of the blob
+  OffsetDateTime modifiedFrom;
+  OffsetDateTime modifiedTo;
+  // page to start from, as returned by a previous scan
+  String continuationToken;
+  @Builder.Default int pageSize = 500;
+  // blobs recovered concurrently while the listing goes on
+  @Builder.Default int parallelism = 4;
+  // the scan stops at the first page boundary after this many matches, 0 = whole container
+  int maxBlobs;
+  @Builder.Default RecoveryOptions options = RecoveryOptions.DEFAULT;
+}
@@ -0,0 +1,16 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class ScanResult {
+
+  long scanned;
+  long matched;
+  // skipped by an insertedTimestamp filter because their insertedTimestamp could not be parsed
+  long unparsableTimestamps;
+  // null when the whole container has been scanned, otherwise the token to resume from
+  String continuationToken;
+}
@@ -0,0 +1,47 @@
+package it.gov.pagopa.fdr.to.eventhub.replay;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Totals of a replay run. */
+@Value
+@Builder
+public class ReplayReport {
+
+  long files;
+  long flows;
+  long failed;
+  long payments;
+  long events;
+  // bytes read from the files, compressed when the files are
+  long bytes;
+  long elapsedMillis;
+
+  public double getFlowsPerSecond() {
+    return perSecond(flows);
+  }
+
+  public double getEventsPerSecond() {
+    return perSecond(events);
+  }
+
+  private double perSecond(long count) {
+    return elapsedMillis == 0 ? 0 : count * 1000.0 / elapsedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "files: %d, flows: %d, failed: %d, payments: %d, events: %d, bytes: %d, elapsed: %d ms,"
+            + " %.1f flows/s, %.1f events/s",
+        files,
+        flows,
+        failed,
+        payments,
+        events,
+        bytes,
+        elapsedMillis,
+        getFlowsPerSecond(),
+        getEventsPerSecond());
+  }
+}
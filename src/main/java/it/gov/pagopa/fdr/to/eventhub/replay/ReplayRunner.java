@@ -0,0 +1,250 @@
+package it.gov.pagopa.fdr.to.eventhub.replay;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sink.AsyncEventHubSink;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventHubSink;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventSink;
+import it.gov.pagopa.fdr.to.eventhub.sink.InMemorySink;
+import it.gov.pagopa.fdr.to.eventhub.sink.NdjsonFileSink;
+import it.gov.pagopa.fdr.to.eventhub.sink.NullSink;
+import it.gov.pagopa.fdr.to.eventhub.source.FDR3FlowSource;
+import it.gov.pagopa.fdr.to.eventhub.source.FlowSource;
+import it.gov.pagopa.fdr.to.eventhub.util.ByteBufferInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reprocesses a local directory of flows exported from the storage account, outside of the
+ * Functions host. The files ({@code .xml} for FDR1 or {@code .json} for FDR3, optionally gzip
+ * compressed as {@code .gz}/{@code .zip}) are memory mapped and read by a {@link FlowSource} on a
+ * pool of threads, and their events go to an {@link EventSink}.
+ *
+ * <pre>
+ * java -cp ... it.gov.pagopa.fdr.to.eventhub.replay.ReplayRunner &lt;directory&gt;
+ *     [--threads N] [--source fdr1-sax|fdr1-stax|fdr3-json]
+ *     [--sink eventhub|eventhub-async|ndjson|memory|null] [--output FILE]
+ *     [--chunk-size-bytes N] [--service-identifier ID]
+ * </pre>
+ *
+ * The exported files have no blob metadata: the sessionId is the file name and the
+ * insertedTimestamp its last-modified time.
+ */
+public class ReplayRunner {
+
+  private static final Logger logger = Logger.getLogger(ReplayRunner.class.getName());
+
+  private final FlowSource source;
+  private final EventSink sink;
+  private final int threads;
+  private final String serviceIdentifier;
+  private final String extension;
+  private final ExecutionContext context = consoleContext();
+
+  public ReplayRunner(EventSink sink, int threads, String serviceIdentifier) {
+    this(FlowSource.of("fdr1-sax"), sink, threads, serviceIdentifier);
+  }
+
+  public ReplayRunner(FlowSource source, EventSink sink, int threads, String serviceIdentifier) {
+    this.source = source;
+    this.sink = sink;
+    this.threads = Math.max(1, threads);
+    this.serviceIdentifier = serviceIdentifier;
+    this.extension = source instanceof FDR3FlowSource ? ".json" : ".xml";
+  }
+
+  public ReplayReport run(Path directory) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    LongAdder files = new LongAdder();
+    LongAdder flows = new LongAdder();
+    LongAdder failed = new LongAdder();
+    LongAdder payments = new LongAdder();
+    LongAdder events = new LongAdder();
+    LongAdder bytes = new LongAdder();
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    // bounds the files waiting for a thread, the walk is not materialized
+    Semaphore pending = new Semaphore(threads * 2);
+    try (Stream<Path> paths = Files.walk(directory)) {
+      Iterator<Path> flowFiles =
+          paths.filter(Files::isRegularFile).filter(this::isFlowFile).iterator();
+      while (flowFiles.hasNext()) {
+        Path file = flowFiles.next();
+        pending.acquire();
+        files.increment();
+        executor.execute(
+            () -> {
+              try {
+                bytes.add(Files.size(file));
+                Map<String, String> metadata = metadata(file);
+                FlowEvents flowEvents = read(file, metadata);
+                payments.add(flowEvents.getPayments());
+                events.add(sink.deliver(flowEvents, metadata, DeliveryOptions.NONE, context));
+                flows.increment();
+              } catch (Exception e) {
+                failed.increment();
+                logger.log(Level.WARNING, e, () -> "Replay failed for file " + file);
+              } finally {
+                pending.release();
+              }
+            });
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    return ReplayReport.builder()
+        .files(files.sum())
+        .flows(flows.sum())
+        .failed(failed.sum())
+        .payments(payments.sum())
+        .events(events.sum())
+        .bytes(bytes.sum())
+        .elapsedMillis((System.nanoTime() - start) / 1_000_000)
+        .build();
+  }
+
+  private FlowEvents read(Path file, Map<String, String> metadata) throws Exception {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      boolean isGzip =
+          buffer.limit() > 2 && buffer.get(0) == (byte) 0x1F && buffer.get(1) == (byte) 0x8B;
+      try (InputStream content =
+          isGzip
+              ? new GZIPInputStream(new ByteBufferInputStream(buffer), 64 * 1024)
+              : new ByteBufferInputStream(buffer)) {
+        return source.read(content, metadata, sink.chunkSizeBytes(DeliveryOptions.NONE));
+      }
+    }
+  }
+
+  private Map<String, String> metadata(Path file) throws IOException {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", file.getFileName().toString());
+    metadata.put(
+        "insertedTimestamp",
+        LocalDateTime.ofInstant(Files.getLastModifiedTime(file).toInstant(), ZoneId.systemDefault())
+            .truncatedTo(ChronoUnit.SECONDS)
+            .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+    if (serviceIdentifier != null) {
+      metadata.put("serviceIdentifier", serviceIdentifier);
+    }
+    return metadata;
+  }
+
+  boolean isFlowFile(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(extension)
+        || name.endsWith(extension + ".gz")
+        || name.endsWith(extension + ".zip");
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    Path directory = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].startsWith("--") && i + 1 < args.length) {
+        options.put(args[i].substring(2), args[++i]);
+      } else {
+        directory = Path.of(args[i]);
+      }
+    }
+    if (directory == null || !Files.isDirectory(directory)) {
+      System.err.println(
+          "Usage: ReplayRunner <directory> [--threads N] [--source fdr1-sax|fdr1-stax|fdr3-json]"
+              + " [--sink eventhub|eventhub-async|ndjson|memory|null] [--output FILE]"
+              + " [--chunk-size-bytes N] [--service-identifier ID]");
+      System.exit(2);
+      return;
+    }
+
+    int threads =
+        Integer.parseInt(
+            options.getOrDefault(
+                "threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    int chunkSizeBytes =
+        Integer.parseInt(
+            options.getOrDefault(
+                "chunk-size-bytes",
+                System.getenv().getOrDefault("EVENT_HUB_MAX_CHUNK_SIZE_BYTES", "921600")));
+
+    ReplayReport report;
+    try (EventSink sink = createSink(options, chunkSizeBytes)) {
+      report =
+          new ReplayRunner(
+                  FlowSource.of(options.getOrDefault("source", "fdr1-sax")),
+                  sink,
+                  threads,
+                  options.get("service-identifier"))
+              .run(directory);
+    }
+    System.out.println(report);
+    System.exit(report.getFailed() == 0 ? 0 : 1);
+  }
+
+  private static EventSink createSink(Map<String, String> options, int chunkSizeBytes)
+      throws IOException {
+    String sink = options.getOrDefault("sink", "null");
+    switch (sink) {
+      case "eventhub":
+        return EventHubSink.fromEnvironment();
+      case "eventhub-async":
+        return AsyncEventHubSink.fromEnvironment(chunkSizeBytes);
+      case "ndjson":
+        return new NdjsonFileSink(
+            Path.of(options.getOrDefault("output", "replay.ndjson")), chunkSizeBytes);
+      case "memory":
+        return new InMemorySink(chunkSizeBytes);
+      case "null":
+        return new NullSink(chunkSizeBytes);
+      default:
+        throw new IllegalArgumentException("Unknown sink: " + sink);
+    }
+  }
+
+  private static ExecutionContext consoleContext() {
+    String invocationId = UUID.randomUUID().toString();
+    return new ExecutionContext() {
+      @Override
+      public Logger getLogger() {
+        return logger;
+      }
+
+      @Override
+      public String getInvocationId() {
+        return invocationId;
+      }
+
+      @Override
+      public String getFunctionName() {
+        return "ReplayRunner";
+      }
+    };
+  }
+}
@@ -0,0 +1,188 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import com.azure.core.amqp.exception.AmqpErrorCondition;
+import com.azure.core.amqp.exception.AmqpException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the size of the ReportedIUV chunks and the number of concurrent sends towards a single
+ * Event Hub using the feedback of the service: the real link limit read from the batches, the
+ * measured send latency and the throttling errors. The chunk size and the in-flight limit are
+ * halved on ServerBusy and grown back step by step once the hub answers quickly again.
+ */
+public class AdaptiveChunkController implements AdaptiveChunkControllerMBean {
+
+  // room left in the batch for the event properties and the AMQP framing
+  static final int BATCH_OVERHEAD_BYTES = 8 * 1024;
+  private static final double LATENCY_SMOOTHING = 0.2;
+
+  private final int minChunkSizeBytes;
+  private final int maxChunkSizeBytes;
+  private final int maxInFlight;
+  private final long targetLatencyMillis;
+  private final int healthySendsBeforeGrow;
+
+  private int chunkSizeBytes;
+  private int linkMaxSizeBytes;
+  private int inFlightLimit;
+  private int inFlight;
+  private int consecutiveHealthySends;
+  private double averageSendLatencyMillis;
+  private long successfulSends;
+  private long throttledSends;
+
+  public AdaptiveChunkController(
+      int minChunkSizeBytes,
+      int maxChunkSizeBytes,
+      int maxInFlight,
+      long targetLatencyMillis,
+      int healthySendsBeforeGrow) {
+    if (minChunkSizeBytes <= 0 || maxChunkSizeBytes < minChunkSizeBytes || maxInFlight <= 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid adaptive chunk configuration: min %d, max %d, in-flight %d",
+              minChunkSizeBytes, maxChunkSizeBytes, maxInFlight));
+    }
+    this.minChunkSizeBytes = minChunkSizeBytes;
+    this.maxChunkSizeBytes = maxChunkSizeBytes;
+    this.maxInFlight = maxInFlight;
+    this.targetLatencyMillis = targetLatencyMillis;
+    this.healthySendsBeforeGrow = Math.max(1, healthySendsBeforeGrow);
+    this.chunkSizeBytes = maxChunkSizeBytes;
+    this.inFlightLimit = maxInFlight;
+  }
+
+  public static AdaptiveChunkController fromEnvironment() {
+    return new AdaptiveChunkController(
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_MIN_CHUNK_SIZE_BYTES", "65536")),
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_MAX_CHUNK_SIZE_BYTES", "921600")),
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_MAX_IN_FLIGHT", "4")),
+        Long.parseLong(System.getenv().getOrDefault("EVENT_HUB_TARGET_SEND_LATENCY_MS", "1000")),
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_HEALTHY_SENDS_TO_GROW", "5")));
+  }
+
+  /** Records the maximum batch size negotiated on the link, as read from the EventDataBatch. */
+  public synchronized void updateLinkMaxSize(long maxSizeInBytes) {
+    if (maxSizeInBytes <= 0 || maxSizeInBytes == linkMaxSizeBytes) {
+      return;
+    }
+    linkMaxSizeBytes = (int) Math.min(Integer.MAX_VALUE, maxSizeInBytes);
+    chunkSizeBytes = Math.min(chunkSizeBytes, ceiling());
+  }
+
+  /** Waits until a send slot is available on the hub. */
+  public synchronized void acquire() throws InterruptedException {
+    while (inFlight >= inFlightLimit) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  public synchronized void release() {
+    inFlight = Math.max(0, inFlight - 1);
+    notifyAll();
+  }
+
+  public synchronized void onSendSuccess(long latencyNanos) {
+    double latencyMillis = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    averageSendLatencyMillis =
+        successfulSends == 0
+            ? latencyMillis
+            : LATENCY_SMOOTHING * latencyMillis
+                + (1 - LATENCY_SMOOTHING) * averageSendLatencyMillis;
+    successfulSends++;
+
+    if (averageSendLatencyMillis > targetLatencyMillis) {
+      // slow but not throttled: reduce the pressure without touching the chunk size
+      consecutiveHealthySends = 0;
+      inFlightLimit = Math.max(1, inFlightLimit - 1);
+      return;
+    }
+    if (++consecutiveHealthySends >= healthySendsBeforeGrow) {
+      consecutiveHealthySends = 0;
+      int step = Math.max(1, (ceiling() - minChunkSizeBytes) / 8);
+      chunkSizeBytes = Math.min(ceiling(), chunkSizeBytes + step);
+      inFlightLimit = Math.min(maxInFlight, inFlightLimit + 1);
+      notifyAll();
+    }
+  }
+
+  public synchronized void onSendFailure(Throwable error) {
+    consecutiveHealthySends = 0;
+    if (isThrottling(error)) {
+      throttledSends++;
+      chunkSizeBytes = Math.max(minChunkSizeBytes, chunkSizeBytes / 2);
+      inFlightLimit = Math.max(1, inFlightLimit / 2);
+    }
+  }
+
+  /** The event did not fit in the batch: the chunk is too big for the link. */
+  public synchronized void onBatchOverflow() {
+    consecutiveHealthySends = 0;
+    chunkSizeBytes = Math.max(minChunkSizeBytes, chunkSizeBytes / 2);
+  }
+
+  public static boolean isThrottling(Throwable error) {
+    for (Throwable t = error; t != null; t = t.getCause()) {
+      if (t instanceof AmqpException amqpException
+          && (amqpException.getErrorCondition() == AmqpErrorCondition.SERVER_BUSY_ERROR
+              || amqpException.getErrorCondition() == AmqpErrorCondition.RESOURCE_LIMIT_EXCEEDED)) {
+        return true;
+      }
+      String message = t.getMessage();
+      if (message != null) {
+        String lowerCase = message.toLowerCase(Locale.ROOT);
+        if (lowerCase.contains("serverbusy") || lowerCase.contains("throttl")) {
+          return true;
+        }
+      }
+      if (t.getCause() == t) {
+        break;
+      }
+    }
+    return false;
+  }
+
+  private int ceiling() {
+    return linkMaxSizeBytes > 0
+        ? Math.max(
+            minChunkSizeBytes, Math.min(maxChunkSizeBytes, linkMaxSizeBytes - BATCH_OVERHEAD_BYTES))
+        : maxChunkSizeBytes;
+  }
+
+  @Override
+  public synchronized int getChunkSizeBytes() {
+    return chunkSizeBytes;
+  }
+
+  @Override
+  public synchronized int getLinkMaxSizeBytes() {
+    return linkMaxSizeBytes;
+  }
+
+  @Override
+  public synchronized int getInFlightLimit() {
+    return inFlightLimit;
+  }
+
+  @Override
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  @Override
+  public synchronized double getAverageSendLatencyMillis() {
+    return averageSendLatencyMillis;
+  }
+
+  @Override
+  public synchronized long getSuccessfulSends() {
+    return successfulSends;
+  }
+
+  @Override
+  public synchronized long getThrottledSends() {
+    return throttledSends;
+  }
+}
@@ -0,0 +1,19 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+/** Current decisions of the {@link AdaptiveChunkController}, exported through JMX. */
+public interface AdaptiveChunkControllerMBean {
+
+  int getChunkSizeBytes();
+
+  int getLinkMaxSizeBytes();
+
+  int getInFlightLimit();
+
+  int getInFlight();
+
+  double getAverageSendLatencyMillis();
+
+  long getSuccessfulSends();
+
+  long getThrottledSends();
+}
@@ -0,0 +1,21 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Delivery progress of a flow. The chunk size used for the first attempt is kept so that a retry
+ * splits the events in exactly the same chunks and the sequence numbers stay stable.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class Checkpoint {
+  private boolean flowTxSent;
+  @Builder.Default private int lastAckedChunk = -1;
+  private int chunkSizeBytes;
+  private int chunkCount;
+}
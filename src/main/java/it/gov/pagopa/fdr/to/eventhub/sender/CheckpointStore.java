@@ -0,0 +1,34 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Stores the delivery progress of the flows, keyed by blob name and upload sessionId. */
+public interface CheckpointStore {
+
+  Optional<Checkpoint> load(String blobName, String sessionId);
+
+  void save(String blobName, String sessionId, Checkpoint checkpoint);
+
+  void clear(String blobName, String sessionId);
+
+  /**
+   * Builds the store selected by CHECKPOINT_STORE: {@code memory} (default) or {@code file}, which
+   * writes under CHECKPOINT_STORE_DIR and survives restarts.
+   */
+  static CheckpointStore fromEnvironment() {
+    if ("file".equalsIgnoreCase(System.getenv().getOrDefault("CHECKPOINT_STORE", "memory"))) {
+      try {
+        return new LocalFileCheckpointStore(
+            Path.of(System.getenv().getOrDefault("CHECKPOINT_STORE_DIR", "/tmp/fdr-checkpoints")));
+      } catch (IOException e) {
+        Logger.getLogger(CheckpointStore.class.getName())
+            .log(Level.SEVERE, e, () -> "Unable to open the checkpoint store, using memory");
+      }
+    }
+    return new InMemoryCheckpointStore();
+  }
+}
@@ -0,0 +1,150 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker around the sends towards a single Event Hub. After {@code failureThreshold}
+ * consecutive failed sends the circuit opens and every flow is rejected immediately, before being
+ * parsed and serialized. Once {@code openDurationMillis} has elapsed the circuit half-opens and
+ * lets at most {@code halfOpenProbes} sends through: a successful probe closes it, a failed one
+ * opens it again.
+ */
+public class CircuitBreaker implements CircuitBreakerMBean {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final int halfOpenProbes;
+  private final LongSupplier nanoClock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private int probesInFlight;
+  private long openedAtNanos;
+  private long openedCount;
+  private long rejectedCalls;
+
+  public CircuitBreaker(int failureThreshold, long openDurationMillis, int halfOpenProbes) {
+    this(failureThreshold, openDurationMillis, halfOpenProbes, System::nanoTime);
+  }
+
+  CircuitBreaker(
+      int failureThreshold, long openDurationMillis, int halfOpenProbes, LongSupplier nanoClock) {
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+    this.halfOpenProbes = Math.max(1, halfOpenProbes);
+    this.nanoClock = nanoClock;
+  }
+
+  public static CircuitBreaker fromEnvironment() {
+    return new CircuitBreaker(
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_CIRCUIT_FAILURE_THRESHOLD", "5")),
+        Long.parseLong(System.getenv().getOrDefault("EVENT_HUB_CIRCUIT_OPEN_DURATION_MS", "30000")),
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_CIRCUIT_HALF_OPEN_PROBES", "1")));
+  }
+
+  /**
+   * Tells whether a new flow can be accepted, without taking a probe slot. Used to fail fast before
+   * any parsing work is done.
+   */
+  public synchronized boolean isCallPermitted() {
+    moveToHalfOpenIfExpired();
+    boolean permitted =
+        state == State.CLOSED || (state == State.HALF_OPEN && probesInFlight < halfOpenProbes);
+    if (!permitted) {
+      rejectedCalls++;
+    }
+    return permitted;
+  }
+
+  /** Takes the permission for a single send, in half-open state it takes a probe slot. */
+  public synchronized boolean tryAcquirePermission() {
+    moveToHalfOpenIfExpired();
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (probesInFlight < halfOpenProbes) {
+          probesInFlight++;
+          return true;
+        }
+        rejectedCalls++;
+        return false;
+      default:
+        rejectedCalls++;
+        return false;
+    }
+  }
+
+  /**
+   * Gives back a permission taken for a send that never reached the hub, freeing its probe slot in
+   * half-open state without counting a success or a failure.
+   */
+  public synchronized void releasePermission() {
+    if (state == State.HALF_OPEN && probesInFlight > 0) {
+      probesInFlight--;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    if (state == State.HALF_OPEN) {
+      state = State.CLOSED;
+      probesInFlight = 0;
+    }
+  }
+
+  public synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      open();
+    }
+  }
+
+  private void open() {
+    if (state != State.OPEN) {
+      openedCount++;
+    }
+    state = State.OPEN;
+    probesInFlight = 0;
+    openedAtNanos = nanoClock.getAsLong();
+  }
+
+  private void moveToHalfOpenIfExpired() {
+    if (state == State.OPEN && nanoClock.getAsLong() - openedAtNanos >= openDurationNanos) {
+      state = State.HALF_OPEN;
+      probesInFlight = 0;
+    }
+  }
+
+  public synchronized State state() {
+    moveToHalfOpenIfExpired();
+    return state;
+  }
+
+  @Override
+  public String getState() {
+    return state().name();
+  }
+
+  @Override
+  public synchronized int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  @Override
+  public synchronized long getOpenedCount() {
+    return openedCount;
+  }
+
+  @Override
+  public synchronized long getRejectedCalls() {
+    return rejectedCalls;
+  }
+}
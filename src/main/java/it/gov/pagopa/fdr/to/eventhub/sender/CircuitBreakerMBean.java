@@ -0,0 +1,13 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+/** State of the {@link CircuitBreaker}, exported through JMX. */
+public interface CircuitBreakerMBean {
+
+  String getState();
+
+  int getConsecutiveFailures();
+
+  long getOpenedCount();
+
+  long getRejectedCalls();
+}
@@ -0,0 +1,59 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the flows completely delivered to the Event Hubs, so that a blob trigger fired again for
+ * the same upload, or a recovery of a flow already sent, is skipped before parsing. A delivery is
+ * identified by the sessionId of the upload and the hash of the blob content; the content already
+ * determines the identificativoFlusso, which is kept in the record.
+ */
+public interface DeliveryIndex {
+
+  DeliveryIndex NONE =
+      new DeliveryIndex() {
+        @Override
+        public Optional<DeliveryRecord> find(String sessionId, String contentHash) {
+          return Optional.empty();
+        }
+
+        @Override
+        public void record(DeliveryRecord deliveryRecord) {
+          // nothing is remembered
+        }
+      };
+
+  Optional<DeliveryRecord> find(String sessionId, String contentHash);
+
+  void record(DeliveryRecord deliveryRecord);
+
+  /**
+   * Builds the index selected by DELIVERY_INDEX: {@code memory} (default), {@code file}, which
+   * writes under DELIVERY_INDEX_DIR and survives restarts, or {@code none} to disable the check.
+   */
+  static DeliveryIndex fromEnvironment() {
+    String type = System.getenv().getOrDefault("DELIVERY_INDEX", "memory");
+    if ("none".equalsIgnoreCase(type)) {
+      return NONE;
+    }
+    if ("file".equalsIgnoreCase(type)) {
+      try {
+        return new LocalFileDeliveryIndex(
+            Path.of(System.getenv().getOrDefault("DELIVERY_INDEX_DIR", "/tmp/fdr-deliveries")));
+      } catch (IOException e) {
+        Logger.getLogger(DeliveryIndex.class.getName())
+            .log(Level.SEVERE, e, () -> "Unable to open the delivery index, using memory");
+      }
+    }
+    return new InMemoryDeliveryIndex(
+        Integer.parseInt(System.getenv().getOrDefault("DELIVERY_INDEX_MAX_ENTRIES", "100000")));
+  }
+
+  static String key(String sessionId, String contentHash) {
+    return sessionId + "|" + contentHash;
+  }
+}
@@ -0,0 +1,10 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+/** Notified while a flow is delivered, e.g. to report the progress of a recovery job. */
+@FunctionalInterface
+public interface DeliveryListener {
+
+  DeliveryListener NONE = (chunkIndex, chunkCount) -> {};
+
+  void onChunkAcknowledged(int chunkIndex, int chunkCount);
+}
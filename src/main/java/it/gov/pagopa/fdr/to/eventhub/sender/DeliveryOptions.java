@@ -0,0 +1,27 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter.Priority;
+import lombok.Builder;
+import lombok.Value;
+
+/** Per-flow options of the delivery to Event Hub. */
+@Value
+@Builder(toBuilder = true)
+public class DeliveryOptions {
+
+  public static final DeliveryOptions NONE = DeliveryOptions.builder().build();
+
+  // identity of the blob version, used as checkpoint key: the sessionId of the upload, the only
+  // one the blob trigger and the recovery endpoints both know, since the trigger has no ETag
+  String blobName;
+  String sessionId;
+
+  @Builder.Default DeliveryListener listener = DeliveryListener.NONE;
+
+  // priority of the sends on the rate limiters of the hubs, shared with the blob triggers
+  @Builder.Default Priority priority = Priority.HIGH;
+
+  public boolean isCheckpointEnabled() {
+    return blobName != null && sessionId != null;
+  }
+}
@@ -0,0 +1,11 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+/** Outcome of the delivery of a whole flow to the Event Hubs. */
+public enum DeliveryOutcome {
+  // every event was acknowledged by the hubs
+  SENT,
+  // the events not acknowledged were written to the spill journal and will be replayed
+  SPILLED,
+  // some events were neither acknowledged nor spilled
+  FAILED
+}
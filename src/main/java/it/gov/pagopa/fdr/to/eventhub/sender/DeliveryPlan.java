@@ -0,0 +1,18 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Events a flow would produce on the Event Hubs, computed without sending them. */
+@Value
+@Builder
+public class DeliveryPlan {
+
+  String flowId;
+  int payments;
+  // ReportedIUV events, one per chunk
+  int chunks;
+  int chunkSizeBytes;
+  long flowTxBytes;
+  long reportedIUVBytes;
+}
@@ -0,0 +1,16 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** A flow whose events were all acknowledged by the Event Hubs. */
+@Value
+@Builder(toBuilder = true)
+public class DeliveryRecord {
+  String flowId;
+  String sessionId;
+  // SHA-256 of the blob content as uploaded, before decompression
+  String contentHash;
+  String blobName;
+  long deliveredAt;
+}
@@ -0,0 +1,59 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The serialized events of a flow: one FlowTx event and the ReportedIUV chunks. A slice of a flow,
+ * delivered by a work unit, has no FlowTx event and chunks numbered from {@code firstChunkIndex}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class FlowEvents {
+
+  String flowId;
+  String contentSha256;
+  int payments;
+  // null in a slice, the FlowTx event is delivered once per flow
+  String flowTxJson;
+  List<String> reportedIUVChunks;
+  // index of the first payment of each chunk
+  @Builder.Default List<Integer> chunkFirstPayments = List.of();
+  // chunk index of the first of reportedIUVChunks within the whole flow
+  int firstChunkIndex;
+  // size the ReportedIUV events were split with
+  int chunkSizeBytes;
+
+  public int getEventCount() {
+    return (flowTxJson == null ? 0 : 1) + reportedIUVChunks.size();
+  }
+
+  /** Only the FlowTx event of the flow. */
+  public FlowEvents header() {
+    return toBuilder()
+        .payments(0)
+        .reportedIUVChunks(List.of())
+        .chunkFirstPayments(List.of())
+        .build();
+  }
+
+  /** The ReportedIUV chunks {@code [firstChunk, firstChunk + chunkCount)}, without FlowTx event. */
+  public FlowEvents slice(int firstChunk, int chunkCount) {
+    int end = firstChunk + chunkCount;
+    return toBuilder()
+        .payments(firstPayment(end) - firstPayment(firstChunk))
+        .flowTxJson(null)
+        .reportedIUVChunks(reportedIUVChunks.subList(firstChunk, end))
+        .chunkFirstPayments(chunkFirstPayments.subList(firstChunk, end))
+        .firstChunkIndex(firstChunkIndex + firstChunk)
+        .build();
+  }
+
+  /** Index of the first payment of the chunk, or the payment count past the last chunk. */
+  public int firstPayment(int chunk) {
+    return chunk < chunkFirstPayments.size()
+        ? chunkFirstPayments.get(chunk)
+        : (chunkFirstPayments.isEmpty() ? 0 : chunkFirstPayments.get(0)) + payments;
+  }
+}
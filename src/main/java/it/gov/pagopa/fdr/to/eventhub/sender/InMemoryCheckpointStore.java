@@ -0,0 +1,81 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the checkpoints in memory. A checkpoint is cleared when its flow is delivered; the one of a
+ * flow that failed is kept for the retries and expires {@code ttlMillis} after its last save, so
+ * that the flows never retried do not accumulate.
+ */
+public class InMemoryCheckpointStore implements CheckpointStore {
+
+  private final long ttlNanos;
+  private final LongSupplier nanoClock;
+  // in order of last save, the expired checkpoints are at the head
+  private final Map<String, Entry> checkpoints = new LinkedHashMap<>();
+
+  public InMemoryCheckpointStore() {
+    this(Long.parseLong(System.getenv().getOrDefault("CHECKPOINT_TTL_MS", "3600000")));
+  }
+
+  public InMemoryCheckpointStore(long ttlMillis) {
+    this(ttlMillis, System::nanoTime);
+  }
+
+  InMemoryCheckpointStore(long ttlMillis, LongSupplier nanoClock) {
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.nanoClock = nanoClock;
+  }
+
+  @Override
+  public synchronized Optional<Checkpoint> load(String blobName, String sessionId) {
+    evictExpired();
+    return Optional.ofNullable(checkpoints.get(key(blobName, sessionId)))
+        .map(entry -> entry.checkpoint.toBuilder().build());
+  }
+
+  @Override
+  public synchronized void save(String blobName, String sessionId, Checkpoint checkpoint) {
+    String key = key(blobName, sessionId);
+    // moved to the tail, as the most recently saved
+    checkpoints.remove(key);
+    checkpoints.put(key, new Entry(checkpoint.toBuilder().build(), nanoClock.getAsLong()));
+    evictExpired();
+  }
+
+  @Override
+  public synchronized void clear(String blobName, String sessionId) {
+    checkpoints.remove(key(blobName, sessionId));
+  }
+
+  synchronized int size() {
+    return checkpoints.size();
+  }
+
+  private void evictExpired() {
+    long now = nanoClock.getAsLong();
+    Iterator<Entry> entries = checkpoints.values().iterator();
+    while (entries.hasNext() && now - entries.next().savedAtNanos >= ttlNanos) {
+      entries.remove();
+    }
+  }
+
+  private static String key(String blobName, String sessionId) {
+    return blobName + "|" + sessionId;
+  }
+
+  private static final class Entry {
+    private final Checkpoint checkpoint;
+    private final long savedAtNanos;
+
+    private Entry(Checkpoint checkpoint, long savedAtNanos) {
+      this.checkpoint = checkpoint;
+      this.savedAtNanos = savedAtNanos;
+    }
+  }
+}
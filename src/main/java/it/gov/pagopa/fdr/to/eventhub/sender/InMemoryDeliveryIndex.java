@@ -0,0 +1,37 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/** Keeps the most recent deliveries in memory, evicting the oldest beyond the maximum entries. */
+public class InMemoryDeliveryIndex implements DeliveryIndex {
+
+  private final Map<String, DeliveryRecord> deliveries;
+
+  public InMemoryDeliveryIndex() {
+    this(100_000);
+  }
+
+  public InMemoryDeliveryIndex(int maxEntries) {
+    this.deliveries =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, DeliveryRecord> eldest) {
+            return size() > maxEntries;
+          }
+        };
+  }
+
+  @Override
+  public synchronized Optional<DeliveryRecord> find(String sessionId, String contentHash) {
+    return Optional.ofNullable(deliveries.get(DeliveryIndex.key(sessionId, contentHash)));
+  }
+
+  @Override
+  public synchronized void record(DeliveryRecord deliveryRecord) {
+    deliveries.put(
+        DeliveryIndex.key(deliveryRecord.getSessionId(), deliveryRecord.getContentHash()),
+        deliveryRecord);
+  }
+}
@@ -0,0 +1,97 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Keeps one small properties file per flow. Files are replaced atomically, so a crash leaves either
+ * the previous or the new checkpoint.
+ */
+public class LocalFileCheckpointStore implements CheckpointStore {
+
+  private static final String FLOWTX_SENT = "flowTxSent";
+  private static final String LAST_ACKED_CHUNK = "lastAckedChunk";
+  private static final String CHUNK_SIZE_BYTES = "chunkSizeBytes";
+  private static final String CHUNK_COUNT = "chunkCount";
+
+  private final Path directory;
+
+  public LocalFileCheckpointStore(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+  }
+
+  @Override
+  public Optional<Checkpoint> load(String blobName, String sessionId) {
+    Path file = file(blobName, sessionId);
+    if (!Files.exists(file)) {
+      return Optional.empty();
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Optional.of(
+        Checkpoint.builder()
+            .flowTxSent(Boolean.parseBoolean(properties.getProperty(FLOWTX_SENT)))
+            .lastAckedChunk(Integer.parseInt(properties.getProperty(LAST_ACKED_CHUNK, "-1")))
+            .chunkSizeBytes(Integer.parseInt(properties.getProperty(CHUNK_SIZE_BYTES, "0")))
+            .chunkCount(Integer.parseInt(properties.getProperty(CHUNK_COUNT, "0")))
+            .build());
+  }
+
+  @Override
+  public void save(String blobName, String sessionId, Checkpoint checkpoint) {
+    Properties properties = new Properties();
+    properties.setProperty(FLOWTX_SENT, String.valueOf(checkpoint.isFlowTxSent()));
+    properties.setProperty(LAST_ACKED_CHUNK, String.valueOf(checkpoint.getLastAckedChunk()));
+    properties.setProperty(CHUNK_SIZE_BYTES, String.valueOf(checkpoint.getChunkSizeBytes()));
+    properties.setProperty(CHUNK_COUNT, String.valueOf(checkpoint.getChunkCount()));
+
+    Path file = file(blobName, sessionId);
+    Path temp = directory.resolve(UUID.randomUUID() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        properties.store(out, blobName);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void clear(String blobName, String sessionId) {
+    try {
+      Files.deleteIfExists(file(blobName, sessionId));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Path file(String blobName, String sessionId) {
+    // blob names may contain path separators and be longer than a file name
+    try {
+      byte[] key =
+          MessageDigest.getInstance("SHA-256")
+              .digest((blobName + "|" + sessionId).getBytes(StandardCharsets.UTF_8));
+      return directory.resolve(HexFormat.of().formatHex(key) + ".checkpoint");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
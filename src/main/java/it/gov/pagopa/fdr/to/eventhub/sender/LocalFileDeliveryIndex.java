@@ -0,0 +1,111 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+
+/** Keeps one small properties file per delivery, replaced atomically like the checkpoints. */
+public class LocalFileDeliveryIndex implements DeliveryIndex {
+
+  private static final String FLOW_ID = "flowId";
+  private static final String SESSION_ID = "sessionId";
+  private static final String CONTENT_HASH = "contentHash";
+  private static final String BLOB_NAME = "blobName";
+  private static final String DELIVERED_AT = "deliveredAt";
+
+  private final Path directory;
+
+  public LocalFileDeliveryIndex(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+  }
+
+  @Override
+  public Optional<DeliveryRecord> find(String sessionId, String contentHash) {
+    return find(DeliveryIndex.key(sessionId, contentHash));
+  }
+
+  @Override
+  public void record(DeliveryRecord deliveryRecord) {
+    record(
+        DeliveryIndex.key(deliveryRecord.getSessionId(), deliveryRecord.getContentHash()),
+        deliveryRecord);
+  }
+
+  /** Reads the record kept under the given key, as the deliveries deferred by the journal. */
+  Optional<DeliveryRecord> find(String key) {
+    Path file = file(key);
+    if (!Files.exists(file)) {
+      return Optional.empty();
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Optional.of(
+        DeliveryRecord.builder()
+            .flowId(properties.getProperty(FLOW_ID))
+            .sessionId(properties.getProperty(SESSION_ID))
+            .contentHash(properties.getProperty(CONTENT_HASH))
+            .blobName(properties.getProperty(BLOB_NAME))
+            .deliveredAt(Long.parseLong(properties.getProperty(DELIVERED_AT, "0")))
+            .build());
+  }
+
+  void record(String key, DeliveryRecord deliveryRecord) {
+    Properties properties = new Properties();
+    setIfPresent(properties, FLOW_ID, deliveryRecord.getFlowId());
+    setIfPresent(properties, SESSION_ID, deliveryRecord.getSessionId());
+    setIfPresent(properties, CONTENT_HASH, deliveryRecord.getContentHash());
+    setIfPresent(properties, BLOB_NAME, deliveryRecord.getBlobName());
+    properties.setProperty(DELIVERED_AT, String.valueOf(deliveryRecord.getDeliveredAt()));
+
+    Path file = file(key);
+    Path temp = directory.resolve(UUID.randomUUID() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        properties.store(out, deliveryRecord.getFlowId());
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void remove(String key) {
+    try {
+      Files.deleteIfExists(file(key));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void setIfPresent(Properties properties, String key, String value) {
+    if (value != null) {
+      properties.setProperty(key, value);
+    }
+  }
+
+  private Path file(String key) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+      return directory.resolve(HexFormat.of().formatHex(digest) + ".delivery");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs serialized ReportedIUV events into chunks as they are produced, so that a flow can be
+ * chunked without holding the list of its events. The chunks are the same of a whole-list split:
+ * the events are concatenated and, when the limit would be exceeded, a new chunk starts with the
+ * event wrapped in a JSON array.
+ */
+public class ReportedIUVChunker {
+
+  private final int maxChunkSizeBytes;
+  private final List<String> chunks = new ArrayList<>();
+  // index of the first event of each chunk
+  private final List<Integer> chunkFirstEvents = new ArrayList<>();
+  private final StringBuilder currentChunk = new StringBuilder();
+  private int currentChunkSize;
+  private int events;
+
+  public ReportedIUVChunker(int maxChunkSizeBytes) {
+    this.maxChunkSizeBytes = maxChunkSizeBytes;
+  }
+
+  public void add(String eventJson) {
+    if (events == 0) {
+      chunkFirstEvents.add(0);
+    }
+    events++;
+    int eventSize = eventJson.getBytes(StandardCharsets.UTF_8).length;
+    currentChunkSize += eventSize;
+    if (currentChunkSize > maxChunkSizeBytes) {
+      // If the limit is exceed, add the current chunk and start a new one with the event
+      chunks.add(currentChunk.toString());
+      chunkFirstEvents.add(events - 1);
+      currentChunk.setLength(0);
+      currentChunk.append('[').append(eventJson).append(']');
+      currentChunkSize = eventSize;
+    } else {
+      currentChunk.append(eventJson);
+    }
+  }
+
+  public int getEvents() {
+    return events;
+  }
+
+  /**
+   * Index of the first event of each chunk, in chunk order. An empty first chunk, left when the
+   * first event alone exceeds the limit, starts at the same event of the second one.
+   */
+  public List<Integer> getChunkFirstEvents() {
+    return chunkFirstEvents;
+  }
+
+  /** Closes the last chunk and returns all of them. */
+  public List<String> finish() {
+    if (currentChunkSize > 0) {
+      chunks.add(currentChunk.toString());
+      currentChunk.setLength(0);
+      currentChunkSize = 0;
+    }
+    return chunks;
+  }
+}
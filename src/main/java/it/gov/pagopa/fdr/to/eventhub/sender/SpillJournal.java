@@ -0,0 +1,438 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the chunks that could not be delivered to Event Hub, stored in fixed-size
+ * memory-mapped segment files so that it survives process restarts.
+ *
+ * <p>Record layout: {@code [int magic][byte version][byte status][byte failedAttempts][int
+ * bodyLength][body][long crc32(body)]}, where the body holds hub key, flow ID, session ID, chunk
+ * index, service identifier, payload and content hash. A delivered record is marked in place by
+ * flipping its status byte, a failed replay by incrementing its attempts byte, so that both survive
+ * restarts; a segment is deleted once it is no longer the active one and all its records are
+ * delivered. On open every segment is scanned sequentially up to the first invalid record, which
+ * also drops a record torn by a crash, or of an unknown version.
+ *
+ * <p>The pending records are read one segment at a time, so that a replay never holds more than a
+ * segment of payloads. A record that keeps failing is moved to the dead-letter journal, kept in the
+ * {@code dead-letter} subdirectory and never replayed. The pending records are also counted per
+ * flow, by sessionId and content hash, so that a flow is known to be completely delivered once the
+ * last of its records is: the delivery of a flow with records still pending is deferred, kept in
+ * the {@code pending-deliveries} subdirectory until then.
+ */
+public class SpillJournal implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(SpillJournal.class.getName());
+
+  private static final int MAGIC = 0x46445253; // "FDRS"
+  // the first layout had no version, the status was at its place and was never 2
+  private static final byte RECORD_VERSION = 2;
+  private static final byte STATUS_PENDING = 0;
+  private static final byte STATUS_DELIVERED = 1;
+  private static final int VERSION_OFFSET = Integer.BYTES;
+  private static final int STATUS_OFFSET = VERSION_OFFSET + 1;
+  private static final int ATTEMPTS_OFFSET = STATUS_OFFSET + 1;
+  private static final int LENGTH_OFFSET = ATTEMPTS_OFFSET + 1;
+  private static final int HEADER_BYTES = LENGTH_OFFSET + Integer.BYTES;
+  private static final int TRAILER_BYTES = Long.BYTES;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".journal";
+  private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+  private static final String PENDING_DELIVERIES_DIRECTORY = "pending-deliveries";
+
+  private final Path directory;
+  private final int segmentSizeBytes;
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  // pending records by DeliveryIndex key of their flow
+  private final Map<String, Integer> pendingByFlow = new HashMap<>();
+  private Segment active;
+  private SpillJournal deadLetters;
+  private LocalFileDeliveryIndex pendingDeliveries;
+
+  public SpillJournal(Path directory, int segmentSizeBytes) throws IOException {
+    this.directory = directory;
+    this.segmentSizeBytes = segmentSizeBytes;
+    Files.createDirectories(directory);
+    recover();
+    if (Files.isDirectory(directory.resolve(DEAD_LETTER_DIRECTORY))) {
+      deadLetters = new SpillJournal(directory.resolve(DEAD_LETTER_DIRECTORY), segmentSizeBytes);
+    }
+  }
+
+  /**
+   * Opens the journal in SPILL_JOURNAL_DIR, by default under the HOME directory, which unlike
+   * {@code /tmp} is kept across restarts and redeployments of the function app.
+   */
+  public static SpillJournal fromEnvironment() throws IOException {
+    String home = System.getenv().getOrDefault("HOME", System.getProperty("user.home"));
+    return new SpillJournal(
+        Path.of(
+            System.getenv()
+                .getOrDefault(
+                    "SPILL_JOURNAL_DIR",
+                    Path.of(home, "data", "fdr-spill-journal").toString())),
+        Integer.parseInt(
+            System.getenv().getOrDefault("SPILL_JOURNAL_SEGMENT_SIZE_BYTES", "67108864")));
+  }
+
+  /** Durably appends the record, which is updated with its position in the journal. */
+  public synchronized void append(SpillRecord spillRecord) throws IOException {
+    byte[] body = encode(spillRecord);
+    int recordSize = HEADER_BYTES + body.length + TRAILER_BYTES;
+    if (recordSize > segmentSizeBytes) {
+      throw new IOException(
+          String.format(
+              "Record of %d bytes does not fit in a journal segment of %d bytes",
+              recordSize, segmentSizeBytes));
+    }
+    if (active == null || active.position + recordSize > segmentSizeBytes) {
+      active = openSegment(segments.isEmpty() ? 0 : segments.lastKey() + 1);
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    MappedByteBuffer buffer = active.buffer;
+    int offset = active.position;
+    buffer.position(offset);
+    buffer
+        .putInt(MAGIC)
+        .put(RECORD_VERSION)
+        .put(STATUS_PENDING)
+        .put((byte) 0)
+        .putInt(body.length)
+        .put(body)
+        .putLong(crc.getValue());
+    buffer.force(offset, recordSize);
+
+    active.position += recordSize;
+    active.pending++;
+    pendingByFlow.merge(flowKey(spillRecord), 1, Integer::sum);
+    spillRecord.setSegmentId(active.id);
+    spillRecord.setOffset(offset);
+  }
+
+  /** Returns the IDs of the segments, in append order. */
+  public synchronized List<Long> segmentIds() {
+    return new ArrayList<>(segments.keySet());
+  }
+
+  /**
+   * Returns the pending records of the segment, in append order, or none if the segment has been
+   * deleted in the meantime.
+   */
+  public synchronized List<SpillRecord> pending(long segmentId) {
+    List<SpillRecord> records = new ArrayList<>();
+    Segment segment = segments.get(segmentId);
+    if (segment != null) {
+      scan(segment, records, true);
+    }
+    return records;
+  }
+
+  public synchronized long pendingCount() {
+    return segments.values().stream().mapToLong(segment -> segment.pending).sum();
+  }
+
+  /** Whether some records of the flow, by sessionId and content hash, are still pending. */
+  public synchronized boolean hasPending(String sessionId, String contentSha256) {
+    return pendingByFlow.containsKey(
+        DeliveryIndex.key(nullToEmpty(sessionId), nullToEmpty(contentSha256)));
+  }
+
+  /**
+   * Defers the delivery of the flow, by sessionId and content hash, until the last of its pending
+   * records is delivered.
+   *
+   * @return false if no record of the flow is pending, nothing is deferred.
+   */
+  public synchronized boolean deferDelivery(String contentSha256, DeliveryRecord deliveryRecord)
+      throws IOException {
+    if (!hasPending(deliveryRecord.getSessionId(), contentSha256)) {
+      return false;
+    }
+    String key =
+        DeliveryIndex.key(nullToEmpty(deliveryRecord.getSessionId()), nullToEmpty(contentSha256));
+    pendingDeliveries().record(key, deliveryRecord);
+    return true;
+  }
+
+  /** Removes and returns the delivery deferred for the flow of the record, if any. */
+  public synchronized Optional<DeliveryRecord> takeDeferredDelivery(SpillRecord spillRecord)
+      throws IOException {
+    String key = flowKey(spillRecord);
+    Optional<DeliveryRecord> deliveryRecord = pendingDeliveries().find(key);
+    deliveryRecord.ifPresent(found -> pendingDeliveries.remove(key));
+    return deliveryRecord;
+  }
+
+  /**
+   * Counts a failed replay of the record in the journal itself.
+   *
+   * @return the failed attempts of the record, this one included.
+   */
+  public synchronized int recordFailedAttempt(SpillRecord spillRecord) {
+    Segment segment = segments.get(spillRecord.getSegmentId());
+    int failedAttempts = spillRecord.getFailedAttempts() + 1;
+    if (segment != null) {
+      int attemptsOffset = spillRecord.getOffset() + ATTEMPTS_OFFSET;
+      failedAttempts = Math.min(Byte.MAX_VALUE, segment.buffer.get(attemptsOffset) + 1);
+      segment.buffer.put(attemptsOffset, (byte) failedAttempts);
+      segment.buffer.force(attemptsOffset, 1);
+    }
+    spillRecord.setFailedAttempts(failedAttempts);
+    return failedAttempts;
+  }
+
+  /** Marks the record as delivered, removing its segment when nothing is left to deliver. */
+  public synchronized void markDelivered(SpillRecord spillRecord) throws IOException {
+    Segment segment = segments.get(spillRecord.getSegmentId());
+    if (segment == null) {
+      return;
+    }
+    int statusOffset = spillRecord.getOffset() + STATUS_OFFSET;
+    if (segment.buffer.get(statusOffset) == STATUS_DELIVERED) {
+      return;
+    }
+    segment.buffer.put(statusOffset, STATUS_DELIVERED);
+    segment.buffer.force(statusOffset, 1);
+    segment.pending--;
+    pendingByFlow.computeIfPresent(
+        flowKey(spillRecord), (key, count) -> count > 1 ? count - 1 : null);
+
+    if (segment.pending == 0 && segment != active) {
+      deleteSegment(segment);
+    }
+  }
+
+  /**
+   * Durably appends the record to the dead-letter journal, then marks it as delivered here so that
+   * it is no longer replayed.
+   */
+  public synchronized void moveToDeadLetter(SpillRecord spillRecord) throws IOException {
+    if (deadLetters == null) {
+      deadLetters = new SpillJournal(directory.resolve(DEAD_LETTER_DIRECTORY), segmentSizeBytes);
+    }
+    SpillRecord copy = spillRecord.toBuilder().failedAttempts(0).build();
+    deadLetters.append(copy);
+    markDelivered(spillRecord);
+  }
+
+  public synchronized long deadLetterCount() {
+    return deadLetters != null ? deadLetters.pendingCount() : 0;
+  }
+
+  @Override
+  public synchronized void close() {
+    segments.values().forEach(Segment::close);
+    segments.clear();
+    pendingByFlow.clear();
+    active = null;
+    if (deadLetters != null) {
+      deadLetters.close();
+      deadLetters = null;
+    }
+  }
+
+  private void recover() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String name = file.getFileName().toString();
+        if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+          long id =
+              Long.parseLong(
+                  name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+          segments.put(id, mapSegment(id, file));
+        }
+      }
+    }
+
+    for (Segment segment : new ArrayList<>(segments.values())) {
+      List<SpillRecord> records = new ArrayList<>();
+      segment.position = scan(segment, records, false);
+      for (SpillRecord spillRecord : records) {
+        if (spillRecord.getPayload() != null) {
+          segment.pending++;
+          pendingByFlow.merge(flowKey(spillRecord), 1, Integer::sum);
+        }
+      }
+      if (segment.pending == 0) {
+        deleteSegment(segment);
+      }
+    }
+    active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    if (!segments.isEmpty()) {
+      logger.info(
+          () -> String.format("Spill journal recovered with %d pending records", pendingCount()));
+    }
+  }
+
+  /**
+   * Reads the valid records of the segment, returning the position after the last one. Delivered
+   * records are added without payload when {@code onlyPending} is false, skipped otherwise.
+   */
+  private int scan(Segment segment, List<SpillRecord> records, boolean onlyPending) {
+    MappedByteBuffer buffer = segment.buffer;
+    int position = 0;
+    while (position + HEADER_BYTES <= segmentSizeBytes) {
+      if (buffer.getInt(position) != MAGIC) {
+        break;
+      }
+      byte version = buffer.get(position + VERSION_OFFSET);
+      if (version != RECORD_VERSION) {
+        int at = position;
+        logger.warning(
+            () ->
+                String.format(
+                    "Spill journal segment %d truncated at a record of version %d, at offset %d",
+                    segment.id, version, at));
+        break;
+      }
+      byte status = buffer.get(position + STATUS_OFFSET);
+      int bodyLength = buffer.getInt(position + LENGTH_OFFSET);
+      int recordSize = HEADER_BYTES + bodyLength + TRAILER_BYTES;
+      if (bodyLength < 0 || position + recordSize > segmentSizeBytes) {
+        break;
+      }
+      byte[] body = new byte[bodyLength];
+      buffer.get(position + HEADER_BYTES, body);
+      CRC32 crc = new CRC32();
+      crc.update(body);
+      if (crc.getValue() != buffer.getLong(position + HEADER_BYTES + bodyLength)) {
+        logger.warning(
+            () -> String.format("Spill journal segment %d truncated at a torn record", segment.id));
+        break;
+      }
+      if (status == STATUS_PENDING) {
+        SpillRecord spillRecord = decode(body);
+        spillRecord.setSegmentId(segment.id);
+        spillRecord.setOffset(position);
+        spillRecord.setFailedAttempts(buffer.get(position + ATTEMPTS_OFFSET));
+        records.add(spillRecord);
+      } else if (!onlyPending) {
+        records.add(SpillRecord.builder().segmentId(segment.id).offset(position).build());
+      }
+      position += recordSize;
+    }
+    return position;
+  }
+
+  private Segment openSegment(long id) throws IOException {
+    Segment segment = mapSegment(id, directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+    segments.put(id, segment);
+    return segment;
+  }
+
+  private Segment mapSegment(long id, Path file) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // the mapping stays valid after the channel is closed
+      return new Segment(
+          id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeBytes));
+    }
+  }
+
+  private LocalFileDeliveryIndex pendingDeliveries() throws IOException {
+    if (pendingDeliveries == null) {
+      pendingDeliveries =
+          new LocalFileDeliveryIndex(directory.resolve(PENDING_DELIVERIES_DIRECTORY));
+    }
+    return pendingDeliveries;
+  }
+
+  private void deleteSegment(Segment segment) throws IOException {
+    segments.remove(segment.id);
+    segment.close();
+    Files.deleteIfExists(segment.file);
+    if (segment == active) {
+      active = null;
+    }
+  }
+
+  private static byte[] encode(SpillRecord spillRecord) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream(spillRecord.getPayload().length + 256);
+    try (DataOutputStream out = new DataOutputStream(body)) {
+      out.writeUTF(spillRecord.getHubKey());
+      out.writeUTF(nullToEmpty(spillRecord.getFlowId()));
+      out.writeUTF(nullToEmpty(spillRecord.getSessionId()));
+      out.writeInt(spillRecord.getChunkIndex());
+      out.writeUTF(nullToEmpty(spillRecord.getServiceIdentifier()));
+      out.writeInt(spillRecord.getPayload().length);
+      out.write(spillRecord.getPayload());
+      out.writeUTF(nullToEmpty(spillRecord.getContentSha256()));
+    }
+    return body.toByteArray();
+  }
+
+  private static SpillRecord decode(byte[] body) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+      SpillRecord.SpillRecordBuilder builder =
+          SpillRecord.builder()
+              .hubKey(in.readUTF())
+              .flowId(in.readUTF())
+              .sessionId(in.readUTF())
+              .chunkIndex(in.readInt())
+              .serviceIdentifier(in.readUTF());
+      byte[] payload = new byte[in.readInt()];
+      in.readFully(payload);
+      return builder.payload(payload).contentSha256(in.readUTF()).build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String flowKey(SpillRecord spillRecord) {
+    return DeliveryIndex.key(
+        nullToEmpty(spillRecord.getSessionId()), nullToEmpty(spillRecord.getContentSha256()));
+  }
+
+  private static String nullToEmpty(String value) {
+    return value != null ? value : "";
+  }
+
+  Map<Long, Path> segmentFiles() {
+    Map<Long, Path> files = new TreeMap<>();
+    segments.forEach((id, segment) -> files.put(id, segment.file));
+    return files;
+  }
+
+  private static final class Segment {
+    private final long id;
+    private final Path file;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long pending;
+
+    private Segment(long id, Path file, MappedByteBuffer buffer) {
+      this.id = id;
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    private void close() {
+      // the mapping is released by the garbage collector
+      buffer = null;
+    }
+  }
+}
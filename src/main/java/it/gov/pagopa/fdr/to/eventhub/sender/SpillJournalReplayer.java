@@ -0,0 +1,150 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background task that drains the {@link SpillJournal}: the pending records are resent in append
+ * order, one segment at a time, without downloading or parsing the original blob again. A run stops
+ * as soon as the destination hub is not available, leaving the rest for the next run. A record
+ * rejected on its own is skipped and retried by the next runs; after {@code maxAttempts} failed
+ * attempts, counted in the journal across restarts, it is moved to the dead-letter journal. A {@link FlowListener} learns when the last
+ * record of a flow is delivered, or when one of them is given up.
+ */
+public class SpillJournalReplayer implements AutoCloseable {
+
+  private static final Logger logger = Logger.getLogger(SpillJournalReplayer.class.getName());
+
+  /** The result of the delivery of a single record. */
+  public enum Outcome {
+    DELIVERED,
+    // the hub cannot be reached, the following records would fail the same way
+    HUB_UNAVAILABLE,
+    // the record alone was rejected
+    FAILED
+  }
+
+  /** Notified of the flows whose records leave the journal. */
+  public interface FlowListener {
+
+    FlowListener NONE =
+        new FlowListener() {
+          @Override
+          public void onFlowDelivered(SpillRecord lastRecord) {
+            // nobody is waiting for the flows
+          }
+
+          @Override
+          public void onRecordDeadLettered(SpillRecord spillRecord) {
+            // nobody is waiting for the flows
+          }
+        };
+
+    /** The last pending record of the flow, by sessionId and content hash, was delivered. */
+    void onFlowDelivered(SpillRecord lastRecord);
+
+    /** A record was moved to the dead letters: its flow will never be completely delivered. */
+    void onRecordDeadLettered(SpillRecord spillRecord);
+  }
+
+  private final SpillJournal journal;
+  private final Function<SpillRecord, Outcome> sender;
+  private final int maxAttempts;
+  private final FlowListener flowListener;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * @param sender delivers a record.
+   * @param maxAttempts failed attempts after which a record is moved to the dead-letter journal.
+   */
+  public SpillJournalReplayer(
+      SpillJournal journal, Function<SpillRecord, Outcome> sender, int maxAttempts) {
+    this(journal, sender, maxAttempts, FlowListener.NONE);
+  }
+
+  public SpillJournalReplayer(
+      SpillJournal journal,
+      Function<SpillRecord, Outcome> sender,
+      int maxAttempts,
+      FlowListener flowListener) {
+    this.journal = journal;
+    this.sender = sender;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.flowListener = flowListener;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "spill-journal-replayer");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  public void start(long intervalMillis) {
+    scheduler.scheduleWithFixedDelay(
+        this::replaySafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Resends the pending records.
+   *
+   * @return the number of records delivered.
+   */
+  public synchronized int replay() throws IOException {
+    int delivered = 0;
+    for (long segmentId : journal.segmentIds()) {
+      for (SpillRecord spillRecord : journal.pending(segmentId)) {
+        Outcome outcome = sender.apply(spillRecord);
+        if (outcome == Outcome.HUB_UNAVAILABLE) {
+          return delivered;
+        }
+        if (outcome == Outcome.DELIVERED) {
+          journal.markDelivered(spillRecord);
+          delivered++;
+          if (!journal.hasPending(spillRecord.getSessionId(), spillRecord.getContentSha256())) {
+            flowListener.onFlowDelivered(spillRecord);
+          }
+        } else if (journal.recordFailedAttempt(spillRecord) >= maxAttempts) {
+          journal.moveToDeadLetter(spillRecord);
+          logger.severe(
+              () ->
+                  String.format(
+                      "Spill journal record of flow ID %s, hub %s, chunk %d moved to the dead"
+                          + " letters after %d attempts",
+                      spillRecord.getFlowId(),
+                      spillRecord.getHubKey(),
+                      spillRecord.getChunkIndex(),
+                      maxAttempts));
+          flowListener.onRecordDeadLettered(spillRecord);
+        }
+      }
+    }
+    return delivered;
+  }
+
+  private void replaySafely() {
+    if (journal.pendingCount() == 0) {
+      return;
+    }
+    try {
+      int delivered = replay();
+      logger.info(
+          () ->
+              String.format(
+                  "Spill journal replay delivered %d records, %d still pending, %d dead letters",
+                  delivered, journal.pendingCount(), journal.deadLetterCount()));
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, e, () -> "Spill journal replay failed");
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
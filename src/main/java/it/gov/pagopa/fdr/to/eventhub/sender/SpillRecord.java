@@ -0,0 +1,27 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A serialized event that could not be delivered, as stored in the {@link SpillJournal}. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpillRecord {
+  private String hubKey;
+  private String flowId;
+  private String sessionId;
+  private int chunkIndex;
+  private String serviceIdentifier;
+  private byte[] payload;
+  private String contentSha256;
+
+  // position in the journal, assigned on append and on recovery
+  private long segmentId;
+  private int offset;
+  // failed replays, kept in the record header
+  private int failedAttempts;
+}
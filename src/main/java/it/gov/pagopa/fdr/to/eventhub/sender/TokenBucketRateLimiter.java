@@ -0,0 +1,200 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paces the sends towards a single Event Hub with two token buckets, one for bytes and one for
+ * events, refilled continuously at the configured rate with one second of burst. A send is allowed
+ * as soon as the buckets are not in debt, so a chunk bigger than the burst is still sent and the
+ * following ones wait for the debt to be repaid. A zero rate disables the corresponding bucket.
+ *
+ * <p>The senders sharing the limiter of a hub acquire with a priority: a {@link Priority#LOW}
+ * acquisition, as those of the journal replayer and of the recovery jobs, gives way for at most
+ * {@code maxYieldMillis} while a {@link Priority#HIGH} one of the blob triggers is waiting on the
+ * same limiter. An unlimited limiter never makes anyone wait.
+ *
+ * <p>A limiter can also {@link #giveWayTo give way} to the limiter of another hub: all its
+ * acquisitions, whatever their priority, wait for at most {@code maxYieldMillis} while a {@link
+ * Priority#HIGH} one is waiting on the other limiter. This keeps the FlowTx events of the blob
+ * triggers ahead of the ReportedIUV chunks.
+ */
+public class TokenBucketRateLimiter implements TokenBucketRateLimiterMBean {
+
+  public enum Priority {
+    HIGH,
+    LOW
+  }
+
+  private static final long YIELD_STEP_MILLIS = 10;
+
+  private final long bytesPerSecond;
+  private final long eventsPerSecond;
+  private final long maxYieldMillis;
+  private final AtomicInteger highPriorityWaiting = new AtomicInteger();
+  private volatile TokenBucketRateLimiter precedence;
+
+  private double byteTokens;
+  private double eventTokens;
+  private long lastRefillNanos;
+
+  private long acquisitions;
+  private long delayedAcquisitions;
+  private long totalWaitNanos;
+  private long maxWaitNanos;
+
+  public TokenBucketRateLimiter(long bytesPerSecond, long eventsPerSecond, long maxYieldMillis) {
+    this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    this.eventsPerSecond = Math.max(0, eventsPerSecond);
+    this.maxYieldMillis = Math.max(0, maxYieldMillis);
+    this.byteTokens = this.bytesPerSecond;
+    this.eventTokens = this.eventsPerSecond;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Reads the limits of the hub from {@code EVENT_HUB_<hubKey>_MAX_BYTES_PER_SECOND} and {@code
+   * EVENT_HUB_<hubKey>_MAX_EVENTS_PER_SECOND}; 0, the default, disables the limit. The limits apply
+   * to the sends of a single instance.
+   */
+  public static TokenBucketRateLimiter fromEnvironment(String hubKey) {
+    return new TokenBucketRateLimiter(
+        Long.parseLong(
+            System.getenv().getOrDefault("EVENT_HUB_" + hubKey + "_MAX_BYTES_PER_SECOND", "0")),
+        Long.parseLong(
+            System.getenv().getOrDefault("EVENT_HUB_" + hubKey + "_MAX_EVENTS_PER_SECOND", "0")),
+        Long.parseLong(System.getenv().getOrDefault("EVENT_HUB_PRIORITY_MAX_YIELD_MS", "1000")));
+  }
+
+  /** Makes every acquisition yield to the high-priority ones waiting on the given limiter. */
+  public void giveWayTo(TokenBucketRateLimiter limiter) {
+    this.precedence = limiter;
+  }
+
+  public boolean isUnlimited() {
+    return bytesPerSecond == 0 && eventsPerSecond == 0;
+  }
+
+  /**
+   * Blocks until the send of the given amount of bytes and events is allowed.
+   *
+   * @return the time spent waiting, in nanoseconds.
+   */
+  public long acquire(long bytes, int events, Priority priority) throws InterruptedException {
+    long start = System.nanoTime();
+    TokenBucketRateLimiter other = precedence;
+    if (other != null) {
+      yieldToHighPriority(other);
+    }
+    if (isUnlimited()) {
+      long waited = System.nanoTime() - start;
+      record(waited);
+      return waited;
+    }
+    if (priority == Priority.HIGH) {
+      highPriorityWaiting.incrementAndGet();
+    } else {
+      yieldToHighPriority(this);
+    }
+    try {
+      long waitNanos;
+      while ((waitNanos = tryReserve(bytes, events)) > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+    } finally {
+      if (priority == Priority.HIGH) {
+        highPriorityWaiting.decrementAndGet();
+      }
+    }
+    long waited = System.nanoTime() - start;
+    record(waited);
+    return waited;
+  }
+
+  private void yieldToHighPriority(TokenBucketRateLimiter limiter) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxYieldMillis);
+    while (limiter.highPriorityWaiting.get() > 0 && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(YIELD_STEP_MILLIS);
+    }
+  }
+
+  /** Takes the tokens if the buckets are not in debt, otherwise returns the time to wait. */
+  private synchronized long tryReserve(long bytes, int events) {
+    refill();
+    double waitSeconds = 0;
+    if (bytesPerSecond > 0 && byteTokens < 0) {
+      waitSeconds = -byteTokens / bytesPerSecond;
+    }
+    if (eventsPerSecond > 0 && eventTokens < 0) {
+      waitSeconds = Math.max(waitSeconds, -eventTokens / eventsPerSecond);
+    }
+    if (waitSeconds > 0) {
+      return Math.max(1, (long) (waitSeconds * TimeUnit.SECONDS.toNanos(1)));
+    }
+    if (bytesPerSecond > 0) {
+      byteTokens -= bytes;
+    }
+    if (eventsPerSecond > 0) {
+      eventTokens -= events;
+    }
+    return 0;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    lastRefillNanos = now;
+    byteTokens = Math.min(bytesPerSecond, byteTokens + elapsedSeconds * bytesPerSecond);
+    eventTokens = Math.min(eventsPerSecond, eventTokens + elapsedSeconds * eventsPerSecond);
+  }
+
+  private synchronized void record(long waitedNanos) {
+    acquisitions++;
+    // below one millisecond it is only the cost of the call
+    if (waitedNanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+      delayedAcquisitions++;
+      totalWaitNanos += waitedNanos;
+      maxWaitNanos = Math.max(maxWaitNanos, waitedNanos);
+    }
+  }
+
+  @Override
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  @Override
+  public long getEventsPerSecond() {
+    return eventsPerSecond;
+  }
+
+  @Override
+  public int getHighPriorityWaiting() {
+    return highPriorityWaiting.get();
+  }
+
+  @Override
+  public synchronized long getAcquisitions() {
+    return acquisitions;
+  }
+
+  @Override
+  public synchronized long getDelayedAcquisitions() {
+    return delayedAcquisitions;
+  }
+
+  @Override
+  public synchronized long getTotalWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+  }
+
+  @Override
+  public synchronized long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+  }
+
+  @Override
+  public synchronized double getAverageWaitMillis() {
+    return acquisitions == 0 ? 0 : totalWaitNanos / (double) acquisitions / 1_000_000d;
+  }
+}
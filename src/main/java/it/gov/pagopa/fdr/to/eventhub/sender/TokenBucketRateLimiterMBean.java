@@ -0,0 +1,21 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+/** Pacing statistics of the {@link TokenBucketRateLimiter}, exported through JMX. */
+public interface TokenBucketRateLimiterMBean {
+
+  long getBytesPerSecond();
+
+  long getEventsPerSecond();
+
+  int getHighPriorityWaiting();
+
+  long getAcquisitions();
+
+  long getDelayedAcquisitions();
+
+  long getTotalWaitMillis();
+
+  long getMaxWaitMillis();
+
+  double getAverageWaitMillis();
+}
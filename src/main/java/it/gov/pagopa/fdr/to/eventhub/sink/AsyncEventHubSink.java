@@ -0,0 +1,205 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import com.azure.messaging.eventhubs.EventData;
+import com.azure.messaging.eventhubs.EventHubProducerAsyncClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.metrics.JmxMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.PipelineMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.Stage;
+import it.gov.pagopa.fdr.to.eventhub.sender.AdaptiveChunkController;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Sends the flows with the asynchronous producers: the FlowTx event first, then the ReportedIUV
+ * chunks concurrently, so that the send latency of a chunk overlaps the others. The chunks in
+ * flight on the hub are bounded by the slots of an {@link AdaptiveChunkController}, shared by all
+ * the flows delivered through the sink and narrowed on throttling or slow sends. There are no
+ * checkpoints, rate limiters or spill journal: a flow not completely acknowledged fails as a whole
+ * and is sent again by the retry of the caller.
+ *
+ * <p>The functions use the {@link #shared} sink of the hubs, so that its producers and in-flight
+ * limit outlive the invocations; only a sink built by {@link #fromEnvironment} is owned, and
+ * closed, by its caller.
+ */
+public class AsyncEventHubSink implements EventSink {
+
+  // keyed by the names of the FlowTx and ReportedIUV hubs, like the controllers of the sync sends
+  private static final Map<String, AsyncEventHubSink> sharedSinks = new ConcurrentHashMap<>();
+
+  private final EventHubProducerAsyncClient eventHubClientFlowTx;
+  private final EventHubProducerAsyncClient eventHubClientReportedIUV;
+  private final int chunkSizeBytes;
+  private final int maxInFlight;
+  private final AdaptiveChunkController chunkController;
+  private final Duration timeout;
+
+  public AsyncEventHubSink(
+      EventHubProducerAsyncClient eventHubClientFlowTx,
+      EventHubProducerAsyncClient eventHubClientReportedIUV,
+      int chunkSizeBytes,
+      int maxInFlight,
+      Duration timeout) {
+    this.eventHubClientFlowTx = eventHubClientFlowTx;
+    this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+    this.chunkSizeBytes = chunkSizeBytes;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    // the chunks of the sink have a fixed size, only the in-flight limit adapts
+    this.chunkController =
+        new AdaptiveChunkController(
+            chunkSizeBytes,
+            chunkSizeBytes,
+            this.maxInFlight,
+            Long.parseLong(
+                System.getenv().getOrDefault("EVENT_HUB_TARGET_SEND_LATENCY_MS", "1000")),
+            Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_HEALTHY_SENDS_TO_GROW", "5")));
+    this.timeout = timeout;
+    JmxMetrics.register(
+        "AsyncAdaptiveChunkController",
+        JmxMetrics.nameOf(eventHubClientReportedIUV, eventHubClientReportedIUV.getEventHubName()),
+        chunkController);
+  }
+
+  /** The sink of the hubs configured in the environment, built once and never closed. */
+  public static AsyncEventHubSink shared(int chunkSizeBytes) {
+    return sharedSinks.computeIfAbsent(
+        System.getenv("EVENT_HUB_FLOWTX_NAME") + "|" + System.getenv("EVENT_HUB_REPORTEDIUV_NAME"),
+        hubs -> fromEnvironment(chunkSizeBytes));
+  }
+
+  public static AsyncEventHubSink fromEnvironment(int chunkSizeBytes) {
+    return new AsyncEventHubSink(
+        CommonUtil.createEventHubAsyncClient(
+            System.getenv("EVENT_HUB_FLOWTX_CONNECTION_STRING"),
+            System.getenv("EVENT_HUB_FLOWTX_NAME")),
+        CommonUtil.createEventHubAsyncClient(
+            System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
+            System.getenv("EVENT_HUB_REPORTEDIUV_NAME")),
+        chunkSizeBytes,
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_MAX_IN_FLIGHT", "4")),
+        Duration.ofMillis(
+            Long.parseLong(System.getenv().getOrDefault("EVENT_HUB_ASYNC_TIMEOUT_MS", "60000"))));
+  }
+
+  @Override
+  public int chunkSizeBytes(DeliveryOptions options) {
+    return chunkSizeBytes;
+  }
+
+  @Override
+  public int deliver(
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context)
+      throws IOException {
+    String serviceIdentifier = blobMetadata.getOrDefault("serviceIdentifier", "NA");
+    List<String> chunks = flowEvents.getReportedIUVChunks();
+    int firstChunkIndex = flowEvents.getFirstChunkIndex();
+    // a slice of a flow has no FlowTx event
+    Mono<Void> flowTx =
+        flowEvents.getFlowTxJson() == null
+            ? Mono.empty()
+            : send(
+                eventHubClientFlowTx,
+                CommonUtil.toEventData(
+                    flowEvents.getFlowTxJson(),
+                    serviceIdentifier,
+                    flowEvents.getContentSha256(),
+                    null),
+                1);
+    try {
+      flowTx
+          .thenMany(
+              // the chunks are sent concurrently but acknowledged to the listener in order
+              Flux.range(0, chunks.size())
+                  .flatMapSequential(
+                      chunkIndex ->
+                          sendChunk(
+                                  CommonUtil.toEventData(
+                                      chunks.get(chunkIndex),
+                                      serviceIdentifier,
+                                      flowEvents.getContentSha256(),
+                                      firstChunkIndex + chunkIndex),
+                                  flowEvents.firstPayment(chunkIndex + 1)
+                                      - flowEvents.firstPayment(chunkIndex))
+                              .thenReturn(chunkIndex),
+                      maxInFlight))
+          .doOnNext(
+              chunkIndex -> options.getListener().onChunkAcknowledged(chunkIndex, chunks.size()))
+          .then()
+          .block(timeout);
+      if (flowEvents.getFlowTxJson() != null) {
+        PipelineMetrics.hubTraffic(eventHubClientFlowTx, eventHubClientFlowTx.getEventHubName())
+            .onFlowSent();
+      }
+      PipelineMetrics.hubTraffic(
+              eventHubClientReportedIUV, eventHubClientReportedIUV.getEventHubName())
+          .onFlowSent();
+    } catch (RuntimeException e) {
+      throw new IOException(
+          String.format(
+              "EventHub has not confirmed sending the entire batch of events for flow ID: %s."
+                  + " Details: %s",
+              flowEvents.getFlowId(), e.getMessage()),
+          e);
+    }
+    return flowEvents.getEventCount();
+  }
+
+  // the send starts when subscribed, its latency and traffic are recorded once acknowledged
+  private static Mono<Void> send(
+      EventHubProducerAsyncClient eventHubClient, EventData eventData, int events) {
+    return Mono.defer(
+        () -> {
+          long start = System.nanoTime();
+          return eventHubClient
+              .send(List.of(eventData))
+              .doOnSuccess(
+                  ignored -> {
+                    PipelineMetrics.recordSince(Stage.SEND, start);
+                    PipelineMetrics.hubTraffic(eventHubClient, eventHubClient.getEventHubName())
+                        .onChunkSent(events, eventData.getBody().length);
+                  });
+        });
+  }
+
+  /**
+   * Sends a ReportedIUV chunk once a slot of the controller is free. The wait happens on the
+   * bounded elastic scheduler, never on the AMQP threads, and the slot is released however the send
+   * ends, cancellation on timeout included.
+   */
+  private Mono<Void> sendChunk(EventData eventData, int events) {
+    return Mono.using(
+            () -> {
+              chunkController.acquire();
+              return System.nanoTime();
+            },
+            start ->
+                send(eventHubClientReportedIUV, eventData, events)
+                    .doOnSuccess(
+                        ignored -> chunkController.onSendSuccess(System.nanoTime() - start))
+                    .doOnError(chunkController::onSendFailure),
+            start -> chunkController.release())
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  AdaptiveChunkController getChunkController() {
+    return chunkController;
+  }
+
+  @Override
+  public void close() {
+    eventHubClientFlowTx.close();
+    eventHubClientReportedIUV.close();
+  }
+}
@@ -0,0 +1,84 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryListener;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOutcome;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the flows to the FlowTx and ReportedIUV hubs one event at a time, with the checkpoints,
+ * rate limiters, circuit breakers and spill journal of the blob trigger. A flow whose remaining
+ * events were spilled is not failed: {@link CommonUtil#recordDelivery} records it as delivered only
+ * once the replayer has sent them.
+ */
+public class EventHubSink implements EventSink {
+
+  private final EventHubProducerClient eventHubClientFlowTx;
+  private final EventHubProducerClient eventHubClientReportedIUV;
+
+  public EventHubSink(
+      EventHubProducerClient eventHubClientFlowTx,
+      EventHubProducerClient eventHubClientReportedIUV) {
+    this.eventHubClientFlowTx = eventHubClientFlowTx;
+    this.eventHubClientReportedIUV = eventHubClientReportedIUV;
+  }
+
+  public static EventHubSink fromEnvironment() {
+    return new EventHubSink(
+        CommonUtil.createEventHubClient(
+            System.getenv("EVENT_HUB_FLOWTX_CONNECTION_STRING"),
+            System.getenv("EVENT_HUB_FLOWTX_NAME")),
+        CommonUtil.createEventHubClient(
+            System.getenv("EVENT_HUB_REPORTEDIUV_CONNECTION_STRING"),
+            System.getenv("EVENT_HUB_REPORTEDIUV_NAME")));
+  }
+
+  @Override
+  public int chunkSizeBytes(DeliveryOptions options) {
+    return CommonUtil.chunkSizeBytes(eventHubClientReportedIUV, options);
+  }
+
+  @Override
+  public int deliver(
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context)
+      throws IOException {
+    AtomicInteger chunksSent = new AtomicInteger();
+    DeliveryListener listener = options.getListener();
+    DeliveryOutcome outcome =
+        CommonUtil.deliverFlowEvents(
+            eventHubClientFlowTx,
+            eventHubClientReportedIUV,
+            flowEvents,
+            blobMetadata,
+            options.toBuilder()
+                .listener(
+                    (chunkIndex, chunkCount) -> {
+                      chunksSent.incrementAndGet();
+                      listener.onChunkAcknowledged(chunkIndex, chunkCount);
+                    })
+                .build(),
+            context);
+    if (outcome == DeliveryOutcome.FAILED) {
+      throw new IOException(
+          String.format(
+              "EventHub has not confirmed sending the entire batch of events for flow ID: %s",
+              flowEvents.getFlowId()));
+    }
+    return (flowEvents.getFlowTxJson() == null ? 0 : 1) + chunksSent.get();
+  }
+
+  @Override
+  public void close() {
+    eventHubClientFlowTx.close();
+    eventHubClientReportedIUV.close();
+  }
+}
@@ -0,0 +1,61 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Destination of the serialized events of the flows, independently of the format they were read
+ * from. Implementations must be thread safe.
+ */
+public interface EventSink extends Closeable {
+
+  /** Size to split the ReportedIUV events of the blob with before delivering them. */
+  int chunkSizeBytes(DeliveryOptions options);
+
+  /**
+   * Delivers all the events of the flow.
+   *
+   * @return the number of events delivered
+   * @throws IOException if the flow was not completely delivered
+   */
+  int deliver(
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context)
+      throws IOException;
+
+  /**
+   * The sink configured by EVENT_SINK: eventhub (default, through the given clients),
+   * eventhub-async, ndjson, memory or null.
+   */
+  static EventSink fromEnvironment(
+      EventHubProducerClient eventHubClientFlowTx, EventHubProducerClient eventHubClientReportedIUV)
+      throws IOException {
+    int chunkSizeBytes =
+        Integer.parseInt(System.getenv().getOrDefault("EVENT_HUB_MAX_CHUNK_SIZE_BYTES", "921600"));
+    String sink = System.getenv().getOrDefault("EVENT_SINK", "eventhub");
+    switch (sink) {
+      case "eventhub":
+        return new EventHubSink(eventHubClientFlowTx, eventHubClientReportedIUV);
+      case "eventhub-async":
+        return AsyncEventHubSink.shared(chunkSizeBytes);
+      case "ndjson":
+        return new NdjsonFileSink(
+            Path.of(System.getenv().getOrDefault("EVENT_SINK_FILE", "events.ndjson")),
+            chunkSizeBytes);
+      case "memory":
+        return new InMemorySink(chunkSizeBytes);
+      case "null":
+        return new NullSink(chunkSizeBytes);
+      default:
+        throw new IllegalArgumentException("Unknown event sink: " + sink);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import com.azure.messaging.eventhubs.EventData;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the events that would be sent, with the same properties, grouped by hub: for tests and for
+ * measuring the sources without any I/O.
+ */
+public class InMemorySink implements EventSink {
+
+  private final int chunkSizeBytes;
+  private final List<EventData> flowTxEvents = new ArrayList<>();
+  private final List<EventData> reportedIUVEvents = new ArrayList<>();
+
+  public InMemorySink(int chunkSizeBytes) {
+    this.chunkSizeBytes = chunkSizeBytes;
+  }
+
+  @Override
+  public int chunkSizeBytes(DeliveryOptions options) {
+    return chunkSizeBytes;
+  }
+
+  @Override
+  public int deliver(
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context) {
+    String serviceIdentifier = blobMetadata.getOrDefault("serviceIdentifier", "NA");
+    List<EventData> chunks = new ArrayList<>();
+    for (int i = 0; i < flowEvents.getReportedIUVChunks().size(); i++) {
+      chunks.add(
+          CommonUtil.toEventData(
+              flowEvents.getReportedIUVChunks().get(i),
+              serviceIdentifier,
+              flowEvents.getContentSha256(),
+              flowEvents.getFirstChunkIndex() + i));
+    }
+    synchronized (this) {
+      if (flowEvents.getFlowTxJson() != null) {
+        flowTxEvents.add(
+            CommonUtil.toEventData(
+                flowEvents.getFlowTxJson(),
+                serviceIdentifier,
+                flowEvents.getContentSha256(),
+                null));
+      }
+      reportedIUVEvents.addAll(chunks);
+    }
+    for (int i = 0; i < chunks.size(); i++) {
+      options.getListener().onChunkAcknowledged(i, chunks.size());
+    }
+    return flowEvents.getEventCount();
+  }
+
+  /** The events delivered to the hub, FLOWTX or REPORTEDIUV, in delivery order. */
+  public synchronized List<EventData> getEvents(String hubKey) {
+    return new ArrayList<>(
+        CommonUtil.FLOWTX_HUB_KEY.equals(hubKey) ? flowTxEvents : reportedIUVEvents);
+  }
+
+  public synchronized void clear() {
+    flowTxEvents.clear();
+    reportedIUVEvents.clear();
+  }
+
+  @Override
+  public void close() {
+    // the events stay readable after the close
+  }
+}
@@ -0,0 +1,96 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes one line per event to a file: the hub, the flow ID, the chunk index and the event body as
+ * it would be sent. The body is kept as a string, since a ReportedIUV chunk is a sequence of JSON
+ * objects rather than a single JSON value.
+ */
+public class NdjsonFileSink implements EventSink {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final BufferedWriter writer;
+  private final int chunkSizeBytes;
+
+  public NdjsonFileSink(Path file, int chunkSizeBytes) throws IOException {
+    this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    this.chunkSizeBytes = chunkSizeBytes;
+  }
+
+  @Override
+  public int chunkSizeBytes(DeliveryOptions options) {
+    return chunkSizeBytes;
+  }
+
+  @Override
+  public int deliver(
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context)
+      throws IOException {
+    String flowId = objectMapper.writeValueAsString(flowEvents.getFlowId());
+    String contentSha256 = objectMapper.writeValueAsString(flowEvents.getContentSha256());
+
+    // the lines of a flow are kept together
+    StringBuilder lines = new StringBuilder();
+    if (flowEvents.getFlowTxJson() != null) {
+      appendLine(
+          lines,
+          CommonUtil.FLOWTX_HUB_KEY,
+          flowId,
+          contentSha256,
+          null,
+          flowEvents.getFlowTxJson());
+    }
+    for (int i = 0; i < flowEvents.getReportedIUVChunks().size(); i++) {
+      appendLine(
+          lines,
+          CommonUtil.REPORTEDIUV_HUB_KEY,
+          flowId,
+          contentSha256,
+          flowEvents.getFirstChunkIndex() + i,
+          flowEvents.getReportedIUVChunks().get(i));
+    }
+    synchronized (writer) {
+      writer.append(lines);
+    }
+    return flowEvents.getEventCount();
+  }
+
+  private static void appendLine(
+      StringBuilder lines,
+      String hubKey,
+      String flowId,
+      String contentSha256,
+      Integer chunkIndex,
+      String body)
+      throws JsonProcessingException {
+    lines.append("{\"hub\":\"").append(hubKey).append("\",\"flowId\":").append(flowId);
+    lines.append(",\"contentSha256\":").append(contentSha256);
+    if (chunkIndex != null) {
+      lines.append(",\"chunkIndex\":").append(chunkIndex);
+    }
+    lines.append(",\"body\":").append(objectMapper.writeValueAsString(body)).append("}\n");
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (writer) {
+      writer.close();
+    }
+  }
+}
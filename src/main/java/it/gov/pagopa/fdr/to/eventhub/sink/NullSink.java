@@ -0,0 +1,38 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.util.Map;
+
+/**
+ * Discards the events once the source has mapped, serialized and chunked the flow: measures the
+ * processing cost without any I/O.
+ */
+public class NullSink implements EventSink {
+
+  private final int chunkSizeBytes;
+
+  public NullSink(int chunkSizeBytes) {
+    this.chunkSizeBytes = chunkSizeBytes;
+  }
+
+  @Override
+  public int chunkSizeBytes(DeliveryOptions options) {
+    return chunkSizeBytes;
+  }
+
+  @Override
+  public int deliver(
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context) {
+    return flowEvents.getEventCount();
+  }
+
+  @Override
+  public void close() {
+    // nothing to release
+  }
+}
@@ -0,0 +1,42 @@
+package it.gov.pagopa.fdr.to.eventhub.source;
+
+import it.gov.pagopa.fdr.to.eventhub.exception.XmlParsingException;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.parser.FDR1Parser;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/** Reads FDR1 XML flows with the given parser, then maps and chunks the whole flow. */
+public class FDR1FlowSource implements FlowSource {
+
+  private final String name;
+  private final FDR1Parser parser;
+
+  public FDR1FlowSource(String name, FDR1Parser parser) {
+    this.name = name;
+    this.parser = parser;
+  }
+
+  @Override
+  public FlowEvents read(InputStream content, Map<String, String> blobMetadata, int chunkSizeBytes)
+      throws IOException, SAXException {
+    FlussoRendicontazione flusso;
+    try {
+      flusso = CommonUtil.parseXml(content, parser);
+    } catch (ParserConfigurationException e) {
+      throw new XmlParsingException("XML parser not available", e);
+    }
+    flusso.setMetadata(blobMetadata);
+    return CommonUtil.toFlowEvents(flusso, chunkSizeBytes);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,22 @@
+package it.gov.pagopa.fdr.to.eventhub.source;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/** Streams FDR3 JSON flows, chunking the payments while they are read. */
+public class FDR3FlowSource implements FlowSource {
+
+  @Override
+  public FlowEvents read(InputStream content, Map<String, String> blobMetadata, int chunkSizeBytes)
+      throws IOException {
+    return CommonUtil.parseJson(content, blobMetadata, chunkSizeBytes);
+  }
+
+  @Override
+  public String toString() {
+    return "fdr3-json";
+  }
+}
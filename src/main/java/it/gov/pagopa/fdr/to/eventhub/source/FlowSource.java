@@ -0,0 +1,43 @@
+package it.gov.pagopa.fdr.to.eventhub.source;
+
+import it.gov.pagopa.fdr.to.eventhub.parser.FDR1XmlSAXParser;
+import it.gov.pagopa.fdr.to.eventhub.parser.FDR1XmlStAXParser;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import org.xml.sax.SAXException;
+
+/**
+ * Turns the decompressed content of a flow into its serialized events, independently of where the
+ * events are delivered. Implementations must be thread safe.
+ */
+public interface FlowSource {
+
+  /**
+   * Reads the flow and splits its ReportedIUV events in chunks of at most the given size.
+   *
+   * @throws SAXException if an XML flow is not valid
+   * @throws IOException if the content cannot be read or a JSON flow is not valid
+   */
+  FlowEvents read(InputStream content, Map<String, String> blobMetadata, int chunkSizeBytes)
+      throws IOException, SAXException;
+
+  /** The source configured by the variable: fdr1-sax, fdr1-stax or fdr3-json. */
+  static FlowSource fromEnvironment(String variable, String defaultName) {
+    return of(System.getenv().getOrDefault(variable, defaultName));
+  }
+
+  static FlowSource of(String name) {
+    switch (name) {
+      case "fdr1-sax":
+        return new FDR1FlowSource(name, FDR1XmlSAXParser::parseXmlStream);
+      case "fdr1-stax":
+        return new FDR1FlowSource(name, FDR1XmlStAXParser::parseXmlStream);
+      case "fdr3-json":
+        return new FDR3FlowSource();
+      default:
+        throw new IllegalArgumentException("Unknown flow source: " + name);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package it.gov.pagopa.fdr.to.eventhub.util;
+
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobDownloadContentResponse;
+import com.azure.storage.blob.models.BlobDownloadHeaders;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import it.gov.pagopa.fdr.to.eventhub.metrics.JmxMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.PipelineMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.Stage;
+import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downloads a blob with its metadata. The first request reads the first block together with the
+ * headers, so a blob not bigger than a block is fetched with a single request; the remaining blocks
+ * of a bigger blob are downloaded in parallel, pinned to the ETag of the first response, each one
+ * straight into its slice of a buffer sized on the blob length. The buffer is then handed whole,
+ * and in order, to the decompressor, so a blob must fit in a single array.
+ */
+public class BlobRangeDownloader implements BlobRangeDownloaderMBean {
+
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+  // the biggest array the JVMs allocate
+  private static final long MAX_BLOB_SIZE_BYTES = Integer.MAX_VALUE - 8L;
+  // weight of the last download in the average throughput
+  private static final double THROUGHPUT_EWMA_ALPHA = 0.2;
+
+  private final long blockSizeBytes;
+  private final int concurrency;
+  private final ExecutorService executor;
+
+  private final LongAdder downloads = new LongAdder();
+  private final LongAdder rangedDownloads = new LongAdder();
+  private final LongAdder bytesDownloaded = new LongAdder();
+  private volatile long lastThroughputBytesPerSecond;
+  private double averageThroughputBytesPerSecond;
+
+  public BlobRangeDownloader(long blockSizeBytes, int concurrency) {
+    this.blockSizeBytes = Math.max(1, blockSizeBytes);
+    this.concurrency = Math.max(1, concurrency);
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            this.concurrency,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "fdr-blob-download-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Reads BLOB_DOWNLOAD_BLOCK_SIZE_BYTES (4 MiB) and BLOB_DOWNLOAD_CONCURRENCY (4) and exports the
+   * statistics through JMX.
+   */
+  public static BlobRangeDownloader fromEnvironment() {
+    BlobRangeDownloader downloader =
+        new BlobRangeDownloader(
+            Long.parseLong(
+                System.getenv().getOrDefault("BLOB_DOWNLOAD_BLOCK_SIZE_BYTES", "4194304")),
+            Integer.parseInt(System.getenv().getOrDefault("BLOB_DOWNLOAD_CONCURRENCY", "4")));
+    JmxMetrics.register("BlobRangeDownloader", "recovery", downloader);
+    return downloader;
+  }
+
+  /**
+   * Downloads the blob into memory.
+   *
+   * @throws IOException if the blob is too big to be held in a single array
+   */
+  public BlobFileData download(BlobClient blobClient)
+      throws IOException, InterruptedException, ExecutionException {
+    long start = System.nanoTime();
+
+    BlobDownloadContentResponse firstBlock;
+    try {
+      firstBlock =
+          blobClient.downloadContentWithResponse(
+              null, null, new BlobRange(0, blockSizeBytes), false, null, Context.NONE);
+    } catch (BlobStorageException e) {
+      if (e.getStatusCode() != HTTP_RANGE_NOT_SATISFIABLE) {
+        throw e;
+      }
+      // an empty blob has no range to read
+      firstBlock = blobClient.downloadContentWithResponse(null, null, null, Context.NONE);
+    }
+    BlobDownloadHeaders headers = firstBlock.getDeserializedHeaders();
+    long blobSize = blobSize(headers);
+    if (blobSize > MAX_BLOB_SIZE_BYTES) {
+      throw new IOException(
+          String.format(
+              "Blob %s of %d bytes is bigger than the %d bytes that can be downloaded",
+              blobClient.getBlobName(), blobSize, MAX_BLOB_SIZE_BYTES));
+    }
+
+    byte[] content;
+    if (blobSize <= blockSizeBytes) {
+      content = firstBlock.getValue().toBytes();
+    } else {
+      content = new byte[(int) blobSize];
+      ByteBuffer firstBytes = firstBlock.getValue().toByteBuffer();
+      int firstLength = firstBytes.remaining();
+      firstBytes.get(content, 0, firstLength);
+      downloadRanges(blobClient, headers.getETag(), content, firstLength);
+      rangedDownloads.increment();
+    }
+
+    long elapsed = System.nanoTime() - start;
+    record(content.length, elapsed);
+    PipelineMetrics.record(Stage.DOWNLOAD, elapsed);
+    return new BlobFileData(content, headers.getMetadata(), headers.getETag());
+  }
+
+  private void downloadRanges(BlobClient blobClient, String eTag, byte[] content, int from)
+      throws InterruptedException, ExecutionException {
+    // the blob must not change between the ranges
+    BlobRequestConditions sameVersion = new BlobRequestConditions().setIfMatch(eTag);
+    List<Future<?>> ranges = new ArrayList<>();
+    for (int offset = from; offset < content.length; offset += (int) blockSizeBytes) {
+      int rangeOffset = offset;
+      int rangeLength = (int) Math.min(blockSizeBytes, (long) content.length - offset);
+      ranges.add(
+          executor.submit(
+              () ->
+                  blobClient.downloadStreamWithResponse(
+                      new SliceOutputStream(content, rangeOffset, rangeLength),
+                      new BlobRange(rangeOffset, (long) rangeLength),
+                      null,
+                      sameVersion,
+                      false,
+                      null,
+                      Context.NONE)));
+    }
+    try {
+      for (Future<?> range : ranges) {
+        range.get();
+      }
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      // the remaining ranges would only fill a buffer that is thrown away
+      ranges.forEach(range -> range.cancel(true));
+      throw e;
+    }
+  }
+
+  private static long blobSize(BlobDownloadHeaders headers) {
+    // Content-Range: bytes <start>-<end>/<size>
+    String contentRange = headers.getContentRange();
+    if (contentRange != null && contentRange.indexOf('/') >= 0) {
+      return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+    }
+    return headers.getContentLength() == null ? 0 : headers.getContentLength();
+  }
+
+  private void record(long bytes, long elapsedNanos) {
+    downloads.increment();
+    bytesDownloaded.add(bytes);
+    long throughput = bytes * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos);
+    lastThroughputBytesPerSecond = throughput;
+    synchronized (this) {
+      averageThroughputBytesPerSecond =
+          averageThroughputBytesPerSecond == 0
+              ? throughput
+              : THROUGHPUT_EWMA_ALPHA * throughput
+                  + (1 - THROUGHPUT_EWMA_ALPHA) * averageThroughputBytesPerSecond;
+    }
+  }
+
+  @Override
+  public long getBlockSizeBytes() {
+    return blockSizeBytes;
+  }
+
+  @Override
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  @Override
+  public long getDownloads() {
+    return downloads.sum();
+  }
+
+  @Override
+  public long getRangedDownloads() {
+    return rangedDownloads.sum();
+  }
+
+  @Override
+  public long getBytesDownloaded() {
+    return bytesDownloaded.sum();
+  }
+
+  @Override
+  public long getLastThroughputBytesPerSecond() {
+    return lastThroughputBytesPerSecond;
+  }
+
+  @Override
+  public synchronized long getAverageThroughputBytesPerSecond() {
+    return (long) averageThroughputBytesPerSecond;
+  }
+
+  /** Writes a downloaded range into its slice of the blob buffer. */
+  private static class SliceOutputStream extends OutputStream {
+
+    private final byte[] target;
+    private final int end;
+    private int position;
+
+    SliceOutputStream(byte[] target, int offset, int length) {
+      this.target = target;
+      this.position = offset;
+      this.end = offset + length;
+    }
+
+    @Override
+    public void write(int b) {
+      checkCapacity(1);
+      target[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+      checkCapacity(length);
+      System.arraycopy(bytes, offset, target, position, length);
+      position += length;
+    }
+
+    private void checkCapacity(int length) {
+      if (position + length > end) {
+        throw new IllegalStateException("The range returned more bytes than requested");
+      }
+    }
+  }
+}
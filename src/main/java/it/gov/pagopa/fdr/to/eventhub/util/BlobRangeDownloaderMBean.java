@@ -0,0 +1,19 @@
+package it.gov.pagopa.fdr.to.eventhub.util;
+
+/** Download statistics of the {@link BlobRangeDownloader}, exported through JMX. */
+public interface BlobRangeDownloaderMBean {
+
+  long getBlockSizeBytes();
+
+  int getConcurrency();
+
+  long getDownloads();
+
+  long getRangedDownloads();
+
+  long getBytesDownloaded();
+
+  long getLastThroughputBytesPerSecond();
+
+  long getAverageThroughputBytesPerSecond();
+}
@@ -2,37 +2,75 @@ package it.gov.pagopa.fdr.to.eventhub.util;
 
 import com.azure.core.amqp.AmqpRetryMode;
 import com.azure.core.amqp.AmqpRetryOptions;
+import com.azure.core.http.rest.PagedResponse;
 import com.azure.messaging.eventhubs.EventData;
 import com.azure.messaging.eventhubs.EventDataBatch;
 import com.azure.messaging.eventhubs.EventHubClientBuilder;
+import com.azure.messaging.eventhubs.EventHubProducerAsyncClient;
 import com.azure.messaging.eventhubs.EventHubProducerClient;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobListDetails;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ListBlobsOptions;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.exception.CircuitBreakerOpenException;
+import it.gov.pagopa.fdr.to.eventhub.mapper.FlowAggregates;
 import it.gov.pagopa.fdr.to.eventhub.mapper.FlussoRendicontazioneMapper;
+import it.gov.pagopa.fdr.to.eventhub.metrics.JmxMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.PipelineMetrics;
+import it.gov.pagopa.fdr.to.eventhub.metrics.Stage;
+import it.gov.pagopa.fdr.to.eventhub.metrics.TimedInputStream;
 import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
 import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
 import it.gov.pagopa.fdr.to.eventhub.model.eventhub.FlowTxEventModel;
 import it.gov.pagopa.fdr.to.eventhub.model.eventhub.ReportedIUVEventModel;
+import it.gov.pagopa.fdr.to.eventhub.parser.FDR1Parser;
 import it.gov.pagopa.fdr.to.eventhub.parser.FDR1XmlSAXParser;
+import it.gov.pagopa.fdr.to.eventhub.parser.FDR3JsonStreamParser;
+import it.gov.pagopa.fdr.to.eventhub.sender.AdaptiveChunkController;
+import it.gov.pagopa.fdr.to.eventhub.sender.Checkpoint;
+import it.gov.pagopa.fdr.to.eventhub.sender.CheckpointStore;
+import it.gov.pagopa.fdr.to.eventhub.sender.CircuitBreaker;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryIndex;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOutcome;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryPlan;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryRecord;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sender.ReportedIUVChunker;
+import it.gov.pagopa.fdr.to.eventhub.sender.SpillJournal;
+import it.gov.pagopa.fdr.to.eventhub.sender.SpillJournalReplayer;
+import it.gov.pagopa.fdr.to.eventhub.sender.SpillRecord;
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter;
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter.Priority;
 import it.gov.pagopa.fdr.to.eventhub.wrapper.BlobServiceClientWrapper;
 import it.gov.pagopa.fdr.to.eventhub.wrapper.BlobServiceClientWrapperImpl;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import lombok.Setter;
@@ -45,20 +83,208 @@ public class CommonUtil {
   public static final String LOG_DATETIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
 
   private static final String SERVICE_IDENTIFIER = "serviceIdentifier";
+  private static final String CHUNK_INDEX = "chunkIndex";
+  private static final String CONTENT_SHA256 = "contentSha256";
+  public static final String FLOWTX_HUB_KEY = "FLOWTX";
+  public static final String REPORTEDIUV_HUB_KEY = "REPORTEDIUV";
 
   @Setter
   private BlobServiceClientWrapper blobServiceClientWrapper = new BlobServiceClientWrapperImpl();
 
+  @Setter private BlobRangeDownloader blobRangeDownloader = BlobRangeDownloader.fromEnvironment();
+
+  // keyed by Event Hub name: the functions build new producer clients on every invocation, what
+  // is learnt about a hub must outlive them
+  private static final Map<String, AdaptiveChunkController> chunkControllers =
+      new ConcurrentHashMap<>();
+  private static final Map<String, TokenBucketRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+  private static final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+  private static final Map<String, EventHubProducerClient> clientsByHubKey =
+      new ConcurrentHashMap<>();
+
+  private static final Logger logger = Logger.getLogger(CommonUtil.class.getName());
+
+  @Setter private SpillJournal spillJournal;
+  @Setter private CheckpointStore checkpointStore = CheckpointStore.fromEnvironment();
+  @Setter private DeliveryIndex deliveryIndex = DeliveryIndex.fromEnvironment();
+  private SpillJournalReplayer spillJournalReplayer;
+
+  /** Outcome of a single send: only the retryable failures are worth spilling. */
+  private enum SendOutcome {
+    SENT,
+    RETRYABLE_FAILURE,
+    PERMANENT_FAILURE
+  }
+
   public static EventHubProducerClient createEventHubClient(
       String connectionString, String eventHubName) {
+    return eventHubClientBuilder(connectionString, eventHubName).buildProducerClient();
+  }
+
+  public static EventHubProducerAsyncClient createEventHubAsyncClient(
+      String connectionString, String eventHubName) {
+    return eventHubClientBuilder(connectionString, eventHubName).buildAsyncProducerClient();
+  }
+
+  private EventHubClientBuilder eventHubClientBuilder(
+      String connectionString, String eventHubName) {
     return new EventHubClientBuilder()
         .connectionString(connectionString, eventHubName)
         .retryOptions(
             new AmqpRetryOptions()
-                .setMaxRetries(3)
-                .setDelay(Duration.ofSeconds(2))
-                .setMode(AmqpRetryMode.EXPONENTIAL))
-        .buildProducerClient();
+                .setMaxRetries(
+                    Integer.parseInt(
+                        System.getenv().getOrDefault("EVENT_HUB_RETRY_MAX_RETRIES", "3")))
+                .setDelay(
+                    Duration.ofMillis(
+                        Long.parseLong(
+                            System.getenv().getOrDefault("EVENT_HUB_RETRY_DELAY_MS", "2000"))))
+                .setMode(AmqpRetryMode.EXPONENTIAL));
+  }
+
+  /** Returns the adaptive chunk controller of the Event Hub of the given producer client. */
+  public static AdaptiveChunkController getChunkController(EventHubProducerClient eventHubClient) {
+    return chunkControllers.computeIfAbsent(
+        hubName(eventHubClient),
+        name -> {
+          AdaptiveChunkController controller = AdaptiveChunkController.fromEnvironment();
+          JmxMetrics.register("AdaptiveChunkController", name, controller);
+          return controller;
+        });
+  }
+
+  /**
+   * Returns the rate limiter of the Event Hub of the given producer client, configured with the
+   * limits of the hub identified by {@code hubKey} (FLOWTX or REPORTEDIUV).
+   */
+  public static TokenBucketRateLimiter getRateLimiter(
+      EventHubProducerClient eventHubClient, String hubKey) {
+    return rateLimiters.computeIfAbsent(
+        hubName(eventHubClient),
+        name -> {
+          TokenBucketRateLimiter rateLimiter =
+              TokenBucketRateLimiter.fromEnvironment(hubKey);
+          JmxMetrics.register("TokenBucketRateLimiter", name, rateLimiter);
+          return rateLimiter;
+        });
+  }
+
+  /** Returns the circuit breaker of the Event Hub of the given producer client. */
+  public static CircuitBreaker getCircuitBreaker(EventHubProducerClient eventHubClient) {
+    return circuitBreakers.computeIfAbsent(
+        hubName(eventHubClient),
+        name -> {
+          CircuitBreaker circuitBreaker = CircuitBreaker.fromEnvironment();
+          JmxMetrics.register("CircuitBreaker", name, circuitBreaker);
+          return circuitBreaker;
+        });
+  }
+
+  private String hubName(EventHubProducerClient eventHubClient) {
+    return JmxMetrics.nameOf(eventHubClient, eventHubClient.getEventHubName());
+  }
+
+  /**
+   * Fails fast when the circuit of one of the hubs is open, so that the flow is rejected before
+   * spending time on download, parsing and serialization.
+   */
+  public static void checkEventHubAvailability(
+      final EventHubProducerClient eventHubClientFlowTx,
+      final EventHubProducerClient eventHubClientReportedIUV)
+      throws CircuitBreakerOpenException {
+    for (EventHubProducerClient eventHubClient :
+        List.of(eventHubClientFlowTx, eventHubClientReportedIUV)) {
+      if (!getCircuitBreaker(eventHubClient).isCallPermitted()) {
+        throw new CircuitBreakerOpenException(
+            String.format(
+                "[%s] Circuit breaker open for EventHub %s, flow rejected",
+                ErrorCodes.COMMON_E3,
+                hubName(eventHubClient)));
+      }
+    }
+  }
+
+  /**
+   * Registers the producer clients used by the functions, so that the spilled chunks can be
+   * replayed towards the right hub even after a restart, and opens the spill journal if enabled.
+   */
+  public static void registerEventHubClients(
+      final EventHubProducerClient eventHubClientFlowTx,
+      final EventHubProducerClient eventHubClientReportedIUV) {
+    clientsByHubKey.put(FLOWTX_HUB_KEY, eventHubClientFlowTx);
+    clientsByHubKey.put(REPORTEDIUV_HUB_KEY, eventHubClientReportedIUV);
+    getSpillJournal();
+  }
+
+  /**
+   * Returns the spill journal, opening it and starting its replayer on first use, or null when
+   * SPILL_JOURNAL_ENABLED is not set.
+   */
+  public static synchronized SpillJournal getSpillJournal() {
+    if (spillJournal == null
+        && Boolean.parseBoolean(System.getenv().getOrDefault("SPILL_JOURNAL_ENABLED", "false"))) {
+      try {
+        spillJournal = SpillJournal.fromEnvironment();
+        spillJournalReplayer =
+            new SpillJournalReplayer(
+                spillJournal,
+                CommonUtil::replaySpillRecord,
+                Integer.parseInt(System.getenv().getOrDefault("SPILL_JOURNAL_MAX_ATTEMPTS", "5")),
+                new SpillJournalReplayer.FlowListener() {
+                  @Override
+                  public void onFlowDelivered(SpillRecord lastRecord) {
+                    recordReplayedDelivery(lastRecord);
+                  }
+
+                  @Override
+                  public void onRecordDeadLettered(SpillRecord spillRecord) {
+                    dropPendingDelivery(spillRecord);
+                  }
+                });
+        spillJournalReplayer.start(
+            Long.parseLong(
+                System.getenv().getOrDefault("SPILL_JOURNAL_REPLAY_INTERVAL_MS", "30000")));
+      } catch (IOException e) {
+        logger.log(Level.SEVERE, e, () -> "Unable to open the spill journal, spilling disabled");
+      }
+    }
+    return spillJournal;
+  }
+
+  /**
+   * Resends a spilled record, used by the journal replayer. A failure is charged to the record
+   * unless it left the circuit of the hub open.
+   */
+  public static SpillJournalReplayer.Outcome replaySpillRecord(SpillRecord spillRecord) {
+    EventHubProducerClient eventHubClient = clientsByHubKey.get(spillRecord.getHubKey());
+    // the clients are registered by the first flow processed after a restart
+    if (eventHubClient == null || !getCircuitBreaker(eventHubClient).isCallPermitted()) {
+      return SpillJournalReplayer.Outcome.HUB_UNAVAILABLE;
+    }
+    TokenBucketRateLimiter rateLimiter = getRateLimiter(eventHubClient, spillRecord.getHubKey());
+    SendOutcome outcome =
+        sendEventToHub(
+            new String(spillRecord.getPayload(), StandardCharsets.UTF_8),
+            spillRecord.getServiceIdentifier(),
+            spillRecord.getFlowId(),
+            spillRecord.getContentSha256(),
+            REPORTEDIUV_HUB_KEY.equals(spillRecord.getHubKey())
+                ? spillRecord.getChunkIndex()
+                : null,
+            // the payments of a spilled chunk are not known, only the FlowTx event is counted
+            FLOWTX_HUB_KEY.equals(spillRecord.getHubKey()) ? 1 : 0,
+            eventHubClient,
+            rateLimiter,
+            // the replay gives way to the flows of the blob triggers
+            Priority.LOW,
+            logger);
+    if (outcome == SendOutcome.SENT) {
+      return SpillJournalReplayer.Outcome.DELIVERED;
+    }
+    return outcome == SendOutcome.RETRYABLE_FAILURE
+            && !getCircuitBreaker(eventHubClient).isCallPermitted()
+        ? SpillJournalReplayer.Outcome.HUB_UNAVAILABLE
+        : SpillJournalReplayer.Outcome.FAILED;
   }
 
   public static boolean validateBlobMetadata(Map<String, String> blobMetadata) {
@@ -72,6 +298,106 @@ public class CommonUtil {
     return !("false".equalsIgnoreCase(blobMetadata.get("elaborate")));
   }
 
+  private MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** SHA-256 of the blob content as uploaded, in hex. */
+  public static String blobHash(byte[] content) {
+    if (content == null) {
+      throw new IllegalArgumentException("Invalid blob content: null");
+    }
+    return HexFormat.of().formatHex(sha256().digest(content));
+  }
+
+  /**
+   * Returns the previous complete delivery of the same upload, identified by its sessionId and the
+   * {@link #blobHash} of its content, if any.
+   */
+  public static Optional<DeliveryRecord> findDelivery(
+      Map<String, String> blobMetadata, String blobHash) {
+    return deliveryIndex.find(blobMetadata.get("sessionId"), blobHash);
+  }
+
+  /**
+   * Records the delivery of the upload, identified by the {@link #blobHash} of its content. A flow
+   * with events still in the spill journal, where they are kept under the SHA-256 computed while
+   * the flow was parsed, is recorded only when the replayer has delivered the last of them, and
+   * never if one of them is moved to the dead letters.
+   */
+  public static void recordDelivery(
+      String blobName,
+      Map<String, String> blobMetadata,
+      String blobHash,
+      String contentSha256,
+      String flowId) {
+    DeliveryRecord deliveryRecord =
+        DeliveryRecord.builder()
+            .flowId(flowId)
+            .sessionId(blobMetadata.get("sessionId"))
+            .contentHash(blobHash)
+            .blobName(blobName)
+            .deliveredAt(System.currentTimeMillis())
+            .build();
+    SpillJournal journal = spillJournal;
+    if (journal != null) {
+      try {
+        // deferred in the journal directory, so that it is recorded even after a restart
+        if (journal.deferDelivery(contentSha256, deliveryRecord)) {
+          logger.info(
+              () ->
+                  String.format(
+                      "Flow ID %s of Blob '%s' spilled, recorded as delivered once replayed",
+                      flowId, blobName));
+          return;
+        }
+      } catch (IOException e) {
+        logger.severe(
+            () ->
+                String.format(
+                    "[%s] Unable to defer the delivery of flow ID %s of Blob '%s'. Details: %s",
+                    ErrorCodes.COMMON_E1, flowId, blobName, e.getMessage()));
+        return;
+      }
+    }
+    deliveryIndex.record(deliveryRecord);
+  }
+
+  private void recordReplayedDelivery(SpillRecord lastRecord) {
+    takeDeferredDelivery(lastRecord)
+        .ifPresent(
+            deliveryRecord ->
+                deliveryIndex.record(
+                    deliveryRecord.toBuilder().deliveredAt(System.currentTimeMillis()).build()));
+  }
+
+  private void dropPendingDelivery(SpillRecord spillRecord) {
+    takeDeferredDelivery(spillRecord)
+        .ifPresent(
+            deliveryRecord ->
+                logger.severe(
+                    () ->
+                        String.format(
+                            "[%s] Flow ID %s of Blob '%s' not completely delivered, a spilled"
+                                + " chunk was moved to the dead letters",
+                            ErrorCodes.COMMON_E1,
+                            deliveryRecord.getFlowId(),
+                            deliveryRecord.getBlobName())));
+  }
+
+  private Optional<DeliveryRecord> takeDeferredDelivery(SpillRecord spillRecord) {
+    try {
+      return spillJournal.takeDeferredDelivery(spillRecord);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e, () -> "Unable to read the deferred delivery of a spilled flow");
+      return Optional.empty();
+    }
+  }
+
   public static boolean isGzip(byte[] content) {
     if (content == null || content.length == 0) {
       throw new IllegalArgumentException("Invalid input data for decompression: empty file");
@@ -80,14 +406,78 @@ public class CommonUtil {
   }
 
   public static InputStream decompressGzip(byte[] compressedContent) throws IOException {
-    return new GZIPInputStream(new ByteArrayInputStream(compressedContent));
+    // the content is inflated while the parser reads it, the time is recorded when closed
+    return new TimedInputStream(
+        new GZIPInputStream(new ByteArrayInputStream(compressedContent)), Stage.DECOMPRESS);
   }
 
+  /**
+   * Parses the flow and fingerprints the XML in the same pass: the digest is updated by the reads
+   * of the parser, so the content is neither read twice nor copied.
+   */
   public static FlussoRendicontazione parseXml(InputStream xmlStream)
       throws ParserConfigurationException, SAXException, IOException {
-    return FDR1XmlSAXParser.parseXmlStream(xmlStream);
+    return parseXml(xmlStream, FDR1XmlSAXParser::parseXmlStream);
+  }
+
+  public static FlussoRendicontazione parseXml(InputStream xmlStream, FDR1Parser parser)
+      throws ParserConfigurationException, SAXException, IOException {
+    DigestInputStream digestStream = new DigestInputStream(xmlStream, sha256());
+    long start = System.nanoTime();
+    FlussoRendicontazione flusso =
+        parser.parseXmlStream(
+            // the parser closes its input, the rest of the stream is still needed for the digest
+            new FilterInputStream(digestStream) {
+              @Override
+              public void close() {
+                // closed by the caller
+              }
+            });
+    PipelineMetrics.recordSince(Stage.OUTER_PARSE, start);
+    // the parser may stop reading at the end of the root element
+    digestStream.transferTo(OutputStream.nullOutputStream());
+    flusso.setContentSha256(HexFormat.of().formatHex(digestStream.getMessageDigest().digest()));
+    return flusso;
   }
 
+  /**
+   * Streams an FDR3 flow into its events, fingerprinting the JSON in the same pass. The payments
+   * are turned into serialized ReportedIUV chunks while they are read.
+   */
+  public static FlowEvents parseJson(
+      InputStream jsonStream, Map<String, String> blobMetadata, int chunkSizeBytes)
+      throws IOException {
+    DigestInputStream digestStream = new DigestInputStream(jsonStream, sha256());
+    long start = System.nanoTime();
+    FlowEvents flowEvents =
+        FDR3JsonStreamParser.parseJsonStream(
+            new FilterInputStream(digestStream) {
+              @Override
+              public void close() {
+                // closed by the caller
+              }
+            },
+            blobMetadata,
+            eventMapper(),
+            chunkSizeBytes);
+    PipelineMetrics.recordSince(Stage.OUTER_PARSE, start);
+    // the parser stops reading at the end of the root object
+    digestStream.transferTo(OutputStream.nullOutputStream());
+    return flowEvents.toBuilder()
+        .contentSha256(HexFormat.of().formatHex(digestStream.getMessageDigest().digest()))
+        .build();
+  }
+
+  /** The shared client of the container, built on the connection string of the variable. */
+  public static BlobContainerClient getBlobContainerClient(
+      String storageEnvVar, String containerName) {
+    return blobServiceClientWrapper.getBlobContainerClient(storageEnvVar, containerName);
+  }
+
+  /**
+   * Downloads the blob and its metadata: a blob not bigger than a block takes a single request, a
+   * bigger one is downloaded as parallel byte ranges.
+   */
   public static BlobFileData getBlobFile(
       String storageEnvVar, String containerName, String blobName, ExecutionContext context) {
     try {
@@ -95,71 +485,107 @@ public class CommonUtil {
           blobServiceClientWrapper.getBlobContainerClient(storageEnvVar, containerName);
       BlobClient blobClient = containerClient.getBlobClient(blobName);
 
-      if (Boolean.FALSE.equals(blobClient.exists())) {
+      return blobRangeDownloader.download(blobClient);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      context.getLogger().severe("Error accessing blob: " + e.getMessage());
+      return null;
+    } catch (BlobStorageException e) {
+      if (e.getStatusCode() == 404) {
         context.getLogger().severe(() -> "Blob not found: " + blobName);
-        return null;
+      } else {
+        context.getLogger().severe("Error accessing blob: " + e.getMessage());
       }
-
-      Map<String, String> metadata = blobClient.getProperties().getMetadata();
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      blobClient.downloadStream(outputStream);
-
-      return new BlobFileData(outputStream.toByteArray(), metadata);
-
+      return null;
     } catch (Exception e) {
       context.getLogger().severe("Error accessing blob: " + e.getMessage());
       return null;
     }
   }
 
+  /**
+   * Lists the blobs of the container page by page, with the prefix applied by the storage service
+   * and the metadata included in the listing. Each page is fetched lazily while iterating.
+   */
+  public static Iterable<PagedResponse<BlobItem>> listBlobPages(
+      String storageEnvVar,
+      String containerName,
+      String prefix,
+      int pageSize,
+      String continuationToken) {
+    BlobContainerClient containerClient =
+        blobServiceClientWrapper.getBlobContainerClient(storageEnvVar, containerName);
+    return containerClient
+        .listBlobs(
+            new ListBlobsOptions()
+                .setPrefix(prefix)
+                .setMaxResultsPerPage(pageSize)
+                .setDetails(new BlobListDetails().setRetrieveMetadata(true)),
+            null)
+        .iterableByPage(continuationToken, pageSize);
+  }
+
+  public static boolean processXmlBlobAndSendToEventHub(
+      final EventHubProducerClient eventHubClientFlowTx,
+      final EventHubProducerClient eventHubClientReportedIUV,
+      FlussoRendicontazione flussoRendicontazione,
+      ExecutionContext context) {
+    return processXmlBlobAndSendToEventHub(
+        eventHubClientFlowTx,
+        eventHubClientReportedIUV,
+        flussoRendicontazione,
+        DeliveryOptions.NONE,
+        context);
+  }
+
+  /**
+   * Sends the flow to the Event Hubs. When the options identify the blob version, the progress is
+   * checkpointed after every acknowledged send and a retry resumes from the first chunk that was
+   * not acknowledged, splitting the events with the same chunk size as the first attempt.
+   *
+   * @return true if the events were all acknowledged or spilled for the replayer.
+   */
   public static boolean processXmlBlobAndSendToEventHub(
       final EventHubProducerClient eventHubClientFlowTx,
       final EventHubProducerClient eventHubClientReportedIUV,
       FlussoRendicontazione flussoRendicontazione,
+      DeliveryOptions options,
       ExecutionContext context) {
     try {
-      // Convert FlussoRendicontazione to event models
-      FlowTxEventModel flowEvent =
-          FlussoRendicontazioneMapper.toFlowTxEventList(flussoRendicontazione);
-      List<ReportedIUVEventModel> reportedIUVEventList =
-          FlussoRendicontazioneMapper.toReportedIUVEventList(flussoRendicontazione);
+      registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+      checkEventHubAvailability(eventHubClientFlowTx, eventHubClientReportedIUV);
 
-      // Serialize the objects to JSON
-      JsonMapper objectMapper =
-          JsonMapper.builder()
-              .addModule(new JavaTimeModule())
-              .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-              .build();
+      Checkpoint checkpoint =
+          loadCheckpoint(
+              eventHubClientReportedIUV,
+              flussoRendicontazione.getIdentificativoFlusso(),
+              options,
+              context);
 
-      String flowEventJson = objectMapper.writeValueAsString(flowEvent);
+      // Convert FlussoRendicontazione to event models, serialize them and break the list into
+      // smaller batches to avoid overshooting limit
+      FlowEvents flowEvents = toFlowEvents(flussoRendicontazione, checkpoint.getChunkSizeBytes());
 
-      // Break the list into smaller batches to avoid overshooting limit
-      List<String> reportedIUVEventJsonChunks = splitIntoChunks(reportedIUVEventList, objectMapper);
+      return sendFlowEvents(
+              eventHubClientFlowTx,
+              eventHubClientReportedIUV,
+              flowEvents,
+              flussoRendicontazione.getMetadata(),
+              checkpoint,
+              options,
+              context)
+          != DeliveryOutcome.FAILED;
 
+    } catch (CircuitBreakerOpenException e) {
       context
           .getLogger()
-          .fine(
+          .severe(
               () ->
                   String.format(
-                      "Chunk splitting process completed at: %s for flow ID: %s. Total number of"
-                          + " chunks: %d",
-                      LocalDateTime.now().format(DateTimeFormatter.ofPattern(LOG_DATETIME_PATTERN)),
-                      flussoRendicontazione.getIdentificativoFlusso(),
-                      reportedIUVEventJsonChunks.size()));
-
-      boolean flowEventSent =
-          sendEventToHub(flowEventJson, eventHubClientFlowTx, flussoRendicontazione, context);
-      boolean allEventChunksSent = true;
-
-      for (String chunk : reportedIUVEventJsonChunks) {
-        if (!sendEventToHub(chunk, eventHubClientReportedIUV, flussoRendicontazione, context)) {
-          allEventChunksSent = false;
-          break;
-        }
-      }
-
-      return flowEventSent && allEventChunksSent;
-
+                      "%s. Flow ID: %s",
+                      e.getMessage(), flussoRendicontazione.getIdentificativoFlusso()));
+      return false;
     } catch (Exception e) {
       // Log the exception with context
       String errorMessage =
@@ -174,81 +600,425 @@ public class CommonUtil {
     }
   }
 
-  /** Divides the event list into smaller JSON blocks (to avoid exceeding 1MB) */
-  private List<String> splitIntoChunks(
-      List<ReportedIUVEventModel> eventList, JsonMapper objectMapper)
-      throws JsonProcessingException {
+  /**
+   * Sends the events of a flow read by a {@link FlowSource}, with the same checkpoints as {@link
+   * #processXmlBlobAndSendToEventHub}. A checkpoint left with a different chunk size than the one
+   * of the events is discarded, since its chunk indexes would not match.
+   */
+  public static DeliveryOutcome deliverFlowEvents(
+      final EventHubProducerClient eventHubClientFlowTx,
+      final EventHubProducerClient eventHubClientReportedIUV,
+      FlowEvents flowEvents,
+      Map<String, String> blobMetadata,
+      DeliveryOptions options,
+      ExecutionContext context) {
+    try {
+      registerEventHubClients(eventHubClientFlowTx, eventHubClientReportedIUV);
+      checkEventHubAvailability(eventHubClientFlowTx, eventHubClientReportedIUV);
 
-    List<String> chunks = new ArrayList<>();
-    List<ReportedIUVEventModel> tempBatch = new ArrayList<>();
-    final int MAX_CHUNK_SIZE_BYTES = 900 * 1024; // 900 KB for security
-
-    StringBuilder currentJsonBatch = new StringBuilder();
-    AtomicInteger currentBatchSize = new AtomicInteger(0);
-
-    for (ReportedIUVEventModel event : eventList) {
-      tempBatch.add(event);
-      String eventJson = objectMapper.writeValueAsString(event);
-      int eventSize = eventJson.getBytes(StandardCharsets.UTF_8).length;
-
-      if (currentBatchSize.addAndGet(eventSize) > MAX_CHUNK_SIZE_BYTES) {
-        // If the limit is exceed, add the current batch and reset it
-        chunks.add(currentJsonBatch.toString());
-        currentJsonBatch.setLength(0); // Reset the StringBuilder
-        currentBatchSize.set(0); // Reset the batch size
-        tempBatch.clear(); // Clear the current batch
-        tempBatch.add(event); // Start with the current event
-        currentJsonBatch.append(objectMapper.writeValueAsString(tempBatch));
-        currentBatchSize.addAndGet(eventSize);
-      } else {
-        // Add the event to the current batch
-        currentJsonBatch.append(eventJson);
+      Checkpoint checkpoint =
+          loadCheckpoint(eventHubClientReportedIUV, flowEvents.getFlowId(), options, context);
+      if (checkpoint.getChunkSizeBytes() != flowEvents.getChunkSizeBytes()) {
+        checkpoint = Checkpoint.builder().chunkSizeBytes(flowEvents.getChunkSizeBytes()).build();
       }
-    }
 
-    // Add remaining items
-    if (currentBatchSize.get() > 0) {
-      chunks.add(currentJsonBatch.toString());
+      return sendFlowEvents(
+          eventHubClientFlowTx,
+          eventHubClientReportedIUV,
+          flowEvents,
+          blobMetadata,
+          checkpoint,
+          options,
+          context);
+
+    } catch (CircuitBreakerOpenException e) {
+      context
+          .getLogger()
+          .severe(() -> String.format("%s. Flow ID: %s", e.getMessage(), flowEvents.getFlowId()));
+      return DeliveryOutcome.FAILED;
+    } catch (Exception e) {
+      context
+          .getLogger()
+          .severe(
+              () ->
+                  String.format(
+                      "[%s] Error processing or sending data to event hub: %s. Details: %s",
+                      ErrorCodes.COMMON_E2, flowEvents.getFlowId(), e.getMessage()));
+      return DeliveryOutcome.FAILED;
     }
+  }
 
-    return chunks;
+  /**
+   * Chunk size to split the events of the blob with: the one of its checkpoint when a delivery is
+   * resumed, otherwise the current size of the adaptive controller.
+   */
+  public static int chunkSizeBytes(
+      EventHubProducerClient eventHubClientReportedIUV, DeliveryOptions options) {
+    int checkpointChunkSize =
+        options.isCheckpointEnabled()
+            ? checkpointStore
+                .load(options.getBlobName(), options.getSessionId())
+                .map(Checkpoint::getChunkSizeBytes)
+                .orElse(0)
+            : 0;
+    return checkpointChunkSize > 0
+        ? checkpointChunkSize
+        : getChunkController(eventHubClientReportedIUV).getChunkSizeBytes();
   }
 
-  /** Send a message to the Event Hub */
-  private boolean sendEventToHub(
-      String jsonPayload,
-      EventHubProducerClient eventHubClient,
-      FlussoRendicontazione flusso,
+  private Checkpoint loadCheckpoint(
+      EventHubProducerClient eventHubClientReportedIUV,
+      String flowId,
+      DeliveryOptions options,
       ExecutionContext context) {
-    EventData eventData = new EventData(jsonPayload);
-    eventData
-        .getProperties()
-        .put(SERVICE_IDENTIFIER, flusso.getMetadata().getOrDefault(SERVICE_IDENTIFIER, "NA"));
-
-    EventDataBatch eventBatch = eventHubClient.createBatch();
-    if (!eventBatch.tryAdd(eventData)) {
+    Checkpoint checkpoint =
+        options.isCheckpointEnabled()
+            ? checkpointStore
+                .load(options.getBlobName(), options.getSessionId())
+                .orElseGet(() -> Checkpoint.builder().build())
+            : Checkpoint.builder().build();
+    if (checkpoint.getChunkSizeBytes() == 0) {
+      checkpoint.setChunkSizeBytes(
+          getChunkController(eventHubClientReportedIUV).getChunkSizeBytes());
+    } else {
       context
           .getLogger()
-          .warning(
+          .info(
               () ->
                   String.format(
-                      "Failed to add event to batch for flow ID: %s",
-                      flusso.getIdentificativoFlusso()));
-      return false;
+                      "Resuming flow ID: %s after chunk %d of %d",
+                      flowId, checkpoint.getLastAckedChunk(), checkpoint.getChunkCount()));
+    }
+    return checkpoint;
+  }
+
+  private DeliveryOutcome sendFlowEvents(
+      final EventHubProducerClient eventHubClientFlowTx,
+      final EventHubProducerClient eventHubClientReportedIUV,
+      FlowEvents flowEvents,
+      Map<String, String> metadata,
+      Checkpoint checkpoint,
+      DeliveryOptions options,
+      ExecutionContext context) {
+    List<String> reportedIUVEventJsonChunks = flowEvents.getReportedIUVChunks();
+    checkpoint.setChunkCount(reportedIUVEventJsonChunks.size());
+
+    context
+        .getLogger()
+        .fine(
+            () ->
+                String.format(
+                    "Chunk splitting process completed at: %s for flow ID: %s. Total number of"
+                        + " chunks: %d",
+                    LocalDateTime.now().format(DateTimeFormatter.ofPattern(LOG_DATETIME_PATTERN)),
+                    flowEvents.getFlowId(),
+                    reportedIUVEventJsonChunks.size()));
+
+    TokenBucketRateLimiter flowTxRateLimiter = getRateLimiter(eventHubClientFlowTx, FLOWTX_HUB_KEY);
+    TokenBucketRateLimiter reportedIUVRateLimiter =
+        getRateLimiter(eventHubClientReportedIUV, REPORTEDIUV_HUB_KEY);
+    // the ReportedIUV chunks wait while a FlowTx event of a blob trigger is waiting
+    reportedIUVRateLimiter.giveWayTo(flowTxRateLimiter);
+
+    String serviceIdentifier = metadata.getOrDefault(SERVICE_IDENTIFIER, "NA");
+    String flowId = flowEvents.getFlowId();
+    String contentSha256 = flowEvents.getContentSha256();
+    // the chunks of a slice keep the indexes they have in the whole flow
+    int firstChunkIndex = flowEvents.getFirstChunkIndex();
+
+    boolean flowEventSent = checkpoint.isFlowTxSent() || flowEvents.getFlowTxJson() == null;
+    boolean spilled = false;
+    if (!flowEventSent) {
+      SendOutcome flowEventOutcome =
+          sendEventToHub(
+              flowEvents.getFlowTxJson(),
+              serviceIdentifier,
+              flowId,
+              contentSha256,
+              null,
+              1,
+              eventHubClientFlowTx,
+              flowTxRateLimiter,
+              options.getPriority(),
+              context.getLogger());
+      if (flowEventOutcome == SendOutcome.SENT) {
+        PipelineMetrics.hubTraffic(eventHubClientFlowTx, eventHubClientFlowTx.getEventHubName())
+            .onFlowSent();
+        flowEventSent = true;
+        checkpoint.setFlowTxSent(true);
+        saveCheckpoint(options, checkpoint);
+      } else {
+        flowEventSent =
+            flowEventOutcome == SendOutcome.RETRYABLE_FAILURE
+                && spill(
+                    FLOWTX_HUB_KEY,
+                    flowEvents,
+                    metadata,
+                    0,
+                    List.of(flowEvents.getFlowTxJson()),
+                    context);
+        spilled = flowEventSent;
+      }
+    }
+
+    int nextChunk = checkpoint.getLastAckedChunk() + 1;
+    SendOutcome chunkOutcome = SendOutcome.SENT;
+    for (; nextChunk < reportedIUVEventJsonChunks.size(); nextChunk++) {
+      chunkOutcome =
+          sendEventToHub(
+              reportedIUVEventJsonChunks.get(nextChunk),
+              serviceIdentifier,
+              flowId,
+              contentSha256,
+              firstChunkIndex + nextChunk,
+              flowEvents.firstPayment(nextChunk + 1) - flowEvents.firstPayment(nextChunk),
+              eventHubClientReportedIUV,
+              reportedIUVRateLimiter,
+              options.getPriority(),
+              context.getLogger());
+      if (chunkOutcome != SendOutcome.SENT) {
+        break;
+      }
+      checkpoint.setLastAckedChunk(nextChunk);
+      saveCheckpoint(options, checkpoint);
+      options.getListener().onChunkAcknowledged(nextChunk, reportedIUVEventJsonChunks.size());
+    }
+    if (chunkOutcome == SendOutcome.SENT) {
+      PipelineMetrics.hubTraffic(
+              eventHubClientReportedIUV, eventHubClientReportedIUV.getEventHubName())
+          .onFlowSent();
+    }
+    boolean allEventChunksSent = chunkOutcome == SendOutcome.SENT;
+    if (chunkOutcome == SendOutcome.RETRYABLE_FAILURE
+        && spill(
+            REPORTEDIUV_HUB_KEY,
+            flowEvents,
+            metadata,
+            firstChunkIndex + nextChunk,
+            reportedIUVEventJsonChunks.subList(nextChunk, reportedIUVEventJsonChunks.size()),
+            context)) {
+      allEventChunksSent = true;
+      spilled = true;
+    }
+
+    if (!flowEventSent || !allEventChunksSent) {
+      return DeliveryOutcome.FAILED;
+    }
+    if (options.isCheckpointEnabled()) {
+      checkpointStore.clear(options.getBlobName(), options.getSessionId());
+    }
+    return spilled ? DeliveryOutcome.SPILLED : DeliveryOutcome.SENT;
+  }
+
+  /** The events the flow produces, as chunked for its delivery, without sending them. */
+  public static DeliveryPlan planDelivery(FlowEvents flowEvents) {
+    return DeliveryPlan.builder()
+        .flowId(flowEvents.getFlowId())
+        .payments(flowEvents.getPayments())
+        .chunks(flowEvents.getReportedIUVChunks().size())
+        .chunkSizeBytes(flowEvents.getChunkSizeBytes())
+        .flowTxBytes(flowEvents.getFlowTxJson().getBytes(StandardCharsets.UTF_8).length)
+        .reportedIUVBytes(
+            flowEvents.getReportedIUVChunks().stream()
+                .mapToLong(chunk -> chunk.getBytes(StandardCharsets.UTF_8).length)
+                .sum())
+        .build();
+  }
+
+  /** Maps and serializes the flow into the events that would be sent, chunked as for a send. */
+  public static FlowEvents toFlowEvents(
+      FlussoRendicontazione flussoRendicontazione, int chunkSizeBytes)
+      throws JsonProcessingException {
+    JsonMapper objectMapper = eventMapper();
+
+    // Divides the event list into smaller JSON blocks, the maximum size is decided by the adaptive
+    // controller of the destination hub (900 KB by default, to avoid exceeding 1MB). The payments
+    // are mapped, serialized and aggregated in a single pass, the event list is never built.
+    ReportedIUVChunker chunker = new ReportedIUVChunker(chunkSizeBytes);
+    FlowAggregates aggregates = new FlowAggregates();
+    Iterator<ReportedIUVEventModel> reportedIUVEvents =
+        FlussoRendicontazioneMapper.toReportedIUVEvents(flussoRendicontazione).iterator();
+    // the two stages alternate on every payment, their times are added up and recorded once
+    long mapNanos = 0;
+    long serializeNanos = 0;
+    long start = System.nanoTime();
+    while (reportedIUVEvents.hasNext()) {
+      ReportedIUVEventModel event = reportedIUVEvents.next();
+      aggregates.add(event);
+      long mapped = System.nanoTime();
+      chunker.add(objectMapper.writeValueAsString(event));
+      long serialized = System.nanoTime();
+      mapNanos += mapped - start;
+      serializeNanos += serialized - mapped;
+      start = serialized;
     }
+    FlowTxEventModel flowEvent =
+        FlussoRendicontazioneMapper.toFlowTxEvent(flussoRendicontazione, aggregates);
+    long mapped = System.nanoTime();
+    String flowEventJson = objectMapper.writeValueAsString(flowEvent);
+    PipelineMetrics.record(Stage.MAP, mapNanos + mapped - start);
+    PipelineMetrics.record(Stage.SERIALIZE, serializeNanos + System.nanoTime() - mapped);
 
+    return FlowEvents.builder()
+        .flowId(flussoRendicontazione.getIdentificativoFlusso())
+        .contentSha256(flussoRendicontazione.getContentSha256())
+        .payments(chunker.getEvents())
+        .flowTxJson(flowEventJson)
+        .reportedIUVChunks(chunker.finish())
+        .chunkFirstPayments(chunker.getChunkFirstEvents())
+        .chunkSizeBytes(chunkSizeBytes)
+        .build();
+  }
+
+  private JsonMapper eventMapper() {
+    return JsonMapper.builder()
+        .addModule(new JavaTimeModule())
+        .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+        .build();
+  }
+
+  private void saveCheckpoint(DeliveryOptions options, Checkpoint checkpoint) {
+    if (options.isCheckpointEnabled()) {
+      checkpointStore.save(options.getBlobName(), options.getSessionId(), checkpoint);
+    }
+  }
+
+  /**
+   * Writes the chunks that could not be delivered to the spill journal, so that they are resent by
+   * the replayer instead of reprocessing the whole blob.
+   *
+   * @return true if the journal is enabled and all the chunks were durably written.
+   */
+  private boolean spill(
+      String hubKey,
+      FlowEvents flowEvents,
+      Map<String, String> metadata,
+      int firstChunkIndex,
+      List<String> chunks,
+      ExecutionContext context) {
+    SpillJournal journal = getSpillJournal();
+    if (journal == null) {
+      return false;
+    }
     try {
-      eventHubClient.send(eventBatch);
+      for (int i = 0; i < chunks.size(); i++) {
+        journal.append(
+            SpillRecord.builder()
+                .hubKey(hubKey)
+                .flowId(flowEvents.getFlowId())
+                .sessionId(metadata.get("sessionId"))
+                .chunkIndex(firstChunkIndex + i)
+                .serviceIdentifier(metadata.getOrDefault(SERVICE_IDENTIFIER, "NA"))
+                .payload(chunks.get(i).getBytes(StandardCharsets.UTF_8))
+                .contentSha256(flowEvents.getContentSha256())
+                .build());
+      }
+      context
+          .getLogger()
+          .warning(
+              () ->
+                  String.format(
+                      "Spilled %d chunks for hub %s of flow ID: %s, they will be replayed",
+                      chunks.size(), hubKey, flowEvents.getFlowId()));
       return true;
-    } catch (Exception e) {
+    } catch (IOException e) {
       context
           .getLogger()
           .severe(
               () ->
                   String.format(
-                      "[%s] Failed to add event to batch for flow ID: %s. Details: %s",
-                      ErrorCodes.COMMON_E1, flusso.getIdentificativoFlusso(), e.getMessage()));
+                      "[%s] Unable to spill chunks for flow ID: %s. Details: %s",
+                      ErrorCodes.COMMON_E1, flowEvents.getFlowId(), e.getMessage()));
       return false;
     }
   }
+
+  /** The event sent to the hubs for a FlowTx event (null chunk index) or a ReportedIUV chunk. */
+  public static EventData toEventData(
+      String jsonPayload, String serviceIdentifier, String contentSha256, Integer chunkIndex) {
+    EventData eventData = new EventData(jsonPayload);
+    eventData.getProperties().put(SERVICE_IDENTIFIER, serviceIdentifier);
+    if (contentSha256 != null) {
+      // lets the consumers recognize the events of a flow delivered twice
+      eventData.getProperties().put(CONTENT_SHA256, contentSha256);
+    }
+    if (chunkIndex != null) {
+      // deterministic sequence number: the same chunk gets the same index on every retry
+      eventData.getProperties().put(CHUNK_INDEX, chunkIndex);
+    }
+    return eventData;
+  }
+
+  /**
+   * Send a message to the Event Hub. The permission of the circuit breaker is taken before any
+   * network call, so that an open circuit fails the send immediately; creating the batch opens the
+   * AMQP link, so its failures are counted by the breaker like those of the send.
+   */
+  private SendOutcome sendEventToHub(
+      String jsonPayload,
+      String serviceIdentifier,
+      String flowId,
+      String contentSha256,
+      Integer chunkIndex,
+      int events,
+      EventHubProducerClient eventHubClient,
+      TokenBucketRateLimiter rateLimiter,
+      Priority priority,
+      Logger logger) {
+    EventData eventData = toEventData(jsonPayload, serviceIdentifier, contentSha256, chunkIndex);
+
+    CircuitBreaker circuitBreaker = getCircuitBreaker(eventHubClient);
+    if (!circuitBreaker.tryAcquirePermission()) {
+      logger.severe(
+          () ->
+              String.format(
+                  "[%s] Circuit breaker open, send skipped for flow ID: %s",
+                  ErrorCodes.COMMON_E3, flowId));
+      return SendOutcome.RETRYABLE_FAILURE;
+    }
+
+    AdaptiveChunkController chunkController = getChunkController(eventHubClient);
+    try {
+      // the pacing wait is spent before taking a send slot, so it never counts as send latency;
+      // the slots bound the senders sharing the client, as the work unit workers and the replayer
+      rateLimiter.acquire(eventData.getBody().length, 1, priority);
+      chunkController.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      circuitBreaker.releasePermission();
+      return SendOutcome.RETRYABLE_FAILURE;
+    }
+
+    try {
+      EventDataBatch eventBatch = eventHubClient.createBatch();
+      chunkController.updateLinkMaxSize(eventBatch.getMaxSizeInBytes());
+      if (!eventBatch.tryAdd(eventData)) {
+        chunkController.onBatchOverflow();
+        circuitBreaker.releasePermission();
+        logger.warning(() -> String.format("Failed to add event to batch for flow ID: %s", flowId));
+        return SendOutcome.PERMANENT_FAILURE;
+      }
+
+      long start = System.nanoTime();
+      eventHubClient.send(eventBatch);
+      long elapsed = System.nanoTime() - start;
+      chunkController.onSendSuccess(elapsed);
+      PipelineMetrics.record(Stage.SEND, elapsed);
+      PipelineMetrics.hubTraffic(eventHubClient, eventHubClient.getEventHubName())
+          .onChunkSent(events, eventData.getBody().length);
+      circuitBreaker.onSuccess();
+      return SendOutcome.SENT;
+    } catch (Exception e) {
+      chunkController.onSendFailure(e);
+      circuitBreaker.onFailure();
+      logger.severe(
+          () ->
+              String.format(
+                  "[%s] Failed to send event to hub for flow ID: %s. Details: %s",
+                  ErrorCodes.COMMON_E1, flowId, e.getMessage()));
+      return SendOutcome.RETRYABLE_FAILURE;
+    } finally {
+      chunkController.release();
+    }
+  }
 }
@@ -7,8 +7,12 @@ public enum ErrorCodes {
   // Common Errors
   COMMON_E1("FDR-E1", "Error while sending to EventHub."),
   COMMON_E2("FDR-E2", "Error while process XML Blob."),
+  COMMON_E3("FDR-E3", "EventHub circuit breaker open, flow rejected without sending."),
+  COMMON_E4("FDR-E4", "Error delivering a work unit of a split flow."),
   // FDR1 Errors
-  FDR1_E1("FDR1-E1", "Error processing Blob in processFDR1BlobFiles function");
+  FDR1_E1("FDR1-E1", "Error processing Blob in processFDR1BlobFiles function"),
+  // FDR3 Errors
+  FDR3_E1("FDR3-E1", "Error processing Blob in processFDR3BlobFiles function");
 
   private final String code;
   private final String message;
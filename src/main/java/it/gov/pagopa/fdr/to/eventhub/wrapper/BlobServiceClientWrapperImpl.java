@@ -1,14 +1,76 @@
 package it.gov.pagopa.fdr.to.eventhub.wrapper;
 
+import com.azure.core.http.HttpClient;
+import com.azure.core.util.HttpClientOptions;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Keeps one {@link BlobServiceClient} per connection-string variable and one {@link
+ * BlobContainerClient} per container, all sharing the same HTTP client, so that the recoveries
+ * reuse the pooled keep-alive connections instead of opening a new pipeline each time. A client is
+ * rebuilt when the connection string behind its variable changes, and can be dropped explicitly
+ * with {@link #invalidate(String)} after a credential rotation.
+ */
 public class BlobServiceClientWrapperImpl implements BlobServiceClientWrapper {
+
+  private static final HttpClient httpClient =
+      HttpClient.createDefault(
+          new HttpClientOptions()
+              .setMaximumConnectionPoolSize(
+                  Integer.parseInt(System.getenv().getOrDefault("BLOB_HTTP_MAX_CONNECTIONS", "50")))
+              .setConnectTimeout(
+                  Duration.ofMillis(
+                      Long.parseLong(
+                          System.getenv().getOrDefault("BLOB_HTTP_CONNECT_TIMEOUT_MS", "10000"))))
+              .setConnectionIdleTimeout(
+                  Duration.ofMillis(
+                      Long.parseLong(
+                          System.getenv().getOrDefault("BLOB_HTTP_IDLE_TIMEOUT_MS", "60000")))));
+
+  private final Map<String, CachedServiceClient> serviceClients = new ConcurrentHashMap<>();
+
   @Override
   public BlobContainerClient getBlobContainerClient(String storageEnvVar, String containerName) {
-    BlobServiceClient blobServiceClient =
-        new BlobServiceClientBuilder().connectionString(System.getenv(storageEnvVar)).buildClient();
-    return blobServiceClient.getBlobContainerClient(containerName);
+    String connectionString = System.getenv(storageEnvVar);
+    CachedServiceClient cached =
+        serviceClients.compute(
+            storageEnvVar,
+            (key, current) ->
+                current != null && Objects.equals(current.connectionString, connectionString)
+                    ? current
+                    : new CachedServiceClient(connectionString));
+    return cached.containerClients.computeIfAbsent(
+        containerName, cached.serviceClient::getBlobContainerClient);
+  }
+
+  /** Drops the clients built for the variable; the next call builds them again. */
+  public void invalidate(String storageEnvVar) {
+    serviceClients.remove(storageEnvVar);
+  }
+
+  public void invalidateAll() {
+    serviceClients.clear();
+  }
+
+  private static class CachedServiceClient {
+
+    private final String connectionString;
+    private final BlobServiceClient serviceClient;
+    private final Map<String, BlobContainerClient> containerClients = new ConcurrentHashMap<>();
+
+    CachedServiceClient(String connectionString) {
+      this.connectionString = connectionString;
+      this.serviceClient =
+          new BlobServiceClientBuilder()
+              .connectionString(connectionString)
+              .httpClient(httpClient)
+              .buildClient();
+    }
   }
 }
@@ -3,6 +3,7 @@ package it.gov.pagopa.fdr.to.eventhub;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.atMost;
@@ -11,26 +12,44 @@ import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.azure.core.amqp.exception.AmqpErrorContext;
 import com.azure.core.amqp.exception.AmqpException;
+import com.azure.messaging.eventhubs.EventData;
 import com.azure.messaging.eventhubs.EventDataBatch;
 import com.azure.messaging.eventhubs.EventHubProducerClient;
 import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.OutputBinding;
+import it.gov.pagopa.fdr.to.eventhub.exception.CircuitBreakerOpenException;
+import it.gov.pagopa.fdr.to.eventhub.exception.EventHubException;
+import it.gov.pagopa.fdr.to.eventhub.fanout.FlowFanOut;
+import it.gov.pagopa.fdr.to.eventhub.fanout.InMemoryWorkUnitTracker;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnit;
+import it.gov.pagopa.fdr.to.eventhub.fanout.WorkUnitProcessor;
 import it.gov.pagopa.fdr.to.eventhub.mapper.FlussoRendicontazioneMapper;
 import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
 import it.gov.pagopa.fdr.to.eventhub.model.eventhub.FlowTxEventModel;
 import it.gov.pagopa.fdr.to.eventhub.parser.FDR1XmlSAXParser;
+import it.gov.pagopa.fdr.to.eventhub.sender.Checkpoint;
+import it.gov.pagopa.fdr.to.eventhub.sender.CircuitBreaker;
+import it.gov.pagopa.fdr.to.eventhub.sender.InMemoryCheckpointStore;
+import it.gov.pagopa.fdr.to.eventhub.sender.InMemoryDeliveryIndex;
+import it.gov.pagopa.fdr.to.eventhub.sink.InMemorySink;
+import it.gov.pagopa.fdr.to.eventhub.source.FlowSource;
 import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
 import it.gov.pagopa.fdr.to.eventhub.util.SampleContentFileUtil;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.function.Supplier;
@@ -65,6 +84,7 @@ class BlobProcessingFunctionTest {
   @BeforeEach
   void setup() {
     function = new BlobProcessingFunction(eventHubClientFlowTx, eventHubClientReportedIUV);
+    CommonUtil.setDeliveryIndex(new InMemoryDeliveryIndex());
     lenient().when(eventHubClientFlowTx.createBatch()).thenReturn(mock(EventDataBatch.class));
     lenient().when(eventHubClientReportedIUV.createBatch()).thenReturn(mock(EventDataBatch.class));
   }
@@ -93,7 +113,7 @@ class BlobProcessingFunctionTest {
           .when(() -> FDR1XmlSAXParser.parseXmlStream(any(InputStream.class)))
           .thenReturn(flussoRendicontazione);
 
-      function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+      processFDR1(function, compressedData, "sampleBlob", metadata, context);
     }
 
     verify(eventHubClientFlowTx, atLeastOnce()).send(any(EventDataBatch.class));
@@ -126,33 +146,55 @@ class BlobProcessingFunctionTest {
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
 
-    function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+    processFDR1(function, compressedData, "sampleBlob", metadata, context);
 
     verify(eventHubClientFlowTx, atLeastOnce()).send(any(EventDataBatch.class));
     verify(eventHubClientReportedIUV, atLeastOnce()).send(any(EventDataBatch.class));
   }
 
   @Test
-  void testFDR1ProcessBlobWithNullData() {
+  void testOpenCircuitFailsTheInvocation() {
+    when(context.getLogger()).thenReturn(mockLogger);
+    CircuitBreaker circuitBreaker = CommonUtil.getCircuitBreaker(eventHubClientReportedIUV);
+    for (int i = 0; i < 5; i++) {
+      circuitBreaker.onFailure();
+    }
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
+    metadata.put("elaborate", "true");
+    byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(
+        CircuitBreakerOpenException.class,
+        () -> processFDR1(function, content, "sampleBlob", metadata, context));
+    assertThrows(
+        CircuitBreakerOpenException.class,
+        () -> processFDR3(function, content, "sampleBlob", metadata, context));
+    verify(eventHubClientFlowTx, never()).send(any(EventDataBatch.class));
+  }
+
+  @Test
+  void testFDR1ProcessBlobWithNullData() throws Exception {
     Map<String, String> metadata = new HashMap<>();
     metadata.put("sessionId", "1234");
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
     assertThrows(
         IllegalArgumentException.class,
-        () -> function.processFDR1BlobFiles(null, "sampleBlob", metadata, context));
+        () -> processFDR1(function, null, "sampleBlob", metadata, context));
   }
 
   @Test
-  void testFDR1ProcessBlobWithInvalidGzipData() {
+  void testFDR1ProcessBlobWithInvalidGzipData() throws Exception {
     when(context.getLogger()).thenReturn(mockLogger);
     String invalidData = "invalidData";
     Map<String, String> metadata = new HashMap<>();
     metadata.put("sessionId", "1234");
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
-    function.processFDR1BlobFiles(
-        invalidData.getBytes(StandardCharsets.UTF_8), "sampleBlob", metadata, context);
+    processFDR1(
+        function, invalidData.getBytes(StandardCharsets.UTF_8), "sampleBlob", metadata, context);
     ArgumentCaptor<Supplier<String>> logCaptor = ArgumentCaptor.forClass(Supplier.class);
     verify(mockLogger, atLeastOnce()).severe(logCaptor.capture());
   }
@@ -165,7 +207,7 @@ class BlobProcessingFunctionTest {
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
     byte[] compressedData = SampleContentFileUtil.createGzipCompressedData("");
-    function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+    processFDR1(function, compressedData, "sampleBlob", metadata, context);
 
     verify(eventHubClientFlowTx, never()).send(any(ArrayList.class));
     verify(eventHubClientReportedIUV, never()).send(any(ArrayList.class));
@@ -181,7 +223,7 @@ class BlobProcessingFunctionTest {
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
     byte[] compressedData = SampleContentFileUtil.createGzipCompressedData("<xml>malformed</xml>");
-    function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+    processFDR1(function, compressedData, "sampleBlob", metadata, context);
 
     verify(eventHubClientFlowTx, never()).send(any(EventDataBatch.class));
     verify(eventHubClientReportedIUV, never()).send(any(EventDataBatch.class));
@@ -202,7 +244,7 @@ class BlobProcessingFunctionTest {
     IllegalArgumentException exception =
         assertThrows(
             IllegalArgumentException.class,
-            () -> function.processFDR1BlobFiles(new byte[] {}, "testBlob", null, context));
+            () -> processFDR1(function, new byte[] {}, "testBlob", null, context));
 
     assertEquals(
         "Invalid blob metadata: sessionId or insertedTimestamp is missing.",
@@ -215,7 +257,7 @@ class BlobProcessingFunctionTest {
     IllegalArgumentException exception =
         assertThrows(
             IllegalArgumentException.class,
-            () -> function.processFDR1BlobFiles(new byte[] {}, "testBlob", emptyMetadata, context));
+            () -> processFDR1(function, new byte[] {}, "testBlob", emptyMetadata, context));
 
     assertEquals(
         "Invalid blob metadata: sessionId or insertedTimestamp is missing.",
@@ -231,8 +273,7 @@ class BlobProcessingFunctionTest {
     IllegalArgumentException exception =
         assertThrows(
             IllegalArgumentException.class,
-            () ->
-                function.processFDR1BlobFiles(new byte[] {}, "testBlob", invalidMetadata, context));
+            () -> processFDR1(function, new byte[] {}, "testBlob", invalidMetadata, context));
 
     assertEquals(
         "Invalid blob metadata: sessionId or insertedTimestamp is missing.",
@@ -240,14 +281,14 @@ class BlobProcessingFunctionTest {
   }
 
   @Test
-  void testFDR1ValidateBlobMetadata_ElaborateFalse() {
+  void testFDR1ValidateBlobMetadata_ElaborateFalse() throws Exception {
     when(context.getLogger()).thenReturn(mockLogger);
     Map<String, String> metadata = new HashMap<>();
     metadata.put("sessionId", "1234");
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "false");
 
-    function.processFDR1BlobFiles(new byte[] {}, "testBlob", metadata, context);
+    processFDR1(function, new byte[] {}, "testBlob", metadata, context);
 
     verify(eventHubClientFlowTx, never()).send(any(EventDataBatch.class));
     verify(eventHubClientReportedIUV, never()).send(any(EventDataBatch.class));
@@ -280,7 +321,10 @@ class BlobProcessingFunctionTest {
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
 
-    function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+    // the invocation fails, so that the trigger retries the flow
+    assertThrows(
+        EventHubException.class,
+        () -> processFDR1(function, compressedData, "sampleBlob", metadata, context));
 
     ArgumentCaptor<Supplier<String>> logCaptor = ArgumentCaptor.forClass(Supplier.class);
     verify(mockLogger, atLeastOnce()).severe(logCaptor.capture());
@@ -297,7 +341,9 @@ class BlobProcessingFunctionTest {
         .thenReturn(Boolean.TRUE);
     doThrow(NullPointerException.class).when(eventHubClientFlowTx).send(any(EventDataBatch.class));
 
-    function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+    assertThrows(
+        EventHubException.class,
+        () -> processFDR1(function, compressedData, "sampleBlob", metadata, context));
 
     logCaptor = ArgumentCaptor.forClass(Supplier.class);
     verify(mockLogger, atLeastOnce()).severe(logCaptor.capture());
@@ -349,7 +395,7 @@ class BlobProcessingFunctionTest {
       metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
       metadata.put("elaborate", "true");
 
-      function.processFDR1BlobFiles(compressedData, "sampleBlob", metadata, context);
+      processFDR1(function, compressedData, "sampleBlob", metadata, context);
     }
 
     verify(eventHubClientFlowTx, atLeastOnce()).send(any(EventDataBatch.class));
@@ -365,8 +411,11 @@ class BlobProcessingFunctionTest {
   }
 
   @Test
-  void testFDR3BlobTriggerProcessing() throws Exception {
+  void testFDR1BlobTriggerResumesFromCheckpoint() throws Exception {
+    EventDataBatch mockEventDataBatch = mock(EventDataBatch.class);
     when(context.getLogger()).thenReturn(mockLogger);
+    when(eventHubClientReportedIUV.createBatch()).thenReturn(mockEventDataBatch);
+    when(mockEventDataBatch.tryAdd(any(EventData.class))).thenReturn(Boolean.TRUE);
     String sampleXml = SampleContentFileUtil.getSampleXml("sample.xml");
     byte[] compressedData = SampleContentFileUtil.createGzipCompressedData(sampleXml);
     Map<String, String> metadata = new HashMap<>();
@@ -374,9 +423,211 @@ class BlobProcessingFunctionTest {
     metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
     metadata.put("elaborate", "true");
 
-    function.processFDR3BlobFiles(compressedData, "sampleBlob", metadata, context);
-    ArgumentCaptor<Supplier<String>> logCaptor = ArgumentCaptor.forClass(Supplier.class);
-    verify(mockLogger, atLeastOnce()).info(logCaptor.capture());
+    // a previous attempt delivered the FlowTx event and the first 6 chunks
+    InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+    checkpointStore.save(
+        "fdr1-flows/sampleBlob",
+        "1234",
+        Checkpoint.builder().flowTxSent(true).lastAckedChunk(5).chunkSizeBytes(3500).build());
+    CommonUtil.setCheckpointStore(checkpointStore);
+    try {
+      processFDR1(function, compressedData, "sampleBlob", metadata, context);
+    } finally {
+      CommonUtil.setCheckpointStore(new InMemoryCheckpointStore());
+    }
+
+    verify(eventHubClientFlowTx, never()).send(any(EventDataBatch.class));
+    ArgumentCaptor<EventData> eventCaptor = ArgumentCaptor.forClass(EventData.class);
+    verify(mockEventDataBatch, atLeastOnce()).tryAdd(eventCaptor.capture());
+    List<Object> chunkIndexes =
+        eventCaptor.getAllValues().stream()
+            .map(eventData -> eventData.getProperties().get("chunkIndex"))
+            .toList();
+    assertEquals(6, chunkIndexes.get(0));
+    for (int i = 1; i < chunkIndexes.size(); i++) {
+      assertEquals(6 + i, chunkIndexes.get(i));
+    }
+    // the flow is complete, the checkpoint is removed
+    assertTrue(checkpointStore.load("fdr1-flows/sampleBlob", "1234").isEmpty());
+    // every event carries the digest of the decompressed XML
+    String expectedSha256 =
+        HexFormat.of()
+            .formatHex(
+                MessageDigest.getInstance("SHA-256")
+                    .digest(sampleXml.getBytes(StandardCharsets.UTF_8)));
+    eventCaptor
+        .getAllValues()
+        .forEach(
+            eventData ->
+                assertEquals(expectedSha256, eventData.getProperties().get("contentSha256")));
+  }
+
+  @Test
+  void testFDR1BlobTriggerSkipsDeliveredFlow() throws Exception {
+    EventDataBatch mockEventDataBatch = mock(EventDataBatch.class);
+    when(context.getLogger()).thenReturn(mockLogger);
+    when(eventHubClientFlowTx.createBatch()).thenReturn(mockEventDataBatch);
+    when(eventHubClientReportedIUV.createBatch()).thenReturn(mockEventDataBatch);
+    when(mockEventDataBatch.tryAdd(any(EventData.class))).thenReturn(Boolean.TRUE);
+    String sampleXml = SampleContentFileUtil.getSampleXml("sample.xml");
+    byte[] compressedData = SampleContentFileUtil.createGzipCompressedData(sampleXml);
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
+    metadata.put("elaborate", "true");
+
+    processFDR1(function, compressedData, "sampleBlob", metadata, context);
+    verify(eventHubClientFlowTx, times(1)).send(any(EventDataBatch.class));
+
+    // the same upload triggers again: nothing is parsed or sent
+    try (MockedStatic<FDR1XmlSAXParser> mockedStatic = mockStatic(FDR1XmlSAXParser.class)) {
+      processFDR1(function, compressedData, "sampleBlob", metadata, context);
+      mockedStatic.verifyNoInteractions();
+    }
+    verify(eventHubClientFlowTx, times(1)).send(any(EventDataBatch.class));
+
+    // a new upload of the same flow has a new sessionId and is delivered again
+    metadata.put("sessionId", "5678");
+    processFDR1(function, compressedData, "sampleBlob", metadata, context);
+    verify(eventHubClientFlowTx, times(2)).send(any(EventDataBatch.class));
+  }
+
+  @Test
+  void testFDR3BlobTriggerProcessing() throws Exception {
+    EventDataBatch mockEventDataBatch = mock(EventDataBatch.class);
+    when(context.getLogger()).thenReturn(mockLogger);
+    when(eventHubClientFlowTx.createBatch()).thenReturn(mockEventDataBatch);
+    when(eventHubClientReportedIUV.createBatch()).thenReturn(mockEventDataBatch);
+    when(mockEventDataBatch.tryAdd(any(EventData.class))).thenReturn(Boolean.TRUE);
+    String sampleJson = SampleContentFileUtil.getSampleXml("sample_fdr3.json");
+    byte[] compressedData = SampleContentFileUtil.createGzipCompressedData(sampleJson);
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
+    metadata.put("elaborate", "true");
+
+    processFDR3(function, compressedData, "sampleBlob", metadata, context);
+
+    ArgumentCaptor<EventData> eventCaptor = ArgumentCaptor.forClass(EventData.class);
+    verify(mockEventDataBatch, times(2)).tryAdd(eventCaptor.capture());
+    assertTrue(eventCaptor.getAllValues().get(0).getBodyAsString().contains("2025-01-30POSTE-001"));
+    verify(eventHubClientFlowTx, times(1)).send(any(EventDataBatch.class));
+    verify(eventHubClientReportedIUV, times(1)).send(any(EventDataBatch.class));
+    verify(mockLogger, never()).severe(any(Supplier.class));
+
+    // the same upload is delivered once
+    processFDR3(function, compressedData, "sampleBlob", metadata, context);
+    verify(eventHubClientFlowTx, times(1)).send(any(EventDataBatch.class));
+  }
+
+  @Test
+  void testComposedSourceAndSink() throws Exception {
+    when(context.getLogger()).thenReturn(mockLogger);
+    InMemorySink sink = new InMemorySink(3500);
+    BlobProcessingFunction composed =
+        new BlobProcessingFunction(
+            eventHubClientFlowTx,
+            eventHubClientReportedIUV,
+            FlowSource.of("fdr1-stax"),
+            FlowSource.of("fdr3-json"),
+            sink);
+    String sampleXml = SampleContentFileUtil.getSampleXml("sample.xml");
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
+    metadata.put("elaborate", "true");
+
+    processFDR1(
+        composed,
+        SampleContentFileUtil.createGzipCompressedData(sampleXml),
+        "sampleBlob",
+        metadata,
+        context);
+
+    assertEquals(1, sink.getEvents(CommonUtil.FLOWTX_HUB_KEY).size());
+    assertTrue(sink.getEvents(CommonUtil.REPORTEDIUV_HUB_KEY).size() > 1);
+    verify(eventHubClientFlowTx, never()).send(any(EventDataBatch.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testOversizedFlowIsSplitIntoWorkUnits() throws Exception {
+    when(context.getLogger()).thenReturn(mockLogger);
+    InMemorySink sink = new InMemorySink(3500);
+    BlobProcessingFunction coordinator =
+        new BlobProcessingFunction(
+            eventHubClientFlowTx,
+            eventHubClientReportedIUV,
+            FlowSource.of("fdr1-sax"),
+            FlowSource.of("fdr3-json"),
+            sink,
+            FlowFanOut.builder().enabled(true).maxPayments(10).unitPayments(30).build());
+    byte[] content =
+        SampleContentFileUtil.createGzipCompressedData(
+            SampleContentFileUtil.getSampleXml("sample.xml"));
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
+    metadata.put("elaborate", "true");
+    OutputBinding<List<String>> workUnits = mock(OutputBinding.class);
+    ArgumentCaptor<List<String>> messages = ArgumentCaptor.forClass(List.class);
+
+    coordinator.processFDR1BlobFiles(content, "sampleBlob", metadata, workUnits, context);
+
+    // the coordinator sends only the FlowTx event
+    verify(workUnits).setValue(messages.capture());
+    assertEquals(1, sink.getEvents(CommonUtil.FLOWTX_HUB_KEY).size());
+    assertTrue(sink.getEvents(CommonUtil.REPORTEDIUV_HUB_KEY).isEmpty());
+    List<WorkUnit> units = new ArrayList<>();
+    for (String message : messages.getValue()) {
+      units.add(WorkUnit.fromJson(message));
+    }
+    assertTrue(units.size() > 1);
+    assertEquals(100, units.stream().mapToInt(WorkUnit::getPaymentCount).sum());
+
+    // any order of the units delivers the chunks of a whole-flow delivery, from the stored slices
+    WorkUnitProcessor worker =
+        new WorkUnitProcessor(
+            sink, new InMemoryWorkUnitTracker(), coordinator.getFanOut().getSliceStore());
+    String contentHash = CommonUtil.blobHash(content);
+    assertEquals(contentHash, units.get(0).getContentHash());
+    for (int i = units.size() - 1; i >= 0; i--) {
+      assertTrue(CommonUtil.findDelivery(metadata, contentHash).isEmpty());
+      assertTrue(worker.process(units.get(i), context));
+    }
+    assertTrue(CommonUtil.findDelivery(metadata, contentHash).isPresent());
+    assertTrue(coordinator.getFanOut().getSliceStore().load(units.get(0)).isEmpty());
+
+    List<String> expectedChunks =
+        FlowSource.of("fdr1-sax")
+            .read(CommonUtil.decompressGzip(content), metadata, 3500)
+            .getReportedIUVChunks();
+    List<EventData> chunks = sink.getEvents(CommonUtil.REPORTEDIUV_HUB_KEY);
+    assertEquals(expectedChunks.size(), chunks.size());
+    for (EventData chunk : chunks) {
+      assertEquals(
+          expectedChunks.get((Integer) chunk.getProperties().get("chunkIndex")),
+          chunk.getBodyAsString());
+    }
+  }
+
+  @Test
+  void testFDR3InvalidFlowIsNotSent() throws Exception {
+    when(context.getLogger()).thenReturn(mockLogger);
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    metadata.put("insertedTimestamp", "2025-01-30T10:15:30");
+    metadata.put("elaborate", "true");
+
+    processFDR3(
+        function,
+        "{\"fdr\":\"flow\"}".getBytes(StandardCharsets.UTF_8),
+        "sampleBlob",
+        metadata,
+        context);
+
+    verify(eventHubClientFlowTx, never()).send(any(EventDataBatch.class));
+    verify(mockLogger).severe(any(Supplier.class));
   }
 
   @Test
@@ -413,4 +664,26 @@ class BlobProcessingFunctionTest {
       assertEquals(mockClient2, blobProcessingFunction.getEventHubClientReportedIUV());
     }
   }
+
+  /** Runs the FDR1 trigger without the output binding of the work units. */
+  private static void processFDR1(
+      BlobProcessingFunction function,
+      byte[] content,
+      String blobName,
+      Map<String, String> metadata,
+      ExecutionContext context)
+      throws EventHubException {
+    function.processFDR1BlobFiles(content, blobName, metadata, null, context);
+  }
+
+  /** Runs the FDR3 trigger without the output binding of the work units. */
+  private static void processFDR3(
+      BlobProcessingFunction function,
+      byte[] content,
+      String blobName,
+      Map<String, String> metadata,
+      ExecutionContext context)
+      throws EventHubException {
+    function.processFDR3BlobFiles(content, blobName, metadata, null, context);
+  }
 }
@@ -2,24 +2,39 @@ package it.gov.pagopa.fdr.to.eventhub;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.HttpRequestMessage;
 import com.microsoft.azure.functions.HttpResponseMessage;
 import com.microsoft.azure.functions.HttpStatus;
+import it.gov.pagopa.fdr.to.eventhub.exception.CircuitBreakerOpenException;
 import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
-import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryService;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryPlan;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryRecord;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.sink.EventSink;
+import it.gov.pagopa.fdr.to.eventhub.source.FlowSource;
 import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
 import it.gov.pagopa.fdr.to.eventhub.util.SampleContentFileUtil;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
@@ -27,6 +42,7 @@ import java.util.logging.Logger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
@@ -44,6 +60,9 @@ class HttpBlobRecoveryFunctionTest {
   @Mock private EventHubProducerClient mockEventHubClientReportedIUV;
   @Mock private ExecutionContext mockContext;
   @Mock private HttpRequestMessage<Optional<String>> mockRequest;
+  @Mock private FlowSource mockFdr1Source;
+  @Mock private FlowSource mockFdr3Source;
+  @Mock private EventSink mockEventSink;
 
   @SystemStub private EnvironmentVariables environmentVariables = new EnvironmentVariables();
 
@@ -56,7 +75,15 @@ class HttpBlobRecoveryFunctionTest {
   @BeforeEach
   void setUp() {
     function =
-        new HttpBlobRecoveryFunction(mockEventHubClientFlowTx, mockEventHubClientReportedIUV);
+        new HttpBlobRecoveryFunction(
+            mockEventHubClientFlowTx,
+            mockEventHubClientReportedIUV,
+            new BlobRecoveryService(
+                mockEventHubClientFlowTx,
+                mockEventHubClientReportedIUV,
+                mockFdr1Source,
+                mockFdr3Source,
+                mockEventSink));
     Logger logger = mock(Logger.class);
     lenient().when(mockContext.getLogger()).thenReturn(logger);
 
@@ -120,6 +147,31 @@ class HttpBlobRecoveryFunctionTest {
     }
   }
 
+  @Test
+  void testErrorMessageIsValidJson() throws Exception {
+
+    statusToReturn.set(HttpStatus.NOT_FOUND);
+
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of("fileName", "test \"quoted\".xml", "container", "test-container"));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
+      mockedUtil
+          .when(() -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()))
+          .thenReturn(null);
+
+      HttpResponseMessage response = function.run(mockRequest, mockContext);
+      assertEquals(HttpStatus.NOT_FOUND, response.getStatus());
+
+      ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+      verify(mockResponseBuilder).body(body.capture());
+      JsonNode message = objectMapper.readTree(body.getValue().toString()).get("message");
+      assertTrue(message.asText().contains("test \"quoted\".xml"), message.asText());
+    }
+  }
+
   @Test
   void testMissingMetadata() throws Exception {
 
@@ -155,24 +207,27 @@ class HttpBlobRecoveryFunctionTest {
 
     Map<String, String> metadata = new HashMap<>();
     metadata.put("key", "value");
+    metadata.put("sessionId", "1234");
     BlobFileData mockBlobFileData =
         new BlobFileData(
             SampleContentFileUtil.createGzipCompressedData(new byte[] {1, 2, 3}.toString()),
             metadata);
-    FlussoRendicontazione mockFlusso = mock(FlussoRendicontazione.class);
+    FlowEvents flowEvents = flowEvents();
 
     try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
       mockedUtil
           .when(() -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()))
           .thenReturn(mockBlobFileData);
       mockedUtil.when(() -> CommonUtil.validateBlobMetadata(any())).thenReturn(true);
-      mockedUtil.when(() -> CommonUtil.parseXml(any())).thenReturn(mockFlusso);
-      mockedUtil
-          .when(() -> CommonUtil.processXmlBlobAndSendToEventHub(any(), any(), any(), any()))
-          .thenReturn(true);
+      when(mockFdr1Source.read(any(), any(), anyInt())).thenReturn(flowEvents);
 
       HttpResponseMessage response = function.run(mockRequest, mockContext);
       assertEquals(HttpStatus.OK, response.getStatus());
+      // checkpointed under the sessionId, as the blob trigger does, so each resumes the other
+      ArgumentCaptor<DeliveryOptions> options = ArgumentCaptor.forClass(DeliveryOptions.class);
+      verify(mockEventSink).deliver(any(), any(), options.capture(), any());
+      assertEquals("test-container/test.xml", options.getValue().getBlobName());
+      assertEquals("1234", options.getValue().getSessionId());
     }
   }
 
@@ -192,20 +247,135 @@ class HttpBlobRecoveryFunctionTest {
         new BlobFileData(
             SampleContentFileUtil.createGzipCompressedData(new byte[] {1, 2, 3}.toString()),
             metadata);
-    FlussoRendicontazione mockFlusso = mock(FlussoRendicontazione.class);
+    FlowEvents flowEvents = flowEvents();
 
     try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
       mockedUtil
           .when(() -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()))
           .thenReturn(mockBlobFileData);
       mockedUtil.when(() -> CommonUtil.validateBlobMetadata(any())).thenReturn(true);
-      mockedUtil.when(() -> CommonUtil.parseXml(any())).thenReturn(mockFlusso);
+      when(mockFdr1Source.read(any(), any(), anyInt())).thenReturn(flowEvents);
+      when(mockEventSink.deliver(any(), any(), any(), any()))
+          .thenThrow(new IOException("not confirmed"));
+
+      HttpResponseMessage response = function.run(mockRequest, mockContext);
+      assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatus());
+    }
+  }
+
+  @Test
+  void testDryRunDoesNotContactEventHub() throws Exception {
+
+    statusToReturn.set(HttpStatus.OK);
+
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of("fileName", "test.xml", "container", "test-container", "dryRun", true));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("key", "value");
+    BlobFileData mockBlobFileData =
+        new BlobFileData(
+            SampleContentFileUtil.createGzipCompressedData(new byte[] {1, 2, 3}.toString()),
+            metadata);
+    FlowEvents flowEvents = flowEvents();
+
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
       mockedUtil
-          .when(() -> CommonUtil.processXmlBlobAndSendToEventHub(any(), any(), any(), any()))
-          .thenReturn(false);
+          .when(() -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()))
+          .thenReturn(mockBlobFileData);
+      mockedUtil.when(() -> CommonUtil.validateBlobMetadata(any())).thenReturn(true);
+      when(mockFdr1Source.read(any(), any(), anyInt())).thenReturn(flowEvents);
+      mockedUtil
+          .when(() -> CommonUtil.planDelivery(any()))
+          .thenReturn(
+              DeliveryPlan.builder()
+                  .payments(100)
+                  .chunks(1)
+                  .flowTxBytes(1000)
+                  .reportedIUVBytes(30000)
+                  .build());
+
+      HttpResponseMessage response = function.run(mockRequest, mockContext);
+      assertEquals(HttpStatus.OK, response.getStatus());
+      ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+      verify(mockResponseBuilder).body(body.capture());
+      JsonNode result = objectMapper.readTree(body.getValue().toString());
+      // one FlowTx event plus one ReportedIUV event per payment, packed in a single chunk
+      assertEquals(101, result.get("events").asLong());
+      assertEquals(1, result.get("chunks").asInt());
+      mockedUtil.verify(() -> CommonUtil.checkEventHubAvailability(any(), any()), never());
+      verify(mockEventSink, never()).deliver(any(), any(), any(), any());
+    }
+  }
+
+  @Test
+  void testAlreadyDeliveredFlowIsSkippedUnlessForced() throws Exception {
+
+    statusToReturn.set(HttpStatus.OK);
+
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    BlobFileData mockBlobFileData =
+        new BlobFileData(
+            SampleContentFileUtil.createGzipCompressedData(new byte[] {1, 2, 3}.toString()),
+            metadata);
+    FlowEvents flowEvents = flowEvents();
+
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
+      mockedUtil
+          .when(() -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()))
+          .thenReturn(mockBlobFileData);
+      mockedUtil.when(() -> CommonUtil.validateBlobMetadata(any())).thenReturn(true);
+      mockedUtil.when(() -> CommonUtil.blobHash(any())).thenReturn("hash");
+      mockedUtil
+          .when(() -> CommonUtil.findDelivery(metadata, "hash"))
+          .thenReturn(
+              Optional.of(DeliveryRecord.builder().flowId("flow-1").sessionId("1234").build()));
+      when(mockFdr1Source.read(any(), any(), anyInt())).thenReturn(flowEvents);
+
+      when(mockRequest.getBody())
+          .thenReturn(
+              Optional.of(
+                  objectMapper.writeValueAsString(
+                      Map.of("fileName", "test.xml", "container", "test-container"))));
+      assertEquals(HttpStatus.OK, function.run(mockRequest, mockContext).getStatus());
+      verify(mockFdr1Source, never()).read(any(), any(), anyInt());
+      verify(mockEventSink, never()).deliver(any(), any(), any(), any());
+
+      when(mockRequest.getBody())
+          .thenReturn(
+              Optional.of(
+                  objectMapper.writeValueAsString(
+                      Map.of(
+                          "fileName", "test.xml", "container", "test-container", "force", true))));
+      assertEquals(HttpStatus.OK, function.run(mockRequest, mockContext).getStatus());
+      verify(mockEventSink).deliver(any(), any(), any(), any());
+      mockedUtil.verify(
+          () -> CommonUtil.recordDelivery(anyString(), any(), eq("hash"), any(), any()));
+    }
+  }
+
+  @Test
+  void testEventHubCircuitOpen() throws Exception {
+
+    statusToReturn.set(HttpStatus.SERVICE_UNAVAILABLE);
+
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of("fileName", "test.xml", "container", "test-container"));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
+      mockedUtil
+          .when(() -> CommonUtil.checkEventHubAvailability(any(), any()))
+          .thenThrow(new CircuitBreakerOpenException("circuit open"));
 
       HttpResponseMessage response = function.run(mockRequest, mockContext);
       assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatus());
+      mockedUtil.verify(
+          () -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()), never());
     }
   }
 
@@ -243,4 +413,43 @@ class HttpBlobRecoveryFunctionTest {
       assertEquals(mockClient2, httpBlobRecoveryFunction.getEventHubClientReportedIUV());
     }
   }
+
+  @Test
+  void testFdr3ContainerIsReadWithTheFdr3Source() throws Exception {
+
+    statusToReturn.set(HttpStatus.OK);
+
+    String requestBody =
+        objectMapper.writeValueAsString(Map.of("fileName", "test.json", "container", "fdr3-flows"));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("sessionId", "1234");
+    BlobFileData mockBlobFileData =
+        new BlobFileData(SampleContentFileUtil.createGzipCompressedData("{}"), metadata);
+    FlowEvents flowEvents = flowEvents();
+
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
+      mockedUtil
+          .when(() -> CommonUtil.getBlobFile(anyString(), anyString(), anyString(), any()))
+          .thenReturn(mockBlobFileData);
+      mockedUtil.when(() -> CommonUtil.validateBlobMetadata(any())).thenReturn(true);
+      when(mockFdr3Source.read(any(), any(), anyInt())).thenReturn(flowEvents);
+
+      HttpResponseMessage response = function.run(mockRequest, mockContext);
+      assertEquals(HttpStatus.OK, response.getStatus());
+      verify(mockFdr1Source, never()).read(any(), any(), anyInt());
+      verify(mockEventSink).deliver(eq(flowEvents), eq(metadata), any(), any());
+    }
+  }
+
+  private static FlowEvents flowEvents() {
+    return FlowEvents.builder()
+        .flowId("flow-1")
+        .contentSha256("hash")
+        .payments(100)
+        .flowTxJson("{}")
+        .reportedIUVChunks(List.of("[]"))
+        .build();
+  }
 }
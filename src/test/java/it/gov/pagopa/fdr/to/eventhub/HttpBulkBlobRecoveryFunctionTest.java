@@ -0,0 +1,263 @@
+package it.gov.pagopa.fdr.to.eventhub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult.Outcome;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryService;
+import it.gov.pagopa.fdr.to.eventhub.recovery.ContainerScanner;
+import it.gov.pagopa.fdr.to.eventhub.recovery.RecoveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.recovery.ScanRequest;
+import it.gov.pagopa.fdr.to.eventhub.recovery.ScanResult;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class HttpBulkBlobRecoveryFunctionTest {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Mock private EventHubProducerClient mockEventHubClientFlowTx;
+  @Mock private EventHubProducerClient mockEventHubClientReportedIUV;
+  @Mock private BlobRecoveryService mockRecoveryService;
+  @Mock private ContainerScanner mockContainerScanner;
+  @Mock private ExecutionContext mockContext;
+  @Mock private HttpRequestMessage<Optional<String>> mockRequest;
+
+  private HttpBulkBlobRecoveryFunction function;
+
+  private HttpResponseMessage.Builder mockResponseBuilder;
+  private final AtomicReference<HttpStatus> status = new AtomicReference<>();
+  private final AtomicReference<String> body = new AtomicReference<>();
+
+  @BeforeEach
+  void setUp() {
+    function =
+        new HttpBulkBlobRecoveryFunction(
+            mockEventHubClientFlowTx,
+            mockEventHubClientReportedIUV,
+            mockRecoveryService,
+            mockContainerScanner);
+    Logger logger = mock(Logger.class);
+    lenient().when(mockContext.getLogger()).thenReturn(logger);
+
+    mockResponseBuilder = mock(HttpResponseMessage.Builder.class);
+    lenient()
+        .when(mockResponseBuilder.header(anyString(), anyString()))
+        .thenReturn(mockResponseBuilder);
+    lenient()
+        .when(mockResponseBuilder.body(any()))
+        .thenAnswer(
+            invocation -> {
+              body.set(invocation.getArgument(0));
+              return mockResponseBuilder;
+            });
+    lenient()
+        .when(mockResponseBuilder.build())
+        .thenAnswer(
+            invocation -> {
+              HttpResponseMessage response = mock(HttpResponseMessage.class);
+              when(response.getStatus()).thenReturn(status.get());
+              return response;
+            });
+    lenient()
+        .when(mockRequest.createResponseBuilder(any(HttpStatus.class)))
+        .thenAnswer(
+            invocation -> {
+              status.set(invocation.getArgument(0));
+              return mockResponseBuilder;
+            });
+  }
+
+  @Test
+  void testMissingRequestBody() {
+    when(mockRequest.getBody()).thenReturn(Optional.empty());
+
+    HttpResponseMessage response = function.run(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+  }
+
+  @Test
+  void testMissingBlobSelection() throws Exception {
+    when(mockRequest.getBody())
+        .thenReturn(Optional.of(objectMapper.writeValueAsString(Map.of("container", "c"))));
+
+    HttpResponseMessage response = function.run(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+    verify(mockRecoveryService, never()).recover(anyString(), anyString(), any(), any(), any());
+  }
+
+  @Test
+  void testBlobListWithAggregateCounts() throws Exception {
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of(
+                "parallelism",
+                2,
+                "blobs",
+                List.of(
+                    Map.of("container", "fdr1-flows", "fileName", "a.xml.zip"),
+                    Map.of("container", "fdr1-flows", "fileName", "b.xml.zip"),
+                    Map.of("container", "fdr1-flows", "fileName", "c.xml.zip"))));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+    when(mockRecoveryService.recover(
+            eq("fdr1-flows"), anyString(), any(), any(), eq(RecoveryOptions.DEFAULT)))
+        .thenAnswer(
+            invocation -> {
+              String fileName = invocation.getArgument(1);
+              boolean missing = "b.xml.zip".equals(fileName);
+              return BlobRecoveryResult.builder()
+                  .container("fdr1-flows")
+                  .fileName(fileName)
+                  .outcome(missing ? Outcome.NOT_FOUND : Outcome.SENT)
+                  .events(missing ? 0 : 101)
+                  .bytes(missing ? 0 : 2048)
+                  .build();
+            });
+
+    HttpResponseMessage response = function.run(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.OK, response.getStatus());
+    String[] lines = body.get().split("\n");
+    // one line per blob plus the summary
+    assertEquals(4, lines.length);
+    JsonNode summary = objectMapper.readTree(lines[3]).get("summary");
+    assertEquals(3, summary.get("blobs").asInt());
+    assertEquals(2, summary.get("sent").asInt());
+    assertEquals(1, summary.get("failed").asInt());
+    assertEquals(202, summary.get("events").asInt());
+    assertEquals(4096, summary.get("bytes").asInt());
+  }
+
+  @Test
+  void testContainerScanReturnsContinuationToken() throws Exception {
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of(
+                "container",
+                "fdr1-flows",
+                "prefix",
+                "2025-01-30",
+                "insertedFrom",
+                "2025-01-30T00:00:00",
+                "insertedTo",
+                "2025-01-31T00:00:00",
+                "continuationToken",
+                "page-2"));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+    ArgumentCaptor<ScanRequest> scanRequest = ArgumentCaptor.forClass(ScanRequest.class);
+    when(mockContainerScanner.scan(scanRequest.capture(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<BlobRecoveryResult> onResult = invocation.getArgument(2);
+              onResult.accept(
+                  BlobRecoveryResult.builder()
+                      .container("fdr1-flows")
+                      .fileName("2025-01-30/a.xml.zip")
+                      .outcome(Outcome.SENT)
+                      .events(1)
+                      .build());
+              return ScanResult.builder()
+                  .scanned(10)
+                  .matched(1)
+                  .unparsableTimestamps(2)
+                  .continuationToken("page-3")
+                  .build();
+            });
+
+    HttpResponseMessage response = function.run(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.OK, response.getStatus());
+    assertEquals("fdr1-flows", scanRequest.getValue().getContainer());
+    assertEquals("2025-01-30", scanRequest.getValue().getPrefix());
+    assertEquals(LocalDateTime.of(2025, 1, 30, 0, 0), scanRequest.getValue().getInsertedFrom());
+    assertEquals("page-2", scanRequest.getValue().getContinuationToken());
+    String[] lines = body.get().split("\n");
+    JsonNode summary = objectMapper.readTree(lines[1]).get("summary");
+    assertEquals(1, summary.get("sent").asInt());
+    assertEquals("page-3", summary.get("continuationToken").asText());
+    assertEquals(2, summary.get("unparsableTimestamps").asInt());
+  }
+
+  @Test
+  void testDryRunCountsValidatedBlobs() throws Exception {
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of(
+                "dryRun",
+                true,
+                "blobs",
+                List.of(
+                    Map.of("container", "fdr1-flows", "fileName", "a.xml.zip"),
+                    Map.of("container", "fdr1-flows", "fileName", "b.xml.zip"))));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+    when(mockRecoveryService.recover(
+            eq("fdr1-flows"), anyString(), any(), any(), argThat(RecoveryOptions::isDryRun)))
+        .thenAnswer(
+            invocation -> {
+              String fileName = invocation.getArgument(1);
+              boolean invalid = "b.xml.zip".equals(fileName);
+              return BlobRecoveryResult.builder()
+                  .container("fdr1-flows")
+                  .fileName(fileName)
+                  .dryRun(true)
+                  .outcome(invalid ? Outcome.INVALID : Outcome.VALIDATED)
+                  .payments(invalid ? 0 : 100)
+                  .chunks(invalid ? 0 : 1)
+                  .serializedBytes(invalid ? 0 : 30000)
+                  .build();
+            });
+
+    HttpResponseMessage response = function.run(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.OK, response.getStatus());
+    String[] lines = body.get().split("\n");
+    JsonNode summary = objectMapper.readTree(lines[2]).get("summary");
+    assertEquals(0, summary.get("sent").asInt());
+    assertEquals(1, summary.get("validated").asInt());
+    assertEquals(1, summary.get("failed").asInt());
+    assertEquals(100, summary.get("payments").asInt());
+    assertEquals(30000, summary.get("serializedBytes").asInt());
+  }
+
+  @Test
+  void testInvalidScanDate() throws Exception {
+    String requestBody =
+        objectMapper.writeValueAsString(
+            Map.of("container", "fdr1-flows", "prefix", "", "insertedFrom", "yesterday"));
+    when(mockRequest.getBody()).thenReturn(Optional.of(requestBody));
+
+    HttpResponseMessage response = function.run(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+  }
+}
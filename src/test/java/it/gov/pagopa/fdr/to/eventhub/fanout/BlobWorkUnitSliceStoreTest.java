@@ -0,0 +1,107 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobStorageException;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class BlobWorkUnitSliceStoreTest {
+
+  private static final WorkUnit UNIT =
+      WorkUnit.builder()
+          .container("fdr1-flows")
+          .blobName("blob.xml.zip")
+          .sessionId("1234")
+          .contentHash("abcd")
+          .flowId("2025-01-30PSP-0001")
+          .unitIndex(1)
+          .unitCount(2)
+          .firstChunk(1)
+          .chunkCount(1)
+          .build();
+
+  private final Map<String, byte[]> contents = new HashMap<>();
+  private final BlobContainerClient containerClient = mock(BlobContainerClient.class);
+
+  @Test
+  void testSliceIsReadBackByAnyInstance() throws Exception {
+    fakeContainer();
+    FlowEvents flowEvents =
+        FlowEvents.builder()
+            .flowId("2025-01-30PSP-0001")
+            .contentSha256("5678")
+            .payments(5)
+            .flowTxJson("{}")
+            .reportedIUVChunks(List.of("[0,1,2]", "[3,4]"))
+            .chunkFirstPayments(List.of(0, 3))
+            .chunkSizeBytes(8)
+            .build();
+    FlowFanOut.builder()
+        .enabled(true)
+        .sliceStore(new BlobWorkUnitSliceStore(containerClient))
+        .build()
+        .saveSlices(
+            flowEvents,
+            Map.of("sessionId", "1234"),
+            List.of(UNIT.toBuilder().unitIndex(0).firstChunk(0).build(), UNIT));
+
+    FlowEvents slice =
+        new BlobWorkUnitSliceStore(containerClient).load(UNIT).orElseThrow().toFlowEvents();
+
+    assertTrue(contents.containsKey("fdr1-flows/blob.xml.zip/1234-abcd.unit-1"));
+    assertEquals(flowEvents.slice(1, 1), slice);
+  }
+
+  @Test
+  void testMissingSliceIsEmpty() throws Exception {
+    fakeContainer();
+    WorkUnitSliceStore store = new BlobWorkUnitSliceStore(containerClient);
+
+    store.save(UNIT, WorkUnitSlice.builder().chunks(List.of()).build());
+    store.delete(UNIT);
+
+    assertTrue(store.load(UNIT).isEmpty());
+  }
+
+  private void fakeContainer() {
+    when(containerClient.getBlobClient(anyString()))
+        .thenAnswer(invocation -> blobClient(invocation.getArgument(0)));
+  }
+
+  private BlobClient blobClient(String name) {
+    BlobClient blobClient = mock(BlobClient.class);
+    when(blobClient.downloadContent())
+        .thenAnswer(
+            invocation -> {
+              if (!contents.containsKey(name)) {
+                BlobStorageException e = mock(BlobStorageException.class);
+                when(e.getStatusCode()).thenReturn(404);
+                throw e;
+              }
+              return BinaryData.fromBytes(contents.get(name));
+            });
+    doAnswer(
+            invocation -> {
+              contents.put(name, invocation.<BinaryData>getArgument(0).toBytes());
+              return null;
+            })
+        .when(blobClient)
+        .upload(any(BinaryData.class), eq(true));
+    when(blobClient.deleteIfExists()).thenAnswer(invocation -> contents.remove(name) != null);
+    return blobClient;
+  }
+}
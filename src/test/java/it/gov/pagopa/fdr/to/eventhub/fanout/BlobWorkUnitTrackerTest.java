@@ -0,0 +1,136 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobDownloadContentResponse;
+import com.azure.storage.blob.models.BlobDownloadHeaders;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class BlobWorkUnitTrackerTest {
+
+  private static final WorkUnit UNIT =
+      WorkUnit.builder()
+          .container("fdr1-flows")
+          .blobName("blob.xml.zip")
+          .sessionId("1234")
+          .contentHash("abcd")
+          .flowId("2025-01-30PSP-0001")
+          .unitCount(3)
+          .build();
+
+  // the blobs of the container, with the ETag of their last write
+  private final Map<String, byte[]> contents = new HashMap<>();
+  private final Map<String, String> eTags = new HashMap<>();
+  // successful writes of the trackers
+  private final AtomicInteger writes = new AtomicInteger();
+  private final BlobContainerClient containerClient = mock(BlobContainerClient.class);
+
+  @Test
+  void testLastUnitCompletesTheFlowOnAnyInstance() {
+    fakeContainer(new AtomicBoolean());
+    BlobWorkUnitTracker first = new BlobWorkUnitTracker(containerClient);
+    BlobWorkUnitTracker second = new BlobWorkUnitTracker(containerClient);
+
+    assertFalse(first.complete(UNIT.toBuilder().unitIndex(2).build()));
+    assertFalse(second.complete(UNIT.toBuilder().unitIndex(0).build()));
+    assertTrue(second.isComplete(UNIT.toBuilder().unitIndex(2).build()));
+    assertFalse(second.isComplete(UNIT.toBuilder().unitIndex(1).build()));
+
+    assertTrue(first.complete(UNIT.toBuilder().unitIndex(1).build()));
+    // a unit delivered again does not complete the flow a second time
+    assertFalse(second.complete(UNIT.toBuilder().unitIndex(1).build()));
+  }
+
+  @Test
+  void testConcurrentUpdateIsRetriedOnTheNewContent() {
+    AtomicBoolean concurrentWrite = new AtomicBoolean(true);
+    fakeContainer(concurrentWrite);
+    BlobWorkUnitTracker tracker = new BlobWorkUnitTracker(containerClient);
+
+    assertFalse(tracker.complete(UNIT.toBuilder().unitIndex(0).build()));
+
+    // the unit written by the other instance is kept
+    assertTrue(tracker.isComplete(UNIT.toBuilder().unitIndex(0).build()));
+    assertTrue(tracker.isComplete(UNIT.toBuilder().unitIndex(1).build()));
+    // the refused write was retried once
+    assertEquals(1, writes.get());
+    assertTrue(tracker.complete(UNIT.toBuilder().unitIndex(2).build()));
+  }
+
+  /**
+   * Backs the blob clients by the maps, honoring the ETag conditions of the writes. When {@code
+   * concurrentWrite} is set, unit 1 of the flow is written by someone else just before the next
+   * write, which is then refused.
+   */
+  private void fakeContainer(AtomicBoolean concurrentWrite) {
+    when(containerClient.getBlobClient(anyString()))
+        .thenAnswer(invocation -> blobClient(invocation.getArgument(0), concurrentWrite));
+  }
+
+  private BlobClient blobClient(String name, AtomicBoolean concurrentWrite) {
+    BlobClient blobClient = mock(BlobClient.class);
+    when(blobClient.downloadContentWithResponse(any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              synchronized (contents) {
+                if (!contents.containsKey(name)) {
+                  throw storageException(404);
+                }
+                BlobDownloadContentResponse response = mock(BlobDownloadContentResponse.class);
+                when(response.getValue()).thenReturn(BinaryData.fromBytes(contents.get(name)));
+                when(response.getDeserializedHeaders())
+                    .thenReturn(new BlobDownloadHeaders().setETag(eTags.get(name)));
+                return response;
+              }
+            });
+    when(blobClient.uploadWithResponse(any(BlobParallelUploadOptions.class), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              BlobParallelUploadOptions options = invocation.getArgument(0);
+              BlobRequestConditions conditions = options.getRequestConditions();
+              synchronized (contents) {
+                if (concurrentWrite.getAndSet(false)) {
+                  write(name, new byte[] {0b010});
+                }
+                if ("*".equals(conditions.getIfNoneMatch()) && contents.containsKey(name)) {
+                  throw storageException(409);
+                }
+                if (conditions.getIfMatch() != null
+                    && !conditions.getIfMatch().equals(eTags.get(name))) {
+                  throw storageException(412);
+                }
+                write(name, BinaryData.fromFlux(options.getDataFlux()).block().toBytes());
+                writes.incrementAndGet();
+                return null;
+              }
+            });
+    return blobClient;
+  }
+
+  private void write(String name, byte[] content) {
+    contents.put(name, content);
+    eTags.put(name, "etag-" + eTags.size() + "-" + System.nanoTime());
+  }
+
+  private static BlobStorageException storageException(int statusCode) {
+    BlobStorageException e = mock(BlobStorageException.class);
+    when(e.getStatusCode()).thenReturn(statusCode);
+    return e;
+  }
+}
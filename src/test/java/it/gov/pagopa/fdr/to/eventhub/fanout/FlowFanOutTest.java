@@ -0,0 +1,93 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FlowFanOutTest {
+
+  private static final FlowEvents FLOW =
+      FlowEvents.builder()
+          .flowId("2025-01-30PSP-0001")
+          .payments(50)
+          .flowTxJson("{}")
+          .reportedIUVChunks(List.of("c0", "c1", "c2", "c3", "c4"))
+          .chunkFirstPayments(List.of(0, 10, 20, 30, 40))
+          .chunkSizeBytes(3500)
+          .build();
+
+  private static final WorkUnit TEMPLATE =
+      WorkUnit.builder()
+          .container("fdr1-flows")
+          .blobName("blob.xml.zip")
+          .sessionId("1234")
+          .contentHash("abcd")
+          .source("fdr1-sax")
+          .build();
+
+  @Test
+  void testUnitsAreCutAtChunkBoundaries() {
+    FlowFanOut fanOut = FlowFanOut.builder().enabled(true).unitPayments(20).build();
+
+    List<WorkUnit> units = fanOut.plan(FLOW, TEMPLATE);
+
+    assertEquals(3, units.size());
+    assertEquals(List.of(0, 2, 4), units.stream().map(WorkUnit::getFirstChunk).toList());
+    assertEquals(List.of(2, 2, 1), units.stream().map(WorkUnit::getChunkCount).toList());
+    assertEquals(List.of(0, 20, 40), units.stream().map(WorkUnit::getFirstPayment).toList());
+    assertEquals(List.of(20, 20, 10), units.stream().map(WorkUnit::getPaymentCount).toList());
+    for (WorkUnit unit : units) {
+      assertEquals(3, unit.getUnitCount());
+      assertEquals("fdr1-flows/blob.xml.zip", unit.flowKey());
+      assertEquals(3500, unit.getChunkSizeBytes());
+    }
+  }
+
+  @Test
+  void testSliceKeepsTheChunkIndexesOfTheFlow() {
+    FlowEvents slice = FLOW.slice(2, 2);
+
+    assertEquals(null, slice.getFlowTxJson());
+    assertEquals(List.of("c2", "c3"), slice.getReportedIUVChunks());
+    assertEquals(2, slice.getFirstChunkIndex());
+    assertEquals(20, slice.getPayments());
+    assertEquals(2, slice.getEventCount());
+    assertEquals(1, FLOW.header().getEventCount());
+  }
+
+  @Test
+  void testOnlyBigFlowsAreSplit() {
+    FlowFanOut fanOut = FlowFanOut.builder().enabled(true).maxPayments(40).maxBytes(1000).build();
+
+    assertTrue(fanOut.shouldSplit(FLOW, 10));
+    assertTrue(fanOut.shouldSplit(FLOW.toBuilder().payments(30).build(), 2000));
+    assertFalse(fanOut.shouldSplit(FLOW.toBuilder().payments(30).build(), 10));
+    assertFalse(FlowFanOut.DISABLED.shouldSplit(FLOW, Long.MAX_VALUE));
+  }
+
+  @Test
+  void testWorkUnitJsonRoundTrip() throws Exception {
+    WorkUnit unit =
+        FlowFanOut.builder().enabled(true).unitPayments(20).build().plan(FLOW, TEMPLATE).get(1);
+
+    assertEquals(unit, WorkUnit.fromJson(unit.toJson()));
+  }
+
+  @Test
+  void testTrackerReportsTheLastUnit() {
+    WorkUnitTracker tracker = new InMemoryWorkUnitTracker();
+    List<WorkUnit> units =
+        FlowFanOut.builder().enabled(true).unitPayments(20).build().plan(FLOW, TEMPLATE);
+
+    assertFalse(tracker.complete(units.get(2)));
+    assertFalse(tracker.complete(units.get(0)));
+    assertFalse(tracker.complete(units.get(0)));
+    assertTrue(tracker.isComplete(units.get(0)));
+    assertFalse(tracker.isComplete(units.get(1)));
+    assertTrue(tracker.complete(units.get(1)));
+  }
+}
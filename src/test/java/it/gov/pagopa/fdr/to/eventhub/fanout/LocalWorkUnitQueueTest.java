@@ -0,0 +1,57 @@
+package it.gov.pagopa.fdr.to.eventhub.fanout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+class LocalWorkUnitQueueTest {
+
+  private final ExecutionContext context = mock(ExecutionContext.class);
+  private final WorkUnitProcessor processor = mock(WorkUnitProcessor.class);
+
+  @Test
+  void testFailedUnitIsRetriedAlone() throws Exception {
+    lenient().when(context.getLogger()).thenReturn(mock(Logger.class));
+    WorkUnit first = WorkUnit.builder().flowId("flow").unitIndex(0).unitCount(2).build();
+    WorkUnit second = first.toBuilder().unitIndex(1).build();
+    when(processor.process(first, context)).thenReturn(true);
+    when(processor.process(second, context)).thenThrow(new IOException("busy")).thenReturn(true);
+
+    try (LocalWorkUnitQueue queue = new LocalWorkUnitQueue(processor, 2, 3)) {
+      queue.submit(List.of(first, second), context);
+      queue.awaitIdle(Duration.ofSeconds(10));
+
+      verify(processor, times(1)).process(first, context);
+      verify(processor, times(2)).process(second, context);
+      assertTrue(queue.getPoisonUnits().isEmpty());
+    }
+  }
+
+  @Test
+  void testUnitFailingEveryAttemptIsPoisoned() throws Exception {
+    lenient().when(context.getLogger()).thenReturn(mock(Logger.class));
+    WorkUnit unit = WorkUnit.builder().flowId("flow").unitIndex(0).unitCount(1).build();
+    when(processor.process(any(WorkUnit.class), any(ExecutionContext.class)))
+        .thenThrow(new IOException("down"));
+
+    try (LocalWorkUnitQueue queue = new LocalWorkUnitQueue(processor, 1, 3)) {
+      queue.submit(List.of(unit), context);
+      queue.awaitIdle(Duration.ofSeconds(10));
+
+      verify(processor, times(3)).process(unit, context);
+      assertEquals(List.of(unit), queue.getPoisonUnits());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package it.gov.pagopa.fdr.to.eventhub.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.to.eventhub.model.eventhub.FlowSummaryModel;
+import it.gov.pagopa.fdr.to.eventhub.model.eventhub.ReportedIUVEventModel;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FlowAggregatesTest {
+
+  @Test
+  void testTotalsByDateAndOutcome() {
+    FlowAggregates aggregates = new FlowAggregates();
+    aggregates.add(event("2025-01-29T10:00:00", 0, 0.1));
+    aggregates.add(event("2025-01-28T23:59:59", 3, 0.2));
+    aggregates.add(event("2025-01-29T00:00:00", 0, 10.0));
+    aggregates.add(event(null, null, 1.0));
+
+    FlowSummaryModel summary = aggregates.toSummary();
+
+    assertEquals(4, summary.getPaymentsNum());
+    assertEquals(new BigDecimal("11.30"), summary.getAmount());
+    assertEquals(LocalDate.parse("2025-01-28"), summary.getMinOutcomeDate());
+    assertEquals(LocalDate.parse("2025-01-29"), summary.getMaxOutcomeDate());
+    assertEquals(2, summary.getByDate().size());
+    assertEquals(LocalDate.parse("2025-01-28"), summary.getByDate().get(0).getDate());
+    assertEquals(new BigDecimal("0.20"), summary.getByDate().get(0).getAmount());
+    assertEquals(2, summary.getByDate().get(1).getPaymentsNum());
+    assertEquals(new BigDecimal("10.10"), summary.getByDate().get(1).getAmount());
+    assertEquals(2, summary.getByOutcome().size());
+    assertEquals(0, summary.getByOutcome().get(0).getOutcomeCode());
+    assertEquals(2, summary.getByOutcome().get(0).getPaymentsNum());
+    assertEquals(3, summary.getByOutcome().get(1).getOutcomeCode());
+  }
+
+  @Test
+  void testEmptyFlow() {
+    FlowSummaryModel summary = new FlowAggregates().toSummary();
+
+    assertEquals(0, summary.getPaymentsNum());
+    assertEquals(new BigDecimal("0.00"), summary.getAmount());
+    assertNull(summary.getMinOutcomeDate());
+    assertTrue(summary.getByDate().isEmpty());
+  }
+
+  @Test
+  void testAllDatesAreSortedAndCappedWithMarker() {
+    FlowAggregates aggregates = new FlowAggregates();
+    aggregates.add(event("2025-01-30T10:00:00", 0, 1.0));
+    aggregates.add(event("2025-01-28T10:00:00", 0, 1.0));
+    aggregates.add(event(null, 0, 1.0));
+    aggregates.add(event("2025-01-30T12:00:00", 0, 1.0));
+    aggregates.add(event("2025-01-29T10:00:00", 0, 1.0));
+
+    assertEquals(List.of("2025-01-28", "2025-01-29", "2025-01-30"), aggregates.toAllDates(3));
+    // the first dates met are kept, the others are replaced by the marker
+    assertEquals(
+        List.of("2025-01-28", "2025-01-30", FlowAggregates.ALL_DATES_OVERFLOW_MARKER),
+        aggregates.toAllDates(2));
+  }
+
+  @Test
+  void testTotalsGrowPastTheInitialCapacity() {
+    IntKeyedTotals totals = new IntKeyedTotals(4);
+    for (int key = -500; key < 500; key++) {
+      totals.add(key * 7, 1);
+      totals.add(key * 7, 2);
+    }
+
+    assertEquals(1000, totals.size());
+    for (int i = 0; i < totals.size(); i++) {
+      assertEquals((i - 500) * 7, totals.keyAt(i));
+      assertEquals(2, totals.countAt(i));
+      assertEquals(3, totals.centsAt(i));
+    }
+    assertTrue(totals.contains(-3500));
+    assertFalse(totals.contains(1));
+  }
+
+  private static ReportedIUVEventModel event(String date, Integer outcomeCode, double amount) {
+    return ReportedIUVEventModel.builder()
+        .singlePaymentOutcomeDate(date == null ? null : LocalDateTime.parse(date))
+        .outcomeCode(outcomeCode)
+        .amount(BigDecimal.valueOf(amount))
+        .build();
+  }
+}
@@ -0,0 +1,70 @@
+package it.gov.pagopa.fdr.to.eventhub.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void testPercentilesWithinTheBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 1000; millis++) {
+      histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500.5, histogram.getMeanMillis(), 0.001);
+    assertEquals(1000.0, histogram.getMaxMillis(), 0.001);
+    assertEquals(500, histogram.getP50Millis(), 500 / 16.0);
+    assertEquals(990, histogram.getP99Millis(), 990 / 16.0);
+    assertTrue(histogram.getP999Millis() <= histogram.getMaxMillis());
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getP99Millis());
+  }
+
+  @Test
+  void testBucketsCoverEveryValue() {
+    for (long micros = 0; micros < 1 << 20; micros++) {
+      int index = LatencyHistogram.indexOf(micros);
+      assertTrue(LatencyHistogram.highestValueOf(index) >= micros);
+      assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < micros);
+    }
+  }
+
+  @Test
+  void testStagesAndHubsAreExported() throws Exception {
+    PipelineMetrics.record(Stage.SEND, TimeUnit.MILLISECONDS.toNanos(3));
+    PipelineMetrics.hubTraffic("fdr-re").onChunkSent(1000, 900_000);
+    PipelineMetrics.hubTraffic("fdr-re").onFlowSent();
+
+    Object sends =
+        ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(
+                new ObjectName(JmxMetrics.DOMAIN + ":type=StageLatency,name=\"send\""), "Count");
+    Object bytes =
+        ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(
+                new ObjectName(JmxMetrics.DOMAIN + ":type=HubTraffic,name=\"fdr-re\""), "Bytes");
+
+    assertTrue((Long) sends >= 1);
+    assertTrue((Long) bytes >= 900_000);
+  }
+
+  @Test
+  void testClientsWithoutHubNameGetDistinctNames() {
+    Object client = new Object();
+    Object other = new Object();
+
+    assertEquals("fdr-re", JmxMetrics.nameOf(client, "fdr-re"));
+    assertEquals(JmxMetrics.nameOf(client, null), JmxMetrics.nameOf(client, null));
+    assertNotEquals(JmxMetrics.nameOf(client, null), JmxMetrics.nameOf(other, null));
+  }
+}
@@ -0,0 +1,176 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.to.eventhub.exception.XmlParsingException;
+import it.gov.pagopa.fdr.to.eventhub.model.DatiSingoloPagamento;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRiversamento;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Consistency checks of the FDR1 flows against the totals they declare. */
+class FDR1XmlSAXParserTest {
+
+  private static final String FLOW_ID = "2025-01-2960000000001-S166691700";
+
+  @BeforeEach
+  void setUp() {
+    FDR1XmlSAXParser.setConsistencyCheckEnabled(true);
+  }
+
+  @AfterEach
+  void tearDown() {
+    FDR1XmlSAXParser.setConsistencyCheckEnabled(false);
+  }
+
+  @Test
+  void testConsistentFlowIsParsed() throws Exception {
+    FlussoRiversamento flusso =
+        FDR1XmlSAXParser.parseFlussoRiversamento(
+            stream(flussoRiversamento(FLOW_ID, 3, "0.30", "0.10", "0.10", "0.10")));
+
+    assertEquals(3, flusso.getDatiSingoliPagamenti().size());
+  }
+
+  @Test
+  void testElementsOutsideTheSchemaAreIgnored() throws Exception {
+    String xml =
+        flussoRiversamento(FLOW_ID, 1, "10.00", "10.00")
+            .replace(
+                "<singoloImportoPagato>",
+                "<causale><dataEsitoSingoloPagamento>1999-01-01</dataEsitoSingoloPagamento>"
+                    + "</causale><note>text</note><singoloImportoPagato>");
+
+    FlussoRiversamento flusso = FDR1XmlSAXParser.parseFlussoRiversamento(stream(xml));
+
+    DatiSingoloPagamento pagamento = flusso.getDatiSingoliPagamenti().get(0);
+    assertEquals("00000000000000000", pagamento.getIdentificativoUnivocoVersamento());
+    assertEquals("1", pagamento.getIndiceDatiSingoloPagamento());
+    assertEquals(10.0, pagamento.getSingoloImportoPagato());
+    assertEquals("2025-01-29", pagamento.getDataEsitoSingoloPagamento());
+    assertEquals("SEPA", flusso.getIdentificativoUnivocoRegolamento());
+    assertEquals("2025-01-29", flusso.getDataRegolamento());
+  }
+
+  @Test
+  void testMissingPaymentIsRejected() {
+    XmlParsingException e =
+        assertThrows(
+            XmlParsingException.class,
+            () ->
+                FDR1XmlSAXParser.parseFlussoRiversamento(
+                    stream(flussoRiversamento(FLOW_ID, 3, "20.00", "10.00", "10.00"))));
+
+    assertTrue(e.getMessage().contains("2 payments"));
+  }
+
+  @Test
+  void testExtraPaymentIsRejectedWhenRead() {
+    XmlParsingException e =
+        assertThrows(
+            XmlParsingException.class,
+            () ->
+                FDR1XmlSAXParser.parseFlussoRiversamento(
+                    stream(flussoRiversamento(FLOW_ID, 1, "10.00", "10.00", "10.00"))));
+
+    assertTrue(e.getMessage().contains("more than numeroTotalePagamenti 1"));
+  }
+
+  @Test
+  void testAmountIsCheckedToTheCent() {
+    assertThrows(
+        XmlParsingException.class,
+        () ->
+            FDR1XmlSAXParser.parseFlussoRiversamento(
+                stream(flussoRiversamento(FLOW_ID, 2, "20.01", "10.00", "10.00"))));
+  }
+
+  @Test
+  void testChecksCanBeDisabled() throws Exception {
+    // the default, until the inconsistent flows already delivered have been reviewed
+    FDR1XmlSAXParser.setConsistencyCheckEnabled(false);
+
+    FlussoRiversamento flusso =
+        FDR1XmlSAXParser.parseFlussoRiversamento(
+            stream(flussoRiversamento(FLOW_ID, 3, "20.01", "10.00", "10.00")));
+
+    assertEquals(2, flusso.getDatiSingoliPagamenti().size());
+  }
+
+  @Test
+  void testFlowIdOfTheRequestMustMatchTheFlow() throws Exception {
+    String inner = flussoRiversamento(FLOW_ID, 1, "10.00", "10.00");
+
+    FlussoRendicontazione flusso = FDR1XmlSAXParser.parseXmlStream(stream(request(FLOW_ID, inner)));
+    assertEquals(FLOW_ID, flusso.getFlussoRiversamento().getIdentificativoFlusso());
+
+    assertThrows(
+        XmlParsingException.class,
+        () -> FDR1XmlSAXParser.parseXmlStream(stream(request("2025-01-29OTHER", inner))));
+    assertThrows(
+        XmlParsingException.class,
+        () -> FDR1XmlStAXParser.parseXmlStream(stream(request("2025-01-29OTHER", inner))));
+  }
+
+  private static InputStream stream(String xml) {
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String request(String flowId, String flussoRiversamento) {
+    return "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+        + "<ns5:nodoInviaFlussoRendicontazione xmlns:ns5=\"http://ws.pagamenti.telematici.gov/\">"
+        + "<identificativoPSP>60000000001</identificativoPSP>"
+        + "<identificativoDominio>15376371009</identificativoDominio>"
+        + "<identificativoFlusso>"
+        + flowId
+        + "</identificativoFlusso>"
+        + "<dataOraFlusso>2025-01-29T22:49:22</dataOraFlusso>"
+        + "<xmlRendicontazione>"
+        + Base64.getEncoder().encodeToString(flussoRiversamento.getBytes(StandardCharsets.UTF_8))
+        + "</xmlRendicontazione>"
+        + "</ns5:nodoInviaFlussoRendicontazione></soap:Body></soap:Envelope>";
+  }
+
+  private static String flussoRiversamento(
+      String flowId, int numeroTotalePagamenti, String importoTotale, String... importi) {
+    StringBuilder xml =
+        new StringBuilder(
+            "<FlussoRiversamento xmlns=\"http://www.digitpa.gov.it/schemas/2011/Pagamenti/\">"
+                + "<versioneOggetto>1.0</versioneOggetto>"
+                + "<identificativoFlusso>"
+                + flowId
+                + "</identificativoFlusso>"
+                + "<dataOraFlusso>2025-01-29T22:49:22</dataOraFlusso>"
+                + "<identificativoUnivocoRegolamento>SEPA</identificativoUnivocoRegolamento>"
+                + "<dataRegolamento>2025-01-29</dataRegolamento>"
+                + "<numeroTotalePagamenti>"
+                + numeroTotalePagamenti
+                + "</numeroTotalePagamenti>"
+                + "<importoTotalePagamenti>"
+                + importoTotale
+                + "</importoTotalePagamenti>");
+    for (int i = 0; i < importi.length; i++) {
+      xml.append("<datiSingoliPagamenti>")
+          .append("<identificativoUnivocoVersamento>")
+          .append(String.format("%017d", i))
+          .append("</identificativoUnivocoVersamento>")
+          .append("<identificativoUnivocoRiscossione>IUR</identificativoUnivocoRiscossione>")
+          .append("<indiceDatiSingoloPagamento>1</indiceDatiSingoloPagamento>")
+          .append("<singoloImportoPagato>")
+          .append(importi[i])
+          .append("</singoloImportoPagato>")
+          .append("<codiceEsitoSingoloPagamento>0</codiceEsitoSingoloPagamento>")
+          .append("<dataEsitoSingoloPagamento>2025-01-29</dataEsitoSingoloPagamento>")
+          .append("</datiSingoliPagamenti>");
+    }
+    return xml.append("</FlussoRiversamento>").toString();
+  }
+}
@@ -0,0 +1,150 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import it.gov.pagopa.fdr.to.eventhub.exception.JsonParsingException;
+import it.gov.pagopa.fdr.to.eventhub.mapper.FlussoRendicontazioneMapper;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.SampleContentFileUtil;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class FDR3JsonStreamParserTest {
+
+  private static final JsonMapper eventMapper =
+      JsonMapper.builder()
+          .addModule(new JavaTimeModule())
+          .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+          .build();
+
+  private static final Map<String, String> metadata =
+      Map.of("sessionId", "1234", "insertedTimestamp", "2025-01-30T10:15:30");
+
+  @Test
+  void testParseSampleFlow() throws Exception {
+    FlowEvents flowEvents = parse(SampleContentFileUtil.getSampleXml("sample_fdr3.json"), 900_000);
+
+    assertEquals("2025-01-30POSTE-001", flowEvents.getFlowId());
+    assertEquals(100, flowEvents.getPayments());
+    assertEquals(1, flowEvents.getReportedIUVChunks().size());
+
+    JsonNode flowTx = eventMapper.readTree(flowEvents.getFlowTxJson());
+    assertEquals("2025-01-30POSTE-001", flowTx.get("ID_FLUSSO").asText());
+    assertEquals("2025-01-30T10:00:00", flowTx.get("DATA_ORA_FLUSSO").asText());
+    assertEquals("POSTE", flowTx.get("PSP").asText());
+    assertEquals("POSTE-BROKER", flowTx.get("INT_PSP").asText());
+    assertEquals("80000000001", flowTx.get("ID_DOMINIO").asText());
+    assertEquals("SEPA - Bonifico 2025-01-30", flowTx.get("CAUSALE").asText());
+    assertEquals(100, flowTx.get("NUM_PAGAMENTI").asInt());
+    assertEquals("1234", flowTx.get("UNIQUE_ID").asText());
+    assertEquals(1, flowTx.get("ALL_DATES").size());
+    assertEquals("2025-01-29", flowTx.get("ALL_DATES").get(0).asText());
+
+    String chunk = flowEvents.getReportedIUVChunks().get(0);
+    assertTrue(chunk.startsWith("{\"IUV\":\"00000000001000001\""));
+    assertTrue(chunk.contains("\"COD_ESITO\":3"));
+  }
+
+  @Test
+  void testSummaryIsAddedToFlowTxWhenEnabled() throws Exception {
+    JsonNode flowTx =
+        eventMapper.readTree(
+            parse(SampleContentFileUtil.getSampleXml("sample_fdr3.json"), 900_000).getFlowTxJson());
+    assertTrue(flowTx.path("RIEPILOGO").isMissingNode());
+
+    FlussoRendicontazioneMapper.setSummaryEnabled(true);
+    try {
+      JsonNode summary =
+          eventMapper
+              .readTree(
+                  parse(SampleContentFileUtil.getSampleXml("sample_fdr3.json"), 900_000)
+                      .getFlowTxJson())
+              .get("RIEPILOGO");
+
+      assertEquals(100, summary.get("NUM_PAGAMENTI").asInt());
+      assertEquals(10000.0, summary.get("SOMMA").asDouble());
+      assertEquals("2025-01-29", summary.get("DATA_ESITO_MIN").asText());
+      assertEquals("2025-01-29", summary.get("DATA_ESITO_MAX").asText());
+      assertEquals(1, summary.get("PER_DATA").size());
+      assertEquals(100, summary.get("PER_DATA").get(0).get("NUM_PAGAMENTI").asInt());
+      JsonNode byOutcome = summary.get("PER_ESITO");
+      assertEquals(2, byOutcome.size());
+      assertEquals(0, byOutcome.get(0).get("COD_ESITO").asInt());
+      assertEquals(99, byOutcome.get(0).get("NUM_PAGAMENTI").asInt());
+      assertEquals(9900.0, byOutcome.get(0).get("SOMMA").asDouble());
+      assertEquals(3, byOutcome.get(1).get("COD_ESITO").asInt());
+      assertEquals(100.0, byOutcome.get(1).get("SOMMA").asDouble());
+    } finally {
+      FlussoRendicontazioneMapper.setSummaryEnabled(false);
+    }
+  }
+
+  @Test
+  void testChunksMatchWholeListSplit() throws Exception {
+    FlowEvents flowEvents = parse(SampleContentFileUtil.getSampleXml("sample_fdr3.json"), 2_000);
+
+    assertTrue(flowEvents.getReportedIUVChunks().size() > 1);
+    // a chunk after the first starts with the overflowing event wrapped in an array
+    assertTrue(flowEvents.getReportedIUVChunks().get(1).startsWith("[{"));
+    assertEquals(
+        100,
+        flowEvents.getReportedIUVChunks().stream()
+            .mapToInt(c -> c.split("\"IUV\"", -1).length - 1)
+            .sum());
+  }
+
+  @Test
+  void testPaymentsBeforeHeader() throws Exception {
+    ObjectNode flow =
+        (ObjectNode) eventMapper.readTree(SampleContentFileUtil.getSampleXml("sample_fdr3.json"));
+    ArrayNode payments = (ArrayNode) flow.remove("payments");
+    ObjectNode reordered = eventMapper.createObjectNode();
+    reordered.set("payments", payments);
+    reordered.setAll(flow);
+
+    FlowEvents headerFirst = parse(SampleContentFileUtil.getSampleXml("sample_fdr3.json"), 2_000);
+    FlowEvents paymentsFirst = parse(eventMapper.writeValueAsString(reordered), 2_000);
+
+    assertEquals(headerFirst.getFlowTxJson(), paymentsFirst.getFlowTxJson());
+    assertEquals(headerFirst.getReportedIUVChunks(), paymentsFirst.getReportedIUVChunks());
+  }
+
+  @Test
+  void testAmountsKeepTheirDecimalDigits() throws Exception {
+    // beyond the 15-17 significant digits a double holds
+    String json =
+        SampleContentFileUtil.getSampleXml("sample_fdr3.json")
+            .replace("\"sumPayments\": 10000.0", "\"sumPayments\": 12345678901234567.89")
+            .replaceFirst("\"pay\": 100.0", "\"pay\": 1234567890123.45");
+
+    FlowEvents flowEvents = parse(json, 900_000);
+
+    assertTrue(flowEvents.getFlowTxJson().contains("\"SOMMA_VERSATA\":12345678901234567.89"));
+    assertTrue(flowEvents.getReportedIUVChunks().get(0).contains("\"IMPORTO\":1234567890123.45"));
+  }
+
+  @Test
+  void testMissingHeaderIsRejected() {
+    assertThrows(
+        JsonParsingException.class, () -> parse("{\"fdr\":\"flow\",\"payments\":[]}", 900_000));
+    assertThrows(JsonParsingException.class, () -> parse("[]", 900_000));
+    assertThrows(JsonParsingException.class, () -> parse("{\"fdr\":", 900_000));
+  }
+
+  private static FlowEvents parse(String json, int chunkSizeBytes) throws Exception {
+    try (InputStream stream = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))) {
+      return FDR3JsonStreamParser.parseJsonStream(stream, metadata, eventMapper, chunkSizeBytes);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package it.gov.pagopa.fdr.to.eventhub.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class StringTableTest {
+
+  @Test
+  void testRepeatedValueIsShared() {
+    StringTable table = new StringTable(1024);
+
+    String first = table.intern(new StringBuilder("\n  2025-01-29 "));
+    String second = table.intern(new StringBuilder("2025-01-29"));
+
+    assertEquals("2025-01-29", first);
+    assertSame(first, second);
+    assertEquals("", table.intern(new StringBuilder("   ")));
+    for (int i = 0; i < 100; i++) {
+      table.intern(new StringBuilder(String.valueOf(i)));
+    }
+    assertEquals(102, table.size());
+    assertSame(first, table.intern(new StringBuilder("2025-01-29")));
+  }
+
+  @Test
+  void testValuesBeyondTheLimitAreNotKept() {
+    StringTable table = new StringTable(2);
+    table.intern(new StringBuilder("0"));
+    table.intern(new StringBuilder("9"));
+
+    String third = table.intern(new StringBuilder("3"));
+
+    assertEquals("3", third);
+    assertNotSame(third, table.intern(new StringBuilder("3")));
+    assertEquals(2, table.size());
+  }
+}
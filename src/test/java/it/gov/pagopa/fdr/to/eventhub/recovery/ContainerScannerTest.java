@@ -0,0 +1,157 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobItemProperties;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult.Outcome;
+import it.gov.pagopa.fdr.to.eventhub.util.CommonUtil;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ContainerScannerTest {
+
+  @Mock private BlobRecoveryService recoveryService;
+  @Mock private ExecutionContext context;
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(context.getLogger()).thenReturn(mock(Logger.class));
+    lenient()
+        .when(recoveryService.recover(anyString(), anyString(), any(), any(), any()))
+        .thenAnswer(
+            invocation ->
+                BlobRecoveryResult.builder()
+                    .fileName(invocation.getArgument(1))
+                    .outcome(Outcome.SENT)
+                    .build());
+  }
+
+  @Test
+  void testMatchesInsertedTimestampAndLastModified() {
+    ScanRequest request =
+        ScanRequest.builder()
+            .insertedFrom(LocalDateTime.of(2025, 1, 30, 0, 0))
+            .insertedTo(LocalDateTime.of(2025, 1, 31, 0, 0))
+            .modifiedFrom(OffsetDateTime.of(2025, 1, 30, 0, 0, 0, 0, ZoneOffset.UTC))
+            .build();
+
+    assertTrue(ContainerScanner.matches(request, blob("a", "2025-01-30T10:15:30", 30)));
+    // insertedTo is exclusive
+    assertFalse(ContainerScanner.matches(request, blob("b", "2025-01-31T00:00:00", 31)));
+    assertFalse(ContainerScanner.matches(request, blob("c", "2025-01-30T10:15:30", 29)));
+    assertFalse(ContainerScanner.matches(request, blob("d", null, 30)));
+    assertFalse(ContainerScanner.matches(request, blob("e", "not-a-date", 30)));
+    // an offset is moved to UTC+1, as in the events
+    assertTrue(ContainerScanner.matches(request, blob("g", "2025-01-30T10:15:30.123Z", 30)));
+    assertFalse(ContainerScanner.matches(request, blob("h", "2025-01-30T23:30:00Z", 30)));
+    assertTrue(ContainerScanner.matches(ScanRequest.builder().build(), blob("f", null, 1)));
+  }
+
+  @Test
+  void testScanStopsAtPageBoundaryAndReturnsToken() throws Exception {
+    List<PagedResponse<BlobItem>> pages =
+        List.of(
+            page(
+                "page-2",
+                blob("a", "2025-01-30T10:00:00", 30),
+                blob("b", null, 30),
+                blob("e", "30/01/2025", 30)),
+            page("page-3", blob("c", "2025-01-30T11:00:00+01:00", 30)),
+            page(null, blob("d", "2025-01-30T12:00:00", 30)));
+    ScanRequest request =
+        ScanRequest.builder()
+            .container("fdr1-flows")
+            .prefix("2025-01-30")
+            .insertedFrom(LocalDateTime.of(2025, 1, 30, 0, 0))
+            .parallelism(2)
+            .maxBlobs(2)
+            .build();
+    List<BlobRecoveryResult> results = Collections.synchronizedList(new ArrayList<>());
+
+    ScanResult scanResult;
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
+      mockedUtil
+          .when(
+              () ->
+                  CommonUtil.listBlobPages(
+                      anyString(), eq("fdr1-flows"), eq("2025-01-30"), eq(500), eq(null)))
+          .thenReturn(pages);
+      scanResult = new ContainerScanner(recoveryService).scan(request, context, results::add);
+    }
+
+    assertEquals(4, scanResult.getScanned());
+    assertEquals(2, scanResult.getMatched());
+    assertEquals(1, scanResult.getUnparsableTimestamps());
+    assertEquals("page-3", scanResult.getContinuationToken());
+    assertEquals(2, results.size());
+    verify(recoveryService, never()).recover(anyString(), eq("b"), any(), any(), any());
+    verify(recoveryService, never()).recover(anyString(), eq("d"), any(), any(), any());
+  }
+
+  @Test
+  void testScanOfWholeContainerHasNoToken() throws Exception {
+    List<PagedResponse<BlobItem>> pages = List.of(page(null, blob("a", null, 30)));
+
+    ScanResult scanResult;
+    try (MockedStatic<CommonUtil> mockedUtil = mockStatic(CommonUtil.class)) {
+      mockedUtil
+          .when(() -> CommonUtil.listBlobPages(anyString(), anyString(), any(), eq(500), any()))
+          .thenReturn(pages);
+      scanResult =
+          new ContainerScanner(recoveryService)
+              .scan(
+                  ScanRequest.builder().container("fdr1-flows").prefix("").build(),
+                  context,
+                  result -> {});
+    }
+
+    assertEquals(1, scanResult.getMatched());
+    assertNull(scanResult.getContinuationToken());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static PagedResponse<BlobItem> page(String continuationToken, BlobItem... items) {
+    PagedResponse<BlobItem> page = mock(PagedResponse.class);
+    lenient().when(page.getValue()).thenReturn(List.of(items));
+    lenient().when(page.getContinuationToken()).thenReturn(continuationToken);
+    return page;
+  }
+
+  private static BlobItem blob(String name, String insertedTimestamp, int lastModifiedDay) {
+    return new BlobItem()
+        .setName(name)
+        .setMetadata(
+            insertedTimestamp == null ? Map.of() : Map.of("insertedTimestamp", insertedTimestamp))
+        .setProperties(
+            new BlobItemProperties()
+                .setLastModified(
+                    OffsetDateTime.of(2025, 1, lastModifiedDay, 12, 0, 0, 0, ZoneOffset.UTC)));
+  }
+}
@@ -0,0 +1,118 @@
+package it.gov.pagopa.fdr.to.eventhub.recovery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.recovery.BlobRecoveryResult.Outcome;
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter.Priority;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RecoveryJobManagerTest {
+
+  @Mock private BlobRecoveryService recoveryService;
+
+  @Test
+  void testJobReportsPhasesAndChunks() throws Exception {
+    List<String> invocationIds = new CopyOnWriteArrayList<>();
+    List<Priority> priorities = new CopyOnWriteArrayList<>();
+    when(recoveryService.recover(anyString(), anyString(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              // the job logs through its own context, not the one of the submit call
+              ExecutionContext jobContext = invocation.getArgument(2);
+              invocationIds.add(jobContext.getInvocationId());
+              // the job gives way to the blob triggers on the rate limiters
+              priorities.add(invocation.<RecoveryOptions>getArgument(4).getPriority());
+              RecoveryProgress progress = invocation.getArgument(3);
+              progress.onPhase(RecoveryPhase.DOWNLOADING);
+              progress.onPhase(RecoveryPhase.PARSING);
+              progress.onPhase(RecoveryPhase.SENDING);
+              for (int chunk = 0; chunk < 3; chunk++) {
+                progress.onChunkAcknowledged(chunk, 3);
+              }
+              return BlobRecoveryResult.builder().outcome(Outcome.SENT).flowId("flow-1").build();
+            });
+    RecoveryJobManager manager =
+        new RecoveryJobManager(recoveryService, new InMemoryRecoveryJobStore(60_000), 1, 10);
+
+    RecoveryJob submitted = manager.submit("fdr1-flows", "flow-1.xml.zip", RecoveryOptions.DEFAULT);
+    assertEquals(RecoveryPhase.QUEUED, submitted.getPhase());
+
+    RecoveryJob job = awaitFinished(manager, submitted.getJobId());
+    assertEquals(RecoveryPhase.COMPLETED, job.getPhase());
+    assertEquals("flow-1", job.getFlowId());
+    assertEquals(3, job.getChunksSent());
+    assertEquals(3, job.getChunksTotal());
+    assertTrue(job.getErrors().isEmpty());
+    assertEquals(List.of(submitted.getJobId()), invocationIds);
+    assertEquals(List.of(Priority.LOW), priorities);
+  }
+
+  @Test
+  void testFailedJobReportsError() throws Exception {
+    when(recoveryService.recover(anyString(), anyString(), any(), any(), any()))
+        .thenReturn(
+            BlobRecoveryResult.builder().outcome(Outcome.NOT_FOUND).message("not found").build());
+    RecoveryJobManager manager =
+        new RecoveryJobManager(recoveryService, new InMemoryRecoveryJobStore(60_000), 1, 10);
+
+    RecoveryJob job =
+        awaitFinished(
+            manager, manager.submit("fdr1-flows", "missing", RecoveryOptions.DEFAULT).getJobId());
+
+    assertEquals(RecoveryPhase.FAILED, job.getPhase());
+    assertEquals("NOT_FOUND: not found", job.getErrors().get(0));
+  }
+
+  @Test
+  void testSubmitRejectedWhenQueueIsFull() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(recoveryService.recover(anyString(), anyString(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              started.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return BlobRecoveryResult.builder().outcome(Outcome.SENT).build();
+            });
+    RecoveryJobManager manager =
+        new RecoveryJobManager(recoveryService, new InMemoryRecoveryJobStore(60_000), 1, 1);
+
+    manager.submit("fdr1-flows", "running", RecoveryOptions.DEFAULT);
+    // wait for the first job to leave the queue
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    manager.submit("fdr1-flows", "queued", RecoveryOptions.DEFAULT);
+    try {
+      assertThrows(
+          RejectedExecutionException.class,
+          () -> manager.submit("fdr1-flows", "rejected", RecoveryOptions.DEFAULT));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  private static RecoveryJob awaitFinished(RecoveryJobManager manager, String jobId)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5_000;
+    RecoveryJob job = manager.find(jobId).orElseThrow();
+    while (!job.getPhase().isFinished() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      job = manager.find(jobId).orElseThrow();
+    }
+    return job;
+  }
+}
@@ -0,0 +1,74 @@
+package it.gov.pagopa.fdr.to.eventhub.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.gov.pagopa.fdr.to.eventhub.sink.NdjsonFileSink;
+import it.gov.pagopa.fdr.to.eventhub.sink.NullSink;
+import it.gov.pagopa.fdr.to.eventhub.util.SampleContentFileUtil;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReplayRunnerTest {
+
+  @TempDir Path directory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    String sampleXml = SampleContentFileUtil.getSampleXml("sample.xml");
+    Files.writeString(directory.resolve("flow-1.xml"), sampleXml);
+    Path nested = Files.createDirectories(directory.resolve("2025-01-30"));
+    Files.write(
+        nested.resolve("flow-2.xml.gz"), SampleContentFileUtil.createGzipCompressedData(sampleXml));
+    Files.write(nested.resolve("broken.xml"), "<xml".getBytes(StandardCharsets.UTF_8));
+    // not a flow, not read
+    Files.writeString(directory.resolve("README.txt"), "export of 2025-01-30");
+  }
+
+  @Test
+  void testReplayWithNullSink() throws Exception {
+    ReplayReport report;
+    try (NullSink sink = new NullSink(3500)) {
+      report = new ReplayRunner(sink, 2, null).run(directory);
+    }
+
+    assertEquals(3, report.getFiles());
+    assertEquals(2, report.getFlows());
+    assertEquals(1, report.getFailed());
+    assertEquals(200, report.getPayments());
+    // each flow has a FlowTx event and more than one ReportedIUV chunk
+    assertTrue(report.getEvents() > 4);
+    assertEquals(0, report.getEvents() % 2);
+  }
+
+  @Test
+  void testReplayWithNdjsonSink() throws Exception {
+    Path output = Files.createTempFile(directory.getParent(), "replay", ".ndjson");
+    ReplayReport report;
+    try (NdjsonFileSink sink = new NdjsonFileSink(output, 921600)) {
+      report = new ReplayRunner(sink, 4, "FDR001").run(directory);
+    }
+
+    List<String> lines = Files.readAllLines(output);
+    assertEquals(report.getEvents(), lines.size());
+    ObjectMapper objectMapper = new ObjectMapper();
+    long flowTxEvents = 0;
+    for (String line : lines) {
+      JsonNode event = objectMapper.readTree(line);
+      assertEquals(64, event.get("contentSha256").asText().length());
+      assertTrue(event.get("body").isTextual());
+      if ("FLOWTX".equals(event.get("hub").asText())) {
+        flowTxEvents++;
+      }
+    }
+    assertEquals(2, flowTxEvents);
+    Files.delete(output);
+  }
+}
@@ -0,0 +1,91 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.azure.core.amqp.exception.AmqpErrorCondition;
+import com.azure.core.amqp.exception.AmqpErrorContext;
+import com.azure.core.amqp.exception.AmqpException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveChunkControllerTest {
+
+  private static final int MIN_CHUNK = 64 * 1024;
+  private static final int MAX_CHUNK = 900 * 1024;
+
+  private AdaptiveChunkController controller;
+
+  @BeforeEach
+  void setUp() {
+    controller = new AdaptiveChunkController(MIN_CHUNK, MAX_CHUNK, 4, 1000, 2);
+  }
+
+  @Test
+  void testLinkLimitCapsChunkSize() {
+    controller.updateLinkMaxSize(256 * 1024);
+    assertEquals(
+        256 * 1024 - AdaptiveChunkController.BATCH_OVERHEAD_BYTES, controller.getChunkSizeBytes());
+
+    // mocked or not yet negotiated links are ignored
+    controller.updateLinkMaxSize(0);
+    assertEquals(256 * 1024, controller.getLinkMaxSizeBytes());
+  }
+
+  @Test
+  void testThrottlingShrinksAndHealthyGrows() {
+    controller.onSendFailure(serverBusy());
+    controller.onSendFailure(serverBusy());
+    assertEquals(MAX_CHUNK / 4, controller.getChunkSizeBytes());
+    assertEquals(1, controller.getInFlightLimit());
+    assertEquals(2, controller.getThrottledSends());
+
+    for (int i = 0; i < 20; i++) {
+      controller.onSendSuccess(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+    assertEquals(MAX_CHUNK, controller.getChunkSizeBytes());
+    assertEquals(4, controller.getInFlightLimit());
+  }
+
+  @Test
+  void testSlowSendsReduceInFlightOnly() {
+    controller.onSendSuccess(TimeUnit.SECONDS.toNanos(5));
+    assertEquals(3, controller.getInFlightLimit());
+    assertEquals(MAX_CHUNK, controller.getChunkSizeBytes());
+  }
+
+  @Test
+  void testChunkSizeNeverBelowMinimum() {
+    for (int i = 0; i < 10; i++) {
+      controller.onBatchOverflow();
+    }
+    assertEquals(MIN_CHUNK, controller.getChunkSizeBytes());
+  }
+
+  @Test
+  void testIsThrottling() {
+    assertTrue(AdaptiveChunkController.isThrottling(serverBusy()));
+    assertTrue(
+        AdaptiveChunkController.isThrottling(
+            new RuntimeException("wrapped", new IllegalStateException("ServerBusy: retry"))));
+    assertFalse(AdaptiveChunkController.isThrottling(new NullPointerException()));
+  }
+
+  @Test
+  void testInFlightSlots() throws InterruptedException {
+    controller.acquire();
+    controller.acquire();
+    assertEquals(2, controller.getInFlight());
+    controller.release();
+    controller.release();
+    assertEquals(0, controller.getInFlight());
+  }
+
+  private static AmqpException serverBusy() {
+    return new AmqpException(
+        true, AmqpErrorCondition.SERVER_BUSY_ERROR, "busy", mock(AmqpErrorContext.class));
+  }
+}
@@ -0,0 +1,71 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private final AtomicLong clock = new AtomicLong();
+  private CircuitBreaker circuitBreaker;
+
+  @BeforeEach
+  void setUp() {
+    circuitBreaker = new CircuitBreaker(3, 1000, 1, clock::get);
+  }
+
+  @Test
+  void testOpensAfterConsecutiveFailures() {
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+
+    circuitBreaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+    assertFalse(circuitBreaker.isCallPermitted());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    assertEquals(2, circuitBreaker.getRejectedCalls());
+  }
+
+  @Test
+  void testHalfOpenProbeClosesCircuit() {
+    openCircuit();
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+    assertTrue(circuitBreaker.isCallPermitted());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    // only one probe at a time
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    assertFalse(circuitBreaker.isCallPermitted());
+
+    circuitBreaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void testHalfOpenProbeFailureReopens() {
+    openCircuit();
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertTrue(circuitBreaker.tryAcquirePermission());
+
+    circuitBreaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+    assertEquals(2, circuitBreaker.getOpenedCount());
+  }
+
+  private void openCircuit() {
+    for (int i = 0; i < 3; i++) {
+      circuitBreaker.onFailure();
+    }
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+  }
+}
@@ -0,0 +1,33 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class InMemoryCheckpointStoreTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  void testCheckpointsOfFailedFlowsExpire() {
+    InMemoryCheckpointStore store = new InMemoryCheckpointStore(1000, clock::get);
+    Checkpoint checkpoint = Checkpoint.builder().lastAckedChunk(3).chunkSizeBytes(3500).build();
+    store.save("fdr1-flows/failed.xml.gz", "1234", checkpoint);
+
+    // a retry within the TTL resumes the flow and renews its checkpoint
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(800));
+    assertEquals(checkpoint, store.load("fdr1-flows/failed.xml.gz", "1234").get());
+    store.save("fdr1-flows/failed.xml.gz", "1234", checkpoint);
+    store.save("fdr1-flows/abandoned.xml.gz", "5678", checkpoint);
+
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(800));
+    assertEquals(2, store.size());
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+    assertTrue(store.load("fdr1-flows/failed.xml.gz", "1234").isEmpty());
+    assertTrue(store.load("fdr1-flows/abandoned.xml.gz", "5678").isEmpty());
+    assertEquals(0, store.size());
+  }
+}
@@ -0,0 +1,42 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalFileCheckpointStoreTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void testSaveLoadAndClear() throws IOException {
+    CheckpointStore store = new LocalFileCheckpointStore(directory);
+    Checkpoint checkpoint =
+        Checkpoint.builder()
+            .flowTxSent(true)
+            .lastAckedChunk(39)
+            .chunkSizeBytes(921600)
+            .chunkCount(50)
+            .build();
+
+    store.save("fdr1-flows/2025-01-29/flow.xml.gz", "0x8DD", checkpoint);
+
+    // a new instance reads what the previous process wrote
+    CheckpointStore reopened = new LocalFileCheckpointStore(directory);
+    assertEquals(checkpoint, reopened.load("fdr1-flows/2025-01-29/flow.xml.gz", "0x8DD").get());
+    // a new version of the blob starts from scratch
+    assertTrue(reopened.load("fdr1-flows/2025-01-29/flow.xml.gz", "0x8DE").isEmpty());
+
+    reopened.clear("fdr1-flows/2025-01-29/flow.xml.gz", "0x8DD");
+    assertTrue(store.load("fdr1-flows/2025-01-29/flow.xml.gz", "0x8DD").isEmpty());
+  }
+
+  @Test
+  void testDefaultCheckpointStartsFromFirstChunk() {
+    assertEquals(-1, Checkpoint.builder().build().getLastAckedChunk());
+  }
+}
@@ -0,0 +1,47 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalFileDeliveryIndexTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void testRecordAndFind() throws IOException {
+    DeliveryIndex index = new LocalFileDeliveryIndex(directory);
+    DeliveryRecord deliveryRecord =
+        DeliveryRecord.builder()
+            .flowId("2025-01-2988888888888-0001")
+            .sessionId("1234")
+            .contentHash("9f86d081884c7d65")
+            .blobName("fdr1-flows/2025-01-29/flow.xml.gz")
+            .deliveredAt(1738142130000L)
+            .build();
+
+    index.record(deliveryRecord);
+
+    // a new instance reads what the previous process wrote
+    DeliveryIndex reopened = new LocalFileDeliveryIndex(directory);
+    assertEquals(deliveryRecord, reopened.find("1234", "9f86d081884c7d65").get());
+    // a new upload, or a different content, is not a duplicate
+    assertTrue(reopened.find("5678", "9f86d081884c7d65").isEmpty());
+    assertTrue(reopened.find("1234", "60303ae22b998861").isEmpty());
+  }
+
+  @Test
+  void testInMemoryIndexEvictsOldestEntries() {
+    DeliveryIndex index = new InMemoryDeliveryIndex(2);
+    for (String sessionId : new String[] {"1", "2", "3"}) {
+      index.record(DeliveryRecord.builder().sessionId(sessionId).contentHash("hash").build());
+    }
+
+    assertTrue(index.find("1", "hash").isEmpty());
+    assertTrue(index.find("3", "hash").isPresent());
+  }
+}
@@ -0,0 +1,315 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpillJournalTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir Path directory;
+
+  @Test
+  void testPendingRecordsSurviveRestart() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      journal.append(spillRecord(0, "first"));
+      journal.append(spillRecord(1, "second"));
+    }
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      List<SpillRecord> pending = pending(journal);
+      assertEquals(2, pending.size());
+      assertEquals("REPORTEDIUV", pending.get(0).getHubKey());
+      assertEquals("flow-1", pending.get(0).getFlowId());
+      assertEquals("session-1", pending.get(0).getSessionId());
+      assertEquals("e3b0c44298fc1c14", pending.get(0).getContentSha256());
+      assertEquals(1, pending.get(1).getChunkIndex());
+      assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), pending.get(1).getPayload());
+
+      journal.markDelivered(pending.get(0));
+    }
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertEquals(1, journal.pendingCount());
+      assertEquals(1, pending(journal).get(0).getChunkIndex());
+      // appends continue after the recovered records
+      journal.append(spillRecord(2, "third"));
+      assertEquals(2, pending(journal).size());
+    }
+  }
+
+  @Test
+  void testDeliveredSegmentsAreDeleted() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      String payload = "x".repeat(1500);
+      for (int i = 0; i < 5; i++) {
+        journal.append(spillRecord(i, payload));
+      }
+      assertTrue(journal.segmentFiles().size() > 1);
+      Path firstSegment = journal.segmentFiles().values().iterator().next();
+
+      for (SpillRecord spillRecord : pending(journal)) {
+        journal.markDelivered(spillRecord);
+      }
+      assertEquals(0, journal.pendingCount());
+      assertFalse(Files.exists(firstSegment));
+      // only the active segment is kept
+      assertEquals(1, journal.segmentFiles().size());
+    }
+  }
+
+  @Test
+  void testTornRecordIsDropped() throws IOException {
+    Path segment;
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      journal.append(spillRecord(0, "complete"));
+      journal.append(spillRecord(1, "torn"));
+      segment = journal.segmentFiles().values().iterator().next();
+    }
+    // corrupt the payload of the last record
+    byte[] content = Files.readAllBytes(segment);
+    int tornAt = new String(content, StandardCharsets.ISO_8859_1).indexOf("torn");
+    content[tornAt] = 'T';
+    Files.write(segment, content);
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertEquals(1, pending(journal).size());
+      assertEquals(0, pending(journal).get(0).getChunkIndex());
+    }
+  }
+
+  @Test
+  void testRecordBiggerThanSegmentIsRejected() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      SpillRecord tooBig = spillRecord(0, "x".repeat(SEGMENT_SIZE));
+      assertThrows(IOException.class, () -> journal.append(tooBig));
+    }
+  }
+
+  @Test
+  void testReplayerStopsWhenTheHubIsUnavailable() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      for (int i = 0; i < 3; i++) {
+        journal.append(spillRecord(i, "chunk-" + i));
+      }
+      List<Integer> sent = new ArrayList<>();
+      AtomicInteger attempts = new AtomicInteger();
+      try (SpillJournalReplayer replayer =
+          new SpillJournalReplayer(
+              journal,
+              spillRecord -> {
+                if (spillRecord.getChunkIndex() == 1 && attempts.incrementAndGet() == 1) {
+                  return SpillJournalReplayer.Outcome.HUB_UNAVAILABLE;
+                }
+                sent.add(spillRecord.getChunkIndex());
+                return SpillJournalReplayer.Outcome.DELIVERED;
+              },
+              3)) {
+        assertEquals(1, replayer.replay());
+        assertEquals(2, journal.pendingCount());
+        assertEquals(2, replayer.replay());
+      }
+      assertEquals(List.of(0, 1, 2), sent);
+      assertEquals(0, journal.pendingCount());
+    }
+  }
+
+  @Test
+  void testRejectedRecordIsSkippedThenMovedToDeadLetters() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      for (int i = 0; i < 3; i++) {
+        journal.append(spillRecord(i, "chunk-" + i));
+      }
+      try (SpillJournalReplayer replayer =
+          new SpillJournalReplayer(
+              journal,
+              spillRecord ->
+                  spillRecord.getChunkIndex() == 1
+                      ? SpillJournalReplayer.Outcome.FAILED
+                      : SpillJournalReplayer.Outcome.DELIVERED,
+              2)) {
+        // the records after the rejected one are delivered anyway
+        assertEquals(2, replayer.replay());
+        assertEquals(1, journal.pendingCount());
+        assertEquals(0, replayer.replay());
+      }
+      assertEquals(0, journal.pendingCount());
+      assertEquals(1, journal.deadLetterCount());
+    }
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertEquals(0, journal.pendingCount());
+      assertEquals(1, journal.deadLetterCount());
+    }
+  }
+
+  @Test
+  void testPendingRecordsAreReadOneSegmentAtATime() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      String payload = "x".repeat(1500);
+      for (int i = 0; i < 5; i++) {
+        journal.append(spillRecord(i, payload));
+      }
+      List<Long> segmentIds = journal.segmentIds();
+
+      assertEquals(3, segmentIds.size());
+      assertEquals(List.of(0, 1), chunkIndexes(journal.pending(segmentIds.get(0))));
+      assertEquals(List.of(4), chunkIndexes(journal.pending(segmentIds.get(2))));
+    }
+  }
+
+  @Test
+  void testFlowIsReportedWhenItsLastRecordIsDelivered() throws IOException {
+    List<String> delivered = new ArrayList<>();
+    List<String> deadLettered = new ArrayList<>();
+    SpillJournalReplayer.FlowListener flowListener =
+        new SpillJournalReplayer.FlowListener() {
+          @Override
+          public void onFlowDelivered(SpillRecord lastRecord) {
+            delivered.add(lastRecord.getSessionId());
+          }
+
+          @Override
+          public void onRecordDeadLettered(SpillRecord spillRecord) {
+            deadLettered.add(spillRecord.getSessionId());
+          }
+        };
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      journal.append(spillRecord(0, "chunk-0"));
+      journal.append(spillRecord(1, "chunk-1"));
+      journal.append(spillRecord(0, "chunk-0").toBuilder().sessionId("session-2").build());
+      assertTrue(journal.hasPending("session-1", "e3b0c44298fc1c14"));
+      assertFalse(journal.hasPending("session-1", "other"));
+
+      try (SpillJournalReplayer replayer =
+          new SpillJournalReplayer(
+              journal,
+              spillRecord ->
+                  "session-2".equals(spillRecord.getSessionId())
+                      ? SpillJournalReplayer.Outcome.FAILED
+                      : SpillJournalReplayer.Outcome.DELIVERED,
+              1,
+              flowListener)) {
+        assertEquals(2, replayer.replay());
+      }
+      assertFalse(journal.hasPending("session-1", "e3b0c44298fc1c14"));
+      assertEquals(List.of("session-1"), delivered);
+      assertEquals(List.of("session-2"), deadLettered);
+    }
+  }
+
+  @Test
+  void testPendingFlowsAreCountedAgainAfterRestart() throws IOException {
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      journal.append(spillRecord(0, "chunk-0"));
+      journal.append(spillRecord(1, "chunk-1"));
+      journal.markDelivered(pending(journal).get(0));
+    }
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertTrue(journal.hasPending("session-1", "e3b0c44298fc1c14"));
+      journal.markDelivered(pending(journal).get(0));
+      assertFalse(journal.hasPending("session-1", "e3b0c44298fc1c14"));
+    }
+  }
+
+  @Test
+  void testFailedAttemptsSurviveRestart() throws IOException {
+    SpillJournalReplayer.Outcome failed = SpillJournalReplayer.Outcome.FAILED;
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      journal.append(spillRecord(0, "chunk-0"));
+      try (SpillJournalReplayer replayer =
+          new SpillJournalReplayer(journal, spillRecord -> failed, 2)) {
+        assertEquals(0, replayer.replay());
+      }
+      assertEquals(1, journal.pendingCount());
+    }
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertEquals(1, pending(journal).get(0).getFailedAttempts());
+      try (SpillJournalReplayer replayer =
+          new SpillJournalReplayer(journal, spillRecord -> failed, 2)) {
+        assertEquals(0, replayer.replay());
+      }
+      assertEquals(0, journal.pendingCount());
+      assertEquals(1, journal.deadLetterCount());
+    }
+  }
+
+  @Test
+  void testDeferredDeliverySurvivesRestart() throws IOException {
+    DeliveryRecord deliveryRecord =
+        DeliveryRecord.builder()
+            .flowId("flow-1")
+            .sessionId("session-1")
+            .contentHash("blob-hash")
+            .blobName("fdr1-flows/flow-1.xml.zip")
+            .build();
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertFalse(journal.deferDelivery("e3b0c44298fc1c14", deliveryRecord));
+      journal.append(spillRecord(0, "chunk-0"));
+      assertTrue(journal.deferDelivery("e3b0c44298fc1c14", deliveryRecord));
+    }
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      SpillRecord lastRecord = pending(journal).get(0);
+      journal.markDelivered(lastRecord);
+      assertEquals(Optional.of(deliveryRecord), journal.takeDeferredDelivery(lastRecord));
+      assertEquals(Optional.empty(), journal.takeDeferredDelivery(lastRecord));
+    }
+  }
+
+  @Test
+  void testRecordsOfAnotherVersionAreNotRead() throws IOException {
+    Path segment;
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      journal.append(spillRecord(0, "chunk-0"));
+      segment = journal.segmentFiles().values().iterator().next();
+    }
+    byte[] content = Files.readAllBytes(segment);
+    content[Integer.BYTES] = 1;
+    Files.write(segment, content);
+
+    try (SpillJournal journal = new SpillJournal(directory, SEGMENT_SIZE)) {
+      assertEquals(0, journal.pendingCount());
+    }
+  }
+
+  private static List<SpillRecord> pending(SpillJournal journal) {
+    List<SpillRecord> records = new ArrayList<>();
+    for (long segmentId : journal.segmentIds()) {
+      records.addAll(journal.pending(segmentId));
+    }
+    return records;
+  }
+
+  private static List<Integer> chunkIndexes(List<SpillRecord> records) {
+    return records.stream().map(SpillRecord::getChunkIndex).toList();
+  }
+
+  private static SpillRecord spillRecord(int chunkIndex, String payload) {
+    return SpillRecord.builder()
+        .hubKey("REPORTEDIUV")
+        .flowId("flow-1")
+        .sessionId("session-1")
+        .chunkIndex(chunkIndex)
+        .serviceIdentifier("NA")
+        .payload(payload.getBytes(StandardCharsets.UTF_8))
+        .contentSha256("e3b0c44298fc1c14")
+        .build();
+  }
+}
@@ -0,0 +1,100 @@
+package it.gov.pagopa.fdr.to.eventhub.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.TokenBucketRateLimiter.Priority;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketRateLimiterTest {
+
+  @Test
+  void testUnlimitedNeverWaits() throws InterruptedException {
+    TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0, 0, 1000);
+    assertTrue(limiter.isUnlimited());
+    for (int i = 0; i < 100; i++) {
+      limiter.acquire(1024 * 1024, 1, Priority.LOW);
+    }
+    assertEquals(100, limiter.getAcquisitions());
+    assertEquals(0, limiter.getDelayedAcquisitions());
+  }
+
+  @Test
+  void testBytesArePaced() throws InterruptedException {
+    TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(100_000, 0, 0);
+
+    // the burst is consumed, the second chunk has to wait for the debt to be repaid
+    assertTrue(limiter.acquire(120_000, 1, Priority.HIGH) < TimeUnit.MILLISECONDS.toNanos(50));
+    long waited = limiter.acquire(10_000, 1, Priority.HIGH);
+
+    assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(150), "waited " + waited);
+    assertEquals(1, limiter.getDelayedAcquisitions());
+    assertTrue(limiter.getTotalWaitMillis() >= 150);
+  }
+
+  @Test
+  void testEventsArePaced() throws InterruptedException {
+    TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0, 10, 0);
+    long start = System.nanoTime();
+    for (int i = 0; i < 13; i++) {
+      limiter.acquire(1, 1, Priority.LOW);
+    }
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+  }
+
+  @Test
+  void testLowPriorityYieldsOnlyToItsOwnLimiter() throws Exception {
+    TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(100_000, 0, 1000);
+    TokenBucketRateLimiter otherHub = new TokenBucketRateLimiter(100_000, 0, 1000);
+    limiter.acquire(120_000, 1, Priority.HIGH);
+
+    // a trigger waits for the debt to be repaid
+    Thread trigger =
+        new Thread(
+            () -> {
+              try {
+                limiter.acquire(1, 1, Priority.HIGH);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    trigger.start();
+    while (limiter.getHighPriorityWaiting() == 0 && trigger.isAlive()) {
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+
+    assertTrue(otherHub.acquire(1, 1, Priority.LOW) < TimeUnit.MILLISECONDS.toNanos(50));
+    assertTrue(limiter.acquire(1, 1, Priority.LOW) >= TimeUnit.MILLISECONDS.toNanos(100));
+    trigger.join();
+    assertEquals(0, limiter.getHighPriorityWaiting());
+  }
+
+  @Test
+  void testReportedIUVGivesWayToFlowTx() throws Exception {
+    TokenBucketRateLimiter flowTx = new TokenBucketRateLimiter(100_000, 0, 1000);
+    TokenBucketRateLimiter reportedIUV = new TokenBucketRateLimiter(0, 0, 1000);
+    reportedIUV.giveWayTo(flowTx);
+    flowTx.acquire(120_000, 1, Priority.HIGH);
+
+    // a FlowTx event waits for the debt to be repaid
+    Thread trigger =
+        new Thread(
+            () -> {
+              try {
+                flowTx.acquire(1, 1, Priority.HIGH);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    trigger.start();
+    while (flowTx.getHighPriorityWaiting() == 0 && trigger.isAlive()) {
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+
+    // even a high-priority chunk waits for it
+    assertTrue(reportedIUV.acquire(1, 1, Priority.HIGH) >= TimeUnit.MILLISECONDS.toNanos(100));
+    trigger.join();
+    assertTrue(reportedIUV.acquire(1, 1, Priority.HIGH) < TimeUnit.MILLISECONDS.toNanos(50));
+  }
+}
@@ -0,0 +1,136 @@
+package it.gov.pagopa.fdr.to.eventhub.sink;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.messaging.eventhubs.EventData;
+import com.azure.messaging.eventhubs.EventHubProducerAsyncClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.sender.DeliveryOptions;
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class AsyncEventHubSinkTest {
+
+  private final EventHubProducerAsyncClient flowTxClient = mock(EventHubProducerAsyncClient.class);
+  private final EventHubProducerAsyncClient reportedIUVClient =
+      mock(EventHubProducerAsyncClient.class);
+  private final AsyncEventHubSink sink =
+      new AsyncEventHubSink(flowTxClient, reportedIUVClient, 921600, 2, Duration.ofSeconds(5));
+
+  private final FlowEvents flowEvents =
+      FlowEvents.builder()
+          .flowId("flow")
+          .contentSha256("hash")
+          .payments(3)
+          .flowTxJson("{}")
+          .reportedIUVChunks(List.of("{\"IUV\":\"1\"}", "[{\"IUV\":\"2\"}]", "[{\"IUV\":\"3\"}]"))
+          .chunkSizeBytes(921600)
+          .build();
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testSendsFlowTxThenAllChunks() throws Exception {
+    List<EventData> sent = Collections.synchronizedList(new ArrayList<>());
+    when(flowTxClient.send(any(Iterable.class))).thenReturn(Mono.empty());
+    when(reportedIUVClient.send(any(Iterable.class)))
+        .thenAnswer(
+            invocation -> {
+              ((Iterable<EventData>) invocation.getArgument(0)).forEach(sent::add);
+              return Mono.empty();
+            });
+    List<Integer> acknowledged = Collections.synchronizedList(new ArrayList<>());
+
+    int events =
+        sink.deliver(
+            flowEvents,
+            Map.of("serviceIdentifier", "FDR001"),
+            DeliveryOptions.builder()
+                .listener((chunkIndex, chunkCount) -> acknowledged.add(chunkIndex))
+                .build(),
+            mock(ExecutionContext.class));
+
+    assertEquals(4, events);
+    assertEquals(3, sent.size());
+    assertEquals(3, acknowledged.size());
+    assertEquals("FDR001", sent.get(0).getProperties().get("serviceIdentifier"));
+    assertEquals("hash", sent.get(0).getProperties().get("contentSha256"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testChunksAreAcknowledgedInOrder() throws Exception {
+    when(flowTxClient.send(any(Iterable.class))).thenReturn(Mono.empty());
+    // the first chunk is acknowledged by the hub after the second one
+    when(reportedIUVClient.send(any(Iterable.class)))
+        .thenAnswer(
+            invocation -> {
+              EventData eventData =
+                  ((Iterable<EventData>) invocation.getArgument(0)).iterator().next();
+              return Integer.valueOf(0).equals(eventData.getProperties().get("chunkIndex"))
+                  ? Mono.delay(Duration.ofMillis(100)).then()
+                  : Mono.empty();
+            });
+    List<Integer> acknowledged = Collections.synchronizedList(new ArrayList<>());
+
+    sink.deliver(
+        flowEvents,
+        Map.of(),
+        DeliveryOptions.builder()
+            .listener((chunkIndex, chunkCount) -> acknowledged.add(chunkIndex))
+            .build(),
+        mock(ExecutionContext.class));
+
+    assertEquals(List.of(0, 1, 2), acknowledged);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testChunksInFlightAreBoundedByTheController() throws Exception {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxObserved = new AtomicInteger();
+    when(flowTxClient.send(any(Iterable.class))).thenReturn(Mono.empty());
+    when(reportedIUVClient.send(any(Iterable.class)))
+        .thenAnswer(
+            invocation ->
+                Mono.delay(Duration.ofMillis(50))
+                    .doOnSubscribe(
+                        subscription ->
+                            maxObserved.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                    .doOnTerminate(inFlight::decrementAndGet)
+                    .then());
+    // a throttled send halves the limit of 2 slots to 1
+    sink.getChunkController().onSendFailure(new IllegalStateException("ServerBusy"));
+
+    sink.deliver(flowEvents, Map.of(), DeliveryOptions.NONE, mock(ExecutionContext.class));
+
+    assertEquals(1, maxObserved.get());
+    assertEquals(0, sink.getChunkController().getInFlight());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testFailedFlowTxStopsTheFlow() {
+    when(flowTxClient.send(any(Iterable.class)))
+        .thenReturn(Mono.error(new IllegalStateException("ServerBusy")));
+
+    assertThrows(
+        IOException.class,
+        () ->
+            sink.deliver(flowEvents, Map.of(), DeliveryOptions.NONE, mock(ExecutionContext.class)));
+    verify(reportedIUVClient, never()).send(any(Iterable.class));
+  }
+}
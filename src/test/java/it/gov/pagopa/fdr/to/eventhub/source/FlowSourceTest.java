@@ -0,0 +1,62 @@
+package it.gov.pagopa.fdr.to.eventhub.source;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import it.gov.pagopa.fdr.to.eventhub.sender.FlowEvents;
+import it.gov.pagopa.fdr.to.eventhub.util.SampleContentFileUtil;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+
+class FlowSourceTest {
+
+  private static final Map<String, String> metadata =
+      Map.of("sessionId", "1234", "insertedTimestamp", "2025-01-30T10:15:30");
+
+  @Test
+  void testStaxAndSaxProduceTheSameEvents() throws Exception {
+    String sampleXml = SampleContentFileUtil.getSampleXml("sample.xml");
+
+    FlowEvents sax = read(FlowSource.of("fdr1-sax"), sampleXml, 3500);
+    FlowEvents stax = read(FlowSource.of("fdr1-stax"), sampleXml, 3500);
+
+    assertEquals(100, sax.getPayments());
+    assertEquals(3500, sax.getChunkSizeBytes());
+    assertEquals(sax, stax);
+  }
+
+  @Test
+  void testFdr3Source() throws Exception {
+    FlowEvents flowEvents =
+        read(
+            FlowSource.of("fdr3-json"),
+            SampleContentFileUtil.getSampleXml("sample_fdr3.json"),
+            921600);
+
+    assertEquals("2025-01-30POSTE-001", flowEvents.getFlowId());
+    assertEquals(100, flowEvents.getPayments());
+    assertEquals(64, flowEvents.getContentSha256().length());
+  }
+
+  @Test
+  void testInvalidXmlIsRejectedByBothParsers() {
+    assertThrows(SAXException.class, () -> read(FlowSource.of("fdr1-sax"), "<xml>", 921600));
+    assertThrows(SAXException.class, () -> read(FlowSource.of("fdr1-stax"), "<xml>", 921600));
+  }
+
+  @Test
+  void testUnknownSource() {
+    assertThrows(IllegalArgumentException.class, () -> FlowSource.of("fdr2"));
+  }
+
+  private static FlowEvents read(FlowSource source, String content, int chunkSizeBytes)
+      throws Exception {
+    return source.read(
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+        metadata,
+        chunkSizeBytes);
+  }
+}
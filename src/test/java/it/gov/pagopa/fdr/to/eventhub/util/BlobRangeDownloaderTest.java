@@ -0,0 +1,125 @@
+package it.gov.pagopa.fdr.to.eventhub.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobDownloadContentResponse;
+import com.azure.storage.blob.models.BlobDownloadHeaders;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class BlobRangeDownloaderTest {
+
+  private static final byte[] BLOB = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+
+  @Mock private BlobClient blobClient;
+
+  @Test
+  void testSmallBlobTakesSingleRequest() throws Exception {
+    stubFirstBlock(64);
+
+    BlobFileData fileData = new BlobRangeDownloader(64, 2).download(blobClient);
+
+    assertArrayEquals(BLOB, fileData.getFileContent());
+    assertEquals("0x8DD", fileData.getETag());
+    assertEquals("1234", fileData.getMetadata().get("sessionId"));
+    verify(blobClient, never())
+        .downloadStreamWithResponse(any(), any(), any(), any(), anyBoolean(), any(), any());
+  }
+
+  @Test
+  void testLargeBlobDownloadedAsParallelRanges() throws Exception {
+    stubFirstBlock(6);
+    when(blobClient.downloadStreamWithResponse(
+            any(), any(), any(), any(BlobRequestConditions.class), anyBoolean(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              OutputStream outputStream = invocation.getArgument(0);
+              BlobRange range = invocation.getArgument(1);
+              BlobRequestConditions conditions = invocation.getArgument(3);
+              assertEquals("0x8DD", conditions.getIfMatch());
+              int offset = (int) range.getOffset();
+              outputStream.write(BLOB, offset, range.getCount().intValue());
+              return null;
+            });
+    BlobRangeDownloader downloader = new BlobRangeDownloader(6, 3);
+
+    BlobFileData fileData = downloader.download(blobClient);
+
+    assertArrayEquals(BLOB, fileData.getFileContent());
+    // 20 bytes in blocks of 6: the first one with the headers, then 6, 6 and 2 bytes
+    verify(blobClient, times(3))
+        .downloadStreamWithResponse(any(), any(), any(), any(), anyBoolean(), any(), any());
+    verify(blobClient)
+        .downloadStreamWithResponse(
+            any(),
+            argThat(range -> range.getOffset() == 18 && range.getCount() == 2),
+            any(),
+            any(),
+            anyBoolean(),
+            any(),
+            any());
+    assertEquals(1, downloader.getRangedDownloads());
+    assertEquals(BLOB.length, downloader.getBytesDownloaded());
+  }
+
+  @Test
+  void testBlobTooBigForAnArrayIsRejected() {
+    BlobDownloadContentResponse response = mock(BlobDownloadContentResponse.class);
+    when(response.getDeserializedHeaders())
+        .thenReturn(new BlobDownloadHeaders().setContentRange("bytes 0-5/3221225472"));
+    when(blobClient.downloadContentWithResponse(any(), any(), any(), anyBoolean(), any(), any()))
+        .thenReturn(response);
+    when(blobClient.getBlobName()).thenReturn("2025-01-30/huge.xml.zip");
+
+    IOException e =
+        assertThrows(IOException.class, () -> new BlobRangeDownloader(6, 2).download(blobClient));
+
+    assertTrue(e.getMessage().contains("2025-01-30/huge.xml.zip"), e.getMessage());
+    verify(blobClient, never())
+        .downloadStreamWithResponse(any(), any(), any(), any(), anyBoolean(), any(), any());
+  }
+
+  private void stubFirstBlock(int blockSize) {
+    int length = Math.min(blockSize, BLOB.length);
+    BlobDownloadContentResponse response = mock(BlobDownloadContentResponse.class);
+    when(response.getDeserializedHeaders())
+        .thenReturn(
+            new BlobDownloadHeaders()
+                .setMetadata(Map.of("sessionId", "1234"))
+                .setETag("0x8DD")
+                .setContentRange("bytes 0-" + (length - 1) + "/" + BLOB.length));
+    when(response.getValue()).thenReturn(BinaryData.fromBytes(Arrays.copyOf(BLOB, length)));
+    when(blobClient.downloadContentWithResponse(
+            any(),
+            any(),
+            argThat(range -> range.getOffset() == 0 && range.getCount() == blockSize),
+            anyBoolean(),
+            any(),
+            any()))
+        .thenReturn(response);
+  }
+}
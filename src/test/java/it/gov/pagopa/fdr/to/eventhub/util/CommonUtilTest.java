@@ -5,23 +5,27 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.BlobDownloadContentResponse;
+import com.azure.storage.blob.models.BlobDownloadHeaders;
 import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobStorageException;
 import com.microsoft.azure.functions.ExecutionContext;
 import it.gov.pagopa.fdr.to.eventhub.model.BlobFileData;
 import it.gov.pagopa.fdr.to.eventhub.wrapper.BlobServiceClientWrapper;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -60,7 +64,11 @@ class CommonUtilTest {
 
   @Test
   void testBlobFileNotFound() {
-    when(mockBlobClient.exists()).thenReturn(false);
+    BlobStorageException notFound = mock(BlobStorageException.class);
+    when(notFound.getStatusCode()).thenReturn(404);
+    when(mockBlobClient.downloadContentWithResponse(
+            any(), any(), any(), anyBoolean(), any(), any()))
+        .thenThrow(notFound);
 
     BlobFileData result =
         CommonUtil.getBlobFile(STORAGE_ENV_VAR, CONTAINER_NAME, BLOB_NAME, mockContext);
@@ -77,22 +85,21 @@ class CommonUtilTest {
   @Test
   void testBlobFileRetrievalSuccess() {
     byte[] mockData = "test data".getBytes();
-    ByteArrayInputStream inputStream = new ByteArrayInputStream(mockData);
 
     Map<String, String> metadata = new HashMap<>();
     metadata.put("key1", "value1");
 
-    when(mockBlobClient.exists()).thenReturn(true);
-    when(mockBlobClient.getProperties()).thenReturn(mockBlobProperties);
-    when(mockBlobProperties.getMetadata()).thenReturn(metadata);
-    doAnswer(
-            invocation -> {
-              ByteArrayOutputStream actualOutputStream = invocation.getArgument(0);
-              inputStream.transferTo(actualOutputStream);
-              return null;
-            })
-        .when(mockBlobClient)
-        .downloadStream(any(ByteArrayOutputStream.class));
+    BlobDownloadContentResponse mockResponse = mock(BlobDownloadContentResponse.class);
+    when(mockResponse.getDeserializedHeaders())
+        .thenReturn(
+            new BlobDownloadHeaders()
+                .setMetadata(metadata)
+                .setETag("0x8DD")
+                .setContentRange("bytes 0-8/9"));
+    when(mockResponse.getValue()).thenReturn(BinaryData.fromBytes(mockData));
+    when(mockBlobClient.downloadContentWithResponse(
+            any(), any(), any(), anyBoolean(), any(), any()))
+        .thenReturn(mockResponse);
 
     BlobFileData result =
         CommonUtil.getBlobFile(STORAGE_ENV_VAR, CONTAINER_NAME, BLOB_NAME, mockContext);
@@ -100,6 +107,10 @@ class CommonUtilTest {
     assertNotNull(result);
     assertArrayEquals(mockData, result.getFileContent());
     assertEquals(metadata, result.getMetadata());
+    assertEquals("0x8DD", result.getETag());
+    // metadata and content come from the same response
+    verify(mockBlobClient, never()).exists();
+    verify(mockBlobClient, never()).getProperties();
   }
 
   @Test
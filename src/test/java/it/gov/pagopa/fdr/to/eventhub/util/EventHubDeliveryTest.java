@@ -0,0 +1,195 @@
+package it.gov.pagopa.fdr.to.eventhub.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.amqp.exception.AmqpErrorCondition;
+import com.azure.core.amqp.exception.AmqpErrorContext;
+import com.azure.core.amqp.exception.AmqpException;
+import com.azure.messaging.eventhubs.EventData;
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.to.eventhub.model.DatiSingoloPagamento;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRendicontazione;
+import it.gov.pagopa.fdr.to.eventhub.model.FlussoRiversamento;
+import it.gov.pagopa.fdr.to.eventhub.sender.AdaptiveChunkController;
+import it.gov.pagopa.fdr.to.eventhub.sender.CircuitBreaker;
+import it.gov.pagopa.fdr.to.eventhub.sender.SpillJournal;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Delivery of whole flows to {@link LocalEventHub} stand-ins, with realistic limits. */
+class EventHubDeliveryTest {
+
+  private final ExecutionContext context = mock(ExecutionContext.class);
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(context.getLogger()).thenReturn(mock(Logger.class));
+  }
+
+  @Test
+  void testFlowIsDeliveredWithinTheBatchLimit() {
+    LocalEventHub flowTx = LocalEventHub.builder().build();
+    LocalEventHub reportedIUV = LocalEventHub.builder().sendLatencyMillis(5).build();
+
+    boolean sent =
+        CommonUtil.processXmlBlobAndSendToEventHub(
+            flowTx.getClient(), reportedIUV.getClient(), flow(3000), context);
+
+    assertTrue(sent);
+    assertEquals(1, flowTx.getReceivedEvents().size());
+    List<EventData> chunks = reportedIUV.getReceivedEvents();
+    assertTrue(chunks.size() > 1);
+    for (int i = 0; i < chunks.size(); i++) {
+      assertEquals(i, chunks.get(i).getProperties().get("chunkIndex"));
+      assertTrue(LocalEventHub.sizeInBatch(chunks.get(i)) <= 1024 * 1024);
+    }
+    assertEquals(3000, countPayments(chunks));
+    assertTrue(
+        CommonUtil.getChunkController(reportedIUV.getClient()).getAverageSendLatencyMillis() >= 5);
+  }
+
+  @Test
+  void testChunksShrinkToASmallerLink() {
+    LocalEventHub flowTx = LocalEventHub.builder().build();
+    LocalEventHub reportedIUV = LocalEventHub.builder().maxBatchSizeBytes(256 * 1024).build();
+    FlussoRendicontazione flow = flow(3000);
+
+    // the first chunk does not fit: the link size is learnt and the flow is not delivered
+    assertFalse(
+        CommonUtil.processXmlBlobAndSendToEventHub(
+            flowTx.getClient(), reportedIUV.getClient(), flow, context));
+    assertEquals(1, reportedIUV.getRejectedEvents());
+    AdaptiveChunkController controller = CommonUtil.getChunkController(reportedIUV.getClient());
+    assertEquals(256 * 1024, controller.getLinkMaxSizeBytes());
+
+    // the retry splits the flow with the reduced chunk size
+    assertTrue(
+        CommonUtil.processXmlBlobAndSendToEventHub(
+            flowTx.getClient(), reportedIUV.getClient(), flow, context));
+    assertEquals(3000, countPayments(reportedIUV.getReceivedEvents()));
+  }
+
+  @Test
+  void testServerBusyHalvesTheChunkSize() {
+    LocalEventHub flowTx = LocalEventHub.builder().build();
+    LocalEventHub reportedIUV = LocalEventHub.builder().serverBusyRate(1.0).build();
+    AdaptiveChunkController controller = CommonUtil.getChunkController(reportedIUV.getClient());
+    int initialChunkSize = controller.getChunkSizeBytes();
+
+    boolean sent =
+        CommonUtil.processXmlBlobAndSendToEventHub(
+            flowTx.getClient(), reportedIUV.getClient(), flow(3000), context);
+
+    assertFalse(sent);
+    assertEquals(1, reportedIUV.getThrottledSends());
+    assertTrue(reportedIUV.getReceivedEvents().isEmpty());
+    assertEquals(1, controller.getThrottledSends());
+    assertEquals(initialChunkSize / 2, controller.getChunkSizeBytes());
+  }
+
+  @Test
+  void testClientsOfTheSameHubShareTheirState() {
+    // every invocation of the functions builds its own clients
+    EventHubProducerClient first = mock(EventHubProducerClient.class);
+    EventHubProducerClient second = mock(EventHubProducerClient.class);
+    when(first.getEventHubName()).thenReturn("shared-state-hub");
+    when(second.getEventHubName()).thenReturn("shared-state-hub");
+
+    assertSame(CommonUtil.getChunkController(first), CommonUtil.getChunkController(second));
+    assertSame(CommonUtil.getCircuitBreaker(first), CommonUtil.getCircuitBreaker(second));
+    assertSame(
+        CommonUtil.getRateLimiter(first, CommonUtil.REPORTEDIUV_HUB_KEY),
+        CommonUtil.getRateLimiter(second, CommonUtil.REPORTEDIUV_HUB_KEY));
+  }
+
+  @Test
+  void testLinkFailuresOpenTheCircuitAndSpillTheChunks(@TempDir Path directory)
+      throws IOException {
+    EventHubProducerClient flowTx = unreachableHub();
+    EventHubProducerClient reportedIUV = unreachableHub();
+    FlussoRendicontazione flow = flow(10);
+
+    try (SpillJournal journal = new SpillJournal(directory, 1024 * 1024)) {
+      CommonUtil.setSpillJournal(journal);
+      // the default failure threshold of the breaker
+      for (int i = 0; i < 5; i++) {
+        assertTrue(
+            CommonUtil.processXmlBlobAndSendToEventHub(flowTx, reportedIUV, flow, context));
+      }
+      assertEquals(
+          CircuitBreaker.State.OPEN, CommonUtil.getCircuitBreaker(reportedIUV).state());
+      assertEquals(CircuitBreaker.State.OPEN, CommonUtil.getCircuitBreaker(flowTx).state());
+      assertEquals(10, journal.pendingCount());
+      assertTrue(journal.hasPending("1234", null));
+
+      // the open circuit rejects the flow without opening the link again
+      assertFalse(CommonUtil.processXmlBlobAndSendToEventHub(flowTx, reportedIUV, flow, context));
+      verify(reportedIUV, times(5)).createBatch();
+    } finally {
+      CommonUtil.setSpillJournal(null);
+    }
+  }
+
+  private static EventHubProducerClient unreachableHub() {
+    EventHubProducerClient client = mock(EventHubProducerClient.class);
+    when(client.createBatch())
+        .thenThrow(
+            new AmqpException(
+                true,
+                AmqpErrorCondition.TIMEOUT_ERROR,
+                "Unable to open the link",
+                mock(AmqpErrorContext.class)));
+    return client;
+  }
+
+  private static int countPayments(List<EventData> chunks) {
+    int payments = 0;
+    for (EventData chunk : chunks) {
+      payments += chunk.getBodyAsString().split("\"IUV\"", -1).length - 1;
+    }
+    return payments;
+  }
+
+  private static FlussoRendicontazione flow(int payments) {
+    List<DatiSingoloPagamento> pagamenti = new ArrayList<>();
+    for (int i = 0; i < payments; i++) {
+      pagamenti.add(
+          new DatiSingoloPagamento(
+              String.format("%017d", i), String.format("IUR%014d", i), "1", 10.0, 0, "2025-01-29"));
+    }
+    return FlussoRendicontazione.builder()
+        .identificativoPSP("PSP")
+        .identificativoIntermediarioPSP("BROKER")
+        .identificativoDominio("80000000001")
+        .identificativoFlusso("2025-01-30PSP-0001")
+        .dataOraFlusso("2025-01-30T09:00:00")
+        .flussoRiversamento(
+            FlussoRiversamento.builder()
+                .identificativoFlusso("2025-01-30PSP-0001")
+                .dataOraFlusso("2025-01-30T09:00:00")
+                .identificativoUnivocoRegolamento("SEPA")
+                .dataRegolamento("2025-01-30")
+                .numeroTotalePagamenti(payments)
+                .importoTotalePagamenti(payments * 10.0)
+                .datiSingoliPagamenti(pagamenti)
+                .build())
+        .metadata(Map.of("sessionId", "1234", "insertedTimestamp", "2025-01-30T10:15:30"))
+        .build();
+  }
+}
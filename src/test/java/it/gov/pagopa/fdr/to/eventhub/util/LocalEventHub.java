@@ -0,0 +1,144 @@
+package it.gov.pagopa.fdr.to.eventhub.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+import com.azure.core.amqp.exception.AmqpErrorCondition;
+import com.azure.core.amqp.exception.AmqpErrorContext;
+import com.azure.core.amqp.exception.AmqpException;
+import com.azure.messaging.eventhubs.EventData;
+import com.azure.messaging.eventhubs.EventDataBatch;
+import com.azure.messaging.eventhubs.EventHubProducerClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * In-process stand-in for an Event Hub, for tests without Azure. The producer client enforces the
+ * maximum batch size in {@code tryAdd}, waits the configured latency on every send, fails a share
+ * of the sends with a transient ServerBusy error and records the events it accepted.
+ */
+public class LocalEventHub {
+
+  // the maximum message size of the Standard tier
+  public static final int DEFAULT_MAX_BATCH_SIZE_BYTES = 1024 * 1024;
+  // AMQP framing of an event in a batch, besides its body and properties
+  static final int EVENT_OVERHEAD_BYTES = 64;
+
+  private final int maxBatchSizeBytes;
+  private final long sendLatencyMillis;
+  private final double serverBusyRate;
+  private final Random random;
+
+  @Getter private final EventHubProducerClient client;
+  private final List<EventData> receivedEvents = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger sends = new AtomicInteger();
+  private final AtomicInteger throttledSends = new AtomicInteger();
+  private final AtomicInteger rejectedEvents = new AtomicInteger();
+  // EventDataBatch#getEvents is package-private: the events added to each batch are kept here
+  private final Map<EventDataBatch, List<EventData>> batchEvents =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
+  @Builder
+  private LocalEventHub(
+      Integer maxBatchSizeBytes, long sendLatencyMillis, double serverBusyRate, Long seed) {
+    this.maxBatchSizeBytes =
+        maxBatchSizeBytes == null ? DEFAULT_MAX_BATCH_SIZE_BYTES : maxBatchSizeBytes;
+    this.sendLatencyMillis = sendLatencyMillis;
+    this.serverBusyRate = serverBusyRate;
+    this.random = seed == null ? new Random() : new Random(seed);
+    this.client = mock(EventHubProducerClient.class);
+    lenient().when(client.createBatch()).thenAnswer(invocation -> createBatch());
+    lenient()
+        .doAnswer(
+            invocation -> {
+              send(invocation.getArgument(0));
+              return null;
+            })
+        .when(client)
+        .send(any(EventDataBatch.class));
+  }
+
+  public List<EventData> getReceivedEvents() {
+    synchronized (receivedEvents) {
+      return new ArrayList<>(receivedEvents);
+    }
+  }
+
+  public int getSends() {
+    return sends.get();
+  }
+
+  public int getThrottledSends() {
+    return throttledSends.get();
+  }
+
+  /** Events refused by tryAdd because the batch was full. */
+  public int getRejectedEvents() {
+    return rejectedEvents.get();
+  }
+
+  /** Size the event takes in a batch: body, properties and framing. */
+  public static int sizeInBatch(EventData event) {
+    int size = event.getBody().length + EVENT_OVERHEAD_BYTES;
+    for (Map.Entry<String, Object> property : event.getProperties().entrySet()) {
+      size +=
+          property.getKey().getBytes(StandardCharsets.UTF_8).length
+              + String.valueOf(property.getValue()).getBytes(StandardCharsets.UTF_8).length;
+    }
+    return size;
+  }
+
+  private EventDataBatch createBatch() {
+    EventDataBatch batch = mock(EventDataBatch.class);
+    List<EventData> events = new ArrayList<>();
+    AtomicInteger size = new AtomicInteger();
+    lenient().when(batch.getMaxSizeInBytes()).thenReturn(maxBatchSizeBytes);
+    batchEvents.put(batch, events);
+    lenient().when(batch.getCount()).thenAnswer(invocation -> events.size());
+    lenient().when(batch.getSizeInBytes()).thenAnswer(invocation -> size.get());
+    lenient()
+        .when(batch.tryAdd(any(EventData.class)))
+        .thenAnswer(
+            invocation -> {
+              EventData event = invocation.getArgument(0);
+              int eventSize = sizeInBatch(event);
+              if (size.get() + eventSize > maxBatchSizeBytes) {
+                rejectedEvents.incrementAndGet();
+                return false;
+              }
+              size.addAndGet(eventSize);
+              events.add(event);
+              return true;
+            });
+    return batch;
+  }
+
+  private void send(EventDataBatch batch) throws InterruptedException {
+    sends.incrementAndGet();
+    if (sendLatencyMillis > 0) {
+      Thread.sleep(sendLatencyMillis);
+    }
+    boolean throttled;
+    synchronized (random) {
+      throttled = serverBusyRate > 0 && random.nextDouble() < serverBusyRate;
+    }
+    if (throttled) {
+      throttledSends.incrementAndGet();
+      throw new AmqpException(
+          true,
+          AmqpErrorCondition.SERVER_BUSY_ERROR,
+          "The request was terminated because the entity is being throttled",
+          mock(AmqpErrorContext.class));
+    }
+    receivedEvents.addAll(batchEvents.remove(batch));
+  }
+}
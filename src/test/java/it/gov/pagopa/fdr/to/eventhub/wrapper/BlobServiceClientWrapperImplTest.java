@@ -0,0 +1,63 @@
+package it.gov.pagopa.fdr.to.eventhub.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.azure.storage.blob.BlobContainerClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import uk.org.webcompere.systemstubs.environment.EnvironmentVariables;
+import uk.org.webcompere.systemstubs.jupiter.SystemStub;
+import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
+
+@ExtendWith(SystemStubsExtension.class)
+class BlobServiceClientWrapperImplTest {
+
+  private static final String STORAGE_ENV_VAR = "FDR_SA_CONNECTION_STRING";
+
+  @SystemStub
+  private EnvironmentVariables environmentVariables =
+      new EnvironmentVariables(STORAGE_ENV_VAR, connectionString("account1"));
+
+  @Test
+  void testClientsAreReused() {
+    BlobServiceClientWrapperImpl wrapper = new BlobServiceClientWrapperImpl();
+
+    BlobContainerClient first = wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr1-flows");
+    BlobContainerClient second = wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr1-flows");
+    BlobContainerClient other = wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr3-flows");
+
+    assertSame(first, second);
+    assertNotSame(first, other);
+    assertEquals("fdr3-flows", other.getBlobContainerName());
+  }
+
+  @Test
+  void testClientsAreRebuiltWhenCredentialsChange() {
+    BlobServiceClientWrapperImpl wrapper = new BlobServiceClientWrapperImpl();
+    BlobContainerClient first = wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr1-flows");
+
+    environmentVariables.set(STORAGE_ENV_VAR, connectionString("account2"));
+    BlobContainerClient rotated = wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr1-flows");
+
+    assertNotSame(first, rotated);
+    assertEquals("account2", rotated.getAccountName());
+  }
+
+  @Test
+  void testInvalidate() {
+    BlobServiceClientWrapperImpl wrapper = new BlobServiceClientWrapperImpl();
+    BlobContainerClient first = wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr1-flows");
+
+    wrapper.invalidate(STORAGE_ENV_VAR);
+
+    assertNotSame(first, wrapper.getBlobContainerClient(STORAGE_ENV_VAR, "fdr1-flows"));
+  }
+
+  private static String connectionString(String accountName) {
+    return "DefaultEndpointsProtocol=https;AccountName="
+        + accountName
+        + ";AccountKey=dGVzdGtleQ==;EndpointSuffix=core.windows.net";
+  }
+}